@@ -0,0 +1,307 @@
+package org.matatu.tracker.archive;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.matatu.tracker.archive.ArchiveTable.Type;
+import org.matatu.tracker.archive.ColumnarFile.ColumnChunk;
+import org.matatu.tracker.archive.ColumnarFile.RowGroupMeta;
+
+/**
+ * An aggregation over one {@link ArchiveTable}: filter, group, aggregate, order, limit.
+ *
+ * <pre>{@code
+ * ArchiveQuery.from(ArchiveTable.FARES)
+ *         .between(monthStart, monthEnd)
+ *         .where("status", "SUCCESS")
+ *         .groupBy("saccoId")
+ *         .groupBy(TimeBucket.DAY)
+ *         .select("sum(amountCents * 0.01) as revenue_kes")
+ *         .build();
+ * }</pre>
+ *
+ * <p>Aggregates are written {@code fn(expression) as alias}, with {@code fn} one of count, sum,
+ * avg, min and max, and the expression a product of numeric columns and constants, e.g. {@code
+ * sum(passengersOnboard * speedKmh * 0.008333) as passenger_km} for pings 30 s (0.008333 h) apart.
+ * {@code count(*)} counts rows. Every query is bounded in time by the table's timestamp column.
+ */
+public record ArchiveQuery(
+        ArchiveTable<?> table,
+        Instant from,
+        Instant to,
+        List<Filter> filters,
+        List<Dimension> dimensions,
+        List<Aggregate> aggregates,
+        String orderBy,
+        boolean descending,
+        int limit) {
+
+    private static final Pattern AGGREGATE =
+            Pattern.compile("(?i)\\s*(count|sum|avg|min|max)\\s*\\((.*)\\)\\s+as\\s+(\\w+)\\s*");
+
+    public enum TimeBucket {
+        HOUR(Duration.ofHours(1)),
+        DAY(Duration.ofDays(1));
+
+        final long millis;
+
+        TimeBucket(Duration width) {
+            this.millis = width.toMillis();
+        }
+    }
+
+    public enum Function {
+        COUNT,
+        SUM,
+        AVG,
+        MIN,
+        MAX
+    }
+
+    /** Keeps a row only if the column holds one of {@code values}, or lies in [min, max]. */
+    public sealed interface Filter permits In, Range {
+        String column();
+
+        /** Whether a row group with these statistics may hold a matching row. */
+        boolean mayMatch(ColumnChunk chunk);
+    }
+
+    public record In(String column, Set<String> values) implements Filter {
+        @Override
+        public boolean mayMatch(ColumnChunk chunk) {
+            String min = (String) chunk.min();
+            String max = (String) chunk.max();
+            if (min == null) {
+                return false; // only nulls
+            }
+            for (String value : values) {
+                if (value.compareTo(min) >= 0 && value.compareTo(max) <= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public record Range(String column, long min, long max) implements Filter {
+        @Override
+        public boolean mayMatch(ColumnChunk chunk) {
+            return (long) chunk.max() >= min && (long) chunk.min() <= max;
+        }
+    }
+
+    /**
+     * A {@code STRING} column, or a time bucket of the timestamp column when {@code bucket} is set.
+     */
+    public record Dimension(String column, TimeBucket bucket) {
+        public String label() {
+            return (bucket == null) ? column : bucket.name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /** Product of {@code columns} (none for a constant) times {@code factor}. */
+    public record Expression(List<String> columns, double factor) {
+
+        static Expression parse(String text) {
+            List<String> columns = new ArrayList<>();
+            double factor = 1;
+            for (String term : text.split("\\*")) {
+                String trimmed = term.strip();
+                if (trimmed.isEmpty()) {
+                    throw new IllegalArgumentException("Bad expression: " + text);
+                }
+                if (Character.isDigit(trimmed.charAt(0)) || trimmed.charAt(0) == '.') {
+                    factor *= Double.parseDouble(trimmed);
+                } else {
+                    columns.add(trimmed);
+                }
+            }
+            return new Expression(List.copyOf(columns), factor);
+        }
+    }
+
+    public record Aggregate(Function function, Expression expression, String alias) {
+
+        /** Parses {@code fn(expression) as alias}. */
+        public static Aggregate parse(String text) {
+            Matcher matcher = AGGREGATE.matcher(text);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException(
+                        "Expected 'fn(expression) as alias' but got: " + text);
+            }
+            Function function = Function.valueOf(matcher.group(1).toUpperCase(Locale.ROOT));
+            String argument = matcher.group(2).strip();
+            Expression expression =
+                    argument.equals("*")
+                            ? new Expression(List.of(), 1)
+                            : Expression.parse(argument);
+            if (function != Function.COUNT && argument.equals("*")) {
+                throw new IllegalArgumentException(function + "(*) is not supported: " + text);
+            }
+            return new Aggregate(function, expression, matcher.group(3));
+        }
+    }
+
+    public static Builder from(ArchiveTable<?> table) {
+        return new Builder(table);
+    }
+
+    /** Every column a scan has to read: the timestamp, filters, dimensions and expressions. */
+    public Set<String> columns() {
+        Set<String> columns = new LinkedHashSet<>();
+        columns.add(table.timestampColumn());
+        filters.forEach(filter -> columns.add(filter.column()));
+        dimensions.stream().filter(d -> d.bucket() == null).forEach(d -> columns.add(d.column()));
+        aggregates.forEach(aggregate -> columns.addAll(aggregate.expression().columns()));
+        return columns;
+    }
+
+    /** Whether a row group may hold rows of this query, judged by its statistics alone. */
+    public boolean mayMatch(RowGroupMeta group) {
+        if (!group.overlaps(table.timestampColumn(), from.toEpochMilli(), to.toEpochMilli())) {
+            return false;
+        }
+        for (Filter filter : filters) {
+            if (!filter.mayMatch(group.chunks().get(filter.column()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static final class Builder {
+        private final ArchiveTable<?> table;
+        private Instant from;
+        private Instant to;
+        private final List<Filter> filters = new ArrayList<>();
+        private final List<Dimension> dimensions = new ArrayList<>();
+        private final List<Aggregate> aggregates = new ArrayList<>();
+        private String orderBy;
+        private boolean descending;
+        private int limit = Integer.MAX_VALUE;
+
+        private Builder(ArchiveTable<?> table) {
+            this.table = table;
+        }
+
+        /** Rows with {@code from <= timestamp < to}. */
+        public Builder between(Instant from, Instant to) {
+            this.from = from;
+            this.to = to;
+            return this;
+        }
+
+        public Builder where(String column, String... values) {
+            expect(column, Type.STRING);
+            filters.add(new In(column, Set.of(values)));
+            return this;
+        }
+
+        public Builder where(String column, long min, long max) {
+            Type type = table.column(column).type();
+            if (type == Type.STRING || type == Type.DOUBLE) {
+                throw new IllegalArgumentException(column + " is not an INT column");
+            }
+            filters.add(new Range(column, min, max));
+            return this;
+        }
+
+        /**
+         * {@code values} of a {@code STRING} column, or a single {@code "min..max"} of an {@code
+         * INT}, {@code BOOLEAN} or {@code TIMESTAMP} (epoch millis) column.
+         */
+        public Builder where(String column, List<String> values) {
+            if (table.column(column).type() == Type.STRING) {
+                return where(column, values.toArray(String[]::new));
+            }
+            String[] bounds = (values.size() == 1) ? values.getFirst().split("\\.\\.") : null;
+            if (bounds == null || bounds.length != 2) {
+                throw new IllegalArgumentException(
+                        "Expected one 'min..max' for " + column + " but got " + values);
+            }
+            return where(
+                    column, Long.parseLong(bounds[0].strip()), Long.parseLong(bounds[1].strip()));
+        }
+
+        /** A {@code STRING} column, or {@code "hour"} or {@code "day"} of the timestamp. */
+        public Builder groupBy(String column) {
+            for (TimeBucket bucket : TimeBucket.values()) {
+                if (bucket.name().equalsIgnoreCase(column)) {
+                    return groupBy(bucket);
+                }
+            }
+
+            expect(column, Type.STRING);
+            dimensions.add(new Dimension(column, null));
+            return this;
+        }
+
+        public Builder groupBy(TimeBucket bucket) {
+            dimensions.add(new Dimension(table.timestampColumn(), bucket));
+            return this;
+        }
+
+        public Builder select(String aggregate) {
+            Aggregate parsed = Aggregate.parse(aggregate);
+            for (String column : parsed.expression().columns()) {
+                if (table.column(column).type() == Type.STRING) {
+                    throw new IllegalArgumentException(column + " is not numeric");
+                }
+            }
+            aggregates.add(parsed);
+            return this;
+        }
+
+        /** By an aggregate alias or a dimension label; by the dimensions otherwise. */
+        public Builder orderBy(String label, boolean descending) {
+            this.orderBy = label;
+            this.descending = descending;
+            return this;
+        }
+
+        public Builder limit(int limit) {
+            if (limit < 1) {
+                throw new IllegalArgumentException("limit must be positive");
+            }
+            this.limit = limit;
+            return this;
+        }
+
+        public ArchiveQuery build() {
+            if (from == null || to == null || !from.isBefore(to)) {
+                throw new IllegalArgumentException("A query needs a time range with from < to");
+            }
+            if (aggregates.isEmpty()) {
+                throw new IllegalArgumentException("A query needs at least one aggregate");
+            }
+            if (orderBy != null
+                    && aggregates.stream().noneMatch(a -> a.alias().equals(orderBy))
+                    && dimensions.stream().noneMatch(d -> d.label().equals(orderBy))) {
+                throw new IllegalArgumentException("Cannot order by unknown column " + orderBy);
+            }
+            return new ArchiveQuery(
+                    table,
+                    from,
+                    to,
+                    List.copyOf(filters),
+                    List.copyOf(dimensions),
+                    List.copyOf(aggregates),
+                    orderBy,
+                    descending,
+                    limit);
+        }
+
+        private void expect(String column, Type type) {
+            if (table.column(column).type() != type) {
+                throw new IllegalArgumentException(column + " is not a " + type + " column");
+            }
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package org.matatu.tracker.archive;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.matatu.tracker.archive.ArchiveQuery.Aggregate;
+import org.matatu.tracker.archive.ArchiveQuery.Dimension;
+import org.matatu.tracker.archive.ArchiveQuery.Expression;
+import org.matatu.tracker.archive.ArchiveQuery.Filter;
+import org.matatu.tracker.archive.ArchiveQuery.Function;
+import org.matatu.tracker.archive.ArchiveQuery.In;
+import org.matatu.tracker.archive.ArchiveQuery.Range;
+import org.matatu.tracker.archive.ArchiveTable.Type;
+import org.matatu.tracker.archive.ColumnarFile.RowGroup;
+import org.matatu.tracker.archive.ColumnarFile.RowGroupMeta;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs {@link ArchiveQuery} aggregations over the {@link ColumnarArchive}.
+ *
+ * <p>KEY CONCEPT — Column at a time, file per task: the part files in range are split in halves on
+ * a {@link ForkJoinPool} until each task holds one file, and the partial aggregates are merged on
+ * the way back up. Within a file, a row group is pruned by its statistics or read as primitive
+ * column arrays, and every step is one tight loop over one array: the time filter and each {@code
+ * where} narrow a selection vector of row indices, each dimension maps the selected rows to small
+ * group ids, and each aggregate multiplies its columns into one {@code double[]} and folds it into
+ * per-group sums, counts, minima and maxima. No row is ever materialized as an object, and loops of
+ * this shape are what the JIT unrolls and vectorizes.
+ */
+@Slf4j
+@Component
+public class ArchiveQueryEngine {
+
+    private static final int SUM = 0;
+    private static final int COUNT = 1;
+    private static final int MIN = 2;
+    private static final int MAX = 3;
+    private static final int STATE = 4;
+
+    private final ColumnarArchive archive;
+    private final ForkJoinPool pool;
+
+    public ArchiveQueryEngine(ColumnarArchive archive, MatatuTrackerProperties properties) {
+        this.archive = archive;
+        int parallelism = properties.getArchive().getQueryParallelism();
+        this.pool =
+                new ForkJoinPool(
+                        (parallelism > 0)
+                                ? parallelism
+                                : Runtime.getRuntime().availableProcessors());
+    }
+
+    public ArchiveQueryResult execute(ArchiveQuery query) {
+        long start = System.nanoTime();
+        List<Path> files;
+        try {
+            files = archive.parts(query.table(), query.from(), query.to());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Partial partial =
+                files.isEmpty()
+                        ? new Partial()
+                        : pool.invoke(new ScanTask(query, files, 0, files.size()));
+        long elapsedMicros = (System.nanoTime() - start) / 1_000;
+        var stats =
+                new ArchiveQueryResult.Stats(
+                        files.size(),
+                        partial.rowGroupsRead,
+                        partial.rowGroupsSkipped,
+                        partial.rowsScanned,
+                        partial.rowsMatched,
+                        partial.bytesRead,
+                        pool.getParallelism(),
+                        elapsedMicros);
+        log.debug("Archive query on {}: {}", query.table().name(), stats);
+        return result(query, partial, stats);
+    }
+
+    @PreDestroy
+    void close() {
+        pool.shutdown();
+    }
+
+    // ── Scan ──────────────────────────────────────────────────────────────────
+
+    /** Per-group aggregate state: SUM, COUNT, MIN, MAX for each aggregate in select order. */
+    private static final class Partial {
+        final Map<List<Object>, double[]> groups = new HashMap<>();
+        int rowGroupsRead;
+        int rowGroupsSkipped;
+        long rowsScanned;
+        long rowsMatched;
+        long bytesRead;
+
+        Partial merge(Partial other) {
+            other.groups.forEach(
+                    (key, state) -> {
+                        double[] mine = groups.putIfAbsent(key, state);
+                        if (mine != null) {
+                            combine(mine, 0, state, 0, state.length / STATE);
+                        }
+                    });
+            rowGroupsRead += other.rowGroupsRead;
+            rowGroupsSkipped += other.rowGroupsSkipped;
+            rowsScanned += other.rowsScanned;
+            rowsMatched += other.rowsMatched;
+            bytesRead += other.bytesRead;
+            return this;
+        }
+    }
+
+    private static final class ScanTask extends RecursiveTask<Partial> {
+        private final ArchiveQuery query;
+        private final List<Path> files;
+        private final int from;
+        private final int to;
+
+        ScanTask(ArchiveQuery query, List<Path> files, int from, int to) {
+            this.query = query;
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from == 1) {
+                return scan(query, files.get(from));
+            }
+            int middle = (from + to) >>> 1;
+            var left = new ScanTask(query, files, from, middle);
+            left.fork();
+            Partial right = new ScanTask(query, files, middle, to).compute();
+            return right.merge(left.join());
+        }
+    }
+
+    private static Partial scan(ArchiveQuery query, Path path) {
+        var partial = new Partial();
+        try (ColumnarFile file = ColumnarFile.open(path)) {
+            for (RowGroupMeta group : file.rowGroups()) {
+                if (!query.mayMatch(group)) {
+                    partial.rowGroupsSkipped++;
+                    continue;
+                }
+                aggregate(query, file.read(group, query.columns()), partial);
+                partial.rowGroupsRead++;
+            }
+            partial.bytesRead = file.bytesRead();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return partial;
+    }
+
+    private static void aggregate(ArchiveQuery query, RowGroup data, Partial partial) {
+        int rows = data.rows();
+        partial.rowsScanned += rows;
+
+        int[] selection = new int[rows];
+        int count = 0;
+        long[] timestamps = data.longs(query.table().timestampColumn());
+        long from = query.from().toEpochMilli();
+        long to = query.to().toEpochMilli();
+        for (int i = 0; i < rows; i++) {
+            long timestamp = timestamps[i];
+            if (timestamp >= from && timestamp < to) {
+                selection[count++] = i;
+            }
+        }
+        for (Filter filter : query.filters()) {
+            count = select(filter, data, selection, count);
+        }
+        partial.rowsMatched += count;
+        if (count == 0) {
+            return;
+        }
+
+        int[] groupIds = new int[count];
+        List<Object[]> keys = group(query, data, selection, count, groupIds);
+
+        List<Aggregate> aggregates = query.aggregates();
+        int width = aggregates.size() * STATE;
+        double[] state = new double[keys.size() * width];
+        for (int g = 0; g < keys.size(); g++) {
+            for (int a = 0; a < aggregates.size(); a++) {
+                state[g * width + a * STATE + MIN] = Double.POSITIVE_INFINITY;
+                state[g * width + a * STATE + MAX] = Double.NEGATIVE_INFINITY;
+            }
+        }
+        for (int a = 0; a < aggregates.size(); a++) {
+            int offset = a * STATE;
+            if (aggregates.get(a).function() == Function.COUNT) {
+                for (int k = 0; k < count; k++) {
+                    state[groupIds[k] * width + offset + COUNT]++;
+                }
+                continue;
+            }
+            double[] values =
+                    evaluate(query, aggregates.get(a).expression(), data, selection, count);
+            for (int k = 0; k < count; k++) {
+                int base = groupIds[k] * width + offset;
+                double value = values[k];
+                state[base + SUM] += value;
+                state[base + COUNT]++;
+                state[base + MIN] = Math.min(state[base + MIN], value);
+                state[base + MAX] = Math.max(state[base + MAX], value);
+            }
+        }
+
+        for (int g = 0; g < keys.size(); g++) {
+            List<Object> key = Arrays.asList(keys.get(g));
+            double[] mine = partial.groups.get(key);
+            if (mine == null) {
+                partial.groups.put(key, Arrays.copyOfRange(state, g * width, (g + 1) * width));
+            } else {
+                combine(mine, 0, state, g * width, aggregates.size());
+            }
+        }
+    }
+
+    /** Keeps the selected rows that pass {@code filter}, compacting the selection in place. */
+    private static int select(Filter filter, RowGroup data, int[] selection, int count) {
+        int kept = 0;
+        switch (filter) {
+            case In in -> {
+                String[] column = data.strings(in.column());
+                String last = null;
+                boolean lastMatched = false;
+                for (int k = 0; k < count; k++) {
+                    int row = selection[k];
+                    String value = column[row];
+                    // Dictionary-decoded values repeat as the same instance.
+                    if (value != last || k == 0) {
+                        last = value;
+                        lastMatched = value != null && in.values().contains(value);
+                    }
+                    if (lastMatched) {
+                        selection[kept++] = row;
+                    }
+                }
+            }
+            case Range range -> {
+                long[] column = data.longs(range.column());
+                long min = range.min();
+                long max = range.max();
+                for (int k = 0; k < count; k++) {
+                    int row = selection[k];
+                    long value = column[row];
+                    if (value >= min && value <= max) {
+                        selection[kept++] = row;
+                    }
+                }
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Assigns each selected row a dense group id and returns the key of each id.
+     *
+     * <p>Each dimension first maps its values to small codes: a string column through a hash map
+     * (skipped while consecutive rows share the same instance), a time bucket by subtracting the
+     * first bucket in the row group. Several dimensions combine their codes into one number, which
+     * is mapped to a dense id only when there is more than one dimension.
+     */
+    private static List<Object[]> group(
+            ArchiveQuery query, RowGroup data, int[] selection, int count, int[] groupIds) {
+        List<Dimension> dimensions = query.dimensions();
+        if (dimensions.isEmpty()) {
+            return List.<Object[]>of(new Object[0]);
+        }
+        int[][] codes = new int[dimensions.size()][];
+        List<List<Object>> values = new ArrayList<>();
+        for (int d = 0; d < dimensions.size(); d++) {
+            codes[d] = new int[count];
+            values.add(encode(dimensions.get(d), data, selection, count, codes[d]));
+        }
+        if (dimensions.size() == 1) {
+            System.arraycopy(codes[0], 0, groupIds, 0, count);
+            List<Object[]> keys = new ArrayList<>();
+            for (Object value : values.getFirst()) {
+                keys.add(new Object[] {value});
+            }
+            return keys;
+        }
+        Map<Long, Integer> ids = new HashMap<>();
+        List<Object[]> keys = new ArrayList<>();
+        for (int k = 0; k < count; k++) {
+            long combined = 0;
+            for (int d = 0; d < dimensions.size(); d++) {
+                combined = combined * values.get(d).size() + codes[d][k];
+            }
+            Integer id = ids.get(combined);
+            if (id == null) {
+                id = keys.size();
+                ids.put(combined, id);
+                Object[] key = new Object[dimensions.size()];
+                for (int d = 0; d < dimensions.size(); d++) {
+                    key[d] = values.get(d).get(codes[d][k]);
+                }
+                keys.add(key);
+            }
+            groupIds[k] = id;
+        }
+        return keys;
+    }
+
+    private static List<Object> encode(
+            Dimension dimension, RowGroup data, int[] selection, int count, int[] codes) {
+        List<Object> values = new ArrayList<>();
+        if (dimension.bucket() == null) {
+            String[] column = data.strings(dimension.column());
+            Map<String, Integer> codeOf = new HashMap<>();
+            String last = null;
+            int lastCode = -1;
+            for (int k = 0; k < count; k++) {
+                String value = column[selection[k]];
+                if (value != last || lastCode < 0) {
+                    Integer code = codeOf.get(value);
+                    if (code == null) {
+                        code = values.size();
+                        codeOf.put(value, code);
+                        values.add(value);
+                    }
+                    last = value;
+                    lastCode = code;
+                }
+                codes[k] = lastCode;
+            }
+            return values;
+        }
+        long[] column = data.longs(dimension.column());
+        long width = dimension.bucket().millis;
+        long first = Long.MAX_VALUE;
+        long lastBucket = Long.MIN_VALUE;
+        for (int k = 0; k < count; k++) {
+            long bucket = Math.floorDiv(column[selection[k]], width);
+            first = Math.min(first, bucket);
+            lastBucket = Math.max(lastBucket, bucket);
+        }
+        for (int k = 0; k < count; k++) {
+            codes[k] = (int) (Math.floorDiv(column[selection[k]], width) - first);
+        }
+        for (long bucket = first; bucket <= lastBucket; bucket++) {
+            values.add(Instant.ofEpochMilli(bucket * width));
+        }
+        return values;
+    }
+
+    /** The expression's value for each selected row. */
+    private static double[] evaluate(
+            ArchiveQuery query, Expression expression, RowGroup data, int[] selection, int count) {
+        double[] values = new double[count];
+        Arrays.fill(values, expression.factor());
+        for (String name : expression.columns()) {
+            if (query.table().column(name).type() == Type.DOUBLE) {
+                double[] column = data.doubles(name);
+                for (int k = 0; k < count; k++) {
+                    values[k] *= column[selection[k]];
+                }
+            } else {
+                long[] column = data.longs(name);
+                for (int k = 0; k < count; k++) {
+                    values[k] *= column[selection[k]];
+                }
+            }
+        }
+        return values;
+    }
+
+    private static void combine(
+            double[] into, int intoOffset, double[] from, int fromOffset, int aggregates) {
+        for (int a = 0; a < aggregates; a++) {
+            int i = intoOffset + a * STATE;
+            int f = fromOffset + a * STATE;
+            into[i + SUM] += from[f + SUM];
+            into[i + COUNT] += from[f + COUNT];
+            into[i + MIN] = Math.min(into[i + MIN], from[f + MIN]);
+            into[i + MAX] = Math.max(into[i + MAX], from[f + MAX]);
+        }
+    }
+
+    // ── Result ────────────────────────────────────────────────────────────────
+
+    private static ArchiveQueryResult result(
+            ArchiveQuery query, Partial partial, ArchiveQueryResult.Stats stats) {
+        List<String> columns = new ArrayList<>();
+        query.dimensions().forEach(dimension -> columns.add(dimension.label()));
+        query.aggregates().forEach(aggregate -> columns.add(aggregate.alias()));
+
+        List<List<Object>> rows = new ArrayList<>();
+        partial.groups.forEach(
+                (key, state) -> {
+                    List<Object> row = new ArrayList<>(key);
+                    for (int a = 0; a < query.aggregates().size(); a++) {
+                        row.add(value(query.aggregates().get(a).function(), state, a * STATE));
+                    }
+                    rows.add(row);
+                });
+
+        Comparator<List<Object>> order = byColumns(0, query.dimensions().size());
+        if (query.orderBy() != null) {
+            Comparator<List<Object>> by = byColumn(columns.indexOf(query.orderBy()));
+            order = (query.descending() ? by.reversed() : by).thenComparing(order);
+        }
+        rows.sort(order);
+        List<List<Object>> limited = rows.subList(0, Math.min(rows.size(), query.limit()));
+        return new ArchiveQueryResult(columns, List.copyOf(limited), stats);
+    }
+
+    private static Object value(Function function, double[] state, int offset) {
+        return switch (function) {
+            case COUNT -> (long) state[offset + COUNT];
+            case SUM -> state[offset + SUM];
+            case AVG -> state[offset + SUM] / state[offset + COUNT];
+            case MIN -> state[offset + MIN];
+            case MAX -> state[offset + MAX];
+        };
+    }
+
+    private static Comparator<List<Object>> byColumns(int from, int to) {
+        Comparator<List<Object>> order = (a, b) -> 0;
+        for (int c = from; c < to; c++) {
+            order = order.thenComparing(byColumn(c));
+        }
+        return order;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Comparator<List<Object>> byColumn(int column) {
+        Comparator<Comparable> natural = Comparator.nullsFirst(Comparator.naturalOrder());
+        return (a, b) -> natural.compare((Comparable) a.get(column), (Comparable) b.get(column));
+    }
+}
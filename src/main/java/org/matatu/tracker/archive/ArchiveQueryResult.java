@@ -0,0 +1,25 @@
+package org.matatu.tracker.archive;
+
+import java.util.List;
+
+/**
+ * Rows of an {@link ArchiveQuery}: the dimension values (time buckets as their start instant), then
+ * the aggregates in select order. COUNT is a whole number; a group with no values for MIN or MAX
+ * does not exist, because every group has at least one row.
+ */
+public record ArchiveQueryResult(List<String> columns, List<List<Object>> rows, Stats stats) {
+
+    /**
+     * What the scan touched. {@code files} are the part files of the days in range; row groups
+     * outside the range or ruled out by a filter's statistics are skipped unread.
+     */
+    public record Stats(
+            int files,
+            int rowGroupsRead,
+            int rowGroupsSkipped,
+            long rowsScanned,
+            long rowsMatched,
+            long bytesRead,
+            int parallelism,
+            long elapsedMicros) {}
+}
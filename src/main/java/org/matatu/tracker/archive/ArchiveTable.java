@@ -0,0 +1,108 @@
+package org.matatu.tracker.archive;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Function;
+
+import org.matatu.tracker.model.EnrichedFare;
+import org.matatu.tracker.model.EnrichedLocationEvent;
+
+/**
+ * The columns archived for one record type, and the event-time column that places a row in its
+ * daily partition.
+ *
+ * <p>Each column's {@link Type} decides its encoding in {@link ColumnarFile}: identifiers and enums
+ * are {@code STRING} (dictionary-encoded), instants are {@code TIMESTAMP} (delta-encoded epoch
+ * millis), counts, flags and money are {@code INT} or {@code BOOLEAN} (bit-packed), and coordinates
+ * and speeds are {@code DOUBLE} (plain).
+ */
+public record ArchiveTable<T>(String name, String timestampColumn, List<Column<T>> columns) {
+
+    public enum Type {
+        STRING,
+        TIMESTAMP,
+        INT,
+        BOOLEAN,
+        DOUBLE
+    }
+
+    public record Column<T>(String name, Type type, Function<T, ?> value) {}
+
+    public static final ArchiveTable<EnrichedLocationEvent> LOCATIONS =
+            new ArchiveTable<>(
+                    "locations",
+                    "originalTimestamp",
+                    List.of(
+                            new Column<>("matatuId", Type.STRING, EnrichedLocationEvent::matatuId),
+                            new Column<>("routeId", Type.STRING, EnrichedLocationEvent::routeId),
+                            new Column<>("saccoId", Type.STRING, EnrichedLocationEvent::saccoId),
+                            new Column<>("latitude", Type.DOUBLE, EnrichedLocationEvent::latitude),
+                            new Column<>(
+                                    "longitude", Type.DOUBLE, EnrichedLocationEvent::longitude),
+                            new Column<>("speedKmh", Type.DOUBLE, EnrichedLocationEvent::speedKmh),
+                            new Column<>(
+                                    "passengersOnboard",
+                                    Type.INT,
+                                    EnrichedLocationEvent::passengersOnboard),
+                            new Column<>(
+                                    "isSpeeding", Type.BOOLEAN, EnrichedLocationEvent::isSpeeding),
+                            new Column<>(
+                                    "originalTimestamp",
+                                    Type.TIMESTAMP,
+                                    EnrichedLocationEvent::originalTimestamp)));
+
+    /**
+     * Deduplicated fares with the route and SACCO they were attributed to (null when the matatu's
+     * position was unknown). {@code amountCents} is {@code amountKes} × 100, exact for shilling
+     * amounts.
+     */
+    public static final ArchiveTable<EnrichedFare> FARES =
+            new ArchiveTable<>(
+                    "fares",
+                    "timestamp",
+                    List.of(
+                            new Column<>("transactionId", Type.STRING, EnrichedFare::transactionId),
+                            new Column<>("matatuId", Type.STRING, EnrichedFare::matatuId),
+                            new Column<>("passengerId", Type.STRING, EnrichedFare::passengerId),
+                            new Column<>("routeId", Type.STRING, EnrichedFare::routeId),
+                            new Column<>("saccoId", Type.STRING, EnrichedFare::saccoId),
+                            new Column<>(
+                                    "amountCents",
+                                    Type.INT,
+                                    fare -> fare.amountKes().movePointRight(2).longValueExact()),
+                            new Column<>(
+                                    "paymentMethod",
+                                    Type.STRING,
+                                    fare -> nameOf(fare.paymentMethod())),
+                            new Column<>("status", Type.STRING, fare -> nameOf(fare.status())),
+                            new Column<>(
+                                    "attribution", Type.STRING, fare -> nameOf(fare.attribution())),
+                            new Column<>("timestamp", Type.TIMESTAMP, EnrichedFare::timestamp)));
+
+    private static String nameOf(Enum<?> value) {
+        return (value == null) ? null : value.name();
+    }
+
+    /** {@link #LOCATIONS} or {@link #FARES} by name. */
+    public static ArchiveTable<?> named(String name) {
+        for (ArchiveTable<?> table : List.of(LOCATIONS, FARES)) {
+            if (table.name().equals(name)) {
+                return table;
+            }
+        }
+        throw new IllegalArgumentException("No archive table " + name);
+    }
+
+    public Instant timestampOf(T row) {
+        return (Instant) column(timestampColumn).value().apply(row);
+    }
+
+    public Column<T> column(String name) {
+        for (Column<T> column : columns) {
+            if (column.name().equals(name)) {
+                return column;
+            }
+        }
+        throw new IllegalArgumentException("No column " + name + " in " + this.name);
+    }
+}
@@ -0,0 +1,54 @@
+package org.matatu.tracker.archive;
+
+/**
+ * Packs unsigned values of a fixed bit width back to back, least significant bit first.
+ *
+ * <p>Passenger counts of 0–33 take 6 bits instead of a 4-byte int, a boolean takes 1 bit, and a
+ * dictionary index into 300 matatuIds takes 9.
+ */
+final class BitPacking {
+
+    private BitPacking() {}
+
+    /** Bits needed for {@code value} read as unsigned; 0 for 0. */
+    static int width(long value) {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    static byte[] pack(long[] values, int count, int width) {
+        byte[] out = new byte[(int) (((long) count * width + 7) / 8)];
+        long bit = 0;
+        for (int i = 0; i < count; i++) {
+            long value = values[i];
+            int remaining = width;
+            while (remaining > 0) {
+                int offset = (int) (bit & 7);
+                int take = Math.min(8 - offset, remaining);
+                out[(int) (bit >>> 3)] |= (byte) ((value & ((1 << take) - 1)) << offset);
+                value >>>= take;
+                remaining -= take;
+                bit += take;
+            }
+        }
+        return out;
+    }
+
+    static long[] unpack(byte[] in, int from, int count, int width) {
+        long[] values = new long[count];
+        long bit = (long) from * 8;
+        for (int i = 0; i < count; i++) {
+            long value = 0;
+            int got = 0;
+            while (got < width) {
+                int offset = (int) (bit & 7);
+                int take = Math.min(8 - offset, width - got);
+                long bits = ((in[(int) (bit >>> 3)] & 0xFF) >>> offset) & ((1 << take) - 1);
+                value |= bits << got;
+                got += take;
+                bit += take;
+            }
+            values[i] = value;
+        }
+        return values;
+    }
+}
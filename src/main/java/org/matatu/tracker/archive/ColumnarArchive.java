@@ -0,0 +1,149 @@
+package org.matatu.tracker.archive;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.matatu.tracker.archive.ColumnarFile.RowGroup;
+import org.matatu.tracker.archive.ColumnarFile.RowGroupMeta;
+
+/**
+ * A directory of {@link ColumnarFile}s, partitioned by table and UTC day of event time: {@code
+ * <root>/<table>/date=YYYY-MM-DD/part-<millis>-<seq>.mcol}.
+ *
+ * <p>A scan over a time range prunes in three steps: day directories outside the range are never
+ * listed, row groups whose timestamp statistics fall outside it are never read, and of the rest
+ * only the requested columns are. Rows inside a row group that is read are not filtered; a query
+ * that needs exact bounds reads the timestamp column too.
+ */
+public final class ColumnarArchive {
+
+    private static final String PART_SUFFIX = ".mcol";
+
+    private final Path root;
+    private final int rowGroupSize;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public ColumnarArchive(Path root, int rowGroupSize) {
+        this.root = root;
+        this.rowGroupSize = rowGroupSize;
+    }
+
+    public record ScanStats(
+            int files, int rowGroupsRead, int rowGroupsSkipped, long rows, long bytesRead) {}
+
+    /**
+     * Writes {@code rows} as one new part file per day, sorted by event time so that timestamps
+     * delta-encode well and row-group statistics are narrow. A part file appears atomically.
+     *
+     * @return bytes written
+     */
+    public <T> long append(ArchiveTable<T> table, List<T> rows) throws IOException {
+        Map<LocalDate, List<T>> byDay = new TreeMap<>();
+        for (T row : rows) {
+            byDay.computeIfAbsent(day(table.timestampOf(row)), d -> new ArrayList<>()).add(row);
+        }
+        long bytes = 0;
+        for (Map.Entry<LocalDate, List<T>> day : byDay.entrySet()) {
+            List<T> dayRows = day.getValue();
+            dayRows.sort(Comparator.comparing(table::timestampOf));
+            Path directory = directory(table).resolve("date=" + day.getKey());
+            Files.createDirectories(directory);
+            String name =
+                    "part-%d-%06d%s"
+                            .formatted(
+                                    System.currentTimeMillis(),
+                                    sequence.incrementAndGet(),
+                                    PART_SUFFIX);
+            Path temporary = directory.resolve(name + ".tmp");
+            bytes += ColumnarFile.write(temporary, table, dayRows, rowGroupSize);
+            Files.move(temporary, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+        }
+        return bytes;
+    }
+
+    /**
+     * Passes each row group of {@code table} that may hold rows in [{@code from}, {@code to}) to
+     * {@code visitor}, with only {@code columns} decoded.
+     */
+    public ScanStats scan(
+            ArchiveTable<?> table,
+            Instant from,
+            Instant to,
+            Collection<String> columns,
+            Consumer<RowGroup> visitor)
+            throws IOException {
+        int files = 0;
+        int read = 0;
+        int skipped = 0;
+        long rows = 0;
+        long bytesRead = 0;
+        for (Path file : parts(table, from, to)) {
+            try (ColumnarFile columnar = ColumnarFile.open(file)) {
+                files++;
+                for (RowGroupMeta group : columnar.rowGroups()) {
+                    if (!group.overlaps(
+                            table.timestampColumn(), from.toEpochMilli(), to.toEpochMilli())) {
+                        skipped++;
+                        continue;
+                    }
+                    visitor.accept(columnar.read(group, columns));
+                    read++;
+                    rows += group.rows();
+                }
+                bytesRead += columnar.bytesRead();
+            }
+        }
+        return new ScanStats(files, read, skipped, rows, bytesRead);
+    }
+
+    /** The part files of the days that overlap [{@code from}, {@code to}). */
+    public List<Path> parts(ArchiveTable<?> table, Instant from, Instant to) throws IOException {
+        LocalDate firstDay = day(from);
+        LocalDate lastDay = day(to.minusMillis(1));
+        Path directory = directory(table);
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        List<Path> parts = new ArrayList<>();
+        try (Stream<Path> days = Files.list(directory)) {
+            for (Path day : days.sorted().toList()) {
+                String name = day.getFileName().toString();
+                if (!name.startsWith("date=")) {
+                    continue;
+                }
+                LocalDate date = LocalDate.parse(name.substring("date=".length()));
+                if (date.isBefore(firstDay) || date.isAfter(lastDay)) {
+                    continue;
+                }
+                try (Stream<Path> files = Files.list(day)) {
+                    files.filter(file -> file.getFileName().toString().endsWith(PART_SUFFIX))
+                            .sorted()
+                            .forEach(parts::add);
+                }
+            }
+        }
+        return parts;
+    }
+
+    private Path directory(ArchiveTable<?> table) {
+        return root.resolve(table.name());
+    }
+
+    private static LocalDate day(Instant instant) {
+        return LocalDate.ofInstant(instant, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,187 @@
+package org.matatu.tracker.archive;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.kafka.common.TopicPartition;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.model.EnrichedFare;
+import org.matatu.tracker.model.EnrichedLocationEvent;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Copies {@code matatu.location.enriched} and {@code matatu.fares.enriched} into the {@link
+ * ColumnarArchive}, so that questions like "revenue per SACCO per day last month" scan a few
+ * columns on local disk instead of re-consuming the topics.
+ *
+ * <p>KEY CONCEPT — Commit after the write: rows are buffered across polls and written as one part
+ * file per day once {@code flush-rows} have arrived or {@code flush-interval-ms} has passed since
+ * the first of them (checked on every batch and on the container's idle events). Only then are the
+ * batches acknowledged. A crash loses nothing: the unwritten rows are simply consumed again. A
+ * rebalance flushes first, so the next owner starts after the rows already on disk.
+ *
+ * <p>A buffer is guarded by a {@link ReentrantLock} rather than {@code synchronized}: the write
+ * happens under it, and on JDK 21 file IO inside a monitor pins a virtual listener thread ({@code
+ * app.threads.listeners: VIRTUAL}) to its carrier.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.archive.enabled", havingValue = "true")
+public class ColumnarArchiveSink implements ConsumerSeekAware {
+
+    static final String LOCATIONS_LISTENER = "archive-locations";
+    static final String FARES_LISTENER = "archive-fares";
+
+    private final ColumnarArchive archive;
+    private final MatatuTrackerProperties.Archive settings;
+    private final Buffer<EnrichedLocationEvent> locations;
+    private final Buffer<EnrichedFare> fares;
+
+    public ColumnarArchiveSink(ColumnarArchive archive, MatatuTrackerProperties properties) {
+        this.settings = properties.getArchive();
+        this.archive = archive;
+        this.locations = new Buffer<>(ArchiveTable.LOCATIONS);
+        this.fares = new Buffer<>(ArchiveTable.FARES);
+    }
+
+    @KafkaListener(
+            id = LOCATIONS_LISTENER,
+            topics = Topics.MATATU_LOCATION_ENRICHED,
+            groupId = "archive-group",
+            containerFactory = "archiveLocationListenerContainerFactory")
+    public void onLocations(List<EnrichedLocationEvent> events, Acknowledgment ack) {
+        locations.add(events, ack);
+    }
+
+    @KafkaListener(
+            id = FARES_LISTENER,
+            topics = Topics.MATATU_FARES_ENRICHED,
+            groupId = "archive-group",
+            containerFactory = "archiveFareListenerContainerFactory")
+    public void onFares(List<EnrichedFare> events, Acknowledgment ack) {
+        fares.add(events, ack);
+    }
+
+    /** Idle events arrive on the consumer thread, like the batches, every flush-interval-ms. */
+    @EventListener(condition = "event.listenerId.startsWith('archive-')")
+    public void onIdle(ListenerContainerIdleEvent event) {
+        if (event.getListenerId().startsWith(LOCATIONS_LISTENER)) {
+            locations.flushIfDue();
+        } else if (event.getListenerId().startsWith(FARES_LISTENER)) {
+            fares.flushIfDue();
+        }
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            if (partition.topic().equals(Topics.MATATU_LOCATION_ENRICHED)) {
+                locations.flush();
+            } else if (partition.topic().equals(Topics.MATATU_FARES_ENRICHED)) {
+                fares.flush();
+            }
+        }
+    }
+
+    private final class Buffer<T> {
+        private final ArchiveTable<T> table;
+        private final List<T> rows = new ArrayList<>();
+        // Every batch since the last write: a later batch may not cover all partitions.
+        private final List<Acknowledgment> pending = new ArrayList<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private long firstRowNanos;
+
+        Buffer(ArchiveTable<T> table) {
+            this.table = table;
+        }
+
+        void add(List<T> batch, Acknowledgment ack) {
+            lock.lock();
+            try {
+                addLocked(batch, ack);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void flushIfDue() {
+            lock.lock();
+            try {
+                long elapsedMs = (System.nanoTime() - firstRowNanos) / 1_000_000;
+                if (!pending.isEmpty() && elapsedMs >= settings.getFlushIntervalMs()) {
+                    flushLocked();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void flush() {
+            lock.lock();
+            try {
+                flushLocked();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void addLocked(List<T> batch, Acknowledgment ack) {
+            if (rows.isEmpty()) {
+                firstRowNanos = System.nanoTime();
+            }
+            int before = rows.size();
+            for (T row : batch) {
+                if (row != null && table.timestampOf(row) != null) {
+                    rows.add(row);
+                }
+            }
+            if (rows.size() - before < batch.size()) {
+                log.warn(
+                        "Skipped {} {} records without a timestamp",
+                        batch.size() - (rows.size() - before),
+                        table.name());
+            }
+            pending.add(ack);
+            long elapsedMs = (System.nanoTime() - firstRowNanos) / 1_000_000;
+            if (rows.size() >= settings.getFlushRows()
+                    || elapsedMs >= settings.getFlushIntervalMs()) {
+                flushLocked();
+            }
+        }
+
+        private void flushLocked() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                long bytes = rows.isEmpty() ? 0 : archive.append(table, rows);
+                log.info(
+                        "Archived {} {} rows, {} bytes in {} ms",
+                        rows.size(),
+                        table.name(),
+                        bytes,
+                        (System.nanoTime() - start) / 1_000_000);
+            } catch (IOException e) {
+                // Keep the rows and the acks; the next batch or idle event tries again.
+                log.error("Could not archive {} {} rows", rows.size(), table.name(), e);
+                return;
+            }
+            pending.forEach(Acknowledgment::acknowledge);
+            pending.clear();
+            rows.clear();
+        }
+    }
+}
@@ -0,0 +1,541 @@
+package org.matatu.tracker.archive;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.common.utils.ByteUtils;
+import org.matatu.tracker.archive.ArchiveTable.Column;
+import org.matatu.tracker.archive.ArchiveTable.Type;
+
+/**
+ * One immutable file of archived rows, stored column by column in row groups.
+ *
+ * <p>KEY CONCEPT — Read only what the query touches: a topic can only be scanned record by record,
+ * every field of every record parsed. Here the rows are cut into row groups, and each row group
+ * stores every column as its own chunk. The footer records where each chunk is and the min and max
+ * of its values, so a scan reads the footer, skips row groups whose statistics rule them out, and
+ * reads only the chunks of the columns it asked for.
+ *
+ * <p>Storing a column's values together also makes them cheap to encode:
+ *
+ * <ul>
+ *   <li>{@code STRING}: a dictionary of the chunk's distinct values and a bit-packed index per row.
+ *       A column with more distinct values than half its rows (transaction ids) is written plain.
+ *   <li>{@code TIMESTAMP}: the first epoch milli, then bit-packed deltas above the smallest delta.
+ *   <li>{@code INT}, {@code BOOLEAN}: bit-packed above the chunk's minimum.
+ *   <li>{@code DOUBLE}: plain 8-byte values.
+ * </ul>
+ *
+ * <p>Layout: {@code MCOL}, the column chunks of each row group in order, the footer, the footer's
+ * length and {@code MCOL} again.
+ */
+public final class ColumnarFile implements Closeable {
+
+    private static final int MAGIC = 0x4D434F4C; // "MCOL"
+    private static final int VERSION = 1;
+    private static final int TRAILER_BYTES = 8;
+
+    public enum Encoding {
+        PLAIN,
+        DICTIONARY,
+        DELTA,
+        BIT_PACKED
+    }
+
+    /** Where one column of one row group is stored, and the range of its non-null values. */
+    public record ColumnChunk(long offset, int length, Encoding encoding, Object min, Object max) {}
+
+    public record RowGroupMeta(int rows, Map<String, ColumnChunk> chunks) {
+
+        /**
+         * Whether any value of a {@code TIMESTAMP} or {@code INT} column may lie in [{@code from},
+         * {@code to}).
+         */
+        public boolean overlaps(String column, long from, long to) {
+            ColumnChunk chunk = chunks.get(column);
+            return (long) chunk.max() >= from && (long) chunk.min() < to;
+        }
+    }
+
+    /** Decoded column vectors of one row group. */
+    public record RowGroup(int rows, Map<String, Object> vectors) {
+
+        public String[] strings(String column) {
+            return (String[]) vector(column);
+        }
+
+        /** {@code TIMESTAMP} as epoch millis, {@code INT}, and {@code BOOLEAN} as 0 or 1. */
+        public long[] longs(String column) {
+            return (long[]) vector(column);
+        }
+
+        public double[] doubles(String column) {
+            return (double[]) vector(column);
+        }
+
+        private Object vector(String column) {
+            Object vector = vectors.get(column);
+            if (vector == null) {
+                throw new IllegalArgumentException("Column " + column + " was not read");
+            }
+            return vector;
+        }
+    }
+
+    private final FileChannel channel;
+    private final String table;
+    private final Map<String, Type> schema;
+    private final List<RowGroupMeta> rowGroups;
+    private long bytesRead;
+
+    private ColumnarFile(
+            FileChannel channel,
+            String table,
+            Map<String, Type> schema,
+            List<RowGroupMeta> rowGroups,
+            long bytesRead) {
+        this.channel = channel;
+        this.table = table;
+        this.schema = schema;
+        this.rowGroups = rowGroups;
+        this.bytesRead = bytesRead;
+    }
+
+    // ── Writing ───────────────────────────────────────────────────────────────
+
+    /**
+     * Writes {@code rows} to a new file at {@code file}.
+     *
+     * @return the size of the file in bytes
+     */
+    public static <T> long write(Path file, ArchiveTable<T> table, List<T> rows, int rowGroupSize)
+            throws IOException {
+        try (var out =
+                new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            var data = new DataOutputStream(out);
+            data.writeInt(MAGIC);
+
+            List<Map<String, ColumnChunk>> groups = new ArrayList<>();
+            List<Integer> groupRows = new ArrayList<>();
+            for (int from = 0; from < rows.size(); from += rowGroupSize) {
+                List<T> group = rows.subList(from, Math.min(from + rowGroupSize, rows.size()));
+                Map<String, ColumnChunk> chunks = new LinkedHashMap<>();
+                for (Column<T> column : table.columns()) {
+                    Encoded encoded = encode(column, group);
+                    long offset = out.count();
+                    data.write(encoded.bytes());
+                    chunks.put(
+                            column.name(),
+                            new ColumnChunk(
+                                    offset,
+                                    encoded.bytes().length,
+                                    encoded.encoding(),
+                                    encoded.min(),
+                                    encoded.max()));
+                }
+                groups.add(chunks);
+                groupRows.add(group.size());
+            }
+
+            byte[] footer = footer(table, groups, groupRows);
+            data.write(footer);
+            data.writeInt(footer.length);
+            data.writeInt(MAGIC);
+            data.flush();
+            return out.count();
+        }
+    }
+
+    private record Encoded(byte[] bytes, Encoding encoding, Object min, Object max) {}
+
+    private static <T> Encoded encode(Column<T> column, List<T> rows) throws IOException {
+        var buffer = new ByteArrayOutputStream();
+        var out = new DataOutputStream(buffer);
+        int count = rows.size();
+        return switch (column.type()) {
+            case STRING -> {
+                String[] values = new String[count];
+                Map<String, Integer> dictionary = new LinkedHashMap<>();
+                String min = null;
+                String max = null;
+                for (int i = 0; i < count; i++) {
+                    String value = (String) column.value().apply(rows.get(i));
+                    values[i] = value;
+                    dictionary.putIfAbsent(value, dictionary.size());
+                    if (value != null) {
+                        min = (min == null || value.compareTo(min) < 0) ? value : min;
+                        max = (max == null || value.compareTo(max) > 0) ? value : max;
+                    }
+                }
+                if (dictionary.size() > Math.max(1, count / 2)) {
+                    for (String value : values) {
+                        writeString(out, value);
+                    }
+                    yield new Encoded(buffer.toByteArray(), Encoding.PLAIN, min, max);
+                }
+                ByteUtils.writeUnsignedVarint(dictionary.size(), out);
+                for (String value : dictionary.keySet()) {
+                    writeString(out, value);
+                }
+                long[] indices = new long[count];
+                for (int i = 0; i < count; i++) {
+                    indices[i] = dictionary.get(values[i]);
+                }
+                writePacked(out, indices, count, BitPacking.width(dictionary.size() - 1));
+                yield new Encoded(buffer.toByteArray(), Encoding.DICTIONARY, min, max);
+            }
+            case TIMESTAMP -> {
+                long[] values = new long[count];
+                for (int i = 0; i < count; i++) {
+                    Instant instant = (Instant) column.value().apply(rows.get(i));
+                    if (instant == null) {
+                        throw new IllegalArgumentException(column.name() + " must not be null");
+                    }
+                    values[i] = instant.toEpochMilli();
+                }
+                long[] deltas = new long[count];
+                long minDelta = Long.MAX_VALUE;
+                for (int i = 1; i < count; i++) {
+                    deltas[i] = values[i] - values[i - 1];
+                    minDelta = Math.min(minDelta, deltas[i]);
+                }
+                minDelta = (count > 1) ? minDelta : 0;
+                long maxOffset = 0;
+                for (int i = 1; i < count; i++) {
+                    deltas[i - 1] = deltas[i] - minDelta;
+                    maxOffset |= deltas[i - 1];
+                }
+                ByteUtils.writeVarlong(values[0], out);
+                ByteUtils.writeVarlong(minDelta, out);
+                writePacked(out, deltas, count - 1, BitPacking.width(maxOffset));
+                yield new Encoded(buffer.toByteArray(), Encoding.DELTA, min(values), max(values));
+            }
+            case INT, BOOLEAN -> {
+                long[] values = new long[count];
+                for (int i = 0; i < count; i++) {
+                    Object value = column.value().apply(rows.get(i));
+                    values[i] =
+                            (value instanceof Boolean flag)
+                                    ? (flag ? 1 : 0)
+                                    : ((Number) value).longValue();
+                }
+                long min = min(values);
+                long maxOffset = 0;
+                long[] offsets = new long[count];
+                for (int i = 0; i < count; i++) {
+                    offsets[i] = values[i] - min;
+                    maxOffset |= offsets[i];
+                }
+                ByteUtils.writeVarlong(min, out);
+                writePacked(out, offsets, count, BitPacking.width(maxOffset));
+                yield new Encoded(buffer.toByteArray(), Encoding.BIT_PACKED, min, max(values));
+            }
+            case DOUBLE -> {
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                for (T row : rows) {
+                    double value = ((Number) column.value().apply(row)).doubleValue();
+                    out.writeDouble(value);
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+                yield new Encoded(buffer.toByteArray(), Encoding.PLAIN, min, max);
+            }
+        };
+    }
+
+    private static <T> byte[] footer(
+            ArchiveTable<T> table, List<Map<String, ColumnChunk>> groups, List<Integer> groupRows)
+            throws IOException {
+        var buffer = new ByteArrayOutputStream();
+        var out = new DataOutputStream(buffer);
+        ByteUtils.writeUnsignedVarint(VERSION, out);
+        writeString(out, table.name());
+        ByteUtils.writeUnsignedVarint(table.columns().size(), out);
+        for (Column<T> column : table.columns()) {
+            writeString(out, column.name());
+            out.writeByte(column.type().ordinal());
+        }
+        ByteUtils.writeUnsignedVarint(groups.size(), out);
+        for (int g = 0; g < groups.size(); g++) {
+            ByteUtils.writeUnsignedVarint(groupRows.get(g), out);
+            for (Column<T> column : table.columns()) {
+                ColumnChunk chunk = groups.get(g).get(column.name());
+                ByteUtils.writeVarlong(chunk.offset(), out);
+                ByteUtils.writeUnsignedVarint(chunk.length(), out);
+                out.writeByte(chunk.encoding().ordinal());
+                switch (column.type()) {
+                    case STRING -> {
+                        writeString(out, (String) chunk.min());
+                        writeString(out, (String) chunk.max());
+                    }
+                    case DOUBLE -> {
+                        out.writeDouble((double) chunk.min());
+                        out.writeDouble((double) chunk.max());
+                    }
+                    default -> {
+                        ByteUtils.writeVarlong((long) chunk.min(), out);
+                        ByteUtils.writeVarlong((long) chunk.max(), out);
+                    }
+                }
+            }
+        }
+        return buffer.toByteArray();
+    }
+
+    private static void writePacked(DataOutputStream out, long[] values, int count, int width)
+            throws IOException {
+        out.writeByte(width);
+        out.write(BitPacking.pack(values, count, width));
+    }
+
+    /** UTF-8 length + 1, so 0 is null. */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            ByteUtils.writeUnsignedVarint(0, out);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ByteUtils.writeUnsignedVarint(bytes.length + 1, out);
+        out.write(bytes);
+    }
+
+    private static long min(long[] values) {
+        long min = Long.MAX_VALUE;
+        for (long value : values) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    private static long max(long[] values) {
+        long max = Long.MIN_VALUE;
+        for (long value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    // ── Reading ───────────────────────────────────────────────────────────────
+
+    /** Opens {@code file} and reads its footer; column chunks are read on demand. */
+    public static ColumnarFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer trailer = readFully(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+            int footerLength = trailer.getInt();
+            if (trailer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a columnar archive file");
+            }
+            ByteBuffer in = readFully(channel, size - TRAILER_BYTES - footerLength, footerLength);
+            int version = ByteUtils.readUnsignedVarint(in);
+            if (version != VERSION) {
+                throw new IOException(file + " has unsupported version " + version);
+            }
+            String table = readString(in);
+            Map<String, Type> schema = new LinkedHashMap<>();
+            int columns = ByteUtils.readUnsignedVarint(in);
+            for (int c = 0; c < columns; c++) {
+                schema.put(readString(in), Type.values()[in.get()]);
+            }
+            List<RowGroupMeta> rowGroups = new ArrayList<>();
+            int groups = ByteUtils.readUnsignedVarint(in);
+            for (int g = 0; g < groups; g++) {
+                int rows = ByteUtils.readUnsignedVarint(in);
+                Map<String, ColumnChunk> chunks = new HashMap<>();
+                for (Map.Entry<String, Type> column : schema.entrySet()) {
+                    long offset = ByteUtils.readVarlong(in);
+                    int length = ByteUtils.readUnsignedVarint(in);
+                    Encoding encoding = Encoding.values()[in.get()];
+                    Object min;
+                    Object max;
+                    switch (column.getValue()) {
+                        case STRING -> {
+                            min = readString(in);
+                            max = readString(in);
+                        }
+                        case DOUBLE -> {
+                            min = in.getDouble();
+                            max = in.getDouble();
+                        }
+                        default -> {
+                            min = ByteUtils.readVarlong(in);
+                            max = ByteUtils.readVarlong(in);
+                        }
+                    }
+                    chunks.put(
+                            column.getKey(), new ColumnChunk(offset, length, encoding, min, max));
+                }
+                rowGroups.add(new RowGroupMeta(rows, chunks));
+            }
+            return new ColumnarFile(
+                    channel, table, schema, rowGroups, TRAILER_BYTES + (long) footerLength);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public String table() {
+        return table;
+    }
+
+    public List<RowGroupMeta> rowGroups() {
+        return rowGroups;
+    }
+
+    /** Footer and column chunk bytes read from disk so far. */
+    public long bytesRead() {
+        return bytesRead;
+    }
+
+    /** Reads and decodes only the chunks of {@code columns} in {@code group}. */
+    public RowGroup read(RowGroupMeta group, Collection<String> columns) throws IOException {
+        Map<String, Object> vectors = new HashMap<>();
+        for (String column : columns) {
+            Type type = schema.get(column);
+            if (type == null) {
+                throw new IllegalArgumentException("No column " + column + " in " + table);
+            }
+            ColumnChunk chunk = group.chunks().get(column);
+            ByteBuffer in = readFully(channel, chunk.offset(), chunk.length());
+            bytesRead += chunk.length();
+            vectors.put(column, decode(type, chunk.encoding(), in, group.rows()));
+        }
+        return new RowGroup(group.rows(), vectors);
+    }
+
+    private static Object decode(Type type, Encoding encoding, ByteBuffer in, int count) {
+        return switch (type) {
+            case STRING -> {
+                String[] values = new String[count];
+                if (encoding == Encoding.PLAIN) {
+                    for (int i = 0; i < count; i++) {
+                        values[i] = readString(in);
+                    }
+                    yield values;
+                }
+                String[] dictionary = new String[ByteUtils.readUnsignedVarint(in)];
+                for (int d = 0; d < dictionary.length; d++) {
+                    dictionary[d] = readString(in);
+                }
+                long[] indices = readPacked(in, count);
+                for (int i = 0; i < count; i++) {
+                    values[i] = dictionary[(int) indices[i]];
+                }
+                yield values;
+            }
+            case TIMESTAMP -> {
+                long[] values = new long[count];
+                long value = ByteUtils.readVarlong(in);
+                long minDelta = ByteUtils.readVarlong(in);
+                long[] deltas = readPacked(in, count - 1);
+                values[0] = value;
+                for (int i = 1; i < count; i++) {
+                    value += deltas[i - 1] + minDelta;
+                    values[i] = value;
+                }
+                yield values;
+            }
+            case INT, BOOLEAN -> {
+                long min = ByteUtils.readVarlong(in);
+                long[] values = readPacked(in, count);
+                for (int i = 0; i < count; i++) {
+                    values[i] += min;
+                }
+                yield values;
+            }
+            case DOUBLE -> {
+                double[] values = new double[count];
+                for (int i = 0; i < count; i++) {
+                    values[i] = in.getDouble();
+                }
+                yield values;
+            }
+        };
+    }
+
+    private static long[] readPacked(ByteBuffer in, int count) {
+        int width = in.get();
+        return BitPacking.unpack(in.array(), in.position(), count, width);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = ByteUtils.readUnsignedVarint(in);
+        if (length == 0) {
+            return null;
+        }
+        String value = new String(in.array(), in.position(), length - 1, StandardCharsets.UTF_8);
+        in.position(in.position() + length - 1);
+        return value;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file at " + position);
+            }
+        }
+        return buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private final OutputStream delegate;
+        private long count;
+
+        CountingOutputStream(OutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        long count() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.matatu.tracker.config;
+
+import java.nio.file.Path;
+
+import org.matatu.tracker.archive.ColumnarArchive;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.RequiredArgsConstructor;
+
+/** The local columnar archive, written by the archive sink and read by the query engine. */
+@Configuration
+@RequiredArgsConstructor
+public class ArchiveConfig {
+
+    private final MatatuTrackerProperties properties;
+
+    @Bean
+    public ColumnarArchive columnarArchive() {
+        var archive = properties.getArchive();
+        return new ColumnarArchive(Path.of(archive.getDirectory()), archive.getRowGroupSize());
+    }
+}
@@ -0,0 +1,24 @@
+package org.matatu.tracker.config;
+
+import org.matatu.tracker.config.MatatuTrackerProperties.Encoding.Format;
+import org.matatu.tracker.encoding.DictionaryRegistry;
+import org.matatu.tracker.encoding.LocationSerdes;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.RequiredArgsConstructor;
+
+/** Picks the wire format of location records (see {@link LocationSerdes}). */
+@Configuration
+@RequiredArgsConstructor
+public class EncodingConfig {
+
+    private final MatatuTrackerProperties properties;
+
+    @Bean
+    public LocationSerdes locationSerdes(DictionaryRegistry dictionaryRegistry) {
+        return (properties.getEncoding().getFormat() == Format.DICTIONARY)
+                ? LocationSerdes.dictionary(dictionaryRegistry.dictionary())
+                : LocationSerdes.json();
+    }
+}
@@ -0,0 +1,76 @@
+package org.matatu.tracker.config;
+
+import org.matatu.tracker.feed.FleetFeedHub;
+import org.matatu.tracker.feed.FleetFeedWebSocket;
+import org.springframework.boot.web.servlet.ServletListenerRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.websocket.DeploymentException;
+import jakarta.websocket.server.ServerContainer;
+import jakarta.websocket.server.ServerEndpointConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Registers {@link FleetFeedWebSocket} with the embedded Tomcat's standard {@code
+ * jakarta.websocket} container.
+ *
+ * <p>Spring Boot installs Tomcat's WebSocket support whenever tomcat-embed-websocket is on the
+ * classpath; the container is published as a servlet-context attribute once the context has
+ * started, so the endpoint is added from a context listener rather than at bean creation. Every
+ * connection gets its own endpoint instance bound to the shared {@link FleetFeedHub}.
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class FleetFeedWebSocketConfig {
+
+    private final MatatuTrackerProperties properties;
+
+    @Bean
+    public ServletListenerRegistrationBean<ServletContextListener> fleetFeedWebSocketRegistration(
+            FleetFeedHub fleetFeedHub) {
+        var feed = properties.getFeed();
+        ServletContextListener listener =
+                new ServletContextListener() {
+                    @Override
+                    public void contextInitialized(ServletContextEvent event) {
+                        var container =
+                                (ServerContainer)
+                                        event.getServletContext()
+                                                .getAttribute(ServerContainer.class.getName());
+                        if (container == null) {
+                            log.warn(
+                                    "[FEED] ⚠️ No WebSocket container — only the SSE feed is available");
+                            return;
+                        }
+                        var config =
+                                ServerEndpointConfig.Builder.create(
+                                                FleetFeedWebSocket.class, feed.getWebSocketPath())
+                                        .configurator(
+                                                new ServerEndpointConfig.Configurator() {
+                                                    @Override
+                                                    public <T> T getEndpointInstance(
+                                                            Class<T> endpointClass) {
+                                                        return endpointClass.cast(
+                                                                new FleetFeedWebSocket(
+                                                                        fleetFeedHub,
+                                                                        feed.getSendTimeoutMs()));
+                                                    }
+                                                })
+                                        .build();
+                        try {
+                            container.addEndpoint(config);
+                        } catch (DeploymentException e) {
+                            throw new IllegalStateException(
+                                    "Could not register " + feed.getWebSocketPath(), e);
+                        }
+                        log.info("[FEED] 🔌 WebSocket feed at {}", feed.getWebSocketPath());
+                    }
+                };
+        return new ServletListenerRegistrationBean<>(listener);
+    }
+}
@@ -4,16 +4,25 @@ import java.util.Map;
 
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.matatu.tracker.encoding.LocationSerdes;
+import org.matatu.tracker.model.DictionaryClaim;
+import org.matatu.tracker.model.EnrichedFare;
 import org.matatu.tracker.model.EnrichedLocationEvent;
 import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.model.FleetSnapshot;
+import org.matatu.tracker.model.Geofence;
 import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.model.MatatuSnapshot;
+import org.matatu.tracker.model.RouteOccupancy;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.support.serializer.JacksonJsonDeserializer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 import lombok.RequiredArgsConstructor;
 
@@ -32,18 +41,24 @@ import lombok.RequiredArgsConstructor;
 public class KafkaConsumerConfig {
 
     private final MatatuTrackerProperties properties;
+    // app.threads.listeners: VIRTUAL only; shared by every container, created with the first.
+    private SimpleAsyncTaskExecutor virtualListenerExecutor;
+    private ThreadPoolTaskScheduler monitorScheduler;
 
     private static final String TRUSTED_PACKAGES = "org.matatu.tracker.model";
 
+    /** JSON or dictionary-encoded, whichever each record is (see {@link LocationSerdes}). */
     @Bean
-    public ConsumerFactory<String, LocationEvent> locationConsumerFactory() {
-        return consumerFactory(LocationEvent.class);
+    public ConsumerFactory<String, LocationEvent> locationConsumerFactory(
+            LocationSerdes locationSerdes) {
+        return new DefaultKafkaConsumerFactory<>(
+                baseProps(), new StringDeserializer(), locationSerdes.location().deserializer());
     }
 
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, LocationEvent>
-            locationListenerContainerFactory() {
-        return listenerFactory(locationConsumerFactory());
+            locationListenerContainerFactory(LocationSerdes locationSerdes) {
+        return manualAck(listenerFactory(locationConsumerFactory(locationSerdes)));
     }
 
     // ── FareEvent ─────────────────────────────────────────────────────────────
@@ -56,20 +71,141 @@ public class KafkaConsumerConfig {
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, FareEvent>
             fareListenerContainerFactory() {
-        return listenerFactory(fareConsumerFactory());
+        return manualAck(listenerFactory(fareConsumerFactory()));
     }
 
     // ── EnrichedLocationEvent (Phase 2) ───────────────────────────────────────
 
     @Bean
-    public ConsumerFactory<String, EnrichedLocationEvent> enrichedLocationConsumerFactory() {
-        return consumerFactory(EnrichedLocationEvent.class);
+    public ConsumerFactory<String, EnrichedLocationEvent> enrichedLocationConsumerFactory(
+            LocationSerdes locationSerdes) {
+        return new DefaultKafkaConsumerFactory<>(
+                baseProps(), new StringDeserializer(), locationSerdes.enriched().deserializer());
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, EnrichedLocationEvent>
+            enrichedLocationListenerContainerFactory(LocationSerdes locationSerdes) {
+        return listenerFactory(enrichedLocationConsumerFactory(locationSerdes));
+    }
+
+    // ── Conflated fleet snapshots ─────────────────────────────────────────────
+
+    @Bean
+    public ConsumerFactory<String, FleetSnapshot> fleetSnapshotConsumerFactory() {
+        return consumerFactory(FleetSnapshot.class);
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, FleetSnapshot>
+            fleetSnapshotListenerContainerFactory() {
+        return listenerFactory(fleetSnapshotConsumerFactory());
+    }
+
+    // ── Latest-state snapshots (compacted topics) ────────────────────────────
+
+    /** Used by {@code CompactedTopicReader}: assigned directly, never in a group. */
+    @Bean
+    public ConsumerFactory<String, MatatuSnapshot> snapshotConsumerFactory() {
+        return consumerFactory(MatatuSnapshot.class);
+    }
+
+    /**
+     * Batch listener for the live feed: it hands a whole poll of positions to its subscribers and
+     * wakes each subscriber once per poll.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, MatatuSnapshot>
+            snapshotListenerContainerFactory() {
+        var factory = listenerFactory(snapshotConsumerFactory());
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        return factory;
+    }
+
+    @Bean
+    public ConsumerFactory<String, RouteOccupancy> occupancyConsumerFactory() {
+        return consumerFactory(RouteOccupancy.class);
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, RouteOccupancy>
+            occupancyListenerContainerFactory() {
+        return listenerFactory(occupancyConsumerFactory());
+    }
+
+    // ── Geofence definitions (compacted topic) ────────────────────────────────
+
+    @Bean
+    public ConsumerFactory<String, Geofence> geofenceConsumerFactory() {
+        return consumerFactory(Geofence.class);
+    }
+
+    /**
+     * Batch listener: the registry rebuilds its spatial index once per poll rather than once per
+     * definition. Tombstones arrive as records with a null value.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Geofence>
+            geofenceListenerContainerFactory() {
+        var factory = listenerFactory(geofenceConsumerFactory());
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        // Reference data, read without a consumer group — a replay needs it too.
+        factory.setAutoStartup(onKafka());
+        // Lets GeofenceRegistry see that the replay of an empty or quiet topic has finished.
+        factory.getContainerProperties().setIdleEventInterval(1000L);
+        return factory;
     }
 
+    // ── Identifier dictionary (append-only topic) ─────────────────────────────
+
+    @Bean
+    public ConsumerFactory<String, DictionaryClaim> dictionaryConsumerFactory() {
+        return consumerFactory(DictionaryClaim.class);
+    }
+
+    /** Batch listener, started in replay too: decoding any location record may need it. */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, DictionaryClaim>
+            dictionaryListenerContainerFactory() {
+        var factory = listenerFactory(dictionaryConsumerFactory());
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        factory.setAutoStartup(onKafka());
+        return factory;
+    }
+
+    // ── Columnar archive ──────────────────────────────────────────────────────
+
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, EnrichedLocationEvent>
-            enrichedLocationListenerContainerFactory() {
-        return listenerFactory(enrichedLocationConsumerFactory());
+            archiveLocationListenerContainerFactory(LocationSerdes locationSerdes) {
+        return archiveBatch(listenerFactory(enrichedLocationConsumerFactory(locationSerdes)));
+    }
+
+    @Bean
+    public ConsumerFactory<String, EnrichedFare> enrichedFareConsumerFactory() {
+        return consumerFactory(EnrichedFare.class);
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, EnrichedFare>
+            archiveFareListenerContainerFactory() {
+        return archiveBatch(listenerFactory(enrichedFareConsumerFactory()));
+    }
+
+    /**
+     * Batch listener that holds its acks until the rows are on disk. Idle events let a quiet topic
+     * still flush on time.
+     */
+    private <T> ConcurrentKafkaListenerContainerFactory<String, T> archiveBatch(
+            ConcurrentKafkaListenerContainerFactory<String, T> factory) {
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties()
+                .setIdleEventInterval(properties.getArchive().getFlushIntervalMs());
+        return factory;
     }
 
     private <T> ConsumerFactory<String, T> consumerFactory(Class<T> targetType) {
@@ -84,6 +220,48 @@ public class KafkaConsumerConfig {
         var factory = new ConcurrentKafkaListenerContainerFactory<String, T>();
         factory.setConsumerFactory(consumerFactory);
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.RECORD);
+        // A replay process must not join the live consumer groups and steal their partitions.
+        factory.setAutoStartup(onKafka() && !properties.getReplay().isEnabled());
+        if (properties.getThreads().getListeners()
+                == MatatuTrackerProperties.Threads.Mode.VIRTUAL) {
+            onVirtualThreads(factory.getContainerProperties());
+        }
+        return factory;
+    }
+
+    /**
+     * One new virtual thread per consumer, in place of the container's platform thread. The poll
+     * loop and the listener method run on it, so a listener blocked on a producer future or a
+     * database write unmounts instead of holding an OS thread.
+     *
+     * <p>Each consumer would also start a one-thread scheduler of its own to watch for missed
+     * polls, which would keep a platform thread per consumer; all of them share one instead.
+     */
+    private void onVirtualThreads(ContainerProperties containerProperties) {
+        if (virtualListenerExecutor == null) {
+            virtualListenerExecutor = new SimpleAsyncTaskExecutor("kafka-listener-");
+            virtualListenerExecutor.setVirtualThreads(true);
+            monitorScheduler = new ThreadPoolTaskScheduler();
+            monitorScheduler.setThreadNamePrefix("kafka-listener-monitor-");
+            monitorScheduler.setDaemon(true);
+            monitorScheduler.initialize();
+        }
+        containerProperties.setListenerTaskExecutor(virtualListenerExecutor);
+        containerProperties.setScheduler(monitorScheduler);
+    }
+
+    /** False in {@code IN_PROCESS} mode, where no broker is expected and no listener starts. */
+    private boolean onKafka() {
+        return properties.getPipeline().getMode() == MatatuTrackerProperties.Pipeline.Mode.KAFKA;
+    }
+
+    /**
+     * The listener acknowledges each record itself, possibly from another thread once a {@code
+     * KeyOrderedDispatcher} has finished it; the container commits queued acks on its next poll.
+     */
+    private static <T> ConcurrentKafkaListenerContainerFactory<String, T> manualAck(
+            ConcurrentKafkaListenerContainerFactory<String, T> factory) {
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
         return factory;
     }
 
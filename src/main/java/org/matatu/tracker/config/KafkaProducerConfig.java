@@ -1,14 +1,18 @@
 package org.matatu.tracker.config;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
 import org.springframework.kafka.support.serializer.JacksonJsonSerializer;
 
 import lombok.RequiredArgsConstructor;
@@ -30,21 +34,26 @@ public class KafkaProducerConfig {
 
     private final MatatuTrackerProperties properties;
 
+    /**
+     * Values that are already bytes — location records encoded by {@code LocationSerdes} — are sent
+     * as they are; everything else is serialised to JSON.
+     */
     @Bean
     public ProducerFactory<String, Object> producerFactory() {
+        Map<Class<?>, Serializer<?>> byType = new LinkedHashMap<>();
+        byType.put(byte[].class, new ByteArraySerializer());
+        byType.put(Object.class, new JacksonJsonSerializer<>());
         return new DefaultKafkaProducerFactory<>(
                 Map.of(
                         ProducerConfig.BOOTSTRAP_SERVERS_CONFIG,
                         properties.getKafka().getBootstrapServers(),
-                        ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG,
-                        StringSerializer.class,
-                        ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG,
-                        JacksonJsonSerializer.class,
                         ProducerConfig.ACKS_CONFIG,
                         "all", // wait for all replicas
                         ProducerConfig.RETRIES_CONFIG,
                         3 // retry on transient failure
-                        ));
+                        ),
+                new StringSerializer(),
+                new DelegatingByTypeSerializer(byType, true));
     }
 
     /**
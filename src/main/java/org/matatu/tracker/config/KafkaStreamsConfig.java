@@ -1,14 +1,23 @@
 package org.matatu.tracker.config;
 
+import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.streams.StreamsConfig;
+import org.matatu.tracker.restore.StateRestoreTracker;
+import org.matatu.tracker.streams.EventTimestampExtractor;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.annotation.EnableKafkaStreams;
 import org.springframework.kafka.annotation.KafkaStreamsDefaultConfiguration;
 import org.springframework.kafka.config.KafkaStreamsConfiguration;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
+import org.springframework.kafka.config.StreamsBuilderFactoryBeanConfigurer;
+import org.springframework.kafka.streams.KafkaStreamsInteractiveQueryService;
 import org.springframework.kafka.support.serializer.JacksonJsonSerde;
 
 import lombok.RequiredArgsConstructor;
@@ -22,19 +31,109 @@ public class KafkaStreamsConfig {
 
     @Bean(name = KafkaStreamsDefaultConfiguration.DEFAULT_STREAMS_CONFIG_BEAN_NAME)
     public KafkaStreamsConfiguration kafkaStreamsConfiguration() {
-        return new KafkaStreamsConfiguration(
-                Map.of(
-                        StreamsConfig.APPLICATION_ID_CONFIG,
-                        properties.getStreams().getApplicationId(),
-                        StreamsConfig.BOOTSTRAP_SERVERS_CONFIG,
-                        properties.getKafka().getBootstrapServers(),
-                        StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG,
-                        Serdes.StringSerde.class,
-                        StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG,
-                        JacksonJsonSerde.class,
-                        StreamsConfig.COMMIT_INTERVAL_MS_CONFIG,
-                        1000L,
-                        StreamsConfig.NUM_STREAM_THREADS_CONFIG,
-                        3));
+        var config = new HashMap<String, Object>();
+        config.put(StreamsConfig.APPLICATION_ID_CONFIG, properties.getStreams().getApplicationId());
+        config.put(
+                StreamsConfig.BOOTSTRAP_SERVERS_CONFIG,
+                properties.getKafka().getBootstrapServers());
+        config.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.StringSerde.class);
+        config.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, JacksonJsonSerde.class);
+        // Windows, grace and stream time follow the event's own timestamp.
+        config.put(
+                StreamsConfig.DEFAULT_TIMESTAMP_EXTRACTOR_CLASS_CONFIG,
+                EventTimestampExtractor.class);
+        config.put(
+                StreamsConfig.PROCESSING_GUARANTEE_CONFIG,
+                properties.getStreams().getProcessingGuarantee());
+        config.put(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG, 1000L);
+        config.put(StreamsConfig.NUM_STREAM_THREADS_CONFIG, 3);
+        applyRestoreSettings(config, properties.getStreams());
+
+        MatatuTrackerProperties.Replay replay = properties.getReplay();
+        if (replay.isEnabled()) {
+            applyReplayOverrides(config, replay);
+        }
+        return new KafkaStreamsConfiguration(config);
+    }
+
+    /**
+     * KEY CONCEPT — Restore acceleration: a task's stores are rebuilt from their changelogs before
+     * it processes anything, which after a crash can take minutes. A standby replica keeps a copy
+     * of each store current on another instance, so failover restores only the records the standby
+     * had not applied yet. Warm-up replicas cover scaling out: the task stays with its caught-up
+     * owner while a warm-up restores it on the new instance, and moves at the first probing
+     * rebalance after the warm-up is within {@code acceptable-recovery-lag}.
+     */
+    private static void applyRestoreSettings(
+            Map<String, Object> config, MatatuTrackerProperties.Streams streams) {
+        config.put(StreamsConfig.NUM_STANDBY_REPLICAS_CONFIG, streams.getStandbyReplicas());
+        config.put(StreamsConfig.MAX_WARMUP_REPLICAS_CONFIG, streams.getMaxWarmupReplicas());
+        config.put(
+                StreamsConfig.ACCEPTABLE_RECOVERY_LAG_CONFIG, streams.getAcceptableRecoveryLag());
+        config.put(
+                StreamsConfig.PROBING_REBALANCE_INTERVAL_MS_CONFIG,
+                streams.getProbingRebalanceIntervalMs());
+    }
+
+    /**
+     * KEY CONCEPT — Replay isolation: a new application id means a new consumer group, new internal
+     * repartition/changelog topics and a new local state directory, so a replay shares nothing with
+     * the live application except the input topics it reads. Offsets, commits and caches are tuned
+     * for throughput because nobody is waiting on an individual record.
+     */
+    private void applyReplayOverrides(
+            Map<String, Object> config, MatatuTrackerProperties.Replay replay) {
+        config.put(
+                StreamsConfig.APPLICATION_ID_CONFIG,
+                replay.applicationId(properties.getStreams().getApplicationId()));
+        config.put(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG, replay.getCommitIntervalMs());
+        config.put(StreamsConfig.STATESTORE_CACHE_MAX_BYTES_CONFIG, replay.getCacheMaxBytes());
+        config.put(
+                StreamsConfig.consumerPrefix(ConsumerConfig.MAX_POLL_RECORDS_CONFIG),
+                replay.getMaxPollRecords());
+        config.put(
+                StreamsConfig.producerPrefix(ProducerConfig.LINGER_MS_CONFIG),
+                replay.getLingerMs());
+        config.put(StreamsConfig.producerPrefix(ProducerConfig.BATCH_SIZE_CONFIG), 256 * 1024);
+        config.put(StreamsConfig.producerPrefix(ProducerConfig.COMPRESSION_TYPE_CONFIG), "lz4");
+    }
+
+    /**
+     * In {@code IN_PROCESS} mode the topologies are still defined but never started, so the
+     * application comes up without a broker and {@code InProcessPipeline} runs their logic instead.
+     */
+    @Bean
+    public StreamsBuilderFactoryBeanConfigurer pipelineModeConfigurer() {
+        return factoryBean ->
+                factoryBean.setAutoStartup(
+                        properties.getPipeline().getMode()
+                                == MatatuTrackerProperties.Pipeline.Mode.KAFKA);
+    }
+
+    /**
+     * Reports restore progress per store, and standby lag, and holds readiness until every active
+     * store is restored. There is no tracker in {@code IN_PROCESS} mode.
+     */
+    @Bean
+    public StreamsBuilderFactoryBeanConfigurer stateRestoreConfigurer(
+            ObjectProvider<StateRestoreTracker> tracker) {
+        return factoryBean ->
+                tracker.ifAvailable(
+                        listener -> {
+                            factoryBean.setStateRestoreListener(listener);
+                            factoryBean.setStateListener(listener);
+                            factoryBean.setKafkaStreamsCustomizer(
+                                    streams -> streams.setStandbyUpdateListener(listener));
+                        });
+    }
+
+    /**
+     * Read-only access to local state stores (interactive queries) for the REST layer. Retries
+     * while the stores are still being restored or rebalanced.
+     */
+    @Bean
+    public KafkaStreamsInteractiveQueryService kafkaStreamsInteractiveQueryService(
+            StreamsBuilderFactoryBean streamsBuilderFactoryBean) {
+        return new KafkaStreamsInteractiveQueryService(streamsBuilderFactoryBean);
     }
 }
@@ -1,6 +1,9 @@
 package org.matatu.tracker.config;
 
+import java.time.Duration;
+
 import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.config.TopicConfig;
 import org.matatu.tracker.topics.Topics;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -33,16 +36,73 @@ public class KafkaTopicConfig {
         return new KafkaAdmin.NewTopics(
                 build(Topics.MATATU_LOCATION, partitions, replicas),
                 build(Topics.MATATU_FARES, partitions, replicas),
-                build(Topics.MATATU_SPEED_ALERTS, partitions, replicas),
-                build(Topics.MATATU_LOCATION_ENRICHED, partitions, replicas),
-                build(Topics.MATATU_FARES_FAILED, partitions, replicas),
-                build(Topics.MATATU_PASSENGER_COUNTS, partitions, replicas),
-                build(Topics.MATATU_SACCO_REVENUE, partitions, replicas),
-                build(Topics.MATATU_OFFGRID_ALERTS, partitions, replicas),
-                build(Topics.MATATU_ROUTE_OCCUPANCY, partitions, replicas));
+                build(output(Topics.MATATU_LOCATION_LATE), partitions, replicas),
+                build(output(Topics.MATATU_FARES_LATE), partitions, replicas),
+                build(output(Topics.MATATU_FARES_DUPLICATES), partitions, replicas),
+                build(output(Topics.MATATU_FARES_RESOLVED), partitions, replicas),
+                build(output(Topics.MATATU_FARES_TIMEDOUT), partitions, replicas),
+                build(output(Topics.MATATU_FARES_ENRICHED), partitions, replicas),
+                build(output(Topics.MATATU_TRIPS), partitions, replicas),
+                build(output(Topics.MATATU_FLEET_SNAPSHOTS), partitions, replicas),
+                build(output(Topics.MATATU_SPEED_ALERTS), partitions, replicas),
+                build(output(Topics.MATATU_LOCATION_ENRICHED), partitions, replicas),
+                build(output(Topics.MATATU_LOCATION_ENRICHED_VERBOSE), partitions, replicas),
+                build(output(Topics.MATATU_FARES_FAILED), partitions, replicas),
+                build(output(Topics.MATATU_PASSENGER_COUNTS), partitions, replicas),
+                build(output(Topics.MATATU_SACCO_REVENUE), partitions, replicas),
+                build(output(Topics.MATATU_OFFGRID_ALERTS), partitions, replicas),
+                build(output(Topics.MATATU_ROUTE_OCCUPANCY), partitions, replicas),
+                build(output(Topics.MATATU_KINEMATICS), partitions, replicas),
+                build(output(Topics.MATATU_UNIQUE_PASSENGERS), partitions, replicas),
+                build(output(Topics.MATATU_ROUTE_QUANTILES), partitions, replicas),
+                build(output(Topics.MATATU_HEATMAP_CELLS), partitions, replicas),
+                build(output(Topics.MATATU_GEOFENCE_EVENTS), partitions, replicas),
+                build(output(Topics.MATATU_ROUTE_DEVIATIONS), partitions, replicas),
+                // Latest state, keyed like the data it summarises and compacted to one record per
+                // key.
+                latest(output(Topics.MATATU_LATEST_POSITIONS), partitions, replicas),
+                latest(output(Topics.MATATU_LATEST_OCCUPANCY), partitions, replicas),
+                // Reference data: one compacted partition that every instance reads in full.
+                TopicBuilder.name(Topics.MATATU_GEOFENCES)
+                        .partitions(1)
+                        .replicas(replicas)
+                        .compact()
+                        .build(),
+                // First claim per value wins, so never compacted and never expired.
+                TopicBuilder.name(Topics.MATATU_DICTIONARY)
+                        .partitions(1)
+                        .replicas(replicas)
+                        .config(TopicConfig.RETENTION_MS_CONFIG, "-1")
+                        .build());
+    }
+
+    /** Stream outputs are versioned while replaying so live consumers never see replayed data. */
+    private String output(String topic) {
+        return properties.getReplay().outputTopic(topic);
     }
 
     private NewTopic build(String name, int partitions, short replicas) {
         return TopicBuilder.name(name).partitions(partitions).replicas(replicas).build();
     }
+
+    /**
+     * The active segment is never compacted, so with the default 7-day segment.ms a bootstrap would
+     * still read a week of updates. Rolling segments every few minutes and cleaning at a low dirty
+     * ratio keeps the read close to one record per key.
+     */
+    private NewTopic latest(String name, int partitions, short replicas) {
+        var latestState = properties.getLatestState();
+        return TopicBuilder.name(name)
+                .partitions(partitions)
+                .replicas(replicas)
+                .compact()
+                .config(
+                        TopicConfig.SEGMENT_MS_CONFIG,
+                        String.valueOf(
+                                Duration.ofMinutes(latestState.getSegmentMinutes()).toMillis()))
+                .config(
+                        TopicConfig.MIN_CLEANABLE_DIRTY_RATIO_CONFIG,
+                        String.valueOf(latestState.getMinCleanableDirtyRatio()))
+                .build();
+    }
 }
@@ -1,5 +1,10 @@
 package org.matatu.tracker.config;
 
+import java.time.Instant;
+import java.util.List;
+
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.matatu.tracker.pipeline.WaitStrategy;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
@@ -13,6 +18,27 @@ public class MatatuTrackerProperties {
 
     private final Kafka kafka = new Kafka();
     private final Streams streams = new Streams();
+    private final Sketches sketches = new Sketches();
+    private final Heatmap heatmap = new Heatmap();
+    private final Geofencing geofencing = new Geofencing();
+    private final RouteDeviation routeDeviation = new RouteDeviation();
+    private final Replay replay = new Replay();
+    private final Dedup dedup = new Dedup();
+    private final PendingFares pendingFares = new PendingFares();
+    private final FareAttribution fareAttribution = new FareAttribution();
+    private final Speeding speeding = new Speeding();
+    private final Trips trips = new Trips();
+    private final LatestState latestState = new LatestState();
+    private final DisplayBoard displayBoard = new DisplayBoard();
+    private final FleetSnapshots fleetSnapshots = new FleetSnapshots();
+    private final Feed feed = new Feed();
+    private final Consumers consumers = new Consumers();
+    private final Partitioning partitioning = new Partitioning();
+    private final Encoding encoding = new Encoding();
+    private final Archive archive = new Archive();
+    private final Pipeline pipeline = new Pipeline();
+    private final Ingest ingest = new Ingest();
+    private final Threads threads = new Threads();
 
     @Data
     public static class Kafka {
@@ -24,10 +50,335 @@ public class MatatuTrackerProperties {
     @Data
     public static class Streams {
         private String applicationId = "matatu-streams-app";
+        // exactly_once_v2 needs a transaction state log; at_least_once for brokers without one.
+        private String processingGuarantee = "exactly_once_v2";
         private double speedThresholdKmh = 80.0;
         private int revenueWindowMinutes = 60;
         private int revenueGraceMinutes = 5;
         private long offgridSilenceMs = 300000;
         private long offgridCheckIntervalMs = 60000;
+        // WALL_CLOCK_TIME notices a fully silent partition; STREAM_TIME is deterministic on replay.
+        private PunctuationType offgridPunctuation = PunctuationType.WALL_CLOCK_TIME;
+        // Shadow copies of each store on other instances, kept current from the changelog.
+        private int standbyReplicas = 1;
+        // Extra replicas restoring on an instance that will take a task over once caught up.
+        private int maxWarmupReplicas = 2;
+        // A client this many changelog records behind still counts as caught up.
+        private long acceptableRecoveryLag = 10000;
+        // How often warm-up progress is checked to move tasks to the caught-up instance.
+        private long probingRebalanceIntervalMs = 600000;
+    }
+
+    @Data
+    public static class Speeding {
+        // A run of pings over speed-threshold-kmh becomes an episode after this many pings...
+        private int openPings = 3;
+        // ...or once it has lasted this long, whichever comes first.
+        private long openSeconds = 30;
+        // Consecutive pings back under the threshold that end an episode.
+        private int closePings = 2;
+    }
+
+    @Data
+    public static class Sketches {
+        // HyperLogLog precision (4–16). Memory per window is 2^p bytes; error is 1.04/sqrt(2^p).
+        private int hllPrecision = 12;
+        private int uniquePassengerWindowMinutes = 60;
+        private int uniquePassengerGraceMinutes = 5;
+        // How long per-window sketches are kept for daily/weekly rollups.
+        private int retentionDays = 7;
+        // DDSketch relative accuracy for speed/load percentiles (0.01 = every percentile ±1%).
+        private double quantileRelativeAccuracy = 0.01;
+        // Upper bound on buckets per sketch — caps memory per route per window.
+        private int quantileMaxBins = 1024;
+        private int quantileWindowMinutes = 15;
+        private int quantileGraceMinutes = 2;
+        // Seats per vehicle, used to turn passengersOnboard into a load factor.
+        private int vehicleCapacity = 33;
+    }
+
+    @Data
+    public static class Heatmap {
+        // Geohash lengths to aggregate at; each ping updates one cell per precision.
+        private List<Integer> precisions = List.of(5, 6);
+        private int windowMinutes = 5;
+        private int retentionMinutes = 60;
+        // How often changed cells are flushed to matatu.heatmap.cells.
+        private long emitIntervalMs = 5000;
+        // Upper bound on cells a single bbox query may touch.
+        private int maxQueryCells = 5000;
+    }
+
+    @Data
+    public static class Geofencing {
+        // Time inside a geofence before a single DWELL event is emitted for the visit.
+        private long dwellSeconds = 120;
+    }
+
+    @Data
+    public static class Trips {
+        // Below this a matatu counts as standing still.
+        private double stationaryKmh = 5;
+        // Standing still this long ends a trip where no terminus geofence is defined.
+        private long dwellSeconds = 300;
+        // Shorter "trips" are GPS jitter across a terminus boundary and are not emitted.
+        private long minTripSeconds = 120;
+    }
+
+    @Data
+    public static class RouteDeviation {
+        // Further than this from the route polyline counts towards going off route.
+        private double offRouteMetres = 300;
+        // Closer than this counts towards rejoining. Keep it below offRouteMetres.
+        private double backOnRouteMetres = 150;
+        // Consecutive agreeing pings needed before the state flips.
+        private int confirmPings = 3;
+    }
+
+    @Data
+    public static class Dedup {
+        // A retried fare is recognised as a duplicate for this long after its timestamp.
+        private int ttlMinutes = 60;
+        // Off = every fare pays for a store read; kept as a switch for comparison.
+        private boolean bloomEnabled = true;
+        // The ttl is split into this many buckets; the oldest is recycled as time moves on.
+        private int bloomBuckets = 6;
+        private long bloomExpectedFaresPerBucket = 50000;
+        // Fraction of new fares that still need a store read to prove they are new.
+        private double bloomFalsePositiveRate = 0.01;
+    }
+
+    @Data
+    public static class PendingFares {
+        // A PENDING fare with no SUCCESS/FAILED confirmation after this long is timed out.
+        private long timeoutSeconds = 180;
+        private long checkIntervalMs = 5000;
+        // WALL_CLOCK_TIME times out fares even when no fares arrive; STREAM_TIME on replay.
+        private PunctuationType punctuation = PunctuationType.WALL_CLOCK_TIME;
+    }
+
+    @Data
+    public static class FareAttribution {
+        // A fare matches the matatu's last ping only if that ping is at most this much older.
+        private long joinWindowSeconds = 120;
+        // How long a fare waits for a ping delayed on matatu.location. Adds this much latency.
+        private long graceSeconds = 5;
+        // Old positions kept per matatu, i.e. how late a fare can arrive and still be matched.
+        private int historyMinutes = 10;
+        // 7 ≈ 153 m × 153 m at Nairobi's latitude — about one stage.
+        private int geohashPrecision = 7;
+    }
+
+    @Data
+    public static class LatestState {
+        // Segment roll interval of the compacted matatu.latest.* topics. The open segment is never
+        // compacted, so a bootstrap reads the fleet plus at most this much recent history.
+        private long segmentMinutes = 10;
+        private double minCleanableDirtyRatio = 0.1;
+    }
+
+    @Data
+    public static class DisplayBoard {
+        private Bootstrap bootstrap = Bootstrap.COMPACTED;
+        // Live pings are re-read from this long before the bootstrap, covering the stream's lag.
+        private long tailOverlapSeconds = 30;
+
+        public enum Bootstrap {
+            // Load matatu.latest.*, then tail matatu.fleet.snapshots from the bootstrap time.
+            COMPACTED,
+            // Replay matatu.fleet.snapshots and matatu.latest.occupancy from offset 0.
+            HISTORY
+        }
+    }
+
+    @Data
+    public static class FleetSnapshots {
+        private Grouping grouping = Grouping.ROUTE;
+        private Mode mode = Mode.DIFF;
+        // One batch per group per tick, however often the vehicles ping.
+        private long refreshMs = 3000;
+        // DIFF mode: every group is also sent in full this often, so a new board has a base.
+        private long keyframeIntervalMs = 30000;
+        // A vehicle not heard from for this long is removed from its group.
+        private long staleSeconds = 120;
+
+        public enum Grouping {
+            ROUTE,
+            // The TERMINUS or STAGE geofence the vehicle is in; vehicles between stages are omitted.
+            STAGE
+        }
+
+        public enum Mode {
+            // Every tick lists all vehicles of each group.
+            FULL,
+            // Ticks list changed and removed vehicles only, with periodic full keyframes.
+            DIFF
+        }
+    }
+
+    @Data
+    public static class Feed {
+        // Over this many open SSE and WebSocket clients per instance, new ones are refused.
+        private int maxSubscribers = 20000;
+        // SSE responses end after this long and EventSource reconnects; 0 keeps them open.
+        private long sseTimeoutMs = 1800000;
+        private String webSocketPath = "/ws/fleet";
+        // A WebSocket client that cannot take one frame within this long is disconnected.
+        private long sendTimeoutMs = 10000;
+    }
+
+    @Data
+    public static class Consumers {
+        // How LocationLoggerConsumer and FareConsumer process the records of one partition.
+        private Mode mode = Mode.PARTITION;
+        // KEY_ORDERED: records dispatched but not finished; the poll loop waits beyond this.
+        private int maxInFlight = 256;
+        // On rebalance, how long to let a revoked partition's records finish before handing it on.
+        private long revokeTimeoutSeconds = 10;
+
+        public enum Mode {
+            // One record at a time per partition, on the listener thread.
+            PARTITION,
+            // Parallel across matatuIds on virtual threads, ordered per matatuId.
+            KEY_ORDERED
+        }
+    }
+
+    @Data
+    public static class Partitioning {
+        // Key of matatu.location records, which decides the partition and stream task of a ping.
+        private Strategy strategy = Strategy.ROUTE;
+        // ROUTE: pings of these routes are keyed route_33#0 … route_33#<salt-buckets - 1>.
+        private List<String> hotRoutes = List.of();
+        private int saltBuckets = 4;
+        // Per-partition and per-route load is assessed (and reset) this often.
+        private long monitorIntervalMs = 60000;
+        // ROUTE: a route carrying more than this share of all pings is reported as hot.
+        private double hotShare = 0.25;
+
+        public enum Strategy {
+            // routeId, salted by matatuId for hot routes. Route aggregations need no repartition.
+            ROUTE,
+            // matatuId: even load, but every route aggregation repartitions.
+            MATATU
+        }
+    }
+
+    @Data
+    public static class Encoding {
+        // Wire and store format of LocationEvent and EnrichedLocationEvent values.
+        private Format format = Format.JSON;
+        // DICTIONARY: also write matatu.location.enriched.verbose with the identifiers spelled out.
+        private boolean verboseOutput = true;
+        // How long an unknown identifier or code may wait for matatu.dictionary.
+        private long lookupTimeoutMs = 10000;
+
+        public enum Format {
+            JSON,
+            // Identifiers as int codes from matatu.dictionary, numbers as varints (see
+            // CompactLocationCodec).
+            DICTIONARY
+        }
+    }
+
+    @Data
+    public static class Archive {
+        // Batch matatu.location.enriched and matatu.fares.enriched into columnar files for scans.
+        private boolean enabled = false;
+        // Root of <table>/date=YYYY-MM-DD/part-*.mcol.
+        private String directory = "data/archive";
+        // Rows per row group; each row group carries min/max statistics per column.
+        private int rowGroupSize = 8192;
+        // Buffered rows are written as a new part file at this many rows, or at most
+        // flush-interval-ms after the first of them arrived.
+        private int flushRows = 65536;
+        private long flushIntervalMs = 60000;
+        // Threads of the archive query engine's ForkJoinPool; 0 = one per available processor.
+        private int queryParallelism = 0;
+    }
+
+    @Data
+    public static class Pipeline {
+        // KAFKA: the Kafka Streams topologies. IN_PROCESS: the same logic on in-memory stages
+        // inside this JVM, with no broker (see InProcessPipeline).
+        private Mode mode = Mode.KAFKA;
+        // Slots in each stage's input queue, rounded up to a power of two.
+        private int queueCapacity = 65536;
+        // Most records a stage takes from its queue per hand-off.
+        private int batchSize = 256;
+        // An ingest call waits this long for room in a full queue before refusing the event.
+        private long offerTimeoutMs = 100;
+        // How an idle stage waits for its next record.
+        private WaitStrategy waitStrategy = WaitStrategy.BACKOFF;
+
+        public enum Mode {
+            KAFKA,
+            IN_PROCESS
+        }
+    }
+
+    @Data
+    public static class Ingest {
+        // DIRECT: the request thread calls the producer. RING: it publishes into a ring buffer
+        // that dedicated sender threads drain to the producer (see IngestHandoff).
+        private Handoff handoff = Handoff.DIRECT;
+        // Each sender thread drains its own ring; a matatu always maps to the same one.
+        private int senderThreads = 2;
+        // Slots per sender ring, rounded up to a power of two. A full ring refuses with HTTP 429.
+        private int ringCapacity = 16384;
+        // Most events a sender takes from its ring per visit.
+        private int batchSize = 256;
+        // How an idle sender waits for the next event.
+        private WaitStrategy waitStrategy = WaitStrategy.BACKOFF;
+
+        public enum Handoff {
+            DIRECT,
+            RING
+        }
+    }
+
+    @Data
+    public static class Threads {
+        // Tomcat's request threads.
+        private Mode web = Mode.PLATFORM;
+        // The threads that run @KafkaListener methods, one per container.
+        private Mode listeners = Mode.PLATFORM;
+        // The @Scheduled tasks: the fleet simulator and the partition load monitor.
+        private Mode scheduler = Mode.PLATFORM;
+        // Stream JFR jdk.VirtualThreadPinned events into logs and metrics (see PinningMonitor).
+        private boolean pinningDetection = false;
+        // Pinned for less than this is not reported.
+        private long pinningThresholdMs = 20;
+
+        public enum Mode {
+            PLATFORM,
+            VIRTUAL
+        }
+    }
+
+    @Data
+    public static class Replay {
+        // Run the topologies over history under their own application id (see ReplayCoordinator).
+        private boolean enabled = false;
+        // Output topics are written as <topic>.<outputVersion>, e.g. matatu.sacco.revenue.v2.
+        private String outputVersion = "v1";
+        // Event-time bounds; null means from the earliest / up to the latest offset.
+        private Instant from;
+        private Instant to;
+        // Throughput over latency: fewer commits, bigger caches and batches.
+        private long commitIntervalMs = 30000;
+        private long cacheMaxBytes = 256L * 1024 * 1024;
+        private int maxPollRecords = 5000;
+        private int lingerMs = 100;
+        private long progressIntervalMs = 30000;
+
+        public String applicationId(String liveApplicationId) {
+            return liveApplicationId + "-replay-" + outputVersion;
+        }
+
+        /** The topic a topology should write to — versioned while replaying, unchanged live. */
+        public String outputTopic(String topic) {
+            return enabled ? topic + "." + outputVersion : topic;
+        }
     }
 }
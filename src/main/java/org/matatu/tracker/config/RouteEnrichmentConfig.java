@@ -18,4 +18,43 @@ public class RouteEnrichmentConfig {
                 "route_111", new SaccoInfo("sacco_04", "Metro Trans", "Rongai"),
                 "route_46", new SaccoInfo("sacco_05", "Forward Travellers", "Eastleigh"));
     }
+
+    /**
+     * Licensed route geometry as {@code [latitude, longitude]} vertices from the CBD outwards.
+     * Coarse hand-traced polylines that pass through the simulator's base coordinates; a real
+     * deployment would load these from the transport authority's GTFS shapes.
+     */
+    @Bean
+    public Map<String, double[][]> routePolylines() {
+        double[] cbd = {-1.2840, 36.8230};
+        return Map.of(
+                "route_33",
+                new double[][] {
+                    {-1.2921, 36.8219},
+                    cbd,
+                    {-1.2650, 36.8030},
+                    {-1.2600, 36.7480},
+                    {-1.2460, 36.6630}
+                },
+                "route_23",
+                new double[][] {cbd, {-1.2650, 36.8100}, {-1.2640, 36.8030}},
+                "route_58",
+                new double[][] {
+                    cbd,
+                    {-1.2880, 36.8000},
+                    {-1.2860, 36.7700},
+                    {-1.2800, 36.7500},
+                    {-1.2830, 36.7460}
+                },
+                "route_111",
+                new double[][] {
+                    cbd,
+                    {-1.3040, 36.8250},
+                    {-1.3350, 36.7900},
+                    {-1.3960, 36.7580},
+                    {-1.4200, 36.7800}
+                },
+                "route_46",
+                new double[][] {cbd, {-1.2780, 36.8450}, {-1.2750, 36.8500}});
+    }
 }
@@ -1,8 +1,10 @@
 package org.matatu.tracker.config;
 
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.SimpleAsyncTaskScheduler;
 
 @Configuration
 @EnableScheduling
@@ -10,4 +12,20 @@ import org.springframework.scheduling.annotation.EnableScheduling;
         name = "app.scheduling.enabled",
         havingValue = "true",
         matchIfMissing = false)
-public class SchedulingConfig {}
+public class SchedulingConfig {
+
+    /**
+     * With {@code app.threads.scheduler: VIRTUAL}, each run of a {@code @Scheduled} method gets a
+     * fresh virtual thread instead of the single thread of Boot's default scheduler. A simulator
+     * tick that blocks on the producer no longer delays the monitor's. A fixed-rate tick that runs
+     * longer than its interval now overlaps the next run instead of delaying it.
+     */
+    @Bean(name = "taskScheduler")
+    @ConditionalOnProperty(name = "app.threads.scheduler", havingValue = "VIRTUAL")
+    public SimpleAsyncTaskScheduler virtualTaskScheduler() {
+        var scheduler = new SimpleAsyncTaskScheduler();
+        scheduler.setThreadNamePrefix("scheduled-");
+        scheduler.setVirtualThreads(true);
+        return scheduler;
+    }
+}
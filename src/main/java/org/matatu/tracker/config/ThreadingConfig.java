@@ -0,0 +1,37 @@
+package org.matatu.tracker.config;
+
+import org.apache.coyote.ProtocolHandler;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Puts Tomcat's request handling on virtual threads when {@code app.threads.web: VIRTUAL}. The
+ * listener containers and the scheduler have their own switches, applied in {@link
+ * KafkaConsumerConfig} and {@link SchedulingConfig}.
+ *
+ * <p>KEY CONCEPT — A thread per request without a pool: the platform connector runs requests on a
+ * pool of at most {@code server.tomcat.threads.max} (200) OS threads. A request that waits — on a
+ * producer future, a ring that is full, an interactive query to another instance — holds one of
+ * them for the whole wait, and the 201st concurrent request queues behind it. With virtual threads
+ * every request gets its own thread of a few hundred bytes, which leaves its carrier while it
+ * blocks. Only {@code synchronized} blocks and native frames keep a virtual thread on its carrier
+ * on JDK 21 ("pinning"); {@code app.threads.pinning-detection} reports where that happens.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "app.threads.web", havingValue = "VIRTUAL")
+public class ThreadingConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandler() {
+        return protocolHandler -> {
+            protocolHandler.setExecutor(new VirtualThreadExecutor("tomcat-handler-"));
+            log.info("[THREADS] Tomcat requests run on virtual threads");
+        };
+    }
+}
@@ -0,0 +1,72 @@
+package org.matatu.tracker.consumer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * Reads a whole topic, every partition, from the beginning up to the end offsets taken when the
+ * read starts — the "bootstrap" half of "bootstrap from compacted, then tail live".
+ *
+ * <p>KEY CONCEPT — A defined end: a listener that simply subscribes never knows when it has caught
+ * up. Snapshotting the end offsets first and stopping once every partition's position reaches them
+ * gives a point at which the in-memory view is complete as of the read's start, so the caller can
+ * switch to live data knowing there is no gap. Partitions are assigned directly: no consumer group,
+ * no rebalance, nothing committed.
+ */
+public final class CompactedTopicReader {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(200);
+
+    private CompactedTopicReader() {}
+
+    /**
+     * Applies every record of {@code topic} to {@code apply} in partition order. Tombstones are
+     * passed through with a null value.
+     *
+     * @return the number of records read
+     * @throws IllegalStateException if the end is not reached within {@code timeout}
+     */
+    public static <T> long readToEnd(
+            Consumer<String, T> consumer,
+            String topic,
+            BiConsumer<String, T> apply,
+            Duration timeout) {
+        List<TopicPartition> partitions =
+                consumer.partitionsFor(topic).stream()
+                        .map(info -> new TopicPartition(topic, info.partition()))
+                        .toList();
+        consumer.assign(partitions);
+        consumer.seekToBeginning(partitions);
+        Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+
+        long deadline = System.nanoTime() + timeout.toNanos();
+        long records = 0;
+        while (!caughtUp(consumer, endOffsets)) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException(
+                        "Bootstrap of %s did not reach the end offsets %s within %s"
+                                .formatted(topic, endOffsets, timeout));
+            }
+            for (var record : consumer.poll(POLL_TIMEOUT)) {
+                apply.accept(record.key(), record.value());
+                records++;
+            }
+        }
+        return records;
+    }
+
+    private static boolean caughtUp(
+            Consumer<String, ?> consumer, Map<TopicPartition, Long> endOffsets) {
+        for (var end : endOffsets.entrySet()) {
+            if (consumer.position(end.getKey()) < end.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
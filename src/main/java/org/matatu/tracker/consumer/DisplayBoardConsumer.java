@@ -1,62 +1,265 @@
 package org.matatu.tracker.consumer;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.matatu.tracker.model.LocationEvent;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.config.MatatuTrackerProperties.DisplayBoard.Bootstrap;
+import org.matatu.tracker.model.FleetSnapshot;
+import org.matatu.tracker.model.MatatuSnapshot;
+import org.matatu.tracker.model.RouteOccupancy;
 import org.matatu.tracker.topics.Topics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.PartitionOffset;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.AbstractMessageListenerContainer;
+import org.springframework.kafka.listener.ConsumerSeekAware;
 import org.springframework.stereotype.Component;
 
 /**
  * Consumer Group 1 — simulates a real-time display board (like those at bus stages).
  *
  * <p>KEY CONCEPTS: - @KafkaListener: Spring's annotation-driven consumer. Under the hood it creates
- * a ConcurrentMessageListenerContainer that manages threads for you. - groupId
- * "display-board-group": Every consumer group gets its OWN copy of every message. This group and
- * LocationLoggerConsumer both read the same topic independently, each maintaining their own
- * offsets. - ConsumerRecord<K,V>: gives you access to the raw Kafka metadata — partition, offset,
- * key, timestamp — not just the payload. This is very educational. - concurrency = "3": spins up 3
- * listener threads, one per partition, allowing parallel consumption. Must not exceed the number of
- * partitions.
+ * a ConcurrentMessageListenerContainer that manages threads for you. - topicPartitions: every board
+ * shows the whole fleet, so each instance is assigned every partition directly, outside any
+ * consumer group (like {@code FleetFeedHub}). Two boards in one group would split the partitions
+ * and each would freeze the vehicles it no longer reads. - ConsumerRecord<K,V>: gives you access to
+ * the raw Kafka metadata — partition, offset, key, timestamp — not just the payload. This is very
+ * educational. - concurrency = "3": spins up 3 listener threads, sharing the assigned partitions
+ * between them for parallel consumption. Must not exceed the number of partitions.
+ *
+ * <p>KEY CONCEPT — Conflated input: the board reads {@code matatu.fleet.snapshots}, one batch per
+ * route per refresh tick with each vehicle at most once, instead of every raw ping on
+ * matatu.location. Its work is bounded by refresh rate × visible vehicles (see {@code
+ * FleetSnapshotStream}).
+ *
+ * <p>KEY CONCEPT — Bootstrap from compacted, then tail live: a new board used to learn where each
+ * vehicle is by replaying its input from earliest, hours of data before the first useful screen. In
+ * {@code COMPACTED} mode it first reads {@code matatu.latest.positions} and {@code
+ * matatu.latest.occupancy} to their end offsets (about one record per matatu and route), and only
+ * then lets the listeners start: matatu.fleet.snapshots is sought to the bootstrap time minus a
+ * small overlap, and matatu.latest.occupancy to exactly where the bootstrap stopped. In {@code
+ * HISTORY} mode both are read from offset 0. Overlapping vehicles are recognised by timestamp and
+ * dropped, so nothing is missed and nothing goes backwards.
+ *
+ * <p>KEY CONCEPT — Removals belong to a group: with {@code STAGE} grouping a matatu moving from
+ * stage A to stage B shows up in B's batch and in A's {@code removed} list. The two batches live on
+ * different partitions and reach the three listener threads in any order, so each vehicle remembers
+ * the group its newest snapshot came from, and a removal from any other group is ignored. Otherwise
+ * A's removal, landing after B's update, would take the vehicle off the board.
  */
 @Component
-public class DisplayBoardConsumer {
+public class DisplayBoardConsumer implements SmartLifecycle, ConsumerSeekAware {
 
     private static final Logger log = LoggerFactory.getLogger(DisplayBoardConsumer.class);
 
+    private static final Duration BOOTSTRAP_TIMEOUT = Duration.ofMinutes(2);
+
+    private final MatatuTrackerProperties properties;
+    private final ConsumerFactory<String, MatatuSnapshot> snapshotConsumerFactory;
+    private final ConsumerFactory<String, RouteOccupancy> occupancyConsumerFactory;
+
+    private final Map<String, OnBoard> fleet = new ConcurrentHashMap<>();
+    private final Map<String, RouteOccupancy> routes = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, Long> occupancyBootstrapEnd = new ConcurrentHashMap<>();
+    private volatile long tailFromMs = -1;
+    private volatile boolean running;
+
+    /** A vehicle on the board and the group whose batch put it there; null after a bootstrap. */
+    private record OnBoard(MatatuSnapshot snapshot, String group) {}
+
+    public DisplayBoardConsumer(
+            MatatuTrackerProperties properties,
+            ConsumerFactory<String, MatatuSnapshot> snapshotConsumerFactory,
+            ConsumerFactory<String, RouteOccupancy> occupancyConsumerFactory) {
+        this.properties = properties;
+        this.snapshotConsumerFactory = snapshotConsumerFactory;
+        this.occupancyConsumerFactory = occupancyConsumerFactory;
+    }
+
     @KafkaListener(
-            topics = Topics.MATATU_LOCATION,
-            groupId = "display-board-group",
+            id = "display-board-snapshots",
+            topicPartitions =
+                    @org.springframework.kafka.annotation.TopicPartition(
+                            topic = Topics.MATATU_FLEET_SNAPSHOTS,
+                            partitions = "#{'0-' + (${app.kafka.partitions} - 1)}",
+                            partitionOffsets =
+                                    @PartitionOffset(partition = "*", initialOffset = "0")),
             concurrency = "3",
-            containerFactory = "locationListenerContainerFactory")
-    public void onLocationEvent(ConsumerRecord<String, LocationEvent> record) {
-        LocationEvent event = record.value();
+            containerFactory = "fleetSnapshotListenerContainerFactory")
+    public void onFleetSnapshot(ConsumerRecord<String, FleetSnapshot> record) {
+        FleetSnapshot batch = record.value();
+        int updated = 0;
+        for (MatatuSnapshot vehicle : batch.vehicles()) {
+            OnBoard next = new OnBoard(vehicle, batch.group());
+            // Keyframes and the bootstrap overlap repeat vehicles the board already has.
+            OnBoard kept =
+                    fleet.merge(
+                            vehicle.matatuId(),
+                            next,
+                            (previous, candidate) ->
+                                    vehicle.timestamp().isAfter(previous.snapshot().timestamp())
+                                            ? candidate
+                                            : previous);
+            if (kept == next) {
+                updated++;
+            }
+        }
+        for (String matatuId : batch.removed()) {
+            // A vehicle that has since reported under another group has moved, not left.
+            fleet.computeIfPresent(
+                    matatuId,
+                    (id, onBoard) ->
+                            (onBoard.group() == null || onBoard.group().equals(batch.group()))
+                                    ? null
+                                    : onBoard);
+        }
 
         // Print the raw Kafka metadata alongside the payload — crucial for learning
         log.info(
-                """
-                        [DISPLAY BOARD] 🚌 Live Update
-                          Matatu  : {}
-                          Route   : {} ({})
-                          Position: {}, {}
-                          Speed   : {} km/h
-                          Pax     : {} onboard
-                          ── Kafka Metadata ──
-                          Partition : {}   (routeId '{}' always hashes to this partition)
-                          Offset    : {}   (position in the partition log)
-                          Timestamp : {}
-                        """,
-                event.matatuId(),
-                event.routeId(),
-                event.routeName(),
-                event.latitude(),
-                event.longitude(),
-                event.speedKmh(),
-                event.passengersOnboard(),
+                "[DISPLAY BOARD] 🚌 {} {} | {} vehicles ({} updated), {} removed | partition={} offset={}",
+                batch.group(),
+                batch.full() ? "keyframe" : "update",
+                batch.vehicles().size(),
+                updated,
+                batch.removed().size(),
                 record.partition(),
-                record.key(),
-                record.offset(),
-                record.timestamp());
+                record.offset());
+    }
+
+    /** The board's current view of one vehicle. */
+    Optional<MatatuSnapshot> vehicle(String matatuId) {
+        return Optional.ofNullable(fleet.get(matatuId)).map(OnBoard::snapshot);
+    }
+
+    @KafkaListener(
+            id = "display-board-occupancy",
+            topicPartitions =
+                    @org.springframework.kafka.annotation.TopicPartition(
+                            topic = Topics.MATATU_LATEST_OCCUPANCY,
+                            partitions = "#{'0-' + (${app.kafka.partitions} - 1)}",
+                            partitionOffsets =
+                                    @PartitionOffset(partition = "*", initialOffset = "0")),
+            containerFactory = "occupancyListenerContainerFactory")
+    public void onOccupancy(ConsumerRecord<String, RouteOccupancy> record) {
+        if (record.value() != null) {
+            routes.put(record.key(), record.value());
+        }
+    }
+
+    @Override
+    public void onPartitionsAssigned(
+            Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        if (tailFromMs < 0) {
+            return; // HISTORY mode: replay from offset 0
+        }
+        for (TopicPartition partition : assignments.keySet()) {
+            if (partition.topic().equals(Topics.MATATU_FLEET_SNAPSHOTS)) {
+                callback.seekToTimestamp(partition.topic(), partition.partition(), tailFromMs);
+            } else if (occupancyBootstrapEnd.containsKey(partition)) {
+                callback.seek(
+                        partition.topic(),
+                        partition.partition(),
+                        occupancyBootstrapEnd.get(partition));
+            }
+        }
+    }
+
+    /**
+     * Loads the compacted topics before any listener container starts (see {@link #getPhase}). If
+     * that fails the board starts anyway and replays its inputs, as in {@code HISTORY} mode.
+     */
+    @Override
+    public void start() {
+        running = true;
+        if (properties.getReplay().isEnabled()
+                || properties.getPipeline().getMode() != MatatuTrackerProperties.Pipeline.Mode.KAFKA
+                || properties.getDisplayBoard().getBootstrap() != Bootstrap.COMPACTED) {
+            return;
+        }
+        long startedAtMs = System.currentTimeMillis();
+        long start = System.nanoTime();
+        long snapshots;
+        long occupancies;
+        try {
+            try (var consumer = snapshotConsumerFactory.createConsumer()) {
+                snapshots =
+                        CompactedTopicReader.readToEnd(
+                                consumer,
+                                Topics.MATATU_LATEST_POSITIONS,
+                                this::applySnapshot,
+                                BOOTSTRAP_TIMEOUT);
+            }
+            try (var consumer = occupancyConsumerFactory.createConsumer()) {
+                occupancies =
+                        CompactedTopicReader.readToEnd(
+                                consumer,
+                                Topics.MATATU_LATEST_OCCUPANCY,
+                                this::applyOccupancy,
+                                BOOTSTRAP_TIMEOUT);
+                for (TopicPartition partition : consumer.assignment()) {
+                    occupancyBootstrapEnd.put(partition, consumer.position(partition));
+                }
+            }
+        } catch (KafkaException | IllegalStateException e) {
+            // No broker, or the read did not finish: fall back to HISTORY rather than not starting.
+            log.warn(
+                    "[DISPLAY BOARD] ⚠️ Bootstrap from compacted topics failed, replaying from offset 0: {}",
+                    e.getMessage());
+            occupancyBootstrapEnd.clear();
+            return;
+        }
+        tailFromMs =
+                startedAtMs
+                        - Duration.ofSeconds(properties.getDisplayBoard().getTailOverlapSeconds())
+                                .toMillis();
+        log.info(
+                "[DISPLAY BOARD] ⚡ Bootstrapped {} matatus and {} routes from {} records in {} ms — tailing matatu.fleet.snapshots from {}",
+                fleet.size(),
+                routes.size(),
+                snapshots + occupancies,
+                (System.nanoTime() - start) / 1_000_000,
+                Instant.ofEpochMilli(tailFromMs));
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Just before the listener containers, so they start with the board already populated. */
+    @Override
+    public int getPhase() {
+        return AbstractMessageListenerContainer.DEFAULT_PHASE - 1;
+    }
+
+    private void applySnapshot(String matatuId, MatatuSnapshot snapshot) {
+        if (snapshot == null) {
+            fleet.remove(matatuId);
+        } else {
+            fleet.put(matatuId, new OnBoard(snapshot, null));
+        }
+    }
+
+    private void applyOccupancy(String routeId, RouteOccupancy occupancy) {
+        if (occupancy == null) {
+            routes.remove(routeId);
+        } else {
+            routes.put(routeId, occupancy);
+        }
     }
 }
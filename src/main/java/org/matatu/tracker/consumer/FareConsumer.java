@@ -1,30 +1,83 @@
 package org.matatu.tracker.consumer;
 
+import java.time.Duration;
+import java.util.Collection;
+
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.config.MatatuTrackerProperties.Consumers.Mode;
 import org.matatu.tracker.model.FareEvent;
 import org.matatu.tracker.topics.Topics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PreDestroy;
+
 /**
  * Consumes fare payment events from {@code matatu.fares}.
  *
  * <p>Demonstrates that a single application can host multiple @KafkaListener methods across
  * different topics and groups simultaneously.
+ *
+ * <p>Supports the same {@code app.consumers.mode: KEY_ORDERED} as {@link LocationLoggerConsumer}:
+ * fares of different matatus are processed in parallel, each matatu's in order.
  */
 @Component
-public class FareConsumer {
+public class FareConsumer implements ConsumerSeekAware {
 
     private static final Logger log = LoggerFactory.getLogger(FareConsumer.class);
 
+    private final MatatuTrackerProperties.Consumers settings;
+    // null in PARTITION mode; see LocationLoggerConsumer.
+    private final KeyOrderedDispatcher<FareEvent> dispatcher;
+
+    public FareConsumer(MatatuTrackerProperties properties) {
+        this.settings = properties.getConsumers();
+        this.dispatcher =
+                (settings.getMode() == Mode.KEY_ORDERED)
+                        ? new KeyOrderedDispatcher<>(
+                                "FARES",
+                                settings.getMaxInFlight(),
+                                record -> record.value().matatuId(),
+                                this::process)
+                        : null;
+    }
+
     @KafkaListener(
             topics = Topics.MATATU_FARES,
             groupId = "fare-processor-group",
             concurrency = "3",
             containerFactory = "fareListenerContainerFactory")
-    public void onFareEvent(ConsumerRecord<String, FareEvent> record) {
+    public void onFareEvent(ConsumerRecord<String, FareEvent> record, Acknowledgment ack) {
+        if (dispatcher != null) {
+            dispatcher.submit(record, ack);
+        } else {
+            process(record);
+            ack.acknowledge();
+        }
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        if (dispatcher != null) {
+            dispatcher.awaitRevoked(
+                    partitions, Duration.ofSeconds(settings.getRevokeTimeoutSeconds()));
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+    }
+
+    private void process(ConsumerRecord<String, FareEvent> record) {
         FareEvent event = record.value();
 
         // Use a switch expression (Java 14+) to handle each payment status cleanly
@@ -0,0 +1,244 @@
+package org.matatu.tracker.consumer;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.support.Acknowledgment;
+
+/**
+ * Processes the records of one listener in parallel across keys, in order within a key.
+ *
+ * <p>KEY CONCEPT — Partitions cap parallelism, keys don't: with {@code concurrency = "3"} and three
+ * partitions a listener handles at most three records at a time, so one slow write per record
+ * limits the whole group. Ordering only matters per matatu, though. The listener thread hands each
+ * record to this dispatcher and returns to poll; records with the same key are chained one after
+ * another on virtual threads, and records with different keys run side by side.
+ *
+ * <p>KEY CONCEPT — Commit the contiguous prefix: records now finish out of offset order. Kafka only
+ * stores one committed offset per partition, so committing offset 12 while 7 is still running would
+ * lose 7 on a crash. {@link PartitionOffsets} remembers which dispatched offsets are done and
+ * acknowledges only up to the first one that is not, so a restart redelivers every unfinished
+ * record (and possibly some finished ones — at-least-once, as before).
+ *
+ * <p>KEY CONCEPT — Bounded in flight: {@code maxInFlight} permits are taken per dispatched record
+ * and returned when it completes. When they run out the listener thread waits, so a stalled
+ * downstream slows the poll loop instead of filling the heap.
+ *
+ * <p>A record whose handler throws is logged and counted as done, like the container's default
+ * error handler once its retries are exhausted.
+ */
+public final class KeyOrderedDispatcher<V> implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyOrderedDispatcher.class);
+
+    private final String name;
+    private final Function<ConsumerRecord<String, V>, String> keyOf;
+    private final Consumer<ConsumerRecord<String, V>> handler;
+    private final Semaphore inFlight;
+    private final ExecutorService workers;
+
+    // Last queued task per key; a new record for the key runs after it.
+    private final Map<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, PartitionOffsets> partitions = new ConcurrentHashMap<>();
+
+    public KeyOrderedDispatcher(
+            String name,
+            int maxInFlight,
+            Function<ConsumerRecord<String, V>, String> keyOf,
+            Consumer<ConsumerRecord<String, V>> handler) {
+        this.name = name;
+        this.keyOf = keyOf;
+        this.handler = handler;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.workers =
+                Executors.newThreadPerTaskExecutor(
+                        Thread.ofVirtual().name(name + "-", 0).factory());
+    }
+
+    /**
+     * Queues the record behind earlier records with the same key. Called from the listener thread,
+     * in offset order per partition; blocks while {@code maxInFlight} records are unfinished.
+     */
+    public void submit(ConsumerRecord<String, V> record, Acknowledgment ack) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(name + " interrupted while waiting for capacity", e);
+        }
+        PartitionOffsets offsets =
+                partitions.computeIfAbsent(
+                        new TopicPartition(record.topic(), record.partition()),
+                        partition -> new PartitionOffsets());
+        offsets.register(record.offset(), ack);
+
+        Runnable task = () -> process(record, offsets);
+        String key = keyOf.apply(record);
+        CompletableFuture<Void> tail =
+                tails.compute(
+                        key,
+                        (k, previous) ->
+                                (previous == null)
+                                        ? CompletableFuture.runAsync(task, workers)
+                                        : previous.thenRunAsync(task, workers));
+        tail.whenComplete((ignored, error) -> tails.remove(key, tail));
+    }
+
+    /**
+     * Waits for the revoked partitions' dispatched records before the new owner starts on them,
+     * then forgets them. Whatever is still running after {@code timeout} is redelivered there, and
+     * finishes here without acknowledging: its commit could otherwise land after the new owner's
+     * and move the partition's offset back.
+     */
+    public void awaitRevoked(Collection<TopicPartition> revoked, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        for (TopicPartition partition : revoked) {
+            PartitionOffsets offsets = partitions.get(partition);
+            while (offsets != null && offsets.pending() > 0 && System.nanoTime() < deadline) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (offsets != null) {
+                int abandoned = offsets.revoke();
+                if (abandoned > 0) {
+                    log.warn(
+                            "[{}] ⚠️ {} record(s) of {} still running after {}; the new owner"
+                                    + " redelivers them",
+                            name,
+                            abandoned,
+                            partition,
+                            timeout);
+                }
+            }
+            partitions.remove(partition);
+        }
+    }
+
+    /** Next offset to commit for the partition, or -1 if nothing has been committed yet. */
+    public long committed(TopicPartition partition) {
+        PartitionOffsets offsets = partitions.get(partition);
+        return (offsets == null) ? -1 : offsets.committed();
+    }
+
+    public int inFlight() {
+        return partitions.values().stream().mapToInt(PartitionOffsets::pending).sum();
+    }
+
+    @Override
+    public void close() {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void process(ConsumerRecord<String, V> record, PartitionOffsets offsets) {
+        try {
+            handler.accept(record);
+        } catch (RuntimeException e) {
+            log.error(
+                    "[{}] ❌ Skipping {}-{}@{} after failure",
+                    name,
+                    record.topic(),
+                    record.partition(),
+                    record.offset(),
+                    e);
+        } finally {
+            offsets.complete(record.offset());
+            inFlight.release();
+        }
+    }
+
+    /**
+     * Dispatched-but-uncommitted offsets of one partition. Offsets are registered in increasing
+     * order (with gaps where the log has none, e.g. after compaction) and completed in any order.
+     */
+    static final class PartitionOffsets {
+
+        private final TreeMap<Long, Slot> dispatched = new TreeMap<>();
+        private long committed = -1;
+        private boolean revoked;
+
+        private static final class Slot {
+            private final Acknowledgment ack;
+            private boolean done;
+
+            private Slot(Acknowledgment ack) {
+                this.ack = ack;
+            }
+        }
+
+        synchronized void register(long offset, Acknowledgment ack) {
+            dispatched.put(offset, new Slot(ack));
+        }
+
+        /**
+         * Marks the offset done and, if that extends the completed prefix, acknowledges the last
+         * record of the prefix — which commits everything before it too.
+         *
+         * <p>Acknowledged under the lock so two workers can never commit out of order, nor commit
+         * after {@link #revoke()}.
+         */
+        synchronized void complete(long offset) {
+            if (revoked) {
+                return;
+            }
+            Slot slot = dispatched.get(offset);
+            if (slot == null) {
+                return;
+            }
+            slot.done = true;
+            Acknowledgment last = null;
+            while (!dispatched.isEmpty() && dispatched.firstEntry().getValue().done) {
+                var first = dispatched.pollFirstEntry();
+                last = first.getValue().ack;
+                committed = first.getKey() + 1;
+            }
+            if (last != null) {
+                last.acknowledge();
+            }
+        }
+
+        /**
+         * Stops acknowledging: the partition belongs to another consumer now. Returns how many
+         * dispatched records had not finished.
+         */
+        synchronized int revoke() {
+            revoked = true;
+            int abandoned = dispatched.size();
+            dispatched.clear();
+            return abandoned;
+        }
+
+        synchronized int pending() {
+            return dispatched.size();
+        }
+
+        synchronized long committed() {
+            return committed;
+        }
+    }
+}
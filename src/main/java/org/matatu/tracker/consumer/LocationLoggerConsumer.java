@@ -1,19 +1,29 @@
 package org.matatu.tracker.consumer;
 
+import java.time.Duration;
+import java.util.Collection;
+
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.config.MatatuTrackerProperties.Consumers.Mode;
 import org.matatu.tracker.model.LocationEvent;
 import org.matatu.tracker.topics.Topics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PreDestroy;
+
 /**
  * Consumer Group 2 — simulates a persistence/logging service.
  *
- * <p>KEY CONCEPT — Independent Consumer Groups: Both this class and {@link DisplayBoardConsumer}
- * subscribe to the same topic, but they belong to DIFFERENT groups ("location-logger-group" vs
- * "display-board-group").
+ * <p>KEY CONCEPT — Independent Consumer Groups: This class belongs to its own group
+ * ("location-logger-group"), separate from {@link DisplayBoardConsumer}'s "display-board-group".
+ * Any other group subscribing to matatu.location gets its own copy of every ping.
  *
  * <p>This means: - Kafka tracks a separate offset for each group - If this consumer falls behind,
  * the display board is not affected at all - If you restart only this consumer, it resumes from
@@ -21,18 +31,63 @@ import org.springframework.stereotype.Component;
  *
  * <p>In production, this consumer would write to PostgreSQL/BigQuery. For Phase 1, we just log —
  * focus is on understanding the consumer group mechanic.
+ *
+ * <p>KEY CONCEPT — Key-ordered mode: with {@code app.consumers.mode: KEY_ORDERED} the listener
+ * thread only hands records to a {@link KeyOrderedDispatcher}, which writes different matatus in
+ * parallel and each matatu's pings in order, and acknowledges a partition only up to its first
+ * unfinished record. A slow write then costs one virtual thread instead of a third of the group.
  */
 @Component
-public class LocationLoggerConsumer {
+public class LocationLoggerConsumer implements ConsumerSeekAware {
 
     private static final Logger log = LoggerFactory.getLogger(LocationLoggerConsumer.class);
 
+    private final MatatuTrackerProperties.Consumers settings;
+    // null in PARTITION mode: records are persisted on the listener thread.
+    private final KeyOrderedDispatcher<LocationEvent> dispatcher;
+
+    public LocationLoggerConsumer(MatatuTrackerProperties properties) {
+        this.settings = properties.getConsumers();
+        this.dispatcher =
+                (settings.getMode() == Mode.KEY_ORDERED)
+                        ? new KeyOrderedDispatcher<>(
+                                "LOGGER",
+                                settings.getMaxInFlight(),
+                                record -> record.value().matatuId(),
+                                this::persist)
+                        : null;
+    }
+
     @KafkaListener(
             topics = Topics.MATATU_LOCATION,
             groupId = "location-logger-group",
             concurrency = "3",
             containerFactory = "locationListenerContainerFactory")
-    public void onLocationEvent(ConsumerRecord<String, LocationEvent> record) {
+    public void onLocationEvent(ConsumerRecord<String, LocationEvent> record, Acknowledgment ack) {
+        if (dispatcher != null) {
+            dispatcher.submit(record, ack);
+        } else {
+            persist(record);
+            ack.acknowledge();
+        }
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        if (dispatcher != null) {
+            dispatcher.awaitRevoked(
+                    partitions, Duration.ofSeconds(settings.getRevokeTimeoutSeconds()));
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+    }
+
+    private void persist(ConsumerRecord<String, LocationEvent> record) {
         LocationEvent event = record.value();
 
         // Simulates writing to a DB — in Phase 4 we'll use Kafka Connect instead
@@ -0,0 +1,119 @@
+package org.matatu.tracker.controller;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.apache.kafka.streams.errors.InvalidStateStoreException;
+import org.matatu.tracker.model.HeatmapCell;
+import org.matatu.tracker.model.RouteQuantiles;
+import org.matatu.tracker.model.UniquePassengerRollup;
+import org.matatu.tracker.model.UniquePassengerWindow.Dimension;
+import org.matatu.tracker.query.HeatmapQueryService;
+import org.matatu.tracker.query.RouteQuantileQueryService;
+import org.matatu.tracker.query.UniquePassengerQueryService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Read-only HTTP endpoints backed by Kafka Streams state stores (interactive queries).
+ *
+ * <p>Unlike {@link MatatuController}, nothing here produces to Kafka — every answer is computed
+ * from the local stores of the running topology.
+ */
+@RestController
+@RequestMapping("/api/v1/analytics")
+@RequiredArgsConstructor
+public class AnalyticsController {
+
+    private final UniquePassengerQueryService uniquePassengerQueryService;
+    private final RouteQuantileQueryService routeQuantileQueryService;
+    private final HeatmapQueryService heatmapQueryService;
+
+    /**
+     * GET /api/v1/analytics/unique-passengers/{dimension}/{key}
+     *
+     * <p>curl "http://localhost:8080/api/v1/analytics/unique-passengers/SACCO/sacco_01
+     * ?from=2026-02-23T00:00:00Z&to=2026-02-24T00:00:00Z"
+     *
+     * <p>Defaults to the last 24 hours. Windows are matched by their start time.
+     */
+    @GetMapping("/unique-passengers/{dimension}/{key}")
+    public UniquePassengerRollup uniquePassengers(
+            @PathVariable Dimension dimension,
+            @PathVariable String key,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                    Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                    Instant to) {
+        Instant end = (to == null) ? Instant.now() : to;
+        Instant start = (from == null) ? end.minus(Duration.ofDays(1)) : from;
+        return uniquePassengerQueryService.rollup(dimension, key, start, end);
+    }
+
+    /**
+     * GET /api/v1/analytics/routes/{routeId}/quantiles
+     *
+     * <p>curl "http://localhost:8080/api/v1/analytics/routes/route_33/quantiles
+     * ?from=2026-02-23T07:00:00Z&to=2026-02-23T09:00:00Z"
+     *
+     * <p>Defaults to the last hour. Returns 404 when no pings were seen for the route in range.
+     */
+    @GetMapping("/routes/{routeId}/quantiles")
+    public ResponseEntity<RouteQuantiles> routeQuantiles(
+            @PathVariable String routeId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                    Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                    Instant to) {
+        Instant end = (to == null) ? Instant.now() : to;
+        Instant start = (from == null) ? end.minus(Duration.ofHours(1)) : from;
+        return ResponseEntity.of(routeQuantileQueryService.quantiles(routeId, start, end));
+    }
+
+    /**
+     * GET /api/v1/analytics/heatmap
+     *
+     * <p>curl "http://localhost:8080/api/v1/analytics/heatmap
+     * ?minLat=-1.33&minLon=36.76&maxLat=-1.25&maxLon=36.90&precision=6"
+     *
+     * <p>Returns the non-empty cells inside the box for the window containing {@code at} (default:
+     * now). 400 if the precision is not aggregated or the box covers too many cells.
+     */
+    @GetMapping("/heatmap")
+    public List<HeatmapCell> heatmap(
+            @RequestParam double minLat,
+            @RequestParam double minLon,
+            @RequestParam double maxLat,
+            @RequestParam double maxLon,
+            @RequestParam int precision,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                    Instant at) {
+        return heatmapQueryService.cells(
+                minLat, minLon, maxLat, maxLon, precision, (at == null) ? Instant.now() : at);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badQuery(IllegalArgumentException ex) {
+        return ResponseEntity.badRequest().body(ex.getMessage());
+    }
+
+    /**
+     * Stores are unavailable while the topology is starting, rebalancing or restoring. The query
+     * service retries first and then wraps the failure in an IllegalStateException.
+     */
+    @ExceptionHandler({IllegalStateException.class, InvalidStateStoreException.class})
+    public ResponseEntity<String> storeUnavailable(RuntimeException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body("State store not available yet: " + ex.getMessage());
+    }
+}
@@ -0,0 +1,78 @@
+package org.matatu.tracker.controller;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import org.matatu.tracker.archive.ArchiveQuery;
+import org.matatu.tracker.archive.ArchiveQueryEngine;
+import org.matatu.tracker.archive.ArchiveQueryResult;
+import org.matatu.tracker.archive.ArchiveTable;
+import org.matatu.tracker.dto.ArchiveQueryRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Ad-hoc aggregations over the local columnar archive (see {@link ArchiveQueryEngine}).
+ *
+ * <p>Unlike {@link AnalyticsController}, answers come from history on disk, not from the running
+ * topology, so they reach as far back as the archive does.
+ */
+@RestController
+@RequestMapping("/api/v1/archive")
+@RequiredArgsConstructor
+public class ArchiveQueryController {
+
+    private final ArchiveQueryEngine archiveQueryEngine;
+
+    /**
+     * POST /api/v1/archive/query
+     *
+     * <p>curl -X POST http://localhost:8080/api/v1/archive/query -H "Content-Type:
+     * application/json" -d
+     * '{"table":"fares","from":"2026-02-01T00:00:00Z","to":"2026-03-01T00:00:00Z",
+     * "where":{"status":["SUCCESS"]},"groupBy":["saccoId","day"], "select":["sum(amountCents *
+     * 0.01) as revenue_kes","count(*) as fares"]}'
+     *
+     * <p>Defaults to the last 24 hours. 400 for an unknown table or column or a malformed
+     * aggregate.
+     */
+    @PostMapping("/query")
+    public ArchiveQueryResult query(@RequestBody ArchiveQueryRequest request) {
+        if (request.table() == null || request.select() == null) {
+            throw new IllegalArgumentException("table and select are required");
+        }
+        Instant end = (request.to() == null) ? Instant.now() : request.to();
+        Instant start = (request.from() == null) ? end.minus(Duration.ofDays(1)) : request.from();
+
+        var builder = ArchiveQuery.from(ArchiveTable.named(request.table())).between(start, end);
+        if (request.where() != null) {
+            for (Map.Entry<String, List<String>> filter : request.where().entrySet()) {
+                builder.where(filter.getKey(), filter.getValue());
+            }
+        }
+        if (request.groupBy() != null) {
+            request.groupBy().forEach(builder::groupBy);
+        }
+        request.select().forEach(builder::select);
+        if (request.orderBy() != null) {
+            builder.orderBy(request.orderBy(), request.descending());
+        }
+        if (request.limit() != null) {
+            builder.limit(request.limit());
+        }
+        return archiveQueryEngine.execute(builder.build());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badQuery(IllegalArgumentException ex) {
+        return ResponseEntity.badRequest().body(ex.getMessage());
+    }
+}
@@ -0,0 +1,77 @@
+package org.matatu.tracker.controller;
+
+import java.util.List;
+
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.feed.FeedFilter;
+import org.matatu.tracker.feed.FeedSubscription;
+import org.matatu.tracker.feed.FleetFeedHub;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Server-sent events (SSE) push feed of matatu positions and route occupancy.
+ *
+ * <p>The same feed is served over WebSocket at {@code app.feed.web-socket-path} (see {@code
+ * FleetFeedWebSocket}); both are fed by {@link FleetFeedHub}.
+ */
+@RestController
+@RequestMapping("/api/v1/feed")
+@RequiredArgsConstructor
+public class FleetFeedController {
+
+    private final FleetFeedHub fleetFeedHub;
+    private final MatatuTrackerProperties properties;
+
+    /**
+     * GET /api/v1/feed/fleet
+     *
+     * <p>curl -N "http://localhost:8080/api/v1/feed/fleet?route=route_33&route=route_46"
+     *
+     * <p>curl -N "http://localhost:8080/api/v1/feed/fleet?bbox=-1.30,36.81,-1.27,36.84"
+     *
+     * <p>Sends the current state of every matching vehicle and route, then each change as an event
+     * named {@code vehicle}, {@code occupancy} or {@code removed}. The SSE thread is released
+     * immediately; events are written by the subscription's drain task.
+     */
+    @GetMapping(path = "/fleet", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter fleet(
+            @RequestParam(name = "route", required = false) List<String> routeIds,
+            @RequestParam(required = false) String bbox) {
+        FeedFilter filter = FeedFilter.parse(routeIds, bbox);
+        var emitter = new SseEmitter(properties.getFeed().getSseTimeoutMs());
+        // The pre-rendered JSON string goes out as-is through the String converter.
+        FeedSubscription subscription =
+                fleetFeedHub.subscribe(
+                        filter,
+                        update ->
+                                emitter.send(
+                                        SseEmitter.event()
+                                                .name(update.type())
+                                                .id(Long.toString(update.sequence()))
+                                                .data(update.json())));
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(ex -> subscription.close());
+        return emitter;
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badFilter(IllegalArgumentException ex) {
+        return ResponseEntity.badRequest().body(ex.getMessage());
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<String> feedFull(IllegalStateException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ex.getMessage());
+    }
+}
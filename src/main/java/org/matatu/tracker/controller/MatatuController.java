@@ -2,15 +2,22 @@ package org.matatu.tracker.controller;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.List;
 
 import org.matatu.tracker.model.FareEvent;
 import org.matatu.tracker.model.FareEvent.PaymentMethod;
 import org.matatu.tracker.model.FareEvent.PaymentStatus;
+import org.matatu.tracker.model.Geofence;
 import org.matatu.tracker.model.LocationEvent;
-import org.matatu.tracker.producer.FareEventProducer;
-import org.matatu.tracker.producer.LocationEventProducer;
+import org.matatu.tracker.producer.FleetEventIngest;
+import org.matatu.tracker.producer.GeofenceProducer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -22,15 +29,18 @@ import lombok.RequiredArgsConstructor;
  * for learning and debugging.
  *
  * <p>Delegates to the producer services rather than KafkaTemplate directly — the same separation of
- * concerns you'd use in any layered Spring app.
+ * concerns you'd use in any layered Spring app. Locations and fares go through {@link
+ * FleetEventIngest}, so in {@code IN_PROCESS} mode they reach the in-process pipeline instead. When
+ * the ingest refuses an event because its queue is full, the answer is 429 with a {@code
+ * Retry-After} header: the client should slow down, not give up.
  */
 @RestController
 @RequestMapping("/api/v1")
 @RequiredArgsConstructor
 public class MatatuController {
 
-    private final LocationEventProducer locationProducer;
-    private final FareEventProducer fareProducer;
+    private final FleetEventIngest ingest;
+    private final GeofenceProducer geofenceProducer;
 
     /**
      * POST /api/v1/location
@@ -51,7 +61,9 @@ public class MatatuController {
                         req.speedKmh(),
                         req.passengersOnboard(),
                         Instant.now());
-        locationProducer.send(event);
+        if (!ingest.location(event)) {
+            return tooManyRequests("Ingest full, retry later: " + req.matatuId());
+        }
         return ResponseEntity.accepted()
                 .body("Location event queued for matatu: " + req.matatuId());
     }
@@ -73,10 +85,42 @@ public class MatatuController {
                         PaymentMethod.valueOf(req.paymentMethod()),
                         PaymentStatus.valueOf(req.status()),
                         Instant.now());
-        fareProducer.send(event);
+        if (!ingest.fare(event)) {
+            return tooManyRequests("Ingest full, retry later: " + event.transactionId());
+        }
         return ResponseEntity.accepted().body("Fare event queued: " + event.transactionId());
     }
 
+    /**
+     * PUT /api/v1/geofences/{geofenceId}
+     *
+     * <p>curl -X PUT http://localhost:8080/api/v1/geofences/cbd \ -H "Content-Type:
+     * application/json" \ -d '{"type":"ZONE","name":"CBD","boundary":[
+     * {"latitude":-1.2800,"longitude":36.8130},{"latitude":-1.2800,"longitude":36.8300},
+     * {"latitude":-1.2950,"longitude":36.8300},{"latitude":-1.2950,"longitude":36.8130}]}'
+     */
+    @PutMapping("/geofences/{geofenceId}")
+    public ResponseEntity<String> upsertGeofence(
+            @PathVariable String geofenceId, @RequestBody GeofenceRequest req) {
+        geofenceProducer.upsert(
+                new Geofence(
+                        geofenceId, Geofence.Type.valueOf(req.type()), req.name(), req.boundary()));
+        return ResponseEntity.accepted().body("Geofence queued: " + geofenceId);
+    }
+
+    /** DELETE /api/v1/geofences/{geofenceId} — publishes a tombstone. */
+    @DeleteMapping("/geofences/{geofenceId}")
+    public ResponseEntity<String> deleteGeofence(@PathVariable String geofenceId) {
+        geofenceProducer.delete(geofenceId);
+        return ResponseEntity.accepted().body("Geofence delete queued: " + geofenceId);
+    }
+
+    private static ResponseEntity<String> tooManyRequests(String message) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(message);
+    }
+
     // ── Request records ────────────────────────────────────────────────────
 
     public record LocationEventRequest(
@@ -90,4 +134,6 @@ public class MatatuController {
 
     public record FareEventRequest(
             String matatuId, double amountKes, String paymentMethod, String status) {}
+
+    public record GeofenceRequest(String type, String name, List<Geofence.Vertex> boundary) {}
 }
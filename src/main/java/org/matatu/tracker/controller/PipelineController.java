@@ -0,0 +1,57 @@
+package org.matatu.tracker.controller;
+
+import java.util.List;
+import java.util.Map;
+
+import org.matatu.tracker.model.MatatuSnapshot;
+import org.matatu.tracker.model.RouteOccupancy;
+import org.matatu.tracker.pipeline.InProcessPipeline;
+import org.matatu.tracker.pipeline.PipelineStats;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Reads the in-process pipeline's results. Only present with {@code app.pipeline.mode: IN_PROCESS},
+ * where {@link AnalyticsController} has no Kafka Streams stores to query.
+ */
+@RestController
+@RequestMapping("/api/v1/pipeline")
+@ConditionalOnProperty(name = "app.pipeline.mode", havingValue = "IN_PROCESS")
+@RequiredArgsConstructor
+public class PipelineController {
+
+    private final InProcessPipeline pipeline;
+
+    /** GET /api/v1/pipeline/stats — queue depths, batch sizes, latency and records per topic. */
+    @GetMapping("/stats")
+    public PipelineStats stats() {
+        return pipeline.stats();
+    }
+
+    /** GET /api/v1/pipeline/occupancy — current passengers per route. */
+    @GetMapping("/occupancy")
+    public Map<String, RouteOccupancy> occupancy() {
+        return pipeline.outputs().latest(Topics.MATATU_LATEST_OCCUPANCY, RouteOccupancy.class);
+    }
+
+    /** GET /api/v1/pipeline/positions — the latest position of every matatu. */
+    @GetMapping("/positions")
+    public Map<String, MatatuSnapshot> positions() {
+        return pipeline.outputs().latest(Topics.MATATU_LATEST_POSITIONS, MatatuSnapshot.class);
+    }
+
+    /**
+     * GET /api/v1/pipeline/topics/{topic} — the most recent records of a topic, e.g.
+     * matatu.speed.alerts, matatu.offgrid.alerts, matatu.sacco.revenue or matatu.fares.failed.
+     */
+    @GetMapping("/topics/{topic}")
+    public List<Object> recent(@PathVariable String topic) {
+        return pipeline.outputs().recent(topic);
+    }
+}
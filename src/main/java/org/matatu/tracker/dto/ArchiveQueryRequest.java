@@ -0,0 +1,23 @@
+package org.matatu.tracker.dto;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Body of {@code POST /api/v1/archive/query}.
+ *
+ * <p>{@code where} maps a column to the values to keep ({@code ["min..max"]} for a numeric column),
+ * {@code groupBy} lists string columns and {@code hour} or {@code day}, and {@code select} lists
+ * aggregates such as {@code "sum(amountCents * 0.01) as revenue_kes"}.
+ */
+public record ArchiveQueryRequest(
+        String table,
+        Instant from,
+        Instant to,
+        Map<String, List<String>> where,
+        List<String> groupBy,
+        List<String> select,
+        String orderBy,
+        boolean descending,
+        Integer limit) {}
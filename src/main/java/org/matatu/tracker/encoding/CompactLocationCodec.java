@@ -0,0 +1,151 @@
+package org.matatu.tracker.encoding;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Arrays;
+
+import org.apache.kafka.common.utils.ByteUtils;
+import org.matatu.tracker.model.DictionaryClaim.Namespace;
+import org.matatu.tracker.model.EnrichedLocationEvent;
+import org.matatu.tracker.model.LocationEvent;
+
+/**
+ * Binary form of {@link LocationEvent} and {@link EnrichedLocationEvent} with every identifier
+ * replaced by its {@link IdentifierDictionary} code.
+ *
+ * <p>KEY CONCEPT — Pay for identifiers once: in JSON every ping repeats field names, the matatuId,
+ * routeId and routeName, and after enrichment the SACCO id, name and terminus. Here each identifier
+ * is a varint code (one byte for the first 128 values of a namespace), coordinates are int32
+ * fixed-point at 1e-7° (about 1 cm, finer than any GPS fix), speed is a varint of hundredths of a
+ * km/h and instants are varints of epoch milliseconds. Field order is the schema; the leading tag
+ * byte tells the record type and version apart, and can never be '{', so a reader can tell a
+ * compact record from a JSON one written before the switch.
+ *
+ * <p>Identifier codes are written +1 so that 0 can stand for null.
+ */
+public final class CompactLocationCodec {
+
+    static final byte LOCATION_V1 = 1;
+    static final byte ENRICHED_V1 = 2;
+
+    private static final double COORDINATE_SCALE = 1e7;
+    private static final double SPEED_SCALE = 100;
+
+    // Tag + 3 codes + 2 coordinates + speed + passengers + timestamp, at their widest.
+    private static final int LOCATION_MAX_BYTES = 1 + 3 * 5 + 2 * 4 + 5 + 5 + 10;
+    private static final int ENRICHED_MAX_BYTES = 1 + 6 * 5 + 2 * 4 + 5 + 5 + 1 + 2 * 10;
+
+    private final IdentifierDictionary dictionary;
+
+    public CompactLocationCodec(IdentifierDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public static boolean isCompact(byte[] data) {
+        return data.length > 0 && (data[0] == LOCATION_V1 || data[0] == ENRICHED_V1);
+    }
+
+    public byte[] encode(LocationEvent event) {
+        ByteBuffer out = ByteBuffer.allocate(LOCATION_MAX_BYTES);
+        out.put(LOCATION_V1);
+        writeCode(out, Namespace.MATATU, event.matatuId());
+        writeCode(out, Namespace.ROUTE, event.routeId());
+        writeCode(out, Namespace.ROUTE_NAME, event.routeName());
+        writePosition(out, event.latitude(), event.longitude(), event.speedKmh());
+        ByteUtils.writeUnsignedVarint(event.passengersOnboard(), out);
+        writeInstant(out, event.timestamp());
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    public LocationEvent decodeLocation(byte[] data) {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        expectTag(in, LOCATION_V1);
+        return new LocationEvent(
+                readCode(in, Namespace.MATATU),
+                readCode(in, Namespace.ROUTE),
+                readCode(in, Namespace.ROUTE_NAME),
+                readCoordinate(in),
+                readCoordinate(in),
+                ByteUtils.readUnsignedVarint(in) / SPEED_SCALE,
+                ByteUtils.readUnsignedVarint(in),
+                readInstant(in));
+    }
+
+    public byte[] encode(EnrichedLocationEvent event) {
+        ByteBuffer out = ByteBuffer.allocate(ENRICHED_MAX_BYTES);
+        out.put(ENRICHED_V1);
+        writeCode(out, Namespace.MATATU, event.matatuId());
+        writeCode(out, Namespace.ROUTE, event.routeId());
+        writeCode(out, Namespace.ROUTE_NAME, event.routeName());
+        writeCode(out, Namespace.SACCO_NAME, event.saccoName());
+        writeCode(out, Namespace.SACCO_ID, event.saccoId());
+        writeCode(out, Namespace.TERMINUS, event.terminus());
+        writePosition(out, event.latitude(), event.longitude(), event.speedKmh());
+        ByteUtils.writeUnsignedVarint(event.passengersOnboard(), out);
+        out.put((byte) (event.isSpeeding() ? 1 : 0));
+        writeInstant(out, event.originalTimestamp());
+        writeInstant(out, event.enrichedAt());
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    public EnrichedLocationEvent decodeEnriched(byte[] data) {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        expectTag(in, ENRICHED_V1);
+        return new EnrichedLocationEvent(
+                readCode(in, Namespace.MATATU),
+                readCode(in, Namespace.ROUTE),
+                readCode(in, Namespace.ROUTE_NAME),
+                readCode(in, Namespace.SACCO_NAME),
+                readCode(in, Namespace.SACCO_ID),
+                readCode(in, Namespace.TERMINUS),
+                readCoordinate(in),
+                readCoordinate(in),
+                ByteUtils.readUnsignedVarint(in) / SPEED_SCALE,
+                ByteUtils.readUnsignedVarint(in),
+                in.get() == 1,
+                readInstant(in),
+                readInstant(in));
+    }
+
+    private void writeCode(ByteBuffer out, Namespace namespace, String value) {
+        ByteUtils.writeUnsignedVarint(
+                (value == null) ? 0 : dictionary.encode(namespace, value) + 1, out);
+    }
+
+    private String readCode(ByteBuffer in, Namespace namespace) {
+        int code = ByteUtils.readUnsignedVarint(in);
+        return (code == 0) ? null : dictionary.decode(namespace, code - 1);
+    }
+
+    private static void writePosition(
+            ByteBuffer out, double latitude, double longitude, double speedKmh) {
+        out.putInt((int) Math.round(latitude * COORDINATE_SCALE));
+        out.putInt((int) Math.round(longitude * COORDINATE_SCALE));
+        ByteUtils.writeUnsignedVarint((int) Math.round(speedKmh * SPEED_SCALE), out);
+    }
+
+    private static double readCoordinate(ByteBuffer in) {
+        return in.getInt() / COORDINATE_SCALE;
+    }
+
+    /** Epoch millis + 1, so 0 is null; instants before 1970 are not pings. */
+    private static void writeInstant(ByteBuffer out, Instant instant) {
+        if (instant != null && instant.toEpochMilli() < 0) {
+            throw new IllegalArgumentException("Cannot encode " + instant);
+        }
+        ByteUtils.writeVarlong((instant == null) ? 0 : instant.toEpochMilli() + 1, out);
+    }
+
+    private static Instant readInstant(ByteBuffer in) {
+        long millis = ByteUtils.readVarlong(in);
+        return (millis == 0) ? null : Instant.ofEpochMilli(millis - 1);
+    }
+
+    private static void expectTag(ByteBuffer in, byte tag) {
+        byte actual = in.get();
+        if (actual != tag) {
+            throw new IllegalArgumentException(
+                    "Expected compact record type " + tag + " but found " + actual);
+        }
+    }
+}
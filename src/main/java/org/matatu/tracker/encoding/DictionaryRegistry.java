@@ -0,0 +1,66 @@
+package org.matatu.tracker.encoding;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.model.DictionaryClaim;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.PartitionOffset;
+import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps this instance's {@link IdentifierDictionary} in step with the {@code matatu.dictionary}
+ * topic.
+ *
+ * <p>Like {@code GeofenceRegistry}, every instance needs the whole dictionary, so the listener is
+ * assigned the single partition directly and replays it from offset 0 on startup — a replay process
+ * too. The topic is never compacted: compaction keeps the last claim per value, but the rule is
+ * that the first one wins.
+ */
+@Slf4j
+@Component
+public class DictionaryRegistry {
+
+    private final IdentifierDictionary dictionary;
+
+    public DictionaryRegistry(
+            KafkaTemplate<String, Object> kafkaTemplate, MatatuTrackerProperties properties) {
+        this.dictionary =
+                new IdentifierDictionary(
+                        claim -> kafkaTemplate.send(Topics.MATATU_DICTIONARY, claim.key(), claim),
+                        Duration.ofMillis(properties.getEncoding().getLookupTimeoutMs()));
+    }
+
+    public IdentifierDictionary dictionary() {
+        return dictionary;
+    }
+
+    @KafkaListener(
+            id = "dictionary-registry",
+            topicPartitions =
+                    @TopicPartition(
+                            topic = Topics.MATATU_DICTIONARY,
+                            partitionOffsets =
+                                    @PartitionOffset(partition = "0", initialOffset = "0")),
+            containerFactory = "dictionaryListenerContainerFactory")
+    public void onClaims(List<DictionaryClaim> claims) {
+        int accepted = 0;
+        for (DictionaryClaim claim : claims) {
+            if (dictionary.apply(claim)) {
+                accepted++;
+            }
+        }
+        log.debug(
+                "[DICTIONARY] 📖 {} of {} claims accepted | {} matatus, {} routes",
+                accepted,
+                claims.size(),
+                dictionary.size(DictionaryClaim.Namespace.MATATU),
+                dictionary.size(DictionaryClaim.Namespace.ROUTE));
+    }
+}
@@ -0,0 +1,150 @@
+package org.matatu.tracker.encoding;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.matatu.tracker.model.DictionaryClaim;
+import org.matatu.tracker.model.DictionaryClaim.Namespace;
+import org.matatu.tracker.topics.Topics;
+
+/**
+ * Two-way map between identifier strings and small int codes, one code space per {@link Namespace}.
+ *
+ * <p>KEY CONCEPT — Agreement by log order: codes are never decided locally. An unknown value is
+ * proposed as a {@link DictionaryClaim} for the next free code, and only the claim's return through
+ * the single-partition registry topic ({@link #apply}) assigns it. Every instance applies the same
+ * claims in the same order with the same rule — accept a claim only if its value is new and its
+ * code is the next one — so they all end up with the same dense dictionary without any lock or
+ * leader. Two instances that race for one code both see the first claim win; the loser proposes
+ * again.
+ *
+ * <p>Lookups of known codes are lock-free map reads. Only a miss takes the lock: {@link #encode}
+ * waits for its claim to come back, and {@link #decode} waits for the registry reader to catch up
+ * with a code another instance has already used. Either gives up after {@code timeout}. The lock is
+ * a {@link ReentrantLock}, not the monitor: on JDK 21 a virtual thread that waits inside {@code
+ * synchronized} stays pinned to its carrier for the whole wait.
+ */
+public final class IdentifierDictionary {
+
+    private final Consumer<DictionaryClaim> publisher;
+    private final long timeoutNanos;
+    private final Map<Namespace, Map<String, Integer>> codes = new EnumMap<>(Namespace.class);
+    private final Map<Namespace, Map<Integer, String>> values = new EnumMap<>(Namespace.class);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition applied = lock.newCondition();
+
+    /**
+     * @param publisher appends a claim to the registry topic; the claim takes effect when it is
+     *     read back and passed to {@link #apply}
+     */
+    public IdentifierDictionary(Consumer<DictionaryClaim> publisher, Duration timeout) {
+        this.publisher = publisher;
+        this.timeoutNanos = timeout.toNanos();
+        for (Namespace namespace : Namespace.values()) {
+            codes.put(namespace, new ConcurrentHashMap<>());
+            values.put(namespace, new ConcurrentHashMap<>());
+        }
+    }
+
+    /** The code of {@code value}, claiming the next free one first if it has none. */
+    public int encode(Namespace namespace, String value) {
+        Integer code = codes.get(namespace).get(value);
+        return (code != null) ? code : claim(namespace, value);
+    }
+
+    /** The value of {@code code}, waiting for the registry to deliver it if needed. */
+    public String decode(Namespace namespace, int code) {
+        String value = values.get(namespace).get(code);
+        return (value != null) ? value : await(namespace, code);
+    }
+
+    /**
+     * Applies one claim read from the registry, in log order.
+     *
+     * @return whether the claim won its code
+     */
+    public boolean apply(DictionaryClaim claim) {
+        lock.lock();
+        try {
+            Map<String, Integer> byValue = codes.get(claim.namespace());
+            Map<Integer, String> byCode = values.get(claim.namespace());
+            if (byValue.containsKey(claim.value()) || claim.code() != byCode.size()) {
+                return false;
+            }
+            // Code first: a lock-free encode() must never hand out a code decode() cannot resolve.
+            byCode.put(claim.code(), claim.value());
+            byValue.put(claim.value(), claim.code());
+            applied.signalAll();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size(Namespace namespace) {
+        return values.get(namespace).size();
+    }
+
+    private int claim(Namespace namespace, String value) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        int proposed = -1;
+        lock.lock();
+        try {
+            while (true) {
+                Integer code = codes.get(namespace).get(value);
+                if (code != null) {
+                    return code;
+                }
+                int next = size(namespace);
+                if (proposed < next) {
+                    // Nothing proposed yet, or another value won the code this thread proposed.
+                    proposed = next;
+                    publisher.accept(new DictionaryClaim(namespace, value, proposed));
+                    continue; // the publisher may have applied it already
+                }
+                waitUntil(deadline, () -> "No %s code for '%s'".formatted(namespace, value));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String await(Namespace namespace, int code) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        lock.lock();
+        try {
+            while (true) {
+                String value = values.get(namespace).get(code);
+                if (value != null) {
+                    return value;
+                }
+                waitUntil(
+                        deadline,
+                        () ->
+                                "Unknown %s code %d — is %s being read?"
+                                        .formatted(namespace, code, Topics.MATATU_DICTIONARY));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void waitUntil(long deadline, Supplier<String> timeoutMessage) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            throw new IllegalStateException(timeoutMessage.get());
+        }
+        try {
+            applied.awaitNanos(remaining);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(timeoutMessage.get(), e);
+        }
+    }
+}
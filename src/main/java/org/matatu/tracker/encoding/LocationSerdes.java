@@ -0,0 +1,86 @@
+package org.matatu.tracker.encoding;
+
+import java.util.function.Function;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.Serializer;
+import org.matatu.tracker.model.EnrichedLocationEvent;
+import org.matatu.tracker.model.LocationEvent;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+/**
+ * The serdes for location records, in the format chosen by {@code app.encoding.format}.
+ *
+ * <p>Every topic, repartition topic and store that holds {@link LocationEvent} or {@link
+ * EnrichedLocationEvent} values takes its serde from here. Writers use the configured format;
+ * readers accept both, telling them apart by the first byte, so a topic can be switched from JSON
+ * to dictionary encoding (or back) without draining it first.
+ */
+public final class LocationSerdes {
+
+    private final Serde<LocationEvent> location;
+    private final Serde<EnrichedLocationEvent> enriched;
+    private final Serde<EnrichedLocationEvent> verbose;
+    private final boolean compact;
+
+    private LocationSerdes(CompactLocationCodec codec) {
+        var locationJson = new JacksonJsonSerde<>(LocationEvent.class);
+        var enrichedJson = new JacksonJsonSerde<>(EnrichedLocationEvent.class);
+        this.verbose = enrichedJson;
+        this.compact = (codec != null);
+        if (codec == null) {
+            this.location = locationJson;
+            this.enriched = enrichedJson;
+            return;
+        }
+        this.location =
+                Serdes.serdeFrom(
+                        (Serializer<LocationEvent>)
+                                (topic, event) -> (event == null) ? null : codec.encode(event),
+                        either(locationJson.deserializer(), codec::decodeLocation));
+        this.enriched =
+                Serdes.serdeFrom(
+                        (Serializer<EnrichedLocationEvent>)
+                                (topic, event) -> (event == null) ? null : codec.encode(event),
+                        either(enrichedJson.deserializer(), codec::decodeEnriched));
+    }
+
+    /** Plain JSON everywhere, as before dictionary encoding existed. */
+    public static LocationSerdes json() {
+        return new LocationSerdes(null);
+    }
+
+    public static LocationSerdes dictionary(IdentifierDictionary dictionary) {
+        return new LocationSerdes(new CompactLocationCodec(dictionary));
+    }
+
+    public Serde<LocationEvent> location() {
+        return location;
+    }
+
+    public Serde<EnrichedLocationEvent> enriched() {
+        return enriched;
+    }
+
+    /** JSON with every identifier spelled out, whatever the configured format. */
+    public Serde<EnrichedLocationEvent> verbose() {
+        return verbose;
+    }
+
+    public boolean compact() {
+        return compact;
+    }
+
+    private static <T> Deserializer<T> either(Deserializer<T> json, Function<byte[], T> compact) {
+        return (topic, data) -> {
+            if (data == null) {
+                return null;
+            }
+            return CompactLocationCodec.isCompact(data)
+                    ? compact.apply(data)
+                    : json.deserialize(topic, data);
+        };
+    }
+}
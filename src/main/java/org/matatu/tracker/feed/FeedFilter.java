@@ -0,0 +1,69 @@
+package org.matatu.tracker.feed;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What one live-feed client wants to see: some routes, an area, both, or (neither) everything.
+ *
+ * <p>Given both, a vehicle must be on one of the routes and inside the box. Route occupancy has no
+ * position, so an area-only client does not receive it.
+ */
+public record FeedFilter(Set<String> routeIds, BoundingBox area) {
+
+    public static final FeedFilter EVERYTHING = new FeedFilter(Set.of(), null);
+
+    public FeedFilter {
+        routeIds = Set.copyOf(routeIds);
+    }
+
+    /**
+     * Parses request parameters: {@code route} may repeat, {@code bbox} is {@code
+     * minLat,minLon,maxLat,maxLon}.
+     *
+     * @throws IllegalArgumentException if the box is malformed
+     */
+    public static FeedFilter parse(List<String> routeIds, String bbox) {
+        return new FeedFilter(
+                (routeIds == null) ? Set.of() : Set.copyOf(routeIds),
+                (bbox == null || bbox.isBlank()) ? null : BoundingBox.parse(bbox));
+    }
+
+    public boolean everything() {
+        return routeIds.isEmpty() && area == null;
+    }
+
+    public record BoundingBox(double minLat, double minLon, double maxLat, double maxLon) {
+
+        public BoundingBox {
+            if (minLat > maxLat || minLon > maxLon) {
+                throw new IllegalArgumentException(
+                        "bbox must be minLat,minLon,maxLat,maxLon with min <= max");
+            }
+        }
+
+        static BoundingBox parse(String bbox) {
+            String[] parts = bbox.split(",");
+            if (parts.length != 4) {
+                throw new IllegalArgumentException(
+                        "bbox must be minLat,minLon,maxLat,maxLon, got: " + bbox);
+            }
+            try {
+                return new BoundingBox(
+                        Double.parseDouble(parts[0].trim()),
+                        Double.parseDouble(parts[1].trim()),
+                        Double.parseDouble(parts[2].trim()),
+                        Double.parseDouble(parts[3].trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("bbox is not numeric: " + bbox, e);
+            }
+        }
+
+        public boolean contains(double latitude, double longitude) {
+            return latitude >= minLat
+                    && latitude <= maxLat
+                    && longitude >= minLon
+                    && longitude <= maxLon;
+        }
+    }
+}
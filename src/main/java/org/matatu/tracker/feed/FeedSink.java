@@ -0,0 +1,15 @@
+package org.matatu.tracker.feed;
+
+import java.io.IOException;
+
+/**
+ * Writes one update to one client — an SSE response or a WebSocket session.
+ *
+ * <p>Called from that client's own drain task and may block for as long as the client is slow;
+ * throwing ends the subscription.
+ */
+@FunctionalInterface
+public interface FeedSink {
+
+    void send(FeedUpdate update) throws IOException;
+}
@@ -0,0 +1,152 @@
+package org.matatu.tracker.feed;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * One connected live-feed client and its conflating buffer.
+ *
+ * <p>KEY CONCEPT — Per-client conflation: the hub never writes to a client. It puts the update into
+ * the client's {@code pending} map under the update's key, overwriting whatever older update for
+ * the same vehicle or route was still waiting, and makes sure one drain task is running for the
+ * client. A fast client's buffer is empty almost all the time; a slow one falls behind by skipping
+ * intermediate positions, never by queueing them. The buffer can never hold more entries than there
+ * are vehicles and routes matching the filter, whatever the ping rate and however slow the client.
+ *
+ * <p>KEY CONCEPT — One drain per client: {@code draining} admits at most one task per client, so
+ * writes to one connection are never concurrent and a client blocked on a full socket ties up only
+ * its own (virtual) thread. The flag is held from creation until {@link #start()}, which lets the
+ * hub load the current state before anything is sent.
+ */
+@Slf4j
+public final class FeedSubscription {
+
+    @Getter private final FeedFilter filter;
+    private final FeedSink sink;
+    private final Executor executor;
+    private final FleetFeedHub hub;
+
+    private final Map<String, FeedUpdate> pending = new ConcurrentHashMap<>();
+    // Vehicles this area client has been sent inside its box, so it can be told when they leave.
+    private final Set<String> visible = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean draining = new AtomicBoolean(true);
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    FeedSubscription(FeedFilter filter, FeedSink sink, Executor executor, FleetFeedHub hub) {
+        this.filter = filter;
+        this.sink = sink;
+        this.executor = executor;
+        this.hub = hub;
+    }
+
+    /** Stops delivery and releases the buffer. Safe to call more than once. */
+    public void close() {
+        hub.unsubscribe(this);
+    }
+
+    /**
+     * Routes the update through the area filter into the buffer; {@code removal} is only built if
+     * needed. Does not start a drain — see {@link #schedule()}.
+     *
+     * @return whether anything was buffered
+     */
+    boolean accept(FeedUpdate update, Supplier<FeedUpdate> removal) {
+        if (!update.positioned() || filter.area() == null) {
+            return offer(update);
+        } else if (filter.area().contains(update.latitude(), update.longitude())
+                && !update.type().equals(FeedUpdate.REMOVED)) {
+            visible.add(update.key());
+            return offer(update);
+        } else if (visible.remove(update.key())) {
+            return offer(removal.get());
+        }
+        return false;
+    }
+
+    void start() {
+        draining.set(false);
+        schedule();
+    }
+
+    /**
+     * @return false if the subscription was already closed
+     */
+    boolean markClosed() {
+        if (!closed.compareAndSet(false, true)) {
+            return false;
+        }
+        pending.clear();
+        return true;
+    }
+
+    /** Updates waiting to be written; bounded by the vehicles and routes matching the filter. */
+    int backlog() {
+        return pending.size();
+    }
+
+    boolean idle() {
+        return pending.isEmpty() && !draining.get();
+    }
+
+    private boolean offer(FeedUpdate update) {
+        if (closed.get()) {
+            return false;
+        }
+        pending.compute(
+                update.key(),
+                (key, waiting) -> {
+                    if (waiting == null) {
+                        return update;
+                    }
+                    hub.conflated();
+                    return (update.sequence() >= waiting.sequence()) ? update : waiting;
+                });
+        return true;
+    }
+
+    /** Starts a drain unless one is running; a running drain re-checks the buffer before ending. */
+    void schedule() {
+        if (closed.get() || pending.isEmpty() || !draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            close(); // shutting down
+        }
+    }
+
+    private void drain() {
+        int sent = 0;
+        try {
+            while (true) {
+                for (String key : pending.keySet()) {
+                    FeedUpdate update = pending.remove(key);
+                    if (update != null && !closed.get()) {
+                        sink.send(update);
+                        sent++;
+                    }
+                }
+                draining.set(false);
+                // An offer that raced the flag reset found it still set and did not schedule.
+                if (closed.get() || pending.isEmpty() || !draining.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("[FEED] 📴 Dropping subscriber {}: {}", filter, e.toString());
+            close();
+        } finally {
+            hub.sent(sent);
+        }
+    }
+}
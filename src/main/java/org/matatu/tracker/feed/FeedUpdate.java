@@ -0,0 +1,32 @@
+package org.matatu.tracker.feed;
+
+/**
+ * One change on the live feed, already serialized.
+ *
+ * <p>KEY CONCEPT — Serialize once, share everywhere: {@link FleetFeedHub} renders {@code json} a
+ * single time per update, and every SSE and WebSocket client that receives it writes that same
+ * string. Fan-out to ten thousand clients costs ten thousand references, not ten thousand Jackson
+ * calls.
+ *
+ * <p>{@code key} is what a client's conflating buffer overwrites on ({@code vehicle:<matatuId>} or
+ * {@code route:<routeId>}); a {@code removed} update reuses its vehicle's key so it replaces any
+ * position still waiting to be sent. {@code sequence} increases per key, so an older update never
+ * replaces a newer one.
+ */
+public record FeedUpdate(
+        String type,
+        String key,
+        String routeId,
+        double latitude,
+        double longitude,
+        long sequence,
+        String json) {
+
+    public static final String VEHICLE = "vehicle";
+    public static final String OCCUPANCY = "occupancy";
+    public static final String REMOVED = "removed";
+
+    public boolean positioned() {
+        return !type.equals(OCCUPANCY);
+    }
+}
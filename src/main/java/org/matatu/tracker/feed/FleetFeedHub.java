@@ -0,0 +1,324 @@
+package org.matatu.tracker.feed;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.model.MatatuSnapshot;
+import org.matatu.tracker.model.RouteOccupancy;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.PartitionOffset;
+import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Fans matatu positions and route occupancy out to live SSE and WebSocket clients.
+ *
+ * <p>Reads from : matatu.latest.positions, matatu.latest.occupancy (every partition, from offset 0,
+ * outside any consumer group — like {@code GeofenceRegistry}, every instance needs the whole fleet,
+ * and reading the compacted topics from the start is the bootstrap)
+ *
+ * <p>KEY CONCEPT — Decoupled fan-out: the listener thread renders each update to JSON once, stores
+ * it as the newest state for its key, and hands the same {@link FeedUpdate} to every matching
+ * {@link FeedSubscription}. Handing over is a map write per client; the write to the network
+ * happens later on the client's own drain task. A slow or stalled client therefore cannot block the
+ * listener, slow the other clients, or grow the heap beyond one entry per matching key.
+ *
+ * <p>KEY CONCEPT — Indexed routing: route-filtered clients are indexed by routeId, so a ping on
+ * route_33 touches only route_33's clients. Area-only clients are checked against their box.
+ */
+@Component
+public class FleetFeedHub {
+
+    private final MatatuTrackerProperties.Feed settings;
+    private final JsonMapper jsonMapper;
+
+    private final Map<String, FeedUpdate> latestVehicles = new ConcurrentHashMap<>();
+    private final Map<String, FeedUpdate> latestRoutes = new ConcurrentHashMap<>();
+    private final Map<String, Set<FeedSubscription>> byRoute = new ConcurrentHashMap<>();
+    private final Set<FeedSubscription> byArea = ConcurrentHashMap.newKeySet();
+    private final Set<FeedSubscription> everything = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ExecutorService drains =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("feed-", 0).factory());
+
+    private final Counter rendered;
+    private final Counter sent;
+    private final Counter conflated;
+
+    public FleetFeedHub(
+            MatatuTrackerProperties properties, JsonMapper jsonMapper, MeterRegistry registry) {
+        this.settings = properties.getFeed();
+        this.jsonMapper = jsonMapper;
+        this.rendered = registry.counter("matatu.feed.updates", "stage", "rendered");
+        this.sent = registry.counter("matatu.feed.updates", "stage", "sent");
+        this.conflated = registry.counter("matatu.feed.updates", "stage", "conflated");
+        Gauge.builder("matatu.feed.subscribers", subscribers, AtomicInteger::get)
+                .register(registry);
+    }
+
+    @KafkaListener(
+            id = "fleet-feed-positions",
+            topicPartitions =
+                    @TopicPartition(
+                            topic = Topics.MATATU_LATEST_POSITIONS,
+                            partitions = "#{'0-' + (${app.kafka.partitions} - 1)}",
+                            partitionOffsets =
+                                    @PartitionOffset(partition = "*", initialOffset = "0")),
+            containerFactory = "snapshotListenerContainerFactory")
+    public void onPositions(List<ConsumerRecord<String, MatatuSnapshot>> records) {
+        Set<FeedSubscription> touched = new HashSet<>();
+        for (ConsumerRecord<String, MatatuSnapshot> record : records) {
+            if (record.value() == null) {
+                removeVehicle(record.key(), touched);
+            } else {
+                publishVehicle(record.value(), touched);
+            }
+        }
+        touched.forEach(FeedSubscription::schedule);
+    }
+
+    @KafkaListener(
+            id = "fleet-feed-occupancy",
+            topicPartitions =
+                    @TopicPartition(
+                            topic = Topics.MATATU_LATEST_OCCUPANCY,
+                            partitions = "#{'0-' + (${app.kafka.partitions} - 1)}",
+                            partitionOffsets =
+                                    @PartitionOffset(partition = "*", initialOffset = "0")),
+            containerFactory = "occupancyListenerContainerFactory")
+    public void onOccupancy(ConsumerRecord<String, RouteOccupancy> record) {
+        if (record.value() != null) {
+            publishOccupancy(record.value());
+        }
+    }
+
+    /**
+     * Registers a client. It first receives the newest state of everything matching its filter,
+     * then live changes.
+     *
+     * @throws IllegalStateException if {@code max-subscribers} clients are already connected
+     */
+    public FeedSubscription subscribe(FeedFilter filter, FeedSink sink) {
+        if (subscribers.incrementAndGet() > settings.getMaxSubscribers()) {
+            subscribers.decrementAndGet();
+            throw new IllegalStateException(
+                    "Live feed is full (" + settings.getMaxSubscribers() + " subscribers)");
+        }
+        var subscription = new FeedSubscription(filter, sink, drains, this);
+        // Indexed before the snapshot is loaded: a change that lands in between is not lost, and
+        // the per-key sequence stops the snapshot from overwriting it.
+        if (!filter.routeIds().isEmpty()) {
+            filter.routeIds()
+                    .forEach(
+                            routeId ->
+                                    byRoute.computeIfAbsent(
+                                                    routeId, r -> ConcurrentHashMap.newKeySet())
+                                            .add(subscription));
+        } else if (filter.area() != null) {
+            byArea.add(subscription);
+        } else {
+            everything.add(subscription);
+        }
+
+        for (FeedUpdate update : latestVehicles.values()) {
+            if (filter.routeIds().isEmpty() || filter.routeIds().contains(update.routeId())) {
+                subscription.accept(update, () -> update);
+            }
+        }
+        if (filter.area() == null || !filter.routeIds().isEmpty()) {
+            for (FeedUpdate update : latestRoutes.values()) {
+                if (filter.routeIds().isEmpty() || filter.routeIds().contains(update.routeId())) {
+                    subscription.accept(update, () -> update);
+                }
+            }
+        }
+        subscription.start();
+        return subscription;
+    }
+
+    void unsubscribe(FeedSubscription subscription) {
+        if (!subscription.markClosed()) {
+            return;
+        }
+        FeedFilter filter = subscription.getFilter();
+        filter.routeIds()
+                .forEach(
+                        routeId -> {
+                            Set<FeedSubscription> clients = byRoute.get(routeId);
+                            if (clients != null) {
+                                clients.remove(subscription);
+                            }
+                        });
+        byArea.remove(subscription);
+        everything.remove(subscription);
+        subscribers.decrementAndGet();
+    }
+
+    public void publishVehicles(List<MatatuSnapshot> snapshots) {
+        Set<FeedSubscription> touched = new HashSet<>();
+        snapshots.forEach(snapshot -> publishVehicle(snapshot, touched));
+        touched.forEach(FeedSubscription::schedule);
+    }
+
+    public void publishOccupancy(RouteOccupancy occupancy) {
+        var update =
+                new FeedUpdate(
+                        FeedUpdate.OCCUPANCY,
+                        "route:" + occupancy.routeId(),
+                        occupancy.routeId(),
+                        0,
+                        0,
+                        sequence.incrementAndGet(),
+                        render(FeedUpdate.OCCUPANCY, occupancy));
+        latestRoutes.put(update.key(), update);
+        Set<FeedSubscription> touched = new HashSet<>();
+        fanOut(update, () -> update, touched);
+        touched.forEach(FeedSubscription::schedule);
+    }
+
+    private void publishVehicle(MatatuSnapshot snapshot, Set<FeedSubscription> touched) {
+        var update =
+                new FeedUpdate(
+                        FeedUpdate.VEHICLE,
+                        "vehicle:" + snapshot.matatuId(),
+                        snapshot.routeId(),
+                        snapshot.latitude(),
+                        snapshot.longitude(),
+                        sequence.incrementAndGet(),
+                        render(FeedUpdate.VEHICLE, snapshot));
+        latestVehicles.put(update.key(), update);
+        fanOut(update, new LazyRemoval(update), touched);
+    }
+
+    private void removeVehicle(String matatuId, Set<FeedSubscription> touched) {
+        FeedUpdate previous = latestVehicles.remove("vehicle:" + matatuId);
+        if (previous != null) {
+            FeedUpdate removal = new LazyRemoval(previous).get();
+            fanOut(removal, () -> removal, touched);
+        }
+    }
+
+    /**
+     * Offers the update to every matching client. Drains are started by the caller once per batch
+     * rather than once per update: at ping rates most clients are touched many times per poll.
+     */
+    private void fanOut(
+            FeedUpdate update, Supplier<FeedUpdate> removal, Set<FeedSubscription> touched) {
+        Set<FeedSubscription> routeClients = byRoute.get(update.routeId());
+        if (routeClients != null) {
+            offer(routeClients, update, removal, touched);
+        }
+        offer(everything, update, removal, touched);
+        if (update.positioned()) {
+            offer(byArea, update, removal, touched);
+        }
+    }
+
+    private static void offer(
+            Set<FeedSubscription> clients,
+            FeedUpdate update,
+            Supplier<FeedUpdate> removal,
+            Set<FeedSubscription> touched) {
+        for (FeedSubscription client : clients) {
+            if (client.accept(update, removal)) {
+                touched.add(client);
+            }
+        }
+    }
+
+    private String render(String type, Object data) {
+        rendered.increment();
+        return jsonMapper.writeValueAsString(new Message(type, data));
+    }
+
+    void sent(int updates) {
+        sent.increment(updates);
+    }
+
+    void conflated() {
+        conflated.increment();
+    }
+
+    int subscriberCount() {
+        return subscribers.get();
+    }
+
+    /** True once every client has written everything offered to it. */
+    boolean idle() {
+        for (Set<FeedSubscription> clients : byRoute.values()) {
+            for (FeedSubscription client : clients) {
+                if (!client.idle()) {
+                    return false;
+                }
+            }
+        }
+        return byArea.stream().allMatch(FeedSubscription::idle)
+                && everything.stream().allMatch(FeedSubscription::idle);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        byRoute.values().forEach(clients -> clients.forEach(FeedSubscription::close));
+        byArea.forEach(FeedSubscription::close);
+        everything.forEach(FeedSubscription::close);
+        drains.shutdownNow();
+    }
+
+    /** The wire format shared by SSE {@code data:} lines and WebSocket text frames. */
+    private record Message(String type, Object data) {}
+
+    private record Removed(String matatuId) {}
+
+    /**
+     * The "vehicle left your box" update for one position, rendered only if some area client needs
+     * it and then shared by all of them.
+     */
+    private final class LazyRemoval implements Supplier<FeedUpdate> {
+
+        private final FeedUpdate position;
+        private FeedUpdate removal;
+
+        private LazyRemoval(FeedUpdate position) {
+            this.position = position;
+        }
+
+        @Override
+        public FeedUpdate get() {
+            if (removal == null) {
+                removal =
+                        new FeedUpdate(
+                                FeedUpdate.REMOVED,
+                                position.key(),
+                                position.routeId(),
+                                position.latitude(),
+                                position.longitude(),
+                                position.sequence(),
+                                render(
+                                        FeedUpdate.REMOVED,
+                                        new Removed(
+                                                position.key()
+                                                        .substring(
+                                                                position.key().indexOf(':') + 1))));
+            }
+            return removal;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.matatu.tracker.feed;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.Endpoint;
+import jakarta.websocket.EndpointConfig;
+import jakarta.websocket.Session;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * WebSocket twin of the SSE feed: {@code ws://localhost:8080/ws/fleet?route=route_33} or {@code
+ * ?bbox=minLat,minLon,maxLat,maxLon}.
+ *
+ * <p>Each text frame is the {@link FeedUpdate#json()} string shared with every other client. Frames
+ * are written with the blocking remote from the subscription's drain task, which is already the
+ * only writer for this session; a client that does not take a frame within {@code
+ * app.feed.send-timeout-ms} fails the send and is dropped.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class FleetFeedWebSocket extends Endpoint {
+
+    // Tomcat's per-session limit for a blocking send.
+    private static final String BLOCKING_SEND_TIMEOUT =
+            "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    private final FleetFeedHub hub;
+    private final long sendTimeoutMs;
+
+    private FeedSubscription subscription;
+
+    @Override
+    public void onOpen(Session session, EndpointConfig config) {
+        Map<String, List<String>> parameters = session.getRequestParameterMap();
+        FeedFilter filter;
+        try {
+            List<String> bbox = parameters.get("bbox");
+            filter =
+                    FeedFilter.parse(
+                            parameters.get("route"),
+                            (bbox == null || bbox.isEmpty()) ? null : bbox.getFirst());
+            session.getUserProperties().put(BLOCKING_SEND_TIMEOUT, sendTimeoutMs);
+            subscription =
+                    hub.subscribe(
+                            filter, update -> session.getBasicRemote().sendText(update.json()));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            close(session, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onClose(Session session, CloseReason closeReason) {
+        if (subscription != null) {
+            subscription.close();
+        }
+    }
+
+    @Override
+    public void onError(Session session, Throwable error) {
+        log.debug("[FEED] 📴 WebSocket {} failed: {}", session.getId(), error.toString());
+        if (subscription != null) {
+            subscription.close();
+        }
+    }
+
+    private static void close(Session session, String reason) {
+        try {
+            session.close(new CloseReason(CloseReason.CloseCodes.CANNOT_ACCEPT, reason));
+        } catch (IOException e) {
+            log.debug("[FEED] Could not close WebSocket {}: {}", session.getId(), e.toString());
+        }
+    }
+}
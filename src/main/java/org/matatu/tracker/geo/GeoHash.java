@@ -0,0 +1,159 @@
+package org.matatu.tracker.geo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Base-32 geohash encoding.
+ *
+ * <p>A geohash interleaves longitude and latitude bits, so every extra character narrows the cell
+ * by a factor of 32. At Nairobi's latitude precision 5 is roughly 4.9 km × 4.9 km, precision 6 is
+ * 1.2 km × 0.6 km and precision 7 is 153 m × 153 m. Cells that share a prefix are nested, which is
+ * what makes geohashes useful as state-store keys.
+ */
+public final class GeoHash {
+
+    public static final int MAX_PRECISION = 12;
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+    private static final int[] DECODE = new int[128];
+
+    static {
+        Arrays.fill(DECODE, -1);
+        for (int i = 0; i < BASE32.length; i++) {
+            DECODE[BASE32[i]] = i;
+        }
+    }
+
+    private GeoHash() {}
+
+    public static String encode(double latitude, double longitude, int precision) {
+        validatePrecision(precision);
+        double minLat = -90, maxLat = 90, minLon = -180, maxLon = 180;
+        char[] hash = new char[precision];
+        boolean evenBit = true; // even bits encode longitude
+        int bit = 0;
+        int ch = 0;
+        int length = 0;
+
+        while (length < precision) {
+            if (evenBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (longitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLon = mid;
+                } else {
+                    ch <<= 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch <<= 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+            if (++bit == 5) {
+                hash[length++] = BASE32[ch];
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return new String(hash);
+    }
+
+    /** Returns {@code [minLat, minLon, maxLat, maxLon]} of the cell. */
+    public static double[] bounds(String geohash) {
+        double minLat = -90, maxLat = 90, minLon = -180, maxLon = 180;
+        boolean evenBit = true;
+        for (int i = 0; i < geohash.length(); i++) {
+            char c = geohash.charAt(i);
+            int value = c < 128 ? DECODE[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid geohash character '" + c + "'");
+            }
+            for (int mask = 16; mask > 0; mask >>= 1) {
+                if (evenBit) {
+                    double mid = (minLon + maxLon) / 2;
+                    if ((value & mask) != 0) {
+                        minLon = mid;
+                    } else {
+                        maxLon = mid;
+                    }
+                } else {
+                    double mid = (minLat + maxLat) / 2;
+                    if ((value & mask) != 0) {
+                        minLat = mid;
+                    } else {
+                        maxLat = mid;
+                    }
+                }
+                evenBit = !evenBit;
+            }
+        }
+        return new double[] {minLat, minLon, maxLat, maxLon};
+    }
+
+    /** Returns {@code [latitude, longitude]} of the cell centre. */
+    public static double[] centre(String geohash) {
+        double[] b = bounds(geohash);
+        return new double[] {(b[0] + b[2]) / 2, (b[1] + b[3]) / 2};
+    }
+
+    /**
+     * Every cell of the given precision that intersects the bounding box, enumerated directly from
+     * the cell grid — O(cells in the box), independent of how much data exists elsewhere.
+     *
+     * @throws IllegalArgumentException if more than {@code maxCells} cells would be returned
+     */
+    public static List<String> cover(
+            double minLat,
+            double minLon,
+            double maxLat,
+            double maxLon,
+            int precision,
+            int maxCells) {
+        validatePrecision(precision);
+        if (minLat > maxLat || minLon > maxLon) {
+            throw new IllegalArgumentException("Bounding box min must not exceed max");
+        }
+        int lonBits = (5 * precision + 1) / 2;
+        int latBits = (5 * precision) / 2;
+        double latStep = 180.0 / (1L << latBits);
+        double lonStep = 360.0 / (1L << lonBits);
+
+        // Work in grid row/column indexes so each cell is visited exactly once.
+        long firstRow = (long) Math.floor((minLat + 90) / latStep);
+        long lastRow = Math.min((long) Math.floor((maxLat + 90) / latStep), (1L << latBits) - 1);
+        long firstCol = (long) Math.floor((minLon + 180) / lonStep);
+        long lastCol = Math.min((long) Math.floor((maxLon + 180) / lonStep), (1L << lonBits) - 1);
+        long cellCount = (lastRow - firstRow + 1) * (lastCol - firstCol + 1);
+        if (cellCount > maxCells) {
+            throw new IllegalArgumentException(
+                    "Bounding box covers %d cells at precision %d (limit %d) — zoom in or use a coarser precision"
+                            .formatted(cellCount, precision, maxCells));
+        }
+
+        List<String> cells = new ArrayList<>((int) cellCount);
+        for (long row = firstRow; row <= lastRow; row++) {
+            double lat = -90 + (row + 0.5) * latStep;
+            for (long col = firstCol; col <= lastCol; col++) {
+                cells.add(encode(lat, -180 + (col + 0.5) * lonStep, precision));
+            }
+        }
+        return cells;
+    }
+
+    private static void validatePrecision(int precision) {
+        if (precision < 1 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException(
+                    "Geohash precision must be between 1 and %d but was %d"
+                            .formatted(MAX_PRECISION, precision));
+        }
+    }
+}
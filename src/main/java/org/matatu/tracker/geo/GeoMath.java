@@ -0,0 +1,36 @@
+package org.matatu.tracker.geo;
+
+/** Great-circle helpers for turning consecutive GPS fixes into distance and heading. */
+public final class GeoMath {
+
+    private static final double EARTH_RADIUS_METRES = 6_371_008.8;
+
+    private GeoMath() {}
+
+    /** Haversine distance between two points in metres. */
+    public static double distanceMetres(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double dPhi = phi2 - phi1;
+        double dLambda = Math.toRadians(lon2 - lon1);
+        double a =
+                Math.sin(dPhi / 2) * Math.sin(dPhi / 2)
+                        + Math.cos(phi1)
+                                * Math.cos(phi2)
+                                * Math.sin(dLambda / 2)
+                                * Math.sin(dLambda / 2);
+        return 2 * EARTH_RADIUS_METRES * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /** Initial bearing from the first point to the second, in degrees clockwise from north. */
+    public static double bearingDegrees(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double dLambda = Math.toRadians(lon2 - lon1);
+        double y = Math.sin(dLambda) * Math.cos(phi2);
+        double x =
+                Math.cos(phi1) * Math.sin(phi2)
+                        - Math.sin(phi1) * Math.cos(phi2) * Math.cos(dLambda);
+        return (Math.toDegrees(Math.atan2(y, x)) + 360) % 360;
+    }
+}
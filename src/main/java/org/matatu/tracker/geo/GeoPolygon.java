@@ -0,0 +1,68 @@
+package org.matatu.tracker.geo;
+
+import java.util.List;
+
+import org.matatu.tracker.model.Geofence;
+
+/**
+ * A {@link Geofence} boundary compiled into primitive arrays plus its bounding box, ready for
+ * point-in-polygon tests on the hot path.
+ */
+final class GeoPolygon {
+
+    final Geofence geofence;
+    final double minLat;
+    final double minLon;
+    final double maxLat;
+    final double maxLon;
+
+    private final double[] lats;
+    private final double[] lons;
+
+    GeoPolygon(Geofence geofence) {
+        this.geofence = geofence;
+        List<Geofence.Vertex> boundary = geofence.boundary();
+        this.lats = new double[boundary.size()];
+        this.lons = new double[boundary.size()];
+        double loLat = Double.POSITIVE_INFINITY, loLon = Double.POSITIVE_INFINITY;
+        double hiLat = Double.NEGATIVE_INFINITY, hiLon = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < boundary.size(); i++) {
+            lats[i] = boundary.get(i).latitude();
+            lons[i] = boundary.get(i).longitude();
+            loLat = Math.min(loLat, lats[i]);
+            loLon = Math.min(loLon, lons[i]);
+            hiLat = Math.max(hiLat, lats[i]);
+            hiLon = Math.max(hiLon, lons[i]);
+        }
+        this.minLat = loLat;
+        this.minLon = loLon;
+        this.maxLat = hiLat;
+        this.maxLon = hiLon;
+    }
+
+    boolean boundsContain(double lat, double lon) {
+        return lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon;
+    }
+
+    /** Even-odd ray casting. Callers check {@link #boundsContain} first. */
+    boolean contains(double lat, double lon) {
+        boolean inside = false;
+        for (int i = 0, j = lats.length - 1; i < lats.length; j = i++) {
+            if ((lats[i] > lat) != (lats[j] > lat)
+                    && lon
+                            < (lons[j] - lons[i]) * (lat - lats[i]) / (lats[j] - lats[i])
+                                    + lons[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    double centreLat() {
+        return (minLat + maxLat) / 2;
+    }
+
+    double centreLon() {
+        return (minLon + maxLon) / 2;
+    }
+}
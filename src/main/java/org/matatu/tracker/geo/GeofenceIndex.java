@@ -0,0 +1,191 @@
+package org.matatu.tracker.geo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+import org.matatu.tracker.model.Geofence;
+
+/**
+ * Immutable R-tree over geofence polygons, bulk-loaded with Sort-Tile-Recursive (STR) packing.
+ *
+ * <p>KEY CONCEPT — STR packing: instead of inserting polygons one by one, all bounding boxes are
+ * sorted into vertical slices by longitude, each slice is sorted by latitude, and runs of {@value
+ * #NODE_CAPACITY} become leaves. The same is repeated on the leaves to build each level above.
+ * Nodes end up full and barely overlap, so a point query visits a handful of nodes and runs the
+ * exact point-in-polygon test only on polygons whose box already contains the point. With 10,000
+ * stages that is ~4 levels and usually one or two ray casts per ping.
+ *
+ * <p>The index is never modified after construction. {@link GeofenceRegistry} builds a new one when
+ * definitions change and swaps the reference, so readers never lock or see a half-built tree.
+ */
+public final class GeofenceIndex {
+
+    static final int NODE_CAPACITY = 16;
+
+    public static final GeofenceIndex EMPTY = new GeofenceIndex(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private GeofenceIndex(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public static GeofenceIndex build(Collection<Geofence> geofences) {
+        if (geofences.isEmpty()) {
+            return EMPTY;
+        }
+        List<GeoPolygon> polygons = geofences.stream().map(GeoPolygon::new).toList();
+
+        List<Node> level =
+                pack(
+                        polygons,
+                        GeoPolygon::centreLon,
+                        GeoPolygon::centreLat,
+                        group -> Node.leaf(group.toArray(GeoPolygon[]::new)));
+        while (level.size() > 1) {
+            level =
+                    pack(
+                            level,
+                            Node::centreLon,
+                            Node::centreLat,
+                            group -> Node.inner(group.toArray(Node[]::new)));
+        }
+        return new GeofenceIndex(level.getFirst(), polygons.size());
+    }
+
+    /** Every geofence whose polygon contains the point; an empty immutable list when none do. */
+    public List<Geofence> containing(double latitude, double longitude) {
+        if (root == null || !root.boundsContain(latitude, longitude)) {
+            return List.of();
+        }
+        List<Geofence> hits = null;
+        Node[] stack = new Node[32];
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            Node node = stack[--top];
+            if (node.entries != null) {
+                for (GeoPolygon polygon : node.entries) {
+                    if (polygon.boundsContain(latitude, longitude)
+                            && polygon.contains(latitude, longitude)) {
+                        if (hits == null) {
+                            hits = new ArrayList<>(2);
+                        }
+                        hits.add(polygon.geofence);
+                    }
+                }
+            } else {
+                for (Node child : node.children) {
+                    if (child.boundsContain(latitude, longitude)) {
+                        if (top == stack.length) {
+                            stack = Arrays.copyOf(stack, top * 2);
+                        }
+                        stack[top++] = child;
+                    }
+                }
+            }
+        }
+        return hits == null ? List.of() : hits;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // ── STR bulk loading ──────────────────────────────────────────────────────
+
+    private static <T> List<Node> pack(
+            List<T> items,
+            ToDoubleFunction<T> x,
+            ToDoubleFunction<T> y,
+            Function<List<T>, Node> toNode) {
+        int nodeCount = (items.size() + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int sliceCount = (int) Math.ceil(Math.sqrt(nodeCount));
+        int sliceSize = sliceCount * NODE_CAPACITY;
+
+        List<T> byX = new ArrayList<>(items);
+        byX.sort(Comparator.comparingDouble(x));
+
+        List<Node> nodes = new ArrayList<>(nodeCount);
+        for (int sliceStart = 0; sliceStart < byX.size(); sliceStart += sliceSize) {
+            List<T> slice =
+                    new ArrayList<>(
+                            byX.subList(sliceStart, Math.min(sliceStart + sliceSize, byX.size())));
+            slice.sort(Comparator.comparingDouble(y));
+            for (int start = 0; start < slice.size(); start += NODE_CAPACITY) {
+                nodes.add(
+                        toNode.apply(
+                                slice.subList(
+                                        start, Math.min(start + NODE_CAPACITY, slice.size()))));
+            }
+        }
+        return nodes;
+    }
+
+    private static final class Node {
+        final double minLat;
+        final double minLon;
+        final double maxLat;
+        final double maxLon;
+        final Node[] children; // null on leaves
+        final GeoPolygon[] entries; // null on inner nodes
+
+        private Node(
+                double minLat,
+                double minLon,
+                double maxLat,
+                double maxLon,
+                Node[] children,
+                GeoPolygon[] entries) {
+            this.minLat = minLat;
+            this.minLon = minLon;
+            this.maxLat = maxLat;
+            this.maxLon = maxLon;
+            this.children = children;
+            this.entries = entries;
+        }
+
+        static Node leaf(GeoPolygon[] entries) {
+            double loLat = Double.POSITIVE_INFINITY, loLon = Double.POSITIVE_INFINITY;
+            double hiLat = Double.NEGATIVE_INFINITY, hiLon = Double.NEGATIVE_INFINITY;
+            for (GeoPolygon p : entries) {
+                loLat = Math.min(loLat, p.minLat);
+                loLon = Math.min(loLon, p.minLon);
+                hiLat = Math.max(hiLat, p.maxLat);
+                hiLon = Math.max(hiLon, p.maxLon);
+            }
+            return new Node(loLat, loLon, hiLat, hiLon, null, entries);
+        }
+
+        static Node inner(Node[] children) {
+            double loLat = Double.POSITIVE_INFINITY, loLon = Double.POSITIVE_INFINITY;
+            double hiLat = Double.NEGATIVE_INFINITY, hiLon = Double.NEGATIVE_INFINITY;
+            for (Node n : children) {
+                loLat = Math.min(loLat, n.minLat);
+                loLon = Math.min(loLon, n.minLon);
+                hiLat = Math.max(hiLat, n.maxLat);
+                hiLon = Math.max(hiLon, n.maxLon);
+            }
+            return new Node(loLat, loLon, hiLat, hiLon, children, null);
+        }
+
+        boolean boundsContain(double lat, double lon) {
+            return lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon;
+        }
+
+        double centreLat() {
+            return (minLat + maxLat) / 2;
+        }
+
+        double centreLon() {
+            return (minLon + maxLon) / 2;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.matatu.tracker.geo;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.matatu.tracker.model.Geofence;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.PartitionOffset;
+import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Holds the live {@link GeofenceIndex}, rebuilt from the compacted {@code matatu.geofences} topic.
+ *
+ * <p>KEY CONCEPT — Copy-on-write swap: the listener thread applies a batch of upserts and
+ * tombstones to its private map, builds a brand-new index and publishes it with one reference
+ * write. Stream threads call {@link #current()} per ping and keep using whichever index they got,
+ * so a reload never pauses or locks the topology. Rebuilding once per poll batch rather than per
+ * record keeps the initial load of thousands of definitions to a few builds.
+ *
+ * <p>Every instance needs every geofence, so the listener is assigned the topic's single partition
+ * directly (no consumer group rebalancing) and always replays it from offset 0 on startup. Log
+ * compaction keeps that replay proportional to the number of geofences, not their edit history.
+ *
+ * <p>Until that replay has reached the end offset the index is empty or partial, and a matatu would
+ * appear to have left every geofence it is in. {@link #loaded()} tells stateful users when the
+ * index is complete. It is checked after every batch and on the container's idle events, so an
+ * empty topic counts as loaded too.
+ */
+@Slf4j
+@Component
+public class GeofenceRegistry {
+
+    private static final org.apache.kafka.common.TopicPartition PARTITION =
+            new org.apache.kafka.common.TopicPartition(Topics.MATATU_GEOFENCES, 0);
+
+    private final Map<String, Geofence> definitions = new HashMap<>();
+    private final AtomicReference<GeofenceIndex> index = new AtomicReference<>(GeofenceIndex.EMPTY);
+    private volatile boolean loaded;
+    private Long replayEnd;
+
+    public GeofenceIndex current() {
+        return index.get();
+    }
+
+    /** True once the startup replay has reached the topic's end: {@link #current()} is complete. */
+    public boolean loaded() {
+        return loaded;
+    }
+
+    @KafkaListener(
+            id = "geofence-registry",
+            topicPartitions =
+                    @TopicPartition(
+                            topic = Topics.MATATU_GEOFENCES,
+                            partitionOffsets =
+                                    @PartitionOffset(partition = "0", initialOffset = "0")),
+            containerFactory = "geofenceListenerContainerFactory")
+    public void onGeofences(
+            List<ConsumerRecord<String, Geofence>> records, Consumer<?, ?> consumer) {
+        apply(records);
+        checkLoaded(consumer);
+    }
+
+    /** Idle events arrive on the consumer thread, like the batches. */
+    @EventListener(condition = "event.listenerId.startsWith('geofence-registry')")
+    public void onIdle(ListenerContainerIdleEvent event) {
+        checkLoaded(event.getConsumer());
+    }
+
+    /** The end offset is taken once, at the first check: the replay is done when it is reached. */
+    void checkLoaded(Consumer<?, ?> consumer) {
+        if (loaded) {
+            return;
+        }
+        if (replayEnd == null) {
+            replayEnd = consumer.endOffsets(List.of(PARTITION)).getOrDefault(PARTITION, 0L);
+        }
+        if (consumer.position(PARTITION) >= replayEnd) {
+            loaded = true;
+            log.info(
+                    "[GEOFENCE] 🧭 Replay complete at offset {} | {} geofences",
+                    replayEnd,
+                    definitions.size());
+        }
+    }
+
+    void apply(List<ConsumerRecord<String, Geofence>> records) {
+        for (var record : records) {
+            if (record.value() == null) {
+                definitions.remove(record.key());
+            } else {
+                definitions.put(record.key(), record.value());
+            }
+        }
+        long start = System.nanoTime();
+        index.set(GeofenceIndex.build(definitions.values()));
+        log.info(
+                "[GEOFENCE] 🧭 Index rebuilt | {} geofences after {} updates in {} ms",
+                definitions.size(),
+                records.size(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+}
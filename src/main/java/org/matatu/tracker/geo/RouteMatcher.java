@@ -0,0 +1,41 @@
+package org.matatu.tracker.geo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OptionalDouble;
+
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Distance from a ping to its own licensed route.
+ *
+ * <p>KEY CONCEPT — Per-route indexes: a ping already says which route it claims to be on, so only
+ * that route's {@link RouteSegmentIndex} is consulted. Adding routes adds entries to a hash map but
+ * never changes the work done per ping.
+ */
+@Slf4j
+@Component
+public class RouteMatcher {
+
+    private final Map<String, RouteSegmentIndex> indexes = new HashMap<>();
+
+    public RouteMatcher(
+            Map<String, double[][]> routePolylines, MatatuTrackerProperties properties) {
+        double cellSize = properties.getRouteDeviation().getOffRouteMetres();
+        routePolylines.forEach(
+                (routeId, polyline) ->
+                        indexes.put(routeId, new RouteSegmentIndex(polyline, cellSize)));
+        log.info("[ROUTE MATCH] 🛣️ Indexed {} route polylines", indexes.size());
+    }
+
+    /** Empty when the route has no polyline, so unknown routes are never flagged. */
+    public OptionalDouble distanceMetres(String routeId, double latitude, double longitude) {
+        RouteSegmentIndex index = indexes.get(routeId);
+        return (index == null)
+                ? OptionalDouble.empty()
+                : OptionalDouble.of(index.distanceMetres(latitude, longitude));
+    }
+}
@@ -0,0 +1,164 @@
+package org.matatu.tracker.geo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Nearest-segment lookup for one route polyline, backed by a uniform grid.
+ *
+ * <p>The polyline is projected once onto a local flat plane in metres (equirectangular around the
+ * route's first vertex — accurate to well under 1% across a city). Each segment is registered in
+ * every grid cell its bounding box overlaps. A query scans rings of cells outward from the ping and
+ * stops as soon as no unscanned ring can hold a closer segment, so a ping near the route touches a
+ * 3×3 block of cells no matter how long the route is.
+ */
+public final class RouteSegmentIndex {
+
+    private static final double METRES_PER_DEGREE_LAT = 110_574;
+    private static final double METRES_PER_DEGREE_LON_AT_EQUATOR = 111_320;
+
+    private final double refLat;
+    private final double refLon;
+    private final double metresPerDegreeLon;
+    private final double cellSize;
+
+    // Segment i runs from (xs[i], ys[i]) to (xs[i + 1], ys[i + 1]).
+    private final double[] xs;
+    private final double[] ys;
+    private final Map<Long, int[]> cells;
+    private final int maxRing;
+    private final long minCellX;
+    private final long minCellY;
+    private final long maxCellX;
+    private final long maxCellY;
+
+    /**
+     * @param polyline {@code [latitude, longitude]} vertices in driving order, at least two
+     * @param cellSize grid cell edge in metres — around the off-route threshold works well
+     */
+    public RouteSegmentIndex(double[][] polyline, double cellSize) {
+        if (polyline.length < 2) {
+            throw new IllegalArgumentException("A route polyline needs at least 2 vertices");
+        }
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("cellSize must be positive but was " + cellSize);
+        }
+        this.refLat = polyline[0][0];
+        this.refLon = polyline[0][1];
+        this.metresPerDegreeLon =
+                METRES_PER_DEGREE_LON_AT_EQUATOR * Math.cos(Math.toRadians(refLat));
+        this.cellSize = cellSize;
+
+        this.xs = new double[polyline.length];
+        this.ys = new double[polyline.length];
+        for (int i = 0; i < polyline.length; i++) {
+            xs[i] = x(polyline[i][1]);
+            ys[i] = y(polyline[i][0]);
+        }
+
+        Map<Long, List<Integer>> buckets = new HashMap<>();
+        long loX = Long.MAX_VALUE, loY = Long.MAX_VALUE, hiX = Long.MIN_VALUE, hiY = Long.MIN_VALUE;
+        for (int s = 0; s < polyline.length - 1; s++) {
+            long x0 = cell(Math.min(xs[s], xs[s + 1]));
+            long x1 = cell(Math.max(xs[s], xs[s + 1]));
+            long y0 = cell(Math.min(ys[s], ys[s + 1]));
+            long y1 = cell(Math.max(ys[s], ys[s + 1]));
+            for (long cx = x0; cx <= x1; cx++) {
+                for (long cy = y0; cy <= y1; cy++) {
+                    buckets.computeIfAbsent(key(cx, cy), k -> new ArrayList<>()).add(s);
+                }
+            }
+            loX = Math.min(loX, x0);
+            loY = Math.min(loY, y0);
+            hiX = Math.max(hiX, x1);
+            hiY = Math.max(hiY, y1);
+        }
+        this.cells = new HashMap<>(buckets.size() * 2);
+        buckets.forEach(
+                (key, segments) ->
+                        cells.put(key, segments.stream().mapToInt(Integer::intValue).toArray()));
+        this.minCellX = loX;
+        this.minCellY = loY;
+        this.maxCellX = hiX;
+        this.maxCellY = hiY;
+        this.maxRing = (int) Math.max(hiX - loX, hiY - loY) + 1;
+    }
+
+    /** Distance in metres from the point to the closest segment of the route. */
+    public double distanceMetres(double latitude, double longitude) {
+        double px = x(longitude);
+        double py = y(latitude);
+        long cx = cell(px);
+        long cy = cell(py);
+
+        // Rings wholly outside the grid hold nothing; start from the first ring that reaches it.
+        long gap =
+                Math.max(
+                        Math.max(minCellX - cx, cx - maxCellX),
+                        Math.max(minCellY - cy, cy - maxCellY));
+        int firstRing = (int) Math.max(0, gap);
+
+        double best = Double.POSITIVE_INFINITY;
+        for (int ring = firstRing; ring <= firstRing + maxRing; ring++) {
+            // Any cell in this ring is at least (ring - 1) whole cells away from the point.
+            if (best <= (ring - 1) * cellSize) {
+                break;
+            }
+            for (long x = cx - ring; x <= cx + ring; x++) {
+                boolean edgeColumn = (x == cx - ring || x == cx + ring);
+                long step = edgeColumn ? 1 : 2L * ring;
+                for (long y = cy - ring; y <= cy + ring; y += Math.max(1, step)) {
+                    int[] segments = cells.get(key(x, y));
+                    if (segments != null) {
+                        for (int s : segments) {
+                            best = Math.min(best, segmentDistance(px, py, s));
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    public int segmentCount() {
+        return xs.length - 1;
+    }
+
+    /** Exhaustive distance over every segment — reference implementation for tests. */
+    double bruteForceDistanceMetres(double latitude, double longitude) {
+        double px = x(longitude);
+        double py = y(latitude);
+        double best = Double.POSITIVE_INFINITY;
+        for (int s = 0; s < xs.length - 1; s++) {
+            best = Math.min(best, segmentDistance(px, py, s));
+        }
+        return best;
+    }
+
+    private double segmentDistance(double px, double py, int s) {
+        double ax = xs[s], ay = ys[s];
+        double dx = xs[s + 1] - ax, dy = ys[s + 1] - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = (lengthSquared == 0) ? 0 : ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(px - (ax + t * dx), py - (ay + t * dy));
+    }
+
+    private double x(double longitude) {
+        return (longitude - refLon) * metresPerDegreeLon;
+    }
+
+    private double y(double latitude) {
+        return (latitude - refLat) * METRES_PER_DEGREE_LAT;
+    }
+
+    private long cell(double metres) {
+        return (long) Math.floor(metres / cellSize);
+    }
+
+    private static long key(long cx, long cy) {
+        return (cx << 32) ^ (cy & 0xffffffffL);
+    }
+}
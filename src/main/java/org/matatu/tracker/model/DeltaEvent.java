@@ -1,5 +1,9 @@
 package org.matatu.tracker.model;
 
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
 // Internal stream record — carries the computed delta between the processor
 // and the route-level aggregator. Never published to an external topic.
 public record DeltaEvent(
@@ -8,4 +12,6 @@ public record DeltaEvent(
         String routeName,
         int passengerDelta, // negative means alighted
         int boardings,
-        int alightings) {}
+        int alightings,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant timestamp) // event time of the ping
+        implements MatatuStateOutput {}
@@ -0,0 +1,31 @@
+package org.matatu.tracker.model;
+
+/**
+ * A proposal to give {@code value} the int {@code code} within one namespace.
+ *
+ * <p>Published to the single-partition {@code matatu.dictionary} topic keyed by {@code
+ * namespace:value}. Every instance replays the topic in order and accepts a claim only if neither
+ * the value nor the code is taken yet — the first claim wins, so all instances agree without
+ * coordinating. A losing proposer sees the winner in the log and proposes the next free code.
+ */
+public record DictionaryClaim(Namespace namespace, String value, int code) {
+
+    public enum Namespace {
+        MATATU,
+        ROUTE,
+        ROUTE_NAME,
+        SACCO_ID,
+        SACCO_NAME,
+        TERMINUS
+    }
+
+    public DictionaryClaim {
+        if (namespace == null) throw new IllegalArgumentException("namespace must not be null");
+        if (value == null) throw new IllegalArgumentException("value must not be null");
+        if (code < 0) throw new IllegalArgumentException("code must not be negative");
+    }
+
+    public String key() {
+        return namespace + ":" + value;
+    }
+}
@@ -0,0 +1,44 @@
+package org.matatu.tracker.model;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * A fare with the route, SACCO and place it was paid at, published to {@code
+ * matatu.fares.enriched}.
+ *
+ * <p>The position is the matatu's latest ping at or before the fare's timestamp:
+ *
+ * <ul>
+ *   <li>MATCHED — the ping is within the join window; every field is set.
+ *   <li>STALE — the ping is older than the join window. Route and SACCO are still set, because a
+ *       matatu does not change route between pings, but {@code geohash} and {@code stage} are null.
+ *   <li>MISSING — no ping is known for the matatu; only the fare fields are set.
+ * </ul>
+ *
+ * <p>{@code stage} is the name of the stage or terminus geofence the matatu was in, if any.
+ */
+public record EnrichedFare(
+        String transactionId,
+        String matatuId,
+        String passengerId,
+        BigDecimal amountKes,
+        FareEvent.PaymentMethod paymentMethod,
+        FareEvent.PaymentStatus status,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant timestamp,
+        Attribution attribution,
+        String routeId,
+        String saccoId,
+        String saccoName,
+        String geohash,
+        String stage,
+        Long positionAgeMs) {
+
+    public enum Attribution {
+        MATCHED,
+        STALE,
+        MISSING
+    }
+}
@@ -0,0 +1,29 @@
+package org.matatu.tracker.model;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * How a PENDING fare ended. SUCCESS and FAILED are emitted to {@code matatu.fares.resolved} when
+ * the confirmation arrives; TIMED_OUT is emitted to {@code matatu.fares.timedout} when none arrived
+ * within the timeout.
+ */
+public record FareResolution(
+        String transactionId,
+        String matatuId,
+        String passengerId,
+        BigDecimal amountKes,
+        FareEvent.PaymentMethod paymentMethod,
+        Outcome outcome,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant pendingAt,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant resolvedAt,
+        long waitMs) {
+
+    public enum Outcome {
+        SUCCESS,
+        FAILED,
+        TIMED_OUT
+    }
+}
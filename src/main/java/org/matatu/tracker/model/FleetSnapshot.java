@@ -0,0 +1,23 @@
+package org.matatu.tracker.model;
+
+import java.time.Instant;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * The vehicles of one route or stage as of one refresh tick, published to {@code
+ * matatu.fleet.snapshots} keyed by that route or stage.
+ *
+ * <p>A {@code full} snapshot lists every vehicle currently in the group. A diff lists only the
+ * vehicles that reported since the previous tick, plus the matatuIds that left the group (went
+ * off-grid, moved away from the stage, or stopped reporting). Each vehicle appears at most once
+ * however many pings it sent in between, so a board's work per tick is bounded by the vehicles it
+ * shows rather than by the ping rate.
+ */
+public record FleetSnapshot(
+        String group,
+        boolean full,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant generatedAt,
+        List<MatatuSnapshot> vehicles,
+        List<String> removed) {}
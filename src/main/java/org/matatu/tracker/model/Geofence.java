@@ -0,0 +1,31 @@
+package org.matatu.tracker.model;
+
+import java.util.List;
+
+/**
+ * A named polygon that matatus can enter, dwell in and leave — a terminus, a stage or a restricted
+ * zone such as the CBD.
+ *
+ * <p>Published to the compacted {@code matatu.geofences} topic keyed by {@code geofenceId}. The
+ * latest value per key is the current definition, and a tombstone (null value) removes it.
+ *
+ * <p>The boundary is an open ring: the last vertex is joined back to the first implicitly.
+ */
+public record Geofence(String geofenceId, Type type, String name, List<Vertex> boundary) {
+
+    public enum Type {
+        TERMINUS,
+        STAGE,
+        ZONE
+    }
+
+    public record Vertex(double latitude, double longitude) {}
+
+    public Geofence {
+        if (geofenceId == null || geofenceId.isBlank())
+            throw new IllegalArgumentException("geofenceId must not be blank");
+        if (boundary == null || boundary.size() < 3)
+            throw new IllegalArgumentException("boundary needs at least 3 vertices");
+        boundary = List.copyOf(boundary);
+    }
+}
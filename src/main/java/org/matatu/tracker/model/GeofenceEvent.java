@@ -0,0 +1,31 @@
+package org.matatu.tracker.model;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * A change in a matatu's geofence membership. Only transitions are published — a matatu parked
+ * inside a terminus for an hour produces one ENTER, one DWELL and one EXIT, not a record per ping.
+ *
+ * <p>{@code dwellSeconds} is the time spent inside so far: zero on ENTER, the dwell threshold (or
+ * more) on DWELL and the full visit length on EXIT.
+ */
+public record GeofenceEvent(
+        String matatuId,
+        String routeId,
+        String geofenceId,
+        String geofenceName,
+        Geofence.Type geofenceType,
+        Transition transition,
+        double latitude,
+        double longitude,
+        long dwellSeconds,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant timestamp) {
+
+    public enum Transition {
+        ENTER,
+        DWELL,
+        EXIT
+    }
+}
@@ -0,0 +1,15 @@
+package org.matatu.tracker.model;
+
+import java.util.Map;
+
+/**
+ * Per-matatu state kept by {@code GeofenceProcessor}: the geofences the matatu is currently inside,
+ * keyed by geofenceId.
+ *
+ * <p>Name and type are copied in on ENTER so that an EXIT can still be described after the geofence
+ * definition has been deleted.
+ */
+public record GeofenceMembership(Map<String, Visit> visits) {
+
+    public record Visit(String name, Geofence.Type type, long enteredAtMs, boolean dwellReported) {}
+}
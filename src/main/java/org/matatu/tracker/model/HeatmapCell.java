@@ -0,0 +1,22 @@
+package org.matatu.tracker.model;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * Density and average speed for one geohash cell in one window. Emitted to {@code
+ * matatu.heatmap.cells} only when the cell changed since the previous flush, so a quiet part of the
+ * city costs nothing downstream.
+ *
+ * <p>{@code pingCount} counts GPS pings, not distinct vehicles — a matatu stuck in traffic reports
+ * repeatedly from the same cell, which is exactly the congestion signal a heatmap should show.
+ */
+public record HeatmapCell(
+        String geohash,
+        int precision,
+        double centreLatitude,
+        double centreLongitude,
+        long pingCount,
+        double avgSpeedKmh,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant windowStart) {}
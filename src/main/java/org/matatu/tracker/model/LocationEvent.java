@@ -12,7 +12,8 @@ import com.fasterxml.jackson.annotation.JsonFormat;
  *
  * <p>The {@code routeId} is used as the Kafka message key so that all location events for the same
  * route land in the same partition, guaranteeing ordering per route. This is a fundamental Kafka
- * concept you'll observe first-hand in Phase 1.
+ * concept you'll observe first-hand in Phase 1. Routes listed in {@code
+ * app.partitioning.hot-routes} are salted per matatu instead (see {@code RoutePartitioner}).
  */
 public record LocationEvent(
         String matatuId,
@@ -0,0 +1,24 @@
+package org.matatu.tracker.model;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * Movement derived from two consecutive GPS fixes of the same matatu, published to {@code
+ * matatu.kinematics}.
+ *
+ * <p>{@code derivedSpeedKmh} comes from distance over time between fixes and is independent of the
+ * speed the device reports, so a large gap between the two points at a faulty or tampered speed
+ * sensor.
+ */
+public record MatatuKinematics(
+        String matatuId,
+        String routeId,
+        double reportedSpeedKmh,
+        double derivedSpeedKmh,
+        double headingDegrees,
+        double distanceMetres,
+        long intervalMs,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant timestamp)
+        implements MatatuStateOutput {}
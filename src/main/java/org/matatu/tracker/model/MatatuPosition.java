@@ -0,0 +1,26 @@
+package org.matatu.tracker.model;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * Where a matatu was at {@code timestamp} — value of the versioned {@code matatu-position-store}
+ * that fares are joined against. Not sent externally.
+ *
+ * <p>Only the fields a fare needs are kept, so the store carries a fraction of a full {@link
+ * LocationEvent}. {@code stage} is the stage or terminus geofence the matatu was in when the ping
+ * was stored, so a fare joined later, or on a replay, is not attributed by today's geofences.
+ */
+public record MatatuPosition(
+        String routeId,
+        double latitude,
+        double longitude,
+        String stage,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant timestamp) {
+
+    public static MatatuPosition of(LocationEvent event, String stage) {
+        return new MatatuPosition(
+                event.routeId(), event.latitude(), event.longitude(), stage, event.timestamp());
+    }
+}
@@ -2,7 +2,44 @@ package org.matatu.tracker.model;
 
 import java.time.Instant;
 
-// Stored in matatu-snapshot-store keyed by matatuId.
-// Remembers each matatu's last reported passenger count so we can compute deltas.
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * Latest known position and state of one matatu, published to the compacted {@code
+ * matatu.latest.positions} topic keyed by matatuId.
+ *
+ * <p>KEY CONCEPT — Latest-state topic: every accepted ping overwrites the previous snapshot for the
+ * same key, and log compaction eventually keeps only the newest one. A consumer that reads the
+ * topic from the beginning learns where the whole fleet is by reading about one record per matatu
+ * instead of every ping since the topic was created.
+ *
+ * <p>{@code speedKmh} is derived from consecutive fixes. {@code offGrid} is set by the off-grid
+ * punctuator, so a board that bootstraps from the topic also knows which matatus have gone silent.
+ */
 public record MatatuSnapshot(
-        String matatuId, String routeId, int lastPassengerCount, Instant lastUpdated) {}
+        String matatuId,
+        String routeId,
+        String routeName,
+        double latitude,
+        double longitude,
+        double speedKmh,
+        double headingDegrees,
+        int passengersOnboard,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant timestamp,
+        boolean offGrid)
+        implements MatatuStateOutput {
+
+    public static MatatuSnapshot of(MatatuState state) {
+        return new MatatuSnapshot(
+                state.matatuId(),
+                state.routeId(),
+                state.routeName(),
+                state.lastLatitude(),
+                state.lastLongitude(),
+                state.derivedSpeedKmh(),
+                state.headingDegrees(),
+                state.lastPassengerCount(),
+                state.lastEventAt(),
+                state.offGridAlerted());
+    }
+}
@@ -0,0 +1,47 @@
+package org.matatu.tracker.model;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * Everything the topology remembers about one matatu, stored in {@code matatu-state-store} keyed by
+ * matatuId.
+ *
+ * <p>Replaces the separate passenger snapshot and last-seen records: one read and one write per
+ * ping instead of two of each, and one changelog topic instead of two.
+ *
+ * <p>{@code offGridAlerted} is set when an off-grid alert has been raised for the current silence,
+ * so each episode is reported once; the next ping clears it.
+ *
+ * <p>{@code speeding} is the current run of over-threshold pings, or null when there is none.
+ */
+public record MatatuState(
+        String matatuId,
+        String routeId,
+        String routeName,
+        int lastPassengerCount,
+        double lastLatitude,
+        double lastLongitude,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant lastEventAt,
+        double derivedSpeedKmh,
+        double headingDegrees,
+        boolean offGridAlerted,
+        SpeedingStreak speeding) {
+
+    /** Marks the silence as reported. A silent matatu is no longer speeding, so any streak ends. */
+    public MatatuState withOffGridAlerted() {
+        return new MatatuState(
+                matatuId,
+                routeId,
+                routeName,
+                lastPassengerCount,
+                lastLatitude,
+                lastLongitude,
+                lastEventAt,
+                derivedSpeedKmh,
+                headingDegrees,
+                true,
+                null);
+    }
+}
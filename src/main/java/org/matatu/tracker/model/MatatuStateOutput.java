@@ -0,0 +1,8 @@
+package org.matatu.tracker.model;
+
+/**
+ * Everything {@code MatatuStateProcessor} can emit. Sealed so the topology can branch on the
+ * concrete type and the compiler knows the branches are exhaustive.
+ */
+public sealed interface MatatuStateOutput
+        permits DeltaEvent, OffGridAlert, MatatuKinematics, SpeedingEpisode, MatatuSnapshot {}
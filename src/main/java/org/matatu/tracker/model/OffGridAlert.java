@@ -23,4 +23,5 @@ public record OffGridAlert(
         double lastKnownLongitude,
         long silenceDurationMs,
         @JsonFormat(shape = JsonFormat.Shape.STRING) Instant lastSeenAt,
-        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant alertRaisedAt) {}
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant alertRaisedAt)
+        implements MatatuStateOutput {}
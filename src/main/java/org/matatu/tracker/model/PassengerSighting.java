@@ -0,0 +1,6 @@
+package org.matatu.tracker.model;
+
+// Internal stream record — a successful fare joined with the matatu's current route.
+// Feeds the unique-passenger sketches. Never published to an external topic.
+public record PassengerSighting(
+        String passengerId, String routeId, String routeName, String saccoId, String saccoName) {}
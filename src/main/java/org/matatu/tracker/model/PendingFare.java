@@ -0,0 +1,21 @@
+package org.matatu.tracker.model;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * A fare waiting for its M-Pesa confirmation — value of {@code pending-fare-store}, keyed by
+ * transactionId. Not sent externally.
+ *
+ * <p>{@code expiresAtMs} is kept so the matching entry in the expiry index can be deleted when the
+ * confirmation arrives, without scanning the index.
+ */
+public record PendingFare(
+        String matatuId,
+        String passengerId,
+        BigDecimal amountKes,
+        FareEvent.PaymentMethod paymentMethod,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant pendingAt,
+        long expiresAtMs) {}
@@ -0,0 +1,28 @@
+package org.matatu.tracker.model;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * Published to {@code matatu.route.deviations} when a matatu is confirmed off its licensed route,
+ * and again when it is confirmed back on it.
+ *
+ * <p>{@code distanceMetres} is the distance to the route polyline at the confirming ping.
+ */
+public record RouteDeviationAlert(
+        String matatuId,
+        String routeId,
+        String routeName,
+        Status status,
+        double distanceMetres,
+        double latitude,
+        double longitude,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant offRouteSince,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant timestamp) {
+
+    public enum Status {
+        OFF_ROUTE,
+        BACK_ON_ROUTE
+    }
+}
@@ -0,0 +1,16 @@
+package org.matatu.tracker.model;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * Per-matatu hysteresis state for route deviation.
+ *
+ * <p>{@code streak} counts consecutive pings that disagree with the current {@code offRoute} flag.
+ * The flag only flips once the streak reaches the configured confirmation count.
+ */
+public record RouteDeviationState(
+        boolean offRoute,
+        int streak,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant offRouteSince) {}
@@ -0,0 +1,30 @@
+package org.matatu.tracker.model;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * Speed and load-factor percentiles for one route over a window. Emitted to {@code
+ * matatu.route.quantiles} when the window closes, and returned by the analytics endpoint for
+ * arbitrary ranges of windows.
+ *
+ * <p>Load factor is {@code passengersOnboard / app.sketches.vehicle-capacity}; values above 1.0
+ * mean the matatu is carrying more than its licensed capacity. Every percentile is within {@code
+ * relativeAccuracy} of the true value.
+ */
+public record RouteQuantiles(
+        String routeId,
+        long sampleCount,
+        double speedP50,
+        double speedP95,
+        double speedP99,
+        double speedMax,
+        double loadP50,
+        double loadP95,
+        double loadP99,
+        double loadMax,
+        double relativeAccuracy,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant windowStart,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant windowEnd,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant computedAt) {}
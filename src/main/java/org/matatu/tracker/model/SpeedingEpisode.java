@@ -0,0 +1,56 @@
+package org.matatu.tracker.model;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * One sustained speeding episode, published to {@code matatu.speed.alerts} when it ends — a matatu
+ * at 85 km/h for ten minutes produces one of these instead of a record per ping.
+ *
+ * <p>{@code endedAt} is the last ping over the threshold. {@code closedBy} is RECOVERED when the
+ * matatu dropped back under the threshold and OFF_GRID when it went silent mid-episode.
+ */
+public record SpeedingEpisode(
+        String matatuId,
+        String routeId,
+        String routeName,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant startedAt,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant endedAt,
+        long durationSeconds,
+        int pings,
+        double maxSpeedKmh,
+        double avgSpeedKmh,
+        double pathMetres,
+        double startLatitude,
+        double startLongitude,
+        double endLatitude,
+        double endLongitude,
+        ClosedBy closedBy)
+        implements MatatuStateOutput {
+
+    public enum ClosedBy {
+        RECOVERED,
+        OFF_GRID
+    }
+
+    public static SpeedingEpisode of(MatatuState state, SpeedingStreak streak, ClosedBy closedBy) {
+        return new SpeedingEpisode(
+                state.matatuId(),
+                state.routeId(),
+                state.routeName(),
+                streak.startedAt(),
+                streak.lastOverAt(),
+                Duration.between(streak.startedAt(), streak.lastOverAt()).toSeconds(),
+                streak.pings(),
+                streak.maxSpeedKmh(),
+                streak.speedSumKmh() / streak.pings(),
+                streak.pathMetres(),
+                streak.startLatitude(),
+                streak.startLongitude(),
+                streak.endLatitude(),
+                streak.endLongitude(),
+                closedBy);
+    }
+}
@@ -0,0 +1,101 @@
+package org.matatu.tracker.model;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * A run of over-threshold pings, kept inside {@link MatatuState} while it lasts and null otherwise,
+ * so a matatu that is not speeding costs nothing extra in the store.
+ *
+ * <p>A streak becomes an episode ({@code open}) once it is long enough; a streak that ends before
+ * that is discarded without an alert. {@code belowPings} counts consecutive pings back under the
+ * threshold while an episode is open, and {@code belowMetres} the path they covered; that path
+ * joins {@code pathMetres} when the matatu speeds up again, so a dip inside an episode counts but
+ * the pings that close it do not.
+ */
+public record SpeedingStreak(
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant startedAt,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant lastOverAt,
+        int pings,
+        double maxSpeedKmh,
+        double speedSumKmh,
+        double pathMetres,
+        double startLatitude,
+        double startLongitude,
+        double endLatitude,
+        double endLongitude,
+        boolean open,
+        int belowPings,
+        double belowMetres) {
+
+    public static SpeedingStreak start(LocationEvent event) {
+        return new SpeedingStreak(
+                event.timestamp(),
+                event.timestamp(),
+                1,
+                event.speedKmh(),
+                event.speedKmh(),
+                0,
+                event.latitude(),
+                event.longitude(),
+                event.latitude(),
+                event.longitude(),
+                false,
+                0,
+                0);
+    }
+
+    /** Adds an over-threshold ping that was {@code metres} away from the previous fix. */
+    public SpeedingStreak extend(LocationEvent event, double metres) {
+        return new SpeedingStreak(
+                startedAt,
+                event.timestamp(),
+                pings + 1,
+                Math.max(maxSpeedKmh, event.speedKmh()),
+                speedSumKmh + event.speedKmh(),
+                pathMetres + belowMetres + metres,
+                startLatitude,
+                startLongitude,
+                event.latitude(),
+                event.longitude(),
+                open,
+                0,
+                0);
+    }
+
+    public SpeedingStreak opened() {
+        return new SpeedingStreak(
+                startedAt,
+                lastOverAt,
+                pings,
+                maxSpeedKmh,
+                speedSumKmh,
+                pathMetres,
+                startLatitude,
+                startLongitude,
+                endLatitude,
+                endLongitude,
+                true,
+                belowPings,
+                belowMetres);
+    }
+
+    /** Adds a ping back under the threshold that was {@code metres} away from the previous fix. */
+    public SpeedingStreak withBelowPing(double metres) {
+        return new SpeedingStreak(
+                startedAt,
+                lastOverAt,
+                pings,
+                maxSpeedKmh,
+                speedSumKmh,
+                pathMetres,
+                startLatitude,
+                startLongitude,
+                endLatitude,
+                endLongitude,
+                open,
+                belowPings + 1,
+                belowMetres + metres);
+    }
+}
@@ -0,0 +1,53 @@
+package org.matatu.tracker.model;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * Running totals of the trip a matatu is on — part of {@link TripState}, null between trips.
+ *
+ * <p>Every field is a counter, maximum or sum that one ping or fare updates in O(1); nothing about
+ * earlier pings is kept, so a trip's state is the same size after ten pings or ten thousand.
+ */
+public record TripProgress(
+        String fromStop,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant startedAt,
+        int pings,
+        double distanceMetres,
+        double passengerKm,
+        int peakLoad,
+        BigDecimal revenueKes,
+        int fares) {
+
+    public static TripProgress start(
+            String fromStop, Instant startedAt, int passengers, BigDecimal revenueKes, int fares) {
+        return new TripProgress(fromStop, startedAt, 1, 0, 0, passengers, revenueKes, fares);
+    }
+
+    /** Adds a leg of {@code metres} travelled with {@code passengers} on board. */
+    public TripProgress withLeg(double metres, int passengers, int loadAfter) {
+        return new TripProgress(
+                fromStop,
+                startedAt,
+                pings + 1,
+                distanceMetres + metres,
+                passengerKm + passengers * metres / 1_000,
+                Math.max(peakLoad, loadAfter),
+                revenueKes,
+                fares);
+    }
+
+    public TripProgress withFare(BigDecimal amountKes) {
+        return new TripProgress(
+                fromStop,
+                startedAt,
+                pings,
+                distanceMetres,
+                passengerKm,
+                peakLoad,
+                revenueKes.add(amountKes),
+                fares + 1);
+    }
+}
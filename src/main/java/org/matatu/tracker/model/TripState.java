@@ -0,0 +1,27 @@
+package org.matatu.tracker.model;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * Value of {@code trip-store}, keyed by matatuId — not sent externally.
+ *
+ * <p>{@code stop} is the terminus (or dwell stop) the matatu is at, or the one it last left while a
+ * trip is in progress. {@code stationarySince} is when the matatu last stopped moving, for dwell
+ * detection. Fares paid while waiting at a stop are held in {@code waitingRevenueKes} / {@code
+ * waitingFares} and credited to the trip that leaves it.
+ */
+public record TripState(
+        String routeId,
+        String stop,
+        boolean atStop,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant stationarySince,
+        double lastLatitude,
+        double lastLongitude,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant lastEventAt,
+        int lastPassengers,
+        BigDecimal waitingRevenueKes,
+        int waitingFares,
+        TripProgress trip) {}
@@ -0,0 +1,29 @@
+package org.matatu.tracker.model;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * One completed trip from stop to stop, published to {@code matatu.trips} (key = matatuId).
+ *
+ * <p>A stop is a terminus geofence, named after it, or — where no terminus is defined — a place the
+ * matatu stood still for the configured dwell time, named {@code dwell:<geohash>}. {@code
+ * passengerKm} sums passengers on board × kilometres over every leg of the trip.
+ */
+public record TripSummary(
+        String tripId,
+        String matatuId,
+        String routeId,
+        String fromStop,
+        String toStop,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant startedAt,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant endedAt,
+        long durationSeconds,
+        double distanceMetres,
+        int peakLoad,
+        double passengerKm,
+        BigDecimal revenueKes,
+        int fares,
+        int pings) {}
@@ -0,0 +1,18 @@
+package org.matatu.tracker.model;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * Distinct passengers across every window that started in [from, to], computed by merging the
+ * per-window sketches. A rider seen in several windows is counted once.
+ */
+public record UniquePassengerRollup(
+        UniquePassengerWindow.Dimension dimension,
+        String key,
+        long uniquePassengers,
+        double relativeStandardError,
+        int windowsMerged,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant from,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant to) {}
@@ -0,0 +1,28 @@
+package org.matatu.tracker.model;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * Estimated number of distinct passengers for a SACCO or route within a tumbling window. Emitted to
+ * {@code matatu.unique.passengers} once the window closes.
+ *
+ * <p>KEY CONCEPT — Approximate distinct counts: the estimate comes from a HyperLogLog sketch, so it
+ * carries a {@code relativeStandardError}. Roughly 68% of windows land within ±1 standard error of
+ * the true count and 99.7% within ±3.
+ */
+public record UniquePassengerWindow(
+        Dimension dimension,
+        String key,
+        String name,
+        long uniquePassengers,
+        double relativeStandardError,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant windowStart,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant windowEnd,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Instant computedAt) {
+    public enum Dimension {
+        SACCO,
+        ROUTE
+    }
+}
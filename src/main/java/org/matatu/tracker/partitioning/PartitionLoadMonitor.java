@@ -0,0 +1,176 @@
+package org.matatu.tracker.partitioning;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.config.MatatuTrackerProperties.Partitioning.Strategy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Measures how the {@code matatu.location} pings actually spread over partitions and routes.
+ *
+ * <p>KEY CONCEPT — Measure the partition, not the key: {@code LocationEventProducer} reports the
+ * partition from each send's {@code RecordMetadata}, so the counts are exactly what the brokers and
+ * stream tasks see — including hash collisions between keys that no key-level count would show.
+ *
+ * <p>Every {@code monitor-interval-ms} the counts are assessed and reset: the skew (busiest
+ * partition over the mean) and the share of each partition are published as gauges, and under the
+ * ROUTE strategy every route above {@code hot-share} of all pings is logged. A hot route that is
+ * not salted yet gets a warning naming the setting to change. Salting is not switched on by itself:
+ * a new key moves the route's matatus to other partitions, and their per-matatu state would split
+ * across tasks until the streams app is reset.
+ */
+@Slf4j
+@Component
+public class PartitionLoadMonitor {
+
+    private final MatatuTrackerProperties.Partitioning settings;
+    private final RoutePartitioner partitioner;
+    private final int partitions;
+    private final Map<Integer, LongAdder> perPartition = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> perRoute = new ConcurrentHashMap<>();
+    private final AtomicReference<Assessment> last;
+
+    /** One interval's load. {@code partitionShares[p]} is partition p's share of all pings. */
+    public record Assessment(
+            long pings, double[] partitionShares, double skew, List<HotRoute> hot) {}
+
+    public record HotRoute(String routeId, double share, boolean salted) {}
+
+    public PartitionLoadMonitor(
+            MatatuTrackerProperties properties,
+            RoutePartitioner partitioner,
+            MeterRegistry registry) {
+        this.settings = properties.getPartitioning();
+        this.partitioner = partitioner;
+        this.partitions = properties.getKafka().getPartitions();
+        this.last = new AtomicReference<>(new Assessment(0, new double[partitions], 1, List.of()));
+
+        Gauge.builder("matatu.partition.skew", last, ref -> ref.get().skew())
+                .description("Busiest matatu.location partition over the mean, last interval")
+                .register(registry);
+        for (int p = 0; p < partitions; p++) {
+            int partition = p;
+            Gauge.builder(
+                            "matatu.partition.share",
+                            last,
+                            ref -> ref.get().partitionShares()[partition])
+                    .tag("partition", String.valueOf(partition))
+                    .register(registry);
+        }
+    }
+
+    /** Called from the producer's send callback with the partition the broker assigned. */
+    public void record(int partition, String routeId) {
+        perPartition.computeIfAbsent(partition, p -> new LongAdder()).increment();
+        perRoute.computeIfAbsent(routeId, r -> new LongAdder()).increment();
+    }
+
+    @Scheduled(fixedRateString = "${app.partitioning.monitor-interval-ms:60000}")
+    public void report() {
+        Assessment assessment = assessAndReset();
+        if (assessment.pings() == 0) {
+            return;
+        }
+        log.info(
+                "[PARTITIONING] ⚖️ {} pings | skew {}x | shares {}",
+                assessment.pings(),
+                "%.2f".formatted(assessment.skew()),
+                shares(assessment.partitionShares()));
+        for (HotRoute route : assessment.hot()) {
+            if (route.salted()) {
+                log.info(
+                        "[PARTITIONING] 🧂 Route {} carries {}% of pings, salted over {} keys",
+                        route.routeId(),
+                        Math.round(route.share() * 100),
+                        settings.getSaltBuckets());
+            } else {
+                log.warn(
+                        "[PARTITIONING] 🔥 Route {} carries {}% of pings on one partition — add it to app.partitioning.hot-routes",
+                        route.routeId(), Math.round(route.share() * 100));
+            }
+        }
+    }
+
+    public Assessment last() {
+        return last.get();
+    }
+
+    Assessment assessAndReset() {
+        Map<Integer, Long> partitionCounts = drain(perPartition);
+        Map<String, Long> routeCounts = drain(perRoute);
+        Assessment assessment =
+                assess(
+                        partitionCounts,
+                        (partitioner.strategy() == Strategy.ROUTE) ? routeCounts : Map.of(),
+                        partitions,
+                        settings.getHotShare(),
+                        partitioner);
+        last.set(assessment);
+        return assessment;
+    }
+
+    static Assessment assess(
+            Map<Integer, Long> partitionCounts,
+            Map<String, Long> routeCounts,
+            int partitions,
+            double hotShare,
+            RoutePartitioner partitioner) {
+        long pings = partitionCounts.values().stream().mapToLong(Long::longValue).sum();
+        double[] shares = new double[partitions];
+        if (pings == 0) {
+            return new Assessment(0, shares, 1, List.of());
+        }
+        long busiest = 0;
+        for (var entry : partitionCounts.entrySet()) {
+            if (entry.getKey() < partitions) {
+                shares[entry.getKey()] = entry.getValue() / (double) pings;
+            }
+            busiest = Math.max(busiest, entry.getValue());
+        }
+        double skew = busiest / (pings / (double) partitions);
+
+        List<HotRoute> hot =
+                routeCounts.entrySet().stream()
+                        .filter(entry -> entry.getValue() / (double) pings > hotShare)
+                        .map(
+                                entry ->
+                                        new HotRoute(
+                                                entry.getKey(),
+                                                entry.getValue() / (double) pings,
+                                                partitioner.isHot(entry.getKey())))
+                        .sorted(Comparator.comparingDouble(HotRoute::share).reversed())
+                        .toList();
+        return new Assessment(pings, shares, skew, hot);
+    }
+
+    private static <K> Map<K, Long> drain(Map<K, LongAdder> counters) {
+        return counters.entrySet().stream()
+                .collect(
+                        Collectors.toMap(
+                                Map.Entry::getKey, entry -> entry.getValue().sumThenReset()));
+    }
+
+    private static String shares(double[] shares) {
+        StringBuilder text = new StringBuilder();
+        for (int p = 0; p < shares.length; p++) {
+            text.append(p == 0 ? "" : " ")
+                    .append(p)
+                    .append('=')
+                    .append(Math.round(shares[p] * 100))
+                    .append('%');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package org.matatu.tracker.partitioning;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import org.apache.kafka.common.utils.Utils;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.config.MatatuTrackerProperties.Partitioning.Strategy;
+import org.matatu.tracker.model.LocationEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * Chooses the key of every {@code matatu.location} record, and with it the partition and the stream
+ * task that handles the ping.
+ *
+ * <p>KEY CONCEPT — Key skew: Kafka hashes the key to a partition, so all pings of one routeId go to
+ * one partition and one stream thread however many partitions the topic has. A route with a third
+ * of the fleet keeps one thread busy while the others idle.
+ *
+ * <p>KEY CONCEPT — Salting: a hot route is keyed {@code route_33#k}, where {@code k} is a hash of
+ * the matatuId modulo {@code salt-buckets}. The route now hashes to up to that many partitions, and
+ * each matatu still always gets the same key, so {@code MatatuStateProcessor}'s per-matatu store
+ * keeps working without a repartition. Trips and geofences already read the {@code
+ * geofence-by-matatu} repartition and are unaffected. Route-level aggregations build one partial
+ * result per salted key and merge them by routeId (see {@code PassengerCountStream}).
+ *
+ * <p>{@link Strategy#MATATU} keys by matatuId instead: the most even spread, but no route is
+ * co-located any more, so every route aggregation pays a repartition.
+ */
+@Component
+public class RoutePartitioner {
+
+    static final char SALT_SEPARATOR = '#';
+
+    private final Strategy strategy;
+    private final Set<String> hotRoutes;
+    private final int saltBuckets;
+
+    public RoutePartitioner(MatatuTrackerProperties properties) {
+        var settings = properties.getPartitioning();
+        if (settings.getSaltBuckets() < 1) {
+            throw new IllegalArgumentException("app.partitioning.salt-buckets must be at least 1");
+        }
+        this.strategy = settings.getStrategy();
+        this.hotRoutes = Set.copyOf(settings.getHotRoutes());
+        this.saltBuckets = settings.getSaltBuckets();
+    }
+
+    /** The record key for a ping under the configured strategy. */
+    public String keyFor(LocationEvent event) {
+        return (strategy == Strategy.MATATU)
+                ? event.matatuId()
+                : aggregationKey(event.routeId(), event.matatuId());
+    }
+
+    /**
+     * The key a route-level aggregation groups by: the routeId, or for a hot route the salted
+     * sub-key of the matatu's bucket, whose partial results are merged back by routeId.
+     */
+    public String aggregationKey(String routeId, String matatuId) {
+        if (!hotRoutes.contains(routeId)) {
+            return routeId;
+        }
+        return routeId + SALT_SEPARATOR + bucket(matatuId, saltBuckets);
+    }
+
+    /**
+     * True when every {@code matatu.location} key is a plain routeId, as before salting existed.
+     */
+    public boolean routeKeyed() {
+        return strategy == Strategy.ROUTE && hotRoutes.isEmpty();
+    }
+
+    /** True when some route aggregations are split across salted sub-keys. */
+    public boolean salted() {
+        return !hotRoutes.isEmpty();
+    }
+
+    public Strategy strategy() {
+        return strategy;
+    }
+
+    public boolean isHot(String routeId) {
+        return hotRoutes.contains(routeId);
+    }
+
+    /** Same hash as Kafka's default partitioner, so buckets spread the way partitions do. */
+    static int bucket(String matatuId, int buckets) {
+        return Utils.toPositive(Utils.murmur2(matatuId.getBytes(StandardCharsets.UTF_8))) % buckets;
+    }
+}
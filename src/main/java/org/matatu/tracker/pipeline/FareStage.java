@@ -0,0 +1,160 @@
+package org.matatu.tracker.pipeline;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.model.FareEvent.PaymentStatus;
+import org.matatu.tracker.model.SaccoInfo;
+import org.matatu.tracker.model.SaccoRevenueWindow;
+import org.matatu.tracker.streams.SaccoRevenueStream;
+import org.matatu.tracker.topics.Topics;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Deduplication, failed fares and SACCO revenue windows, as {@code FareDedupStream}, {@code
+ * FailedFareStream} and {@code SaccoRevenueStream} do on Kafka.
+ *
+ * <p>Time follows the fares themselves: stream time is the latest fare timestamp seen. A revenue
+ * window is emitted once, when stream time passes its end plus the grace period, and a fare for a
+ * window that has already closed is dropped. That is what the windowed aggregation with {@code
+ * suppress(untilWindowCloses)} does, so both modes report the same totals.
+ */
+@Slf4j
+final class FareStage extends PipelineStage<Ingested<FareEvent>> {
+
+    private record WindowKey(long start, String saccoId) implements Comparable<WindowKey> {
+        @Override
+        public int compareTo(WindowKey other) {
+            int byStart = Long.compare(start, other.start);
+            return (byStart != 0) ? byStart : saccoId.compareTo(other.saccoId);
+        }
+    }
+
+    private final Map<String, SaccoInfo> saccoLookup;
+    private final List<String> sortedSaccoIds;
+    private final PipelineOutputs outputs;
+    private final long ttlMs;
+    private final long windowMs;
+    private final long graceMs;
+
+    // transactionId:status → fare timestamp, roughly in timestamp order.
+    private final LinkedHashMap<String, Long> seen = new LinkedHashMap<>();
+    private final TreeMap<WindowKey, SaccoRevenueWindow> windows = new TreeMap<>();
+    private long streamTimeMs = Long.MIN_VALUE;
+
+    FareStage(
+            MatatuTrackerProperties properties,
+            Map<String, SaccoInfo> saccoLookup,
+            PipelineOutputs outputs) {
+        super("fares", properties.getPipeline());
+        this.saccoLookup = saccoLookup;
+        this.sortedSaccoIds = saccoLookup.keySet().stream().sorted().toList();
+        this.outputs = outputs;
+        this.ttlMs = Duration.ofMinutes(properties.getDedup().getTtlMinutes()).toMillis();
+        this.windowMs =
+                Duration.ofMinutes(properties.getStreams().getRevenueWindowMinutes()).toMillis();
+        this.graceMs =
+                Duration.ofMinutes(properties.getStreams().getRevenueGraceMinutes()).toMillis();
+    }
+
+    @Override
+    protected void handle(List<Ingested<FareEvent>> batch) {
+        for (Ingested<FareEvent> ingested : batch) {
+            FareEvent fare = ingested.value();
+            long timestamp = fare.timestamp().toEpochMilli();
+            streamTimeMs = Math.max(streamTimeMs, timestamp);
+
+            String fareKey = fare.transactionId() + ":" + fare.status();
+            Long previous = seen.get(fareKey);
+            if (previous != null && Math.abs(previous - timestamp) <= ttlMs) {
+                log.warn(
+                        "[DEDUP] 🔁 Duplicate fare {} ({}) from matatu {}",
+                        fare.transactionId(),
+                        fare.status(),
+                        fare.matatuId());
+                outputs.emit(Topics.MATATU_FARES_DUPLICATES, fare.matatuId(), fare);
+                continue;
+            }
+            seen.put(fareKey, timestamp);
+
+            if (fare.status() == PaymentStatus.FAILED) {
+                log.error(
+                        "[FARES] ❌ Failed payment → txn={}, matatu={}, amount=KES {}, method={}",
+                        fare.transactionId(),
+                        fare.matatuId(),
+                        fare.amountKes(),
+                        fare.paymentMethod());
+                outputs.emit(Topics.MATATU_FARES_FAILED, fare.matatuId(), fare);
+            } else if (fare.status() == PaymentStatus.SUCCESS) {
+                addRevenue(fare, timestamp);
+            }
+        }
+        expireSeen();
+        closeWindows();
+        completed(batch);
+    }
+
+    private void addRevenue(FareEvent fare, long timestamp) {
+        long start = timestamp - Math.floorMod(timestamp, windowMs);
+        if (start + windowMs + graceMs <= streamTimeMs) {
+            return; // its window has closed, as a windowed aggregation would drop it
+        }
+        String saccoId = SaccoRevenueStream.resolveSaccoId(sortedSaccoIds, fare);
+        windows.merge(
+                new WindowKey(start, saccoId),
+                new SaccoRevenueWindow(
+                        saccoId,
+                        saccoLookup
+                                .getOrDefault(saccoId, new SaccoInfo(saccoId, "Unknown SACCO", ""))
+                                .saccoName(),
+                        fare.amountKes(),
+                        1,
+                        Instant.ofEpochMilli(start),
+                        Instant.ofEpochMilli(start + windowMs),
+                        Instant.ofEpochMilli(start + windowMs)),
+                (current, added) ->
+                        new SaccoRevenueWindow(
+                                current.saccoId(),
+                                current.saccoName(),
+                                current.totalRevenueKes().add(added.totalRevenueKes()),
+                                current.transactionCount() + 1,
+                                current.windowStart(),
+                                current.windowEnd(),
+                                current.computedAt()));
+    }
+
+    private void closeWindows() {
+        while (!windows.isEmpty()) {
+            Map.Entry<WindowKey, SaccoRevenueWindow> oldest = windows.firstEntry();
+            if (oldest.getKey().start() + windowMs + graceMs > streamTimeMs) {
+                return;
+            }
+            windows.pollFirstEntry();
+            SaccoRevenueWindow revenue = oldest.getValue();
+            log.info(
+                    "[REVENUE] 💰 SACCO: {} | Window: {} → {} | Total: KES {} | Transactions: {}",
+                    revenue.saccoName(),
+                    revenue.windowStart(),
+                    revenue.windowEnd(),
+                    revenue.totalRevenueKes(),
+                    revenue.transactionCount());
+            outputs.emit(Topics.MATATU_SACCO_REVENUE, revenue.saccoId(), revenue);
+        }
+    }
+
+    /** Forgets fares older than the ttl; they arrive in rough time order, so the oldest lead. */
+    private void expireSeen() {
+        Iterator<Long> timestamps = seen.values().iterator();
+        while (timestamps.hasNext() && timestamps.next() < streamTimeMs - ttlMs) {
+            timestamps.remove();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.matatu.tracker.pipeline;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.model.SaccoInfo;
+import org.matatu.tracker.producer.FleetEventIngest;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The topologies' core logic without Kafka, for a depot box with no broker: {@code
+ * app.pipeline.mode: IN_PROCESS} (or the {@code edge} profile).
+ *
+ * <pre>
+ * location() ─▶ [locations] enrich, delta, kinematics, speeding, off-grid ─▶ [occupancy] route totals
+ * fare()     ─▶ [fares]     dedup, failed fares, SACCO revenue windows
+ * </pre>
+ *
+ * <p>Each stage is one thread with its own {@link RingQueue} and its own in-memory state. The
+ * per-matatu transitions are the same {@code MatatuStateMachine} the Kafka processor runs, and
+ * enrichment, occupancy and SACCO assignment call the same methods as their topologies. Results go
+ * to {@link PipelineOutputs} under the topic names the Kafka topologies use.
+ *
+ * <p>KEY CONCEPT — What the broker was buying: Kafka made every stage durable, replayable and
+ * shareable between instances. Here state lives in memory, so a restart begins from empty state.
+ * The pipeline suits a single node that must keep working offline. It does not replace the cluster.
+ * In exchange, a ping costs no serialisation, no network hop and no commit interval between stages.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.pipeline.mode", havingValue = "IN_PROCESS")
+public class InProcessPipeline implements FleetEventIngest, SmartLifecycle {
+
+    private static final int RECENT_PER_TOPIC = 100;
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(10);
+
+    private final long offerTimeoutMs;
+    private final PipelineOutputs outputs = new PipelineOutputs(RECENT_PER_TOPIC);
+    private final OccupancyStage occupancy;
+    private final LocationStage locations;
+    private final FareStage fares;
+    private final LongAdder refused = new LongAdder();
+    private volatile boolean running;
+
+    public InProcessPipeline(
+            MatatuTrackerProperties properties, Map<String, SaccoInfo> saccoLookup) {
+        MatatuTrackerProperties.Pipeline pipeline = properties.getPipeline();
+        if (pipeline.getBatchSize() < 1 || pipeline.getBatchSize() > pipeline.getQueueCapacity()) {
+            throw new IllegalArgumentException(
+                    "app.pipeline.batch-size must be between 1 and queue-capacity");
+        }
+        this.offerTimeoutMs = pipeline.getOfferTimeoutMs();
+        this.occupancy = new OccupancyStage(properties, outputs);
+        this.locations = new LocationStage(properties, saccoLookup, outputs, occupancy);
+        this.fares = new FareStage(properties, saccoLookup, outputs);
+    }
+
+    @Override
+    public boolean location(LocationEvent event) {
+        return accepted(locations.offer(new Ingested<>(event, System.nanoTime()), offerTimeoutMs));
+    }
+
+    @Override
+    public boolean fare(FareEvent event) {
+        return accepted(fares.offer(new Ingested<>(event, System.nanoTime()), offerTimeoutMs));
+    }
+
+    private boolean accepted(boolean accepted) {
+        if (!accepted) {
+            refused.increment();
+        }
+        return accepted;
+    }
+
+    public PipelineOutputs outputs() {
+        return outputs;
+    }
+
+    public PipelineStats stats() {
+        return new PipelineStats(
+                List.of(locations.stats(), occupancy.stats(), fares.stats()),
+                refused.sum(),
+                occupancy.latency(),
+                fares.latency(),
+                outputs.counts());
+    }
+
+    /** Waits until every accepted event has passed through every stage. */
+    public boolean awaitIdle(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!(locations.idle() && occupancy.idle() && fares.idle())) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /** Downstream stages first, so nothing is handed to a stage that is not yet draining. */
+    @Override
+    public void start() {
+        occupancy.start();
+        locations.start();
+        fares.start();
+        running = true;
+        log.info("[PIPELINE] In-process pipeline started: no broker, state in memory");
+    }
+
+    /** Upstream stages first: each finishes its queue before the stage after it is stopped. */
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            locations.stop(STOP_TIMEOUT);
+            occupancy.stop(STOP_TIMEOUT);
+            fares.stop(STOP_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,4 @@
+package org.matatu.tracker.pipeline;
+
+/** A record on its way through the stages, with the {@link System#nanoTime()} it was accepted. */
+record Ingested<T>(T value, long acceptedNanos) {}
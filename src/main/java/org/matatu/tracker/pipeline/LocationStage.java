@@ -0,0 +1,113 @@
+package org.matatu.tracker.pipeline;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.model.DeltaEvent;
+import org.matatu.tracker.model.EnrichedLocationEvent;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.model.MatatuKinematics;
+import org.matatu.tracker.model.MatatuSnapshot;
+import org.matatu.tracker.model.MatatuState;
+import org.matatu.tracker.model.MatatuStateOutput;
+import org.matatu.tracker.model.OffGridAlert;
+import org.matatu.tracker.model.SaccoInfo;
+import org.matatu.tracker.model.SpeedingEpisode;
+import org.matatu.tracker.streams.MatatuStateMachine;
+import org.matatu.tracker.streams.RouteEnrichmentStream;
+import org.matatu.tracker.topics.Topics;
+
+/**
+ * Enrichment and per-matatu state for every ping, as {@code RouteEnrichmentStream}, {@code
+ * MatatuStateStream} and {@code SpeedAlertStream} do on Kafka.
+ *
+ * <p>Writes matatu.location.enriched, matatu.kinematics, matatu.speed.alerts, matatu.offgrid.alerts
+ * and matatu.latest.positions, and hands each batch's passenger deltas to {@link OccupancyStage}.
+ * Off-grid silence is checked on the wall clock, as the live punctuator does.
+ */
+final class LocationStage extends PipelineStage<Ingested<LocationEvent>> {
+
+    private final Map<String, SaccoInfo> saccoLookup;
+    private final double speedThresholdKmh;
+    private final long checkIntervalMs;
+    private final MatatuStateMachine machine;
+    private final PipelineOutputs outputs;
+    private final OccupancyStage occupancy;
+
+    private final Map<String, MatatuState> states = new HashMap<>();
+    private final List<Ingested<DeltaEvent>> deltas;
+    private long nextCheckMs;
+
+    LocationStage(
+            MatatuTrackerProperties properties,
+            Map<String, SaccoInfo> saccoLookup,
+            PipelineOutputs outputs,
+            OccupancyStage occupancy) {
+        super("locations", properties.getPipeline());
+        MatatuTrackerProperties.Streams streams = properties.getStreams();
+        this.saccoLookup = saccoLookup;
+        this.speedThresholdKmh = streams.getSpeedThresholdKmh();
+        this.checkIntervalMs = streams.getOffgridCheckIntervalMs();
+        this.machine =
+                new MatatuStateMachine(
+                        streams.getOffgridSilenceMs(),
+                        streams.getSpeedThresholdKmh(),
+                        properties.getSpeeding());
+        this.outputs = outputs;
+        this.occupancy = occupancy;
+        this.deltas = new ArrayList<>(properties.getPipeline().getBatchSize());
+    }
+
+    @Override
+    protected void handle(List<Ingested<LocationEvent>> batch) {
+        for (Ingested<LocationEvent> ingested : batch) {
+            LocationEvent event = ingested.value();
+            EnrichedLocationEvent enriched =
+                    RouteEnrichmentStream.enrich(event, saccoLookup, speedThresholdKmh);
+            outputs.emit(Topics.MATATU_LOCATION_ENRICHED, event.routeId(), enriched);
+
+            String matatuId = event.matatuId();
+            MatatuState state =
+                    machine.onPing(
+                            matatuId,
+                            event,
+                            states.get(matatuId),
+                            output -> route(output, ingested.acceptedNanos()));
+            states.put(matatuId, state);
+        }
+        occupancy.handOff(deltas);
+        deltas.clear();
+    }
+
+    @Override
+    protected void tick(long nowMs) {
+        if (nowMs < nextCheckMs) {
+            return;
+        }
+        nextCheckMs = nowMs + checkIntervalMs;
+        for (Map.Entry<String, MatatuState> entry : states.entrySet()) {
+            MatatuState alerted =
+                    machine.onSilence(entry.getValue(), nowMs, output -> route(output, 0));
+            if (alerted != null) {
+                entry.setValue(alerted);
+            }
+        }
+    }
+
+    private void route(MatatuStateOutput output, long acceptedNanos) {
+        switch (output) {
+            case DeltaEvent delta -> deltas.add(new Ingested<>(delta, acceptedNanos));
+            case MatatuKinematics kinematics ->
+                    outputs.emit(Topics.MATATU_KINEMATICS, kinematics.matatuId(), kinematics);
+            case MatatuSnapshot snapshot ->
+                    outputs.emit(Topics.MATATU_LATEST_POSITIONS, snapshot.matatuId(), snapshot);
+            case SpeedingEpisode episode ->
+                    outputs.emit(Topics.MATATU_SPEED_ALERTS, episode.matatuId(), episode);
+            case OffGridAlert alert ->
+                    outputs.emit(Topics.MATATU_OFFGRID_ALERTS, alert.matatuId(), alert);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.matatu.tracker.pipeline;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.model.DeltaEvent;
+import org.matatu.tracker.model.RouteOccupancy;
+import org.matatu.tracker.streams.PassengerCountStream;
+import org.matatu.tracker.topics.Topics;
+
+/**
+ * Route occupancy from the passenger deltas, as {@code PassengerCountStream} does on Kafka.
+ *
+ * <p>One thread sees every route, so there is nothing to salt and merge: each delta is applied
+ * straight to its route's running total. This is the last stage a ping passes through, so its
+ * latency is measured here.
+ */
+final class OccupancyStage extends PipelineStage<Ingested<DeltaEvent>> {
+
+    private final PipelineOutputs outputs;
+    private final Map<String, RouteOccupancy> routes = new HashMap<>();
+
+    OccupancyStage(MatatuTrackerProperties properties, PipelineOutputs outputs) {
+        super("occupancy", properties.getPipeline());
+        this.outputs = outputs;
+    }
+
+    @Override
+    protected void handle(List<Ingested<DeltaEvent>> batch) {
+        for (Ingested<DeltaEvent> ingested : batch) {
+            DeltaEvent delta = ingested.value();
+            RouteOccupancy occupancy =
+                    PassengerCountStream.apply(
+                            routes.getOrDefault(delta.routeId(), PassengerCountStream.EMPTY),
+                            delta);
+            routes.put(delta.routeId(), occupancy);
+            outputs.emit(Topics.MATATU_ROUTE_OCCUPANCY, delta.routeId(), occupancy);
+            outputs.emit(Topics.MATATU_LATEST_OCCUPANCY, delta.routeId(), occupancy);
+        }
+        completed(batch);
+    }
+}
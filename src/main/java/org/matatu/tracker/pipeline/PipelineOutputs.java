@@ -0,0 +1,82 @@
+package org.matatu.tracker.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.matatu.tracker.topics.Topics;
+
+/**
+ * Everything {@link InProcessPipeline} produces, filed under the topic the Kafka topologies would
+ * have written it to.
+ *
+ * <p>The compacted topics keep their latest value per key, as compaction would. Every other topic
+ * keeps its most recent records, which is enough for a dashboard or an operator on the depot box.
+ * Every topic also keeps a count of the records written to it.
+ */
+public class PipelineOutputs {
+
+    static final Set<String> COMPACTED =
+            Set.of(Topics.MATATU_LATEST_POSITIONS, Topics.MATATU_LATEST_OCCUPANCY);
+
+    private final int recentPerTopic;
+    private final Map<String, Map<String, Object>> latest = new ConcurrentHashMap<>();
+    private final Map<String, Deque<Object>> recent = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+    public PipelineOutputs(int recentPerTopic) {
+        this.recentPerTopic = recentPerTopic;
+    }
+
+    void emit(String topic, String key, Object value) {
+        counts.computeIfAbsent(topic, t -> new LongAdder()).increment();
+        if (COMPACTED.contains(topic)) {
+            latest.computeIfAbsent(topic, t -> new ConcurrentHashMap<>()).put(key, value);
+            return;
+        }
+        Deque<Object> records = recent.computeIfAbsent(topic, t -> new ArrayDeque<>());
+        synchronized (records) {
+            if (records.size() == recentPerTopic) {
+                records.removeFirst();
+            }
+            records.addLast(value);
+        }
+    }
+
+    /** The latest value per key of a compacted topic. */
+    @SuppressWarnings("unchecked")
+    public <V> Map<String, V> latest(String topic, Class<V> type) {
+        if (!COMPACTED.contains(topic)) {
+            throw new IllegalArgumentException(topic + " is not a compacted topic");
+        }
+        return new TreeMap<>((Map<String, V>) latest.getOrDefault(topic, Map.of()));
+    }
+
+    /** The most recent records of any other topic, oldest first. */
+    public List<Object> recent(String topic) {
+        Deque<Object> records = recent.get(topic);
+        if (records == null) {
+            return List.of();
+        }
+        synchronized (records) {
+            return new ArrayList<>(records);
+        }
+    }
+
+    public long count(String topic) {
+        LongAdder count = counts.get(topic);
+        return (count == null) ? 0 : count.sum();
+    }
+
+    public Map<String, Long> counts() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counts.forEach((topic, count) -> snapshot.put(topic, count.sum()));
+        return snapshot;
+    }
+}
@@ -0,0 +1,141 @@
+package org.matatu.tracker.pipeline;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.sketch.DDSketch;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * One thread draining one {@link RingQueue} in batches: the in-process counterpart of a stream
+ * task.
+ *
+ * <p>KEY CONCEPT — Batched hand-off: the stage takes up to {@code batchSize} records per visit to
+ * its queue and passes a whole batch on to the next stage. The cost of waking up and of touching
+ * the shared queue is paid once per batch rather than once per record. A busy stage never sleeps.
+ * An idle one waits as {@code app.pipeline.wait-strategy} says; the default backs off to parking
+ * for up to a millisecond, so a quiet pipeline costs almost no CPU.
+ *
+ * <p>State belongs to the stage thread alone, the way a store belongs to its task, so it needs no
+ * locks.
+ */
+@Slf4j
+abstract class PipelineStage<T> {
+
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final String name;
+    private final RingQueue<T> input;
+    private final int batchSize;
+    private final WaitStrategy waitStrategy;
+    private final List<T> batch;
+    private Thread thread;
+    private volatile boolean running;
+    private volatile long processed;
+    private volatile long batches;
+    // Written by this stage, read by stats(); for the stages that finish a record.
+    private final DDSketch latency = new DDSketch(0.01, 2048);
+
+    PipelineStage(String name, MatatuTrackerProperties.Pipeline settings) {
+        this.name = name;
+        this.input = new RingQueue<>(settings.getQueueCapacity());
+        this.batchSize = settings.getBatchSize();
+        this.waitStrategy = settings.getWaitStrategy();
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    /** Handles one batch, oldest record first. The list is reused after this returns. */
+    protected abstract void handle(List<T> batch);
+
+    /** Called between batches and while idle, for work driven by the clock. */
+    protected void tick(long nowMs) {}
+
+    boolean offer(T record, long timeoutMs) {
+        return input.offer(record, timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Hands a whole batch from an upstream stage to this one, waiting as long as it takes: stages
+     * never drop what they have accepted, so a slow stage slows the ones before it and, through
+     * them, the ingest calls.
+     */
+    void handOff(List<T> records) {
+        long parkNanos = 1_000;
+        while (!input.offerAll(records)) {
+            LockSupport.parkNanos(parkNanos);
+            parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+        }
+    }
+
+    void start() {
+        running = true;
+        thread = Thread.ofPlatform().name("pipeline-" + name).daemon().start(this::run);
+    }
+
+    /** Stops once everything already queued has been handled. */
+    void stop(Duration timeout) throws InterruptedException {
+        running = false;
+        if (thread != null && !thread.join(timeout)) {
+            log.warn("[PIPELINE] Stage {} still busy after {}", name, timeout);
+        }
+    }
+
+    /** Records the time since ingest of records this stage finished, all at one clock reading. */
+    protected final void completed(List<? extends Ingested<?>> records) {
+        long now = System.nanoTime();
+        synchronized (latency) {
+            for (Ingested<?> record : records) {
+                latency.add(now - record.acceptedNanos());
+            }
+        }
+    }
+
+    PipelineStats.Latency latency() {
+        synchronized (latency) {
+            return PipelineStats.Latency.of(latency);
+        }
+    }
+
+    /** Every accepted record has been handled. */
+    boolean idle() {
+        return processed == input.offered();
+    }
+
+    PipelineStats.Stage stats() {
+        long done = processed;
+        long visits = batches;
+        return new PipelineStats.Stage(
+                name,
+                input.size(),
+                input.capacity(),
+                done,
+                visits,
+                (visits == 0) ? 0 : (double) done / visits);
+    }
+
+    private void run() {
+        int idleRounds = 0;
+        while (running || input.size() > 0) {
+            int taken = input.drainTo(batch, batchSize);
+            if (taken > 0) {
+                try {
+                    handle(batch);
+                } catch (RuntimeException ex) {
+                    log.error("[PIPELINE] Stage {} failed on a batch of {}", name, taken, ex);
+                }
+                batch.clear();
+                processed += taken;
+                batches++;
+                idleRounds = 0;
+            } else {
+                waitStrategy.idle(++idleRounds, input);
+            }
+            tick(System.currentTimeMillis());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.matatu.tracker.pipeline;
+
+import java.util.List;
+import java.util.Map;
+
+import org.matatu.tracker.sketch.DDSketch;
+
+/**
+ * A point-in-time view of {@link InProcessPipeline}: each stage's queue and throughput, events
+ * refused because a queue stayed full, latency from ingest to the last output of a ping or fare,
+ * and records written per topic.
+ */
+public record PipelineStats(
+        List<Stage> stages,
+        long refused,
+        Latency locations,
+        Latency fares,
+        Map<String, Long> emitted) {
+
+    public record Stage(
+            String stage,
+            int queued,
+            int capacity,
+            long processed,
+            long batches,
+            double averageBatch) {}
+
+    /** Microseconds from the ingest call until the stage that finishes the record is done. */
+    public record Latency(long count, double p50Micros, double p99Micros, double maxMicros) {
+
+        static Latency of(DDSketch sketch) {
+            if (sketch.count() == 0) {
+                return new Latency(0, 0, 0, 0);
+            }
+            return new Latency(
+                    sketch.count(),
+                    sketch.quantile(0.5) / 1_000,
+                    sketch.quantile(0.99) / 1_000,
+                    sketch.max() / 1_000);
+        }
+    }
+}
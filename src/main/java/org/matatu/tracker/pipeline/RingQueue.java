@@ -0,0 +1,188 @@
+package org.matatu.tracker.pipeline;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free queue for many producers and one consumer, preallocated as a ring of slots.
+ *
+ * <p>KEY CONCEPT — Sequence per slot: every slot carries a sequence number that says whose turn it
+ * is. A producer claims position {@code p} with one compare-and-set on the tail, writes the slot,
+ * then sets its sequence to {@code p + 1} to publish it. The consumer takes the slot once it sees
+ * that sequence, and hands it back to the producers a full lap later by setting it to {@code p +
+ * capacity}. Producers never wait for one another beyond a CAS retry, the consumer never takes a
+ * lock, and nothing is allocated per element. A full ring is reported, not waited on, so the caller
+ * decides whether to back off or refuse.
+ *
+ * <p>An empty ring is waited on as the consumer's {@link WaitStrategy} says. A consumer that parks
+ * registers itself first, and producers unpark it after publishing.
+ */
+public final class RingQueue<T> {
+
+    private final int mask;
+    private final AtomicReferenceArray<T> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    // Written by the consumer only; read by size() from any thread.
+    private final AtomicLong head = new AtomicLong();
+    // The consumer while it is parked in awaitPublish, else null.
+    private volatile Thread sleeping;
+
+    public RingQueue(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /** Adds {@code element} unless the ring is full. Safe from any number of threads. */
+    public boolean offer(T element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, element);
+                    sequences.lazySet(index, position + 1);
+                    wakeConsumer();
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false; // the consumer has not yet freed this slot: full
+            }
+            // Another producer claimed this position first; try the next one.
+        }
+    }
+
+    /**
+     * Adds all of {@code elements} as one contiguous run, or none of them if the ring lacks room.
+     * One compare-and-set claims the whole run, so a stage hands on a batch for the price of one
+     * element.
+     */
+    public boolean offerAll(List<? extends T> elements) {
+        int count = elements.size();
+        if (count == 0) {
+            return true;
+        }
+        if (count > capacity()) {
+            throw new IllegalArgumentException(count + " elements exceed capacity " + capacity());
+        }
+        while (true) {
+            long position = tail.get();
+            long last = position + count - 1;
+            // The consumer frees slots in order: if the last one is free, so are the others.
+            long difference = sequences.get((int) last & mask) - last;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + count)) {
+                    for (int i = 0; i < count; i++) {
+                        int index = (int) (position + i) & mask;
+                        slots.lazySet(index, elements.get(i));
+                        sequences.lazySet(index, position + i + 1);
+                    }
+                    wakeConsumer();
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Adds {@code element}, waiting up to {@code timeout} for room: spinning first, then yielding,
+     * then parking for growing intervals. Returns false if the ring stayed full.
+     */
+    public boolean offer(T element, long timeout, TimeUnit unit) {
+        if (offer(element)) {
+            return true;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long parkNanos = 1_000;
+        for (int spins = 0; ; spins++) {
+            if (offer(element)) {
+                return true;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            if (spins < 100) {
+                Thread.onSpinWait();
+            } else if (spins < 200) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(parkNanos);
+                parkNanos = Math.min(parkNanos * 2, 1_000_000);
+            }
+        }
+    }
+
+    /**
+     * Moves up to {@code max} elements into {@code target}, oldest first, and returns how many.
+     * Only the single consumer thread may call this.
+     */
+    public int drainTo(Collection<? super T> target, int max) {
+        long position = head.get();
+        int drained = 0;
+        while (drained < max) {
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                break; // not yet published
+            }
+            target.add(slots.get(index));
+            slots.lazySet(index, null);
+            sequences.lazySet(index, position + mask + 1);
+            position++;
+            drained++;
+        }
+        if (drained > 0) {
+            head.lazySet(position);
+        }
+        return drained;
+    }
+
+    /**
+     * Parks the consumer for up to {@code nanos}, or until a producer publishes. Only the single
+     * consumer thread may call this.
+     */
+    void awaitPublish(long nanos) {
+        sleeping = Thread.currentThread();
+        // Re-check after registering: a producer that published before it saw no sleeper.
+        if (size() == 0) {
+            LockSupport.parkNanos(this, nanos);
+        }
+        sleeping = null;
+    }
+
+    private void wakeConsumer() {
+        Thread consumer = sleeping;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /** Elements accepted since creation: the tail position. */
+    public long offered() {
+        return tail.get();
+    }
+
+    /** Elements waiting, approximately when producers or the consumer are active. */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
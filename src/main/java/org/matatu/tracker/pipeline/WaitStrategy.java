@@ -0,0 +1,47 @@
+package org.matatu.tracker.pipeline;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread that drains a {@link RingQueue} waits when the ring is empty.
+ *
+ * <p>KEY CONCEPT — Latency against CPU: a consumer that never stops polling sees a new element
+ * within nanoseconds but owns a core while idle. One that parks costs nothing while idle but needs
+ * microseconds to wake. The strategies run from one end to the other:
+ *
+ * <ul>
+ *   <li>{@code BUSY_SPIN} — polls without pause. Only for a thread with a core of its own.
+ *   <li>{@code YIELDING} — spins briefly, then gives its time slice to any other runnable thread.
+ *   <li>{@code BACKOFF} — spins, yields, then parks for growing intervals up to a millisecond.
+ *   <li>{@code BLOCKING} — spins briefly, then parks until a producer wakes it. Producers pay an
+ *       unpark when they publish to a sleeping consumer.
+ * </ul>
+ */
+public enum WaitStrategy {
+    BUSY_SPIN,
+    YIELDING,
+    BACKOFF,
+    BLOCKING;
+
+    private static final int SPINS = 100;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Waits once, after {@code rounds} consecutive polls of {@code queue} found nothing. Only the
+     * queue's consumer thread may call this.
+     */
+    public void idle(int rounds, RingQueue<?> queue) {
+        if (this == BUSY_SPIN || rounds < SPINS) {
+            Thread.onSpinWait();
+        } else if (this == BLOCKING) {
+            queue.awaitPublish(MAX_PARK_NANOS);
+        } else if (this == YIELDING || rounds < 2 * SPINS) {
+            Thread.yield();
+        } else {
+            // 1 µs, doubling per round, capped at 1 ms.
+            int doublings = Math.min(rounds - 2 * SPINS, 10);
+            LockSupport.parkNanos(Math.min(1_000L << doublings, MAX_PARK_NANOS));
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package org.matatu.tracker.producer;
+
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.model.LocationEvent;
+
+/**
+ * Where {@code MatatuController} and {@link MatatuFleetSimulator} hand new events: to Kafka through
+ * the producers ({@link KafkaFleetEventIngest}), or straight into the in-process pipeline when
+ * {@code app.pipeline.mode} is {@code IN_PROCESS}.
+ */
+public interface FleetEventIngest {
+
+    /** Returns false if the event was refused because the pipeline is full. */
+    boolean location(LocationEvent event);
+
+    /** Returns false if the event was refused because the pipeline is full. */
+    boolean fare(FareEvent event);
+}
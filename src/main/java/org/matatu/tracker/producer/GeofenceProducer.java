@@ -0,0 +1,55 @@
+package org.matatu.tracker.producer;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.matatu.tracker.model.Geofence;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Publishes geofence definitions to the compacted {@code matatu.geofences} topic.
+ *
+ * <p>KEY CONCEPT — Compaction: the topic keeps only the latest value per key. An upsert is a plain
+ * send keyed by geofenceId, and a delete is a tombstone (same key, null value) that compaction
+ * eventually removes along with every older version.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class GeofenceProducer {
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+
+    public CompletableFuture<SendResult<String, Object>> upsert(Geofence geofence) {
+        return kafkaTemplate
+                .send(Topics.MATATU_GEOFENCES, geofence.geofenceId(), geofence)
+                .whenComplete(
+                        (result, ex) -> {
+                            if (ex != null) {
+                                log.error(
+                                        "Failed to publish geofence [{}]: {}",
+                                        geofence.geofenceId(),
+                                        ex.getMessage());
+                            }
+                        });
+    }
+
+    public CompletableFuture<SendResult<String, Object>> delete(String geofenceId) {
+        return kafkaTemplate
+                .send(Topics.MATATU_GEOFENCES, geofenceId, null)
+                .whenComplete(
+                        (result, ex) -> {
+                            if (ex != null) {
+                                log.error(
+                                        "Failed to delete geofence [{}]: {}",
+                                        geofenceId,
+                                        ex.getMessage());
+                            }
+                        });
+    }
+}
@@ -0,0 +1,134 @@
+package org.matatu.tracker.producer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.pipeline.RingQueue;
+import org.matatu.tracker.pipeline.WaitStrategy;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Moves events from request threads to a few dedicated sender threads through preallocated
+ * lock-free rings, so a request thread never enters the Kafka producer.
+ *
+ * <p>KEY CONCEPT — Keep the request thread out of the producer: {@code KafkaTemplate.send}
+ * serialises the record, picks a partition, appends to the producer's buffer and allocates a future
+ * and its callback. It can also block for up to {@code max.block.ms} while metadata is missing or
+ * the buffer is full. Here a request thread only claims a slot with one compare-and-set and
+ * returns. When the ring is full, the event is refused at once and the caller answers HTTP 429, so
+ * a slow broker shows up as explicit back-pressure instead of a pile of stuck servlet threads.
+ *
+ * <p>KEY CONCEPT — One ring per sender: each sender thread owns one {@link RingQueue}, and an event
+ * goes to the ring chosen by its matatu. The rings stay single-consumer, and a matatu's events
+ * reach the producer in the order they were accepted, which keeps them in order on their partition.
+ */
+@Slf4j
+public class IngestHandoff {
+
+    private final List<RingQueue<Object>> rings = new ArrayList<>();
+    private final List<Thread> senders = new ArrayList<>();
+    private final int batchSize;
+    private final WaitStrategy waitStrategy;
+    private final Consumer<Object> sink;
+    private final Counter rejected;
+    private volatile boolean running;
+
+    /** {@code sink} sends one event; it runs on the sender threads only. */
+    public IngestHandoff(
+            MatatuTrackerProperties.Ingest settings,
+            Consumer<Object> sink,
+            MeterRegistry registry) {
+        if (settings.getSenderThreads() < 1) {
+            throw new IllegalArgumentException("app.ingest.sender-threads must be at least 1");
+        }
+        for (int i = 0; i < settings.getSenderThreads(); i++) {
+            rings.add(new RingQueue<>(settings.getRingCapacity()));
+        }
+        this.batchSize = settings.getBatchSize();
+        this.waitStrategy = settings.getWaitStrategy();
+        this.sink = sink;
+        this.rejected = registry.counter("matatu.ingest.rejected");
+        Gauge.builder("matatu.ingest.queued", this, IngestHandoff::queued).register(registry);
+    }
+
+    /**
+     * Queues {@code event} on the ring of {@code matatuId}. Never blocks: returns false, and counts
+     * a rejection, when that ring is full or the senders are stopped.
+     */
+    public boolean publish(String matatuId, Object event) {
+        RingQueue<Object> ring = rings.get(Math.floorMod(matatuId.hashCode(), rings.size()));
+        if (running && ring.offer(event)) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public void start() {
+        running = true;
+        for (int i = 0; i < rings.size(); i++) {
+            RingQueue<Object> ring = rings.get(i);
+            senders.add(
+                    Thread.ofPlatform()
+                            .name("ingest-sender-" + i)
+                            .daemon()
+                            .start(() -> drain(ring)));
+        }
+        log.info(
+                "[INGEST] Ring hand-off started: {} senders × {} slots, {} wait",
+                rings.size(),
+                rings.getFirst().capacity(),
+                waitStrategy);
+    }
+
+    /** Stops accepting events, then waits for the senders to hand over what is already queued. */
+    public void stop(Duration timeout) throws InterruptedException {
+        running = false;
+        for (Thread sender : senders) {
+            if (!sender.join(timeout)) {
+                log.warn("[INGEST] {} still sending after {}", sender.getName(), timeout);
+            }
+        }
+        senders.clear();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int queued() {
+        return rings.stream().mapToInt(RingQueue::size).sum();
+    }
+
+    public long rejected() {
+        return (long) rejected.count();
+    }
+
+    private void drain(RingQueue<Object> ring) {
+        List<Object> batch = new ArrayList<>(batchSize);
+        int idleRounds = 0;
+        while (running || ring.size() > 0) {
+            if (ring.drainTo(batch, batchSize) == 0) {
+                waitStrategy.idle(++idleRounds, ring);
+                continue;
+            }
+            idleRounds = 0;
+            for (Object event : batch) {
+                try {
+                    sink.accept(event);
+                } catch (RuntimeException ex) {
+                    // Already accepted with 202: the loss is logged, as a failed send is.
+                    log.error("[INGEST] Failed to hand {} to the producer", event, ex);
+                }
+            }
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.matatu.tracker.producer;
+
+import java.time.Duration;
+
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.model.LocationEvent;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The default ingest: every event goes to its topic and the Kafka Streams topologies.
+ *
+ * <p>With {@code app.ingest.handoff: DIRECT} the calling thread sends. With {@code RING} it only
+ * publishes into an {@link IngestHandoff} and sender threads call the producers.
+ */
+@Service
+@ConditionalOnProperty(name = "app.pipeline.mode", havingValue = "KAFKA", matchIfMissing = true)
+public class KafkaFleetEventIngest implements FleetEventIngest, SmartLifecycle {
+
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(10);
+
+    private final LocationEventProducer locationProducer;
+    private final FareEventProducer fareProducer;
+    private final IngestHandoff handoff;
+
+    public KafkaFleetEventIngest(
+            LocationEventProducer locationProducer,
+            FareEventProducer fareProducer,
+            MatatuTrackerProperties properties,
+            MeterRegistry registry) {
+        this.locationProducer = locationProducer;
+        this.fareProducer = fareProducer;
+        MatatuTrackerProperties.Ingest ingest = properties.getIngest();
+        this.handoff =
+                (ingest.getHandoff() == MatatuTrackerProperties.Ingest.Handoff.RING)
+                        ? new IngestHandoff(ingest, this::send, registry)
+                        : null;
+    }
+
+    /**
+     * DIRECT: always accepted, as the send is asynchronous and failures are logged by the producer.
+     * RING: refused when the sender's ring is full.
+     */
+    @Override
+    public boolean location(LocationEvent event) {
+        if (handoff != null) {
+            return handoff.publish(event.matatuId(), event);
+        }
+        locationProducer.send(event);
+        return true;
+    }
+
+    @Override
+    public boolean fare(FareEvent event) {
+        if (handoff != null) {
+            return handoff.publish(event.matatuId(), event);
+        }
+        fareProducer.send(event);
+        return true;
+    }
+
+    private void send(Object event) {
+        switch (event) {
+            case LocationEvent location -> locationProducer.send(location);
+            case FareEvent fare -> fareProducer.send(fare);
+            default -> throw new IllegalArgumentException("Not a fleet event: " + event);
+        }
+    }
+
+    @Override
+    public void start() {
+        if (handoff != null) {
+            handoff.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (handoff == null) {
+            return;
+        }
+        try {
+            handoff.stop(STOP_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return handoff == null || handoff.isRunning();
+    }
+
+    /**
+     * Below the web server's phase: the senders start before the first request and stop after the
+     * last one, so nothing accepted is left in a ring.
+     */
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+}
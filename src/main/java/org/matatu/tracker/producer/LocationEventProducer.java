@@ -2,7 +2,10 @@ package org.matatu.tracker.producer;
 
 import java.util.concurrent.CompletableFuture;
 
+import org.matatu.tracker.encoding.LocationSerdes;
 import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.partitioning.PartitionLoadMonitor;
+import org.matatu.tracker.partitioning.RoutePartitioner;
 import org.matatu.tracker.topics.Topics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,6 +24,11 @@ import lombok.RequiredArgsConstructor;
  * route. - CompletableFuture: send() is async. We attach callbacks to log success/failure without
  * blocking the calling thread. In production you'd send these to a Dead Letter Queue on failure
  * (Phase 4 concept, previewed here).
+ *
+ * <p>The key itself comes from {@link RoutePartitioner}: routeId by default, salted for routes in
+ * {@code app.partitioning.hot-routes}, or matatuId. Either way one matatu always has one key, so
+ * its own pings stay in order; a salted route is only ordered per matatu. Every acknowledged send
+ * reports its partition to {@link PartitionLoadMonitor}.
  */
 @Service
 @RequiredArgsConstructor
@@ -29,6 +37,9 @@ public class LocationEventProducer {
     private static final Logger log = LoggerFactory.getLogger(LocationEventProducer.class);
 
     private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final RoutePartitioner partitioner;
+    private final PartitionLoadMonitor loadMonitor;
+    private final LocationSerdes locationSerdes;
 
     /**
      * Sends a location event to Kafka.
@@ -38,7 +49,8 @@ public class LocationEventProducer {
      */
     public CompletableFuture<SendResult<String, Object>> send(LocationEvent event) {
         CompletableFuture<SendResult<String, Object>> future =
-                kafkaTemplate.send(Topics.MATATU_LOCATION, event.routeId(), event);
+                kafkaTemplate.send(
+                        Topics.MATATU_LOCATION, partitioner.keyFor(event), encode(event));
 
         future.whenComplete(
                 (result, ex) -> {
@@ -49,6 +61,7 @@ public class LocationEventProducer {
                                 event.routeId(),
                                 ex.getMessage());
                     } else {
+                        loadMonitor.record(result.getRecordMetadata().partition(), event.routeId());
                         log.debug(
                                 "Published location event → topic={}, partition={}, offset={}, matatu={}, route={}",
                                 result.getRecordMetadata().topic(),
@@ -63,4 +76,11 @@ public class LocationEventProducer {
 
         return future;
     }
+
+    /** Dictionary-encoded bytes when {@code app.encoding.format} is DICTIONARY, else the record. */
+    private Object encode(LocationEvent event) {
+        return locationSerdes.compact()
+                ? locationSerdes.location().serializer().serialize(Topics.MATATU_LOCATION, event)
+                : event;
+    }
 }
@@ -22,9 +22,11 @@ import lombok.RequiredArgsConstructor;
  * <p>In a real system each physical matatu device would be its own Kafka producer. Here we simulate
  * the entire fleet from a single scheduled method — the Kafka concepts are identical.
  *
- * <p>Notice this class delegates to {@link LocationEventProducer} and {@link FareEventProducer}
- * rather than touching KafkaTemplate directly. This is the right layering: Simulator (what to send)
- * → Producer service (how to send) → KafkaTemplate (send it)
+ * <p>Notice this class delegates to {@link FleetEventIngest} — normally the {@link
+ * LocationEventProducer} and {@link FareEventProducer} — rather than touching KafkaTemplate
+ * directly. This is the right layering: Simulator (what to send) → Producer service (how to send) →
+ * KafkaTemplate (send it). The same layering lets the in-process pipeline take the producers'
+ * place.
  *
  * <p>KEY CONCEPT — Partitioning in action: Watch the logs and notice that events for the same
  * routeId always land on the same partition number. That's Kafka's key-based partitioning at work.
@@ -36,8 +38,7 @@ public class MatatuFleetSimulator {
     //    private static final Logger log = LoggerFactory.getLogger(MatatuFleetSimulator.class);
     private static final Random RANDOM = new Random();
 
-    private final LocationEventProducer locationProducer;
-    private final FareEventProducer fareProducer;
+    private final FleetEventIngest ingest;
     private final AtomicInteger fareCounter = new AtomicInteger(1000);
 
     // Our simulated Nairobi routes
@@ -98,7 +99,7 @@ public class MatatuFleetSimulator {
                                     RANDOM.nextDouble(20, 90), // speed between 20–90 km/h
                                     RANDOM.nextInt(1, 34), // 1–33 passengers
                                     Instant.now());
-                    locationProducer.send(event);
+                    ingest.location(event);
                 });
     }
 
@@ -110,7 +111,7 @@ public class MatatuFleetSimulator {
     public void broadcastFarePayments() {
         MATATUS.stream()
                 .flatMap(matatu -> Stream.of(buildFare(matatu), buildFare(matatu)))
-                .forEach(fareProducer::send);
+                .forEach(ingest::fare);
     }
 
     // ── Helpers ───────────────────────────────────────────────────────────────
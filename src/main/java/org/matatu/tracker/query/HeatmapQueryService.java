@@ -0,0 +1,62 @@
+package org.matatu.tracker.query;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.kafka.streams.state.QueryableStoreTypes;
+import org.apache.kafka.streams.state.ReadOnlyWindowStore;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.geo.GeoHash;
+import org.matatu.tracker.model.HeatmapCell;
+import org.matatu.tracker.streams.HeatmapProcessor;
+import org.matatu.tracker.streams.HeatmapStream;
+import org.springframework.kafka.streams.KafkaStreamsInteractiveQueryService;
+import org.springframework.stereotype.Service;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Bounding-box queries over {@link HeatmapStream#HEATMAP_STORE}.
+ *
+ * <p>The box is converted into the geohash cells it covers and each cell is fetched by key for a
+ * single window. There is no range scan over the store, so a viewport over Westlands costs the same
+ * whether or not the rest of Nairobi is busy.
+ */
+@Service
+@RequiredArgsConstructor
+public class HeatmapQueryService {
+
+    private final KafkaStreamsInteractiveQueryService interactiveQueryService;
+    private final MatatuTrackerProperties properties;
+
+    public List<HeatmapCell> cells(
+            double minLat, double minLon, double maxLat, double maxLon, int precision, Instant at) {
+        var heatmap = properties.getHeatmap();
+        if (!heatmap.getPrecisions().contains(precision)) {
+            throw new IllegalArgumentException(
+                    "Precision %d is not aggregated; configured precisions are %s"
+                            .formatted(precision, heatmap.getPrecisions()));
+        }
+        List<String> cover =
+                GeoHash.cover(
+                        minLat, minLon, maxLat, maxLon, precision, heatmap.getMaxQueryCells());
+
+        long windowSizeMs = Duration.ofMinutes(heatmap.getWindowMinutes()).toMillis();
+        long windowStart = at.toEpochMilli() - (at.toEpochMilli() % windowSizeMs);
+
+        ReadOnlyWindowStore<String, byte[]> store =
+                interactiveQueryService.retrieveQueryableStore(
+                        HeatmapStream.HEATMAP_STORE, QueryableStoreTypes.windowStore());
+
+        List<HeatmapCell> cells = new ArrayList<>();
+        for (String cell : cover) {
+            byte[] aggregate = store.fetch(cell, windowStart);
+            if (aggregate != null) {
+                cells.add(HeatmapProcessor.toCell(cell, windowStart, aggregate));
+            }
+        }
+        return cells;
+    }
+}
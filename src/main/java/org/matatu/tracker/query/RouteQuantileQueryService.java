@@ -0,0 +1,45 @@
+package org.matatu.tracker.query;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import org.apache.kafka.streams.state.QueryableStoreTypes;
+import org.apache.kafka.streams.state.ReadOnlyWindowStore;
+import org.apache.kafka.streams.state.WindowStoreIterator;
+import org.matatu.tracker.model.RouteQuantiles;
+import org.matatu.tracker.sketch.RouteQuantileSketches;
+import org.matatu.tracker.streams.RouteQuantileStream;
+import org.springframework.kafka.streams.KafkaStreamsInteractiveQueryService;
+import org.springframework.stereotype.Service;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Percentiles for any range of windows, computed by merging the per-window DDSketches held in
+ * {@link RouteQuantileStream#ROUTE_QUANTILE_STORE}. Open windows are included, so the answer is
+ * live rather than waiting for the window to close.
+ */
+@Service
+@RequiredArgsConstructor
+public class RouteQuantileQueryService {
+
+    private final KafkaStreamsInteractiveQueryService interactiveQueryService;
+
+    public Optional<RouteQuantiles> quantiles(String routeId, Instant from, Instant to) {
+        ReadOnlyWindowStore<String, byte[]> store =
+                interactiveQueryService.retrieveQueryableStore(
+                        RouteQuantileStream.ROUTE_QUANTILE_STORE,
+                        QueryableStoreTypes.windowStore());
+
+        RouteQuantileSketches merged = null;
+        try (WindowStoreIterator<byte[]> windows = store.fetch(routeId, from, to)) {
+            while (windows.hasNext()) {
+                var window = RouteQuantileSketches.fromBytes(windows.next().value);
+                merged = (merged == null) ? window : merged.merge(window);
+            }
+        }
+
+        return Optional.ofNullable(merged)
+                .map(sketches -> sketches.summarise(routeId, from, to, Instant.now()));
+    }
+}
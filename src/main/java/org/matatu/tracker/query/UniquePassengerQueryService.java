@@ -0,0 +1,65 @@
+package org.matatu.tracker.query;
+
+import java.time.Instant;
+
+import org.apache.kafka.streams.state.QueryableStoreTypes;
+import org.apache.kafka.streams.state.ReadOnlyWindowStore;
+import org.apache.kafka.streams.state.WindowStoreIterator;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.model.UniquePassengerRollup;
+import org.matatu.tracker.model.UniquePassengerWindow.Dimension;
+import org.matatu.tracker.sketch.HyperLogLog;
+import org.matatu.tracker.streams.UniquePassengerStream;
+import org.springframework.kafka.streams.KafkaStreamsInteractiveQueryService;
+import org.springframework.stereotype.Service;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Answers "how many distinct riders between from and to?" by merging the per-window HyperLogLog
+ * sketches held in the local window stores.
+ *
+ * <p>KEY CONCEPT — Interactive queries: the window store written by {@link UniquePassengerStream}
+ * is read directly from this instance's RocksDB, without a round trip through a topic. Only keys
+ * owned by local stream tasks are visible.
+ */
+@Service
+@RequiredArgsConstructor
+public class UniquePassengerQueryService {
+
+    private final KafkaStreamsInteractiveQueryService interactiveQueryService;
+    private final MatatuTrackerProperties properties;
+
+    public UniquePassengerRollup rollup(Dimension dimension, String key, Instant from, Instant to) {
+        ReadOnlyWindowStore<String, byte[]> store =
+                interactiveQueryService.retrieveQueryableStore(
+                        storeName(dimension), QueryableStoreTypes.windowStore());
+
+        int precision = properties.getSketches().getHllPrecision();
+        HyperLogLog merged = HyperLogLog.wrap(HyperLogLog.empty(precision));
+        int windowsMerged = 0;
+
+        try (WindowStoreIterator<byte[]> windows = store.fetch(key, from, to)) {
+            while (windows.hasNext()) {
+                merged.merge(windows.next().value);
+                windowsMerged++;
+            }
+        }
+
+        return new UniquePassengerRollup(
+                dimension,
+                key,
+                merged.estimate(),
+                HyperLogLog.relativeStandardError(precision),
+                windowsMerged,
+                from,
+                to);
+    }
+
+    private String storeName(Dimension dimension) {
+        return switch (dimension) {
+            case SACCO -> UniquePassengerStream.SACCO_STORE;
+            case ROUTE -> UniquePassengerStream.ROUTE_STORE;
+        };
+    }
+}
@@ -0,0 +1,235 @@
+package org.matatu.tracker.replay;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ListOffsetsResult.ListOffsetsResultInfo;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Drives a historical replay: positions the replay application at the first offset of {@code
+ * app.replay.from}, reports progress towards the offset of {@code app.replay.to}, and stops the
+ * topologies once every input partition has been committed past it.
+ *
+ * <p>KEY CONCEPT — Timestamp-bounded offsets: Kafka indexes each partition by record timestamp, so
+ * {@code listOffsets(forTimestamp)} finds the first offset at or after an instant without reading
+ * the data. Committing those offsets for the replay's consumer group before Kafka Streams starts
+ * makes the topologies begin exactly there — the same trick {@code kafka-streams-application-reset
+ * --to-datetime} uses. Offsets are only seeded when the group has none, so restarting a replay
+ * resumes it instead of starting over.
+ *
+ * <p>The end is checked against committed offsets, so the topologies may run up to one commit
+ * interval past {@code to} before they are stopped. Windows only close once stream time passes
+ * their end plus grace: set {@code to} at least one window past the last window you need.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.replay.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class ReplayCoordinator implements SmartLifecycle {
+
+    static final List<String> INPUT_TOPICS = List.of(Topics.MATATU_LOCATION, Topics.MATATU_FARES);
+
+    private final MatatuTrackerProperties properties;
+    private final StreamsBuilderFactoryBean streamsBuilderFactoryBean;
+
+    private Admin admin;
+    private ScheduledExecutorService reporter;
+    private Map<TopicPartition, Long> startOffsets;
+    private Map<TopicPartition, Long> endOffsets;
+    private long lastProcessed;
+    private long lastReportAtMs;
+    private volatile boolean running;
+
+    @Override
+    public void start() {
+        MatatuTrackerProperties.Replay replay = properties.getReplay();
+        String groupId = groupId();
+        admin =
+                Admin.create(
+                        Map.of(
+                                AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG,
+                                properties.getKafka().getBootstrapServers()));
+        try {
+            List<TopicPartition> partitions = inputPartitions();
+            Map<TopicPartition, Long> latest = offsets(partitions, OffsetSpec.latest(), Map.of());
+            startOffsets =
+                    (replay.getFrom() == null)
+                            ? offsets(partitions, OffsetSpec.earliest(), latest)
+                            : offsets(partitions, at(replay.getFrom()), latest);
+            endOffsets =
+                    (replay.getTo() == null)
+                            ? latest
+                            : offsets(partitions, at(replay.getTo()), latest);
+
+            if (committedOffsets(groupId).isEmpty()) {
+                admin.alterConsumerGroupOffsets(
+                                groupId,
+                                startOffsets.entrySet().stream()
+                                        .collect(
+                                                Collectors.toMap(
+                                                        Map.Entry::getKey,
+                                                        e -> new OffsetAndMetadata(e.getValue()))))
+                        .all()
+                        .get();
+                log.info(
+                        "[REPLAY] ⏮️ {} positioned at {} → {} ({} records, output *.{})",
+                        groupId,
+                        replay.getFrom(),
+                        replay.getTo(),
+                        total(),
+                        replay.getOutputVersion());
+            } else {
+                log.info("[REPLAY] ⏯️ {} already has committed offsets — resuming", groupId);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while preparing replay offsets", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not prepare replay offsets", e.getCause());
+        }
+
+        lastReportAtMs = System.currentTimeMillis();
+        reporter =
+                Executors.newSingleThreadScheduledExecutor(
+                        Thread.ofPlatform().name("replay-progress").daemon().factory());
+        reporter.scheduleAtFixedRate(
+                this::report,
+                replay.getProgressIntervalMs(),
+                replay.getProgressIntervalMs(),
+                TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+        if (admin != null) {
+            admin.close();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Seed offsets before Kafka Streams starts; keep reporting until after it stops. */
+    @Override
+    public int getPhase() {
+        return streamsBuilderFactoryBean.getPhase() - 1;
+    }
+
+    void report() {
+        try {
+            Map<TopicPartition, OffsetAndMetadata> committed = committedOffsets(groupId());
+            long processed = 0;
+            for (var entry : startOffsets.entrySet()) {
+                long start = entry.getValue();
+                long end = endOffsets.get(entry.getKey());
+                OffsetAndMetadata position = committed.get(entry.getKey());
+                long offset = (position == null) ? start : position.offset();
+                processed += Math.clamp(offset, start, end) - start;
+            }
+            long now = System.currentTimeMillis();
+            ReplayProgress progress =
+                    ReplayProgress.of(
+                            total(), processed, processed - lastProcessed, now - lastReportAtMs);
+            lastProcessed = processed;
+            lastReportAtMs = now;
+
+            log.info(
+                    "[REPLAY] ⏩ {}/{} records ({}%) | {} rec/s | ETA {}",
+                    progress.processedRecords(),
+                    progress.totalRecords(),
+                    "%.1f".formatted(progress.percent()),
+                    Math.round(progress.recordsPerSecond()),
+                    progress.etaText());
+
+            if (progress.complete()) {
+                log.info(
+                        "[REPLAY] ✅ Replay complete — results are in the *.{} topics",
+                        properties.getReplay().getOutputVersion());
+                reporter.shutdown();
+                streamsBuilderFactoryBean.stop();
+            }
+        } catch (Exception e) {
+            log.warn("[REPLAY] ⚠️ Could not read replay progress: {}", e.getMessage());
+        }
+    }
+
+    private String groupId() {
+        return properties.getReplay().applicationId(properties.getStreams().getApplicationId());
+    }
+
+    private long total() {
+        long total = 0;
+        for (var entry : startOffsets.entrySet()) {
+            total += Math.max(0, endOffsets.get(entry.getKey()) - entry.getValue());
+        }
+        return total;
+    }
+
+    private List<TopicPartition> inputPartitions() throws InterruptedException, ExecutionException {
+        Map<String, TopicDescription> topics =
+                admin.describeTopics(INPUT_TOPICS).allTopicNames().get();
+        return topics.values().stream()
+                .flatMap(
+                        topic ->
+                                topic.partitions().stream()
+                                        .map(p -> new TopicPartition(topic.name(), p.partition())))
+                .toList();
+    }
+
+    /**
+     * Offsets for {@code spec}. A timestamp after the last record in a partition has no offset
+     * (-1); that partition then contributes nothing and starts or ends at {@code fallback}.
+     */
+    private Map<TopicPartition, Long> offsets(
+            List<TopicPartition> partitions, OffsetSpec spec, Map<TopicPartition, Long> fallback)
+            throws InterruptedException, ExecutionException {
+        Map<TopicPartition, ListOffsetsResultInfo> result =
+                admin.listOffsets(
+                                partitions.stream().collect(Collectors.toMap(tp -> tp, tp -> spec)))
+                        .all()
+                        .get();
+        var offsets = new HashMap<TopicPartition, Long>();
+        result.forEach(
+                (tp, info) ->
+                        offsets.put(tp, (info.offset() >= 0) ? info.offset() : fallback.get(tp)));
+        return offsets;
+    }
+
+    private Map<TopicPartition, OffsetAndMetadata> committedOffsets(String groupId)
+            throws InterruptedException, ExecutionException {
+        return admin.listConsumerGroupOffsets(groupId).partitionsToOffsetAndMetadata().get();
+    }
+
+    private static OffsetSpec at(Instant instant) {
+        return OffsetSpec.forTimestamp(instant.toEpochMilli());
+    }
+}
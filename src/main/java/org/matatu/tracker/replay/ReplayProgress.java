@@ -0,0 +1,45 @@
+package org.matatu.tracker.replay;
+
+import java.time.Duration;
+
+/**
+ * How far a replay has got, measured in input records between the start and end offsets.
+ *
+ * @param recordsPerSecond throughput since the previous report
+ * @param eta remaining records at that throughput, or {@code null} while nothing has moved
+ */
+public record ReplayProgress(
+        long processedRecords, long totalRecords, double recordsPerSecond, Duration eta) {
+
+    static ReplayProgress of(
+            long totalRecords, long processedRecords, long processedSinceLast, long elapsedMs) {
+        double rate = (elapsedMs > 0) ? processedSinceLast * 1000.0 / elapsedMs : 0;
+        long remaining = Math.max(0, totalRecords - processedRecords);
+        Duration eta =
+                (remaining == 0)
+                        ? Duration.ZERO
+                        : (rate > 0)
+                                ? Duration.ofSeconds((long) Math.ceil(remaining / rate))
+                                : null;
+        return new ReplayProgress(processedRecords, totalRecords, rate, eta);
+    }
+
+    public double percent() {
+        return (totalRecords == 0) ? 100.0 : processedRecords * 100.0 / totalRecords;
+    }
+
+    public boolean complete() {
+        return processedRecords >= totalRecords;
+    }
+
+    /** ETA as {@code 1h 02m 03s}, or {@code unknown} before the first records are committed. */
+    public String etaText() {
+        if (eta == null) {
+            return "unknown";
+        }
+        return (eta.toHours() > 0)
+                ? "%dh %02dm %02ds"
+                        .formatted(eta.toHours(), eta.toMinutesPart(), eta.toSecondsPart())
+                : "%dm %02ds".formatted(eta.toMinutes(), eta.toSecondsPart());
+    }
+}
@@ -0,0 +1,56 @@
+package org.matatu.tracker.restore;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@code stateRestore} in {@code /actuator/health} and in the readiness group: {@code
+ * OUT_OF_SERVICE} until {@link StateRestoreTracker#ready()}, so a load balancer only sends traffic
+ * to instances whose stores are warm. Liveness does not include it — a restoring instance is
+ * working, not stuck.
+ *
+ * <p>Always present, because the readiness group names it: without Kafka Streams ({@code
+ * IN_PROCESS} mode) there is nothing to restore and it reports {@code UP}.
+ */
+@Component
+public class StateRestoreHealthIndicator implements HealthIndicator {
+
+    private final ObjectProvider<StateRestoreTracker> tracker;
+
+    public StateRestoreHealthIndicator(ObjectProvider<StateRestoreTracker> tracker) {
+        this.tracker = tracker;
+    }
+
+    @Override
+    public Health health() {
+        StateRestoreTracker restore = tracker.getIfAvailable();
+        if (restore == null) {
+            return Health.up().withDetail("streams", "not running in this mode").build();
+        }
+        Map<String, Object> stores = new LinkedHashMap<>();
+        for (StateRestoreTracker.StoreProgress store : restore.progress()) {
+            if (store.restoring()) {
+                stores.put(
+                        store.store(),
+                        Map.of(
+                                "restored", store.restoredRecords(),
+                                "total", store.totalRecords(),
+                                "recordsPerSecond", Math.round(store.recordsPerSecond()),
+                                "etaSeconds",
+                                        (store.eta() == null)
+                                                ? "unknown"
+                                                : store.eta().toSeconds()));
+            }
+        }
+        Health.Builder health = restore.ready() ? Health.up() : Health.outOfService();
+        return health.withDetail("streams", restore.state())
+                .withDetail("restoring", stores)
+                .withDetail("standbyLag", restore.standbyLag())
+                .build();
+    }
+}
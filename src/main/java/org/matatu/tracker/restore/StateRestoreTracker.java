@@ -0,0 +1,349 @@
+package org.matatu.tracker.restore;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.processor.StandbyUpdateListener;
+import org.apache.kafka.streams.processor.StateRestoreListener;
+import org.apache.kafka.streams.processor.TaskId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Follows every state store while it restores from its changelog and tells whether this instance is
+ * warm enough for traffic.
+ *
+ * <p>KEY CONCEPT — Restoring is not running: after a restart or a rebalance, a task replays its
+ * stores' changelogs before it processes anything. Until then the REST layer would answer from an
+ * empty or stale store, while the process itself is perfectly healthy. {@link #ready()} is true
+ * only once the stream threads have reached {@code RUNNING} and no store is restoring, and {@code
+ * StateRestoreHealthIndicator} puts that into the readiness probe.
+ *
+ * <p>Per store, restore progress is published as {@code matatu.restore.progress} (0–1), {@code
+ * .remaining} (records), {@code .rate} (records/s since the restore began) and {@code .eta}
+ * (seconds). A restore round starts with the first partition of a store and ends with the last, so
+ * the figures cover all of this instance's partitions of the store. Standby replicas report how far
+ * they trail the changelog as {@code matatu.restore.standby.lag}: a standby near zero makes
+ * failover nearly free.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.pipeline.mode", havingValue = "KAFKA", matchIfMissing = true)
+public class StateRestoreTracker
+        implements StateRestoreListener, StandbyUpdateListener, KafkaStreams.StateListener {
+
+    private final MeterRegistry registry;
+    private final LongSupplier nanoClock;
+    private final Map<String, StoreRestore> stores = new ConcurrentHashMap<>();
+    private final Map<String, Map<TopicPartition, Long>> standbyLag = new ConcurrentHashMap<>();
+    private volatile KafkaStreams.State state = KafkaStreams.State.CREATED;
+    private volatile boolean ranOnce;
+
+    /**
+     * One store's latest restore round on this instance.
+     *
+     * @param recordsPerSecond since the round began
+     * @param eta remaining records at that rate, or {@code null} before the first batch
+     */
+    public record StoreProgress(
+            String store,
+            long restoredRecords,
+            long totalRecords,
+            double recordsPerSecond,
+            Duration eta,
+            boolean restoring) {
+
+        public double fraction() {
+            return (totalRecords == 0)
+                    ? 1.0
+                    : Math.min(1.0, (double) restoredRecords / totalRecords);
+        }
+
+        public long remainingRecords() {
+            return Math.max(0, totalRecords - restoredRecords);
+        }
+    }
+
+    @Autowired
+    public StateRestoreTracker(MeterRegistry registry) {
+        this(registry, System::nanoTime);
+    }
+
+    StateRestoreTracker(MeterRegistry registry, LongSupplier nanoClock) {
+        this.registry = registry;
+        this.nanoClock = nanoClock;
+        Gauge.builder("matatu.restore.active", this, StateRestoreTracker::restoringPartitions)
+                .description("Changelog partitions restoring on this instance")
+                .register(registry);
+    }
+
+    /** True once the stream threads have run and no store on this instance is restoring. */
+    public boolean ready() {
+        KafkaStreams.State current = state;
+        boolean processing =
+                current == KafkaStreams.State.RUNNING
+                        || (current == KafkaStreams.State.REBALANCING && ranOnce);
+        return processing && restoringPartitions() == 0;
+    }
+
+    public KafkaStreams.State state() {
+        return state;
+    }
+
+    /** Every store that has restored on this instance, still restoring ones first. */
+    public List<StoreProgress> progress() {
+        return stores.values().stream()
+                .map(StoreRestore::progress)
+                .sorted(
+                        Comparator.comparing(StoreProgress::restoring)
+                                .reversed()
+                                .thenComparing(StoreProgress::store))
+                .toList();
+    }
+
+    /** Records each standby store still has to apply, summed over its partitions. */
+    public Map<String, Long> standbyLag() {
+        Map<String, Long> lag = new HashMap<>();
+        standbyLag.forEach(
+                (store, partitions) ->
+                        lag.put(
+                                store,
+                                partitions.values().stream().mapToLong(Long::longValue).sum()));
+        return lag;
+    }
+
+    public int restoringPartitions() {
+        return stores.values().stream().mapToInt(StoreRestore::restoringPartitions).sum();
+    }
+
+    // ── KafkaStreams.StateListener ────────────────────────────────────────────
+
+    @Override
+    public void onChange(KafkaStreams.State newState, KafkaStreams.State oldState) {
+        boolean wasReady = ready();
+        state = newState;
+        if (newState == KafkaStreams.State.RUNNING) {
+            ranOnce = true;
+        } else if (!newState.isRunningOrRebalancing()) {
+            ranOnce = false;
+        }
+        logReadiness(wasReady);
+    }
+
+    // ── StateRestoreListener ──────────────────────────────────────────────────
+
+    @Override
+    public void onRestoreStart(
+            TopicPartition partition, String store, long startingOffset, long endingOffset) {
+        boolean wasReady = ready();
+        storeOf(store).start(partition, Math.max(0, endingOffset - startingOffset));
+        log.info(
+                "[RESTORE] {} {}: {} records to restore",
+                store,
+                partition,
+                endingOffset - startingOffset);
+        logReadiness(wasReady);
+    }
+
+    @Override
+    public void onBatchRestored(
+            TopicPartition partition, String store, long batchEndOffset, long numRestored) {
+        storeOf(store).batch(partition, numRestored);
+    }
+
+    @Override
+    public void onRestoreEnd(TopicPartition partition, String store, long totalRestored) {
+        boolean wasReady = ready();
+        storeOf(store).end(partition);
+        logReadiness(wasReady);
+    }
+
+    /** The task moved away mid-restore; its remaining records no longer count. */
+    @Override
+    public void onRestoreSuspended(TopicPartition partition, String store, long totalRestored) {
+        boolean wasReady = ready();
+        storeOf(store).end(partition);
+        log.info("[RESTORE] {} {}: suspended after {} records", store, partition, totalRestored);
+        logReadiness(wasReady);
+    }
+
+    // ── StandbyUpdateListener ─────────────────────────────────────────────────
+
+    @Override
+    public void onUpdateStart(TopicPartition partition, String store, long startingOffset) {
+        standbyOf(store).put(partition, 0L);
+    }
+
+    @Override
+    public void onBatchLoaded(
+            TopicPartition partition,
+            String store,
+            TaskId taskId,
+            long batchEndOffset,
+            long batchSize,
+            long currentEndOffset) {
+        // Offsets are positions: the next record to apply is batchEndOffset + 1.
+        standbyOf(store).put(partition, Math.max(0, currentEndOffset - batchEndOffset - 1));
+    }
+
+    @Override
+    public void onUpdateSuspended(
+            TopicPartition partition,
+            String store,
+            long storeOffset,
+            long currentEndOffset,
+            SuspendReason reason) {
+        standbyOf(store).remove(partition);
+    }
+
+    // ── Internals ─────────────────────────────────────────────────────────────
+
+    private void logReadiness(boolean wasReady) {
+        boolean ready = ready();
+        if (ready && !wasReady) {
+            log.info("[RESTORE] All stores restored, stream threads {}: ready for traffic", state);
+        } else if (!ready && wasReady) {
+            log.info("[RESTORE] Not ready: stream threads {}, restoring {}", state, restoring());
+        }
+    }
+
+    private List<String> restoring() {
+        return progress().stream()
+                .filter(StoreProgress::restoring)
+                .map(StoreProgress::store)
+                .toList();
+    }
+
+    private StoreRestore storeOf(String store) {
+        return stores.computeIfAbsent(
+                store,
+                name -> {
+                    StoreRestore restore = new StoreRestore(name);
+                    registerGauges(name);
+                    return restore;
+                });
+    }
+
+    private Map<TopicPartition, Long> standbyOf(String store) {
+        return standbyLag.computeIfAbsent(
+                store,
+                name -> {
+                    Gauge.builder(
+                                    "matatu.restore.standby.lag",
+                                    this,
+                                    tracker -> tracker.standbyLag().getOrDefault(name, 0L))
+                            .tag("store", name)
+                            .register(registry);
+                    return new ConcurrentHashMap<>();
+                });
+    }
+
+    private void registerGauges(String store) {
+        Gauge.builder("matatu.restore.progress", this, t -> t.progressOf(store).fraction())
+                .tag("store", store)
+                .register(registry);
+        Gauge.builder("matatu.restore.remaining", this, t -> t.progressOf(store).remainingRecords())
+                .tag("store", store)
+                .register(registry);
+        Gauge.builder("matatu.restore.rate", this, t -> t.progressOf(store).recordsPerSecond())
+                .tag("store", store)
+                .baseUnit("records/s")
+                .register(registry);
+        Gauge.builder(
+                        "matatu.restore.eta",
+                        this,
+                        t -> {
+                            Duration eta = t.progressOf(store).eta();
+                            return (eta == null) ? Double.NaN : eta.toMillis() / 1000.0;
+                        })
+                .tag("store", store)
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    private StoreProgress progressOf(String store) {
+        return stores.get(store).progress();
+    }
+
+    /** Guarded by its own monitor: restore callbacks arrive from every stream thread. */
+    private final class StoreRestore {
+        private final String store;
+        // Per restoring partition: records expected, records restored so far.
+        private final Map<TopicPartition, long[]> partitions = new HashMap<>();
+        private long roundStartNanos;
+        private long roundEndNanos;
+        private long total;
+        private long restored;
+
+        private StoreRestore(String store) {
+            this.store = store;
+        }
+
+        synchronized void start(TopicPartition partition, long expected) {
+            if (partitions.isEmpty()) {
+                roundStartNanos = nanoClock.getAsLong();
+                total = 0;
+                restored = 0;
+            }
+            partitions.put(partition, new long[] {expected, 0});
+            total += expected;
+        }
+
+        synchronized void batch(TopicPartition partition, long records) {
+            long[] counts = partitions.get(partition);
+            if (counts != null) {
+                counts[1] += records;
+            }
+            restored += records;
+        }
+
+        synchronized void end(TopicPartition partition) {
+            long[] counts = partitions.remove(partition);
+            if (counts != null && counts[1] < counts[0]) {
+                // Compaction and transaction markers leave gaps: fewer records than offsets.
+                total -= counts[0] - counts[1];
+            }
+            if (partitions.isEmpty()) {
+                roundEndNanos = nanoClock.getAsLong();
+                StoreProgress done = progress();
+                log.info(
+                        "[RESTORE] {} restored: {} records in {} ms ({} records/s)",
+                        store,
+                        done.restoredRecords(),
+                        (roundEndNanos - roundStartNanos) / 1_000_000,
+                        "%.0f".formatted(done.recordsPerSecond()));
+            }
+        }
+
+        synchronized int restoringPartitions() {
+            return partitions.size();
+        }
+
+        synchronized StoreProgress progress() {
+            boolean restoring = !partitions.isEmpty();
+            long until = restoring ? nanoClock.getAsLong() : roundEndNanos;
+            long elapsedNanos = until - roundStartNanos;
+            double rate = (elapsedNanos > 0) ? restored * 1e9 / elapsedNanos : 0;
+            long remaining = Math.max(0, total - restored);
+            Duration eta =
+                    (remaining == 0)
+                            ? Duration.ZERO
+                            : (rate > 0)
+                                    ? Duration.ofMillis((long) (remaining / rate * 1000))
+                                    : null;
+            return new StoreProgress(store, restored, total, rate, eta, restoring);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package org.matatu.tracker.sketch;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * DDSketch quantile sketch for non-negative values (speeds, load factors).
+ *
+ * <p>Values are mapped to logarithmic buckets of ratio {@code gamma = (1 + α) / (1 - α)}, so any
+ * quantile is returned with relative error at most α. Two sketches with the same α merge exactly by
+ * adding bucket counts, which makes them safe to combine across windows and partitions.
+ *
+ * <p>KEY CONCEPT — Bounded memory: the number of buckets is capped at {@code maxBins}. When a value
+ * would widen the range beyond the cap, the lowest buckets are collapsed into one. The high
+ * quantiles (p95/p99) that operations care about keep their accuracy; only the extreme low tail
+ * loses precision. With α = 1% the whole 0.1–200 km/h range fits in ~380 buckets, so collapsing
+ * never happens in practice for speeds.
+ */
+public final class DDSketch {
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final int INITIAL_BINS = 64;
+
+    private final double relativeAccuracy;
+    private final int maxBins;
+    private final double logGamma;
+    private final double minIndexableValue;
+
+    private long[] counts = new long[0];
+    private int offset; // bucket index of counts[0]
+    private long zeroCount;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private double sum;
+
+    public DDSketch(double relativeAccuracy, int maxBins) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException(
+                    "relativeAccuracy must be in (0, 1) but was " + relativeAccuracy);
+        }
+        if (maxBins < 16) {
+            throw new IllegalArgumentException("maxBins must be at least 16 but was " + maxBins);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.maxBins = maxBins;
+        double gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.minIndexableValue = Math.max(Double.MIN_NORMAL * gamma, 1e-9);
+    }
+
+    public DDSketch add(double value) {
+        if (value < 0 || Double.isNaN(value)) {
+            throw new IllegalArgumentException(
+                    "DDSketch only accepts non-negative values: " + value);
+        }
+        if (value < minIndexableValue) {
+            zeroCount++;
+        } else {
+            increment(index(value), 1);
+        }
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        return this;
+    }
+
+    /** Adds every observation of {@code other} to this sketch. Both must share α. */
+    public DDSketch merge(DDSketch other) {
+        if (Double.compare(other.relativeAccuracy, relativeAccuracy) != 0) {
+            throw new IllegalArgumentException(
+                    "Cannot merge DDSketches with relative accuracy %s and %s"
+                            .formatted(relativeAccuracy, other.relativeAccuracy));
+        }
+        if (other.count == 0) {
+            return this;
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            if (other.counts[i] != 0) {
+                increment(other.offset + i, other.counts[i]);
+            }
+        }
+        zeroCount += other.zeroCount;
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        return this;
+    }
+
+    /** Value at quantile {@code q} in [0, 1], or {@code NaN} if the sketch is empty. */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("quantile must be in [0, 1] but was " + q);
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (q == 0) {
+            return min;
+        }
+        if (q == 1) {
+            return max;
+        }
+
+        double rank = q * (count - 1);
+        long seen = zeroCount;
+        if (seen > rank) {
+            return 0;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen > rank) {
+                double estimate = 2 * Math.exp((offset + i) * logGamma) / (1 + gammaValue());
+                return Math.max(min, Math.min(max, estimate));
+            }
+        }
+        return max;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double min() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    public double max() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    public double mean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    public double relativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /** Number of non-empty buckets currently held — bounded by {@code maxBins}. */
+    public int binCount() {
+        int nonEmpty = 0;
+        for (long c : counts) {
+            if (c != 0) {
+                nonEmpty++;
+            }
+        }
+        return nonEmpty;
+    }
+
+    // ── Serialisation ─────────────────────────────────────────────────────────
+    //
+    // [version][α:f64][maxBins:varint][count:varint][zeroCount:varint][sum:f64][min:f64][max:f64]
+    // [offset:zigzag varint][binCount:varint][counts:varint...]
+    //
+    // Bucket counts are varints, so a window with a few hundred pings per bucket costs 1–2 bytes
+    // per bucket rather than 8.
+
+    public byte[] toBytes() {
+        int first = 0;
+        int last = counts.length - 1;
+        while (first <= last && counts[first] == 0) {
+            first++;
+        }
+        while (last >= first && counts[last] == 0) {
+            last--;
+        }
+
+        var out = new ByteArrayOutputStream(64 + Math.max(0, last - first + 1) * 2);
+        out.write(FORMAT_VERSION);
+        writeDouble(out, relativeAccuracy);
+        writeVarLong(out, maxBins);
+        writeVarLong(out, count);
+        writeVarLong(out, zeroCount);
+        writeDouble(out, sum);
+        writeDouble(out, min);
+        writeDouble(out, max);
+        writeVarLong(out, zigZag(offset + first));
+        writeVarLong(out, Math.max(0, last - first + 1));
+        for (int i = first; i <= last; i++) {
+            writeVarLong(out, counts[i]);
+        }
+        return out.toByteArray();
+    }
+
+    public static DDSketch fromBytes(byte[] bytes) {
+        return read(ByteBuffer.wrap(bytes));
+    }
+
+    /** Reads one sketch from the buffer, leaving its position just after the sketch. */
+    public static DDSketch read(ByteBuffer in) {
+        byte version = in.get();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported DDSketch format version " + version);
+        }
+        var sketch = new DDSketch(in.getDouble(), (int) readVarLong(in));
+        sketch.count = readVarLong(in);
+        sketch.zeroCount = readVarLong(in);
+        sketch.sum = in.getDouble();
+        sketch.min = in.getDouble();
+        sketch.max = in.getDouble();
+        sketch.offset = unZigZag(readVarLong(in));
+        sketch.counts = new long[(int) readVarLong(in)];
+        for (int i = 0; i < sketch.counts.length; i++) {
+            sketch.counts[i] = readVarLong(in);
+        }
+        return sketch;
+    }
+
+    // ── Buckets ───────────────────────────────────────────────────────────────
+
+    private int index(double value) {
+        return (int) Math.ceil(Math.log(value) / logGamma);
+    }
+
+    private double gammaValue() {
+        return Math.exp(logGamma);
+    }
+
+    private void increment(int index, long by) {
+        if (counts.length == 0) {
+            counts = new long[INITIAL_BINS];
+            offset = index - INITIAL_BINS / 2;
+        }
+        boolean collapsedBelow = index < offset && counts.length == maxBins;
+        if (!collapsedBelow && (index < offset || index >= offset + counts.length)) {
+            grow(index);
+        }
+        // After collapsing, indexes below the retained range land in the lowest bucket.
+        counts[Math.max(0, index - offset)] += by;
+    }
+
+    private void grow(int index) {
+        int low = Math.min(offset, index);
+        int high = Math.max(offset + counts.length - 1, index);
+        int span = high - low + 1;
+
+        int newLength;
+        int newLow;
+        if (span > maxBins) {
+            // Keep the top maxBins buckets; everything below folds into the lowest one.
+            newLength = maxBins;
+            newLow = high - maxBins + 1;
+        } else {
+            // Double to amortise copies, leaving the headroom on the side we grew towards.
+            newLength = Math.min(maxBins, Math.max(span, counts.length * 2));
+            newLow = (index < offset) ? high - newLength + 1 : low;
+        }
+
+        long[] resized = new long[newLength];
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                resized[Math.max(0, offset + i - newLow)] += counts[i];
+            }
+        }
+        counts = resized;
+        offset = newLow;
+    }
+
+    // ── Encoding helpers ──────────────────────────────────────────────────────
+
+    private static void writeDouble(ByteArrayOutputStream out, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (bits >>> shift));
+        }
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(long value) {
+        return (int) (value >>> 1) ^ -((int) value & 1);
+    }
+
+    @Override
+    public String toString() {
+        return "DDSketch[α=%s, count=%d, bins=%d]".formatted(relativeAccuracy, count, binCount());
+    }
+}
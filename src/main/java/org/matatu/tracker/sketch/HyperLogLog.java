@@ -0,0 +1,155 @@
+package org.matatu.tracker.sketch;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Dense HyperLogLog distinct-count sketch backed by a single {@code byte[]}.
+ *
+ * <p>Layout: {@code [precision, register_0, register_1, ..., register_(m-1)]} where {@code m =
+ * 2^precision}. The array is the sketch — there is no separate object state — so it can live
+ * directly in a Kafka Streams window store with {@code Serdes.ByteArray()} and be updated in place
+ * by the aggregator without an extra copy.
+ *
+ * <p>KEY CONCEPT — Mergeability: a register holds the maximum rank ever observed for its bucket, so
+ * the union of two sketches is the register-wise maximum. That is what lets hourly windows be
+ * rolled up into daily or weekly counts at query time without double-counting riders who travel in
+ * several windows.
+ *
+ * <p>Relative standard error is {@code 1.04 / sqrt(m)}: precision 12 (4 KiB) gives ~1.6%, precision
+ * 14 (16 KiB) gives ~0.8%.
+ */
+public final class HyperLogLog {
+
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+
+    private final byte[] bytes;
+    private final int precision;
+    private final int registerCount;
+
+    private HyperLogLog(byte[] bytes) {
+        this.bytes = bytes;
+        this.precision = bytes[0];
+        this.registerCount = 1 << precision;
+    }
+
+    /** Returns the serialised form of an empty sketch with the given precision. */
+    public static byte[] empty(int precision) {
+        validatePrecision(precision);
+        byte[] bytes = new byte[(1 << precision) + 1];
+        bytes[0] = (byte) precision;
+        return bytes;
+    }
+
+    /** Wraps (without copying) a serialised sketch so it can be updated or estimated. */
+    public static HyperLogLog wrap(byte[] bytes) {
+        if (bytes == null || bytes.length < 1) {
+            throw new IllegalArgumentException("HyperLogLog bytes must not be empty");
+        }
+        validatePrecision(bytes[0]);
+        if (bytes.length != (1 << bytes[0]) + 1) {
+            throw new IllegalArgumentException(
+                    "Corrupt HyperLogLog: precision %d expects %d bytes but got %d"
+                            .formatted(bytes[0], (1 << bytes[0]) + 1, bytes.length));
+        }
+        return new HyperLogLog(bytes);
+    }
+
+    public static double relativeStandardError(int precision) {
+        validatePrecision(precision);
+        return 1.04 / Math.sqrt(1 << precision);
+    }
+
+    public HyperLogLog add(String value) {
+        return addHash(hash64(value));
+    }
+
+    public HyperLogLog addHash(long hash) {
+        int index = (int) (hash >>> (Long.SIZE - precision));
+        // Guard bit keeps the rank bounded when the remaining bits are all zero.
+        long remaining = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+        if (rank > bytes[index + 1]) {
+            bytes[index + 1] = rank;
+        }
+        return this;
+    }
+
+    /** Folds {@code other} into this sketch. Both sketches must share the same precision. */
+    public HyperLogLog merge(byte[] other) {
+        HyperLogLog that = wrap(other);
+        if (that.precision != precision) {
+            throw new IllegalArgumentException(
+                    "Cannot merge HyperLogLog sketches with precision %d and %d"
+                            .formatted(precision, that.precision));
+        }
+        for (int i = 1; i <= registerCount; i++) {
+            if (other[i] > bytes[i]) {
+                bytes[i] = other[i];
+            }
+        }
+        return this;
+    }
+
+    public long estimate() {
+        double harmonicSum = 0;
+        int zeroRegisters = 0;
+        for (int i = 1; i <= registerCount; i++) {
+            harmonicSum += 1.0 / (1L << bytes[i]);
+            if (bytes[i] == 0) {
+                zeroRegisters++;
+            }
+        }
+        double raw = alpha(registerCount) * registerCount * registerCount / harmonicSum;
+
+        // Small-range correction: linear counting is far more accurate while many registers
+        // are still empty. With a 64-bit hash no large-range correction is needed.
+        if (raw <= 2.5 * registerCount && zeroRegisters > 0) {
+            return Math.round(registerCount * Math.log((double) registerCount / zeroRegisters));
+        }
+        return Math.round(raw);
+    }
+
+    public int precision() {
+        return precision;
+    }
+
+    public byte[] toByteArray() {
+        return bytes;
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes followed by the MurmurHash3 finaliser. FNV alone has weak
+     * high bits for short, similar strings like "PAX-101"/"PAX-102"; the finaliser spreads them.
+     */
+    static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static double alpha(int m) {
+        return switch (m) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / m);
+        };
+    }
+
+    private static void validatePrecision(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException(
+                    "HyperLogLog precision must be between %d and %d but was %d"
+                            .formatted(MIN_PRECISION, MAX_PRECISION, precision));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.matatu.tracker.sketch;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+import org.matatu.tracker.model.RouteQuantiles;
+
+/**
+ * Window-store value for per-route percentiles: one {@link DDSketch} for speed (km/h) and one for
+ * load factor (passengers ÷ vehicle capacity), serialised back to back into a single {@code
+ * byte[]}.
+ */
+public record RouteQuantileSketches(DDSketch speed, DDSketch load) {
+
+    public static byte[] empty(double relativeAccuracy, int maxBins) {
+        return new RouteQuantileSketches(
+                        new DDSketch(relativeAccuracy, maxBins),
+                        new DDSketch(relativeAccuracy, maxBins))
+                .toBytes();
+    }
+
+    public static RouteQuantileSketches fromBytes(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        DDSketch speed = DDSketch.read(in);
+        DDSketch load = DDSketch.read(in);
+        return new RouteQuantileSketches(speed, load);
+    }
+
+    public RouteQuantileSketches add(double speedKmh, double loadFactor) {
+        speed.add(speedKmh);
+        load.add(loadFactor);
+        return this;
+    }
+
+    public RouteQuantileSketches merge(RouteQuantileSketches other) {
+        speed.merge(other.speed);
+        load.merge(other.load);
+        return this;
+    }
+
+    public RouteQuantiles summarise(
+            String routeId, Instant windowStart, Instant windowEnd, Instant computedAt) {
+        return new RouteQuantiles(
+                routeId,
+                speed.count(),
+                speed.quantile(0.50),
+                speed.quantile(0.95),
+                speed.quantile(0.99),
+                speed.max(),
+                load.quantile(0.50),
+                load.quantile(0.95),
+                load.quantile(0.99),
+                load.max(),
+                speed.relativeAccuracy(),
+                windowStart,
+                windowEnd,
+                computedAt);
+    }
+
+    public byte[] toBytes() {
+        byte[] speedBytes = speed.toBytes();
+        byte[] loadBytes = load.toBytes();
+        return ByteBuffer.allocate(speedBytes.length + loadBytes.length)
+                .put(speedBytes)
+                .put(loadBytes)
+                .array();
+    }
+}
@@ -0,0 +1,130 @@
+package org.matatu.tracker.sketch;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Bloom filter that forgets: keys are added to the bucket of their timestamp, and a ring of buckets
+ * spanning {@code ttl} is recycled as time moves forward, so memory stays fixed however long the
+ * application runs.
+ *
+ * <p>KEY CONCEPT — Fast negative check: a Bloom filter never says "absent" for a key it was given,
+ * only (with probability {@code p}) "maybe present" for one it was not. Put in front of a state
+ * store holding the same keys, a negative answer proves the key is new and skips the store read
+ * entirely; only the rare positive has to be confirmed against the store. Every bucket is queried,
+ * so each is sized for {@code p / slots} to keep the overall false-positive rate at {@code p}.
+ *
+ * <p>Time only moves forward: a key older than the oldest bucket still held cannot be answered, so
+ * {@link #mightContain} returns {@code true} and the caller falls back to its store.
+ */
+public final class TimeBucketedBloomFilter {
+
+    private final long bucketMs;
+    private final int bitCount;
+    private final int hashCount;
+    private final long[][] bits;
+    private final long[] bucketIndex; // which time bucket each slot currently holds; -1 = empty
+    private long newestBucket = Long.MIN_VALUE;
+
+    /**
+     * @param ttl how far back duplicates must be recognised
+     * @param buckets number of buckets spanning {@code ttl}; one more slot holds the current one
+     * @param expectedKeysPerBucket keys a bucket is sized for before its error rate degrades
+     * @param falsePositiveRate target rate for the whole filter
+     */
+    public TimeBucketedBloomFilter(
+            Duration ttl, int buckets, long expectedKeysPerBucket, double falsePositiveRate) {
+        if (buckets < 1) {
+            throw new IllegalArgumentException("buckets must be at least 1 but was " + buckets);
+        }
+        if (expectedKeysPerBucket < 1) {
+            throw new IllegalArgumentException(
+                    "expectedKeysPerBucket must be at least 1 but was " + expectedKeysPerBucket);
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException(
+                    "falsePositiveRate must be in (0, 1) but was " + falsePositiveRate);
+        }
+        int slots = buckets + 1;
+        double perBucketRate = falsePositiveRate / slots;
+        long optimalBits =
+                (long)
+                        Math.ceil(
+                                -expectedKeysPerBucket
+                                        * Math.log(perBucketRate)
+                                        / (Math.log(2) * Math.log(2)));
+        this.bucketMs = Math.max(1, ttl.toMillis() / buckets);
+        this.bitCount = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, optimalBits));
+        this.hashCount =
+                Math.max(
+                        1,
+                        (int) Math.round((double) bitCount / expectedKeysPerBucket * Math.log(2)));
+        this.bits = new long[slots][(bitCount + 63) / 64];
+        this.bucketIndex = new long[slots];
+        Arrays.fill(bucketIndex, -1);
+    }
+
+    public void put(String key, long timestampMs) {
+        long bucket = Math.floorDiv(timestampMs, bucketMs);
+        if (newestBucket != Long.MIN_VALUE && bucket <= newestBucket - bucketIndex.length) {
+            return; // older than anything the ring covers
+        }
+        int slot = (int) Math.floorMod(bucket, (long) bucketIndex.length);
+        if (bucketIndex[slot] != bucket) {
+            // The slot still holds a bucket that has aged out — recycle it.
+            Arrays.fill(bits[slot], 0L);
+            bucketIndex[slot] = bucket;
+        }
+        newestBucket = Math.max(newestBucket, bucket);
+
+        long hash = HyperLogLog.hash64(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long[] words = bits[slot];
+        for (int i = 0; i < hashCount; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bitCount);
+            words[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * {@code false} means {@code key} was definitely not added within the ttl before {@code
+     * timestampMs}; {@code true} means it may have been.
+     */
+    public boolean mightContain(String key, long timestampMs) {
+        long bucket = Math.floorDiv(timestampMs, bucketMs);
+        if (newestBucket != Long.MIN_VALUE && bucket <= newestBucket - bucketIndex.length) {
+            return true; // evicted — cannot tell, let the store decide
+        }
+        long hash = HyperLogLog.hash64(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int slot = 0; slot < bucketIndex.length; slot++) {
+            if (bucketIndex[slot] >= 0 && containsAll(bits[slot], h1, h2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Memory held by the bit arrays. */
+    public long sizeInBytes() {
+        return (long) bits.length * bits[0].length * Long.BYTES;
+    }
+
+    private boolean containsAll(long[] words, int h1, int h2) {
+        for (int i = 0; i < hashCount; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((words[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "TimeBucketedBloomFilter[bucketMs=%d, slots=%d, bits=%d, hashes=%d]"
+                .formatted(bucketMs, bucketIndex.length, bitCount, hashCount);
+    }
+}
@@ -1,27 +1,30 @@
 package org.matatu.tracker.streams;
 
 import org.apache.kafka.common.serialization.Serdes;
-import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.kstream.*;
+import org.matatu.tracker.config.MatatuTrackerProperties;
 import org.matatu.tracker.model.FareEvent;
 import org.matatu.tracker.topics.Topics;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.support.serializer.JacksonJsonSerde;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 @Configuration
+@RequiredArgsConstructor
 public class FailedFareStream {
 
+    private final MatatuTrackerProperties properties;
+
     @Bean
-    public KStream<String, FareEvent> fareStatusStream(StreamsBuilder builder) {
+    public KStream<String, FareEvent> fareStatusStream(
+            @Qualifier("dedupedFareStream") KStream<String, FareEvent> fareStream) {
         var fareSerde = new JacksonJsonSerde<>(FareEvent.class);
 
-        KStream<String, FareEvent> fareStream =
-                builder.stream(Topics.MATATU_FARES, Consumed.with(Serdes.String(), fareSerde));
-
         BranchedKStream<String, FareEvent> branches = fareStream.split();
 
         branches.branch(
@@ -38,7 +41,9 @@ public class FailedFareStream {
                                                             fare.amountKes(),
                                                             fare.paymentMethod()))
                                     .to(
-                                            Topics.MATATU_FARES_FAILED,
+                                            properties
+                                                    .getReplay()
+                                                    .outputTopic(Topics.MATATU_FARES_FAILED),
                                             Produced.with(Serdes.String(), fareSerde));
                         }));
 
@@ -55,6 +60,7 @@ public class FailedFareStream {
                                                         fare.amountKes(),
                                                         fare.paymentMethod()))));
 
+        // PENDING fares are followed up by PendingFareStream; here they are only logged.
         branches.defaultBranch(
                 Branched.withConsumer(
                         pendingStream ->
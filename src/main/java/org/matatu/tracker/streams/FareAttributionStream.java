@@ -0,0 +1,183 @@
+package org.matatu.tracker.streams;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.kstream.Joined;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.KTable;
+import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.kstream.Named;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.state.Stores;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.geo.GeoHash;
+import org.matatu.tracker.geo.GeofenceRegistry;
+import org.matatu.tracker.model.EnrichedFare;
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.model.Geofence;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.model.MatatuPosition;
+import org.matatu.tracker.model.SaccoInfo;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Attributes every fare to the route, SACCO, geohash cell and stage where it was paid.
+ *
+ * <p>Reads from : dedupedFareStream (see {@link FareDedupStream}), locationsByMatatu (see {@link
+ * GeofenceStream}) Writes to : matatu.fares.enriched (key = matatuId)
+ *
+ * <p>KEY CONCEPT — Point-in-time stream-table join: positions are held in a versioned table, so a
+ * fare is joined with the position the matatu had <em>at the fare's timestamp</em>, not whatever
+ * arrived last. A late fare replayed an hour later still lands on the stage where it was paid, and
+ * the result is the same on every replay. Only fares are joined; pings never trigger output, which
+ * keeps the join cost proportional to fare volume.
+ *
+ * <p>Tuning:
+ *
+ * <ul>
+ *   <li>Pings come from the repartition by matatuId that geofencing already writes, so attribution
+ *       adds no internal topic. They are slimmed to a {@link MatatuPosition} before the table, so
+ *       the store carries only route and coordinates.
+ *   <li>The store keeps {@code history-minutes} of old positions per matatu; state is roughly
+ *       matatus × pings per history window, independent of fare volume.
+ *   <li>Fares wait up to {@code grace-seconds} in a buffer, so a ping that was delayed on the other
+ *       topic can still be matched. The buffer holds only those few seconds of fares.
+ * </ul>
+ *
+ * <p>The join hit rate is the Micrometer counter {@code matatu.fares.attribution{result=matched|
+ * stale|missing}}. Store size and read latency come from the Kafka Streams state-store metrics that
+ * Spring Boot binds to Micrometer ({@code kafka.stream.state.*}).
+ */
+@Configuration
+@RequiredArgsConstructor
+public class FareAttributionStream {
+
+    public static final String MATATU_POSITION_STORE = "matatu-position-store";
+
+    private final Map<String, SaccoInfo> saccoLookup;
+    private final GeofenceRegistry geofenceRegistry;
+    private final MatatuTrackerProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    @Bean
+    public KStream<String, EnrichedFare> enrichedFareStream(
+            @Qualifier("dedupedFareStream") KStream<String, FareEvent> fareStream,
+            @Qualifier("locationsByMatatu") KStream<String, LocationEvent> locationsByMatatu) {
+        var positionSerde = new JacksonJsonSerde<>(MatatuPosition.class);
+        var fareSerde = new JacksonJsonSerde<>(FareEvent.class);
+        MatatuTrackerProperties.FareAttribution config = properties.getFareAttribution();
+
+        KTable<String, MatatuPosition> positions =
+                locationsByMatatu
+                        .mapValues(
+                                ping -> MatatuPosition.of(ping, stageAt(ping)),
+                                Named.as("matatu-position"))
+                        .toTable(
+                                Named.as("matatu-position-table"),
+                                Materialized.<String, MatatuPosition>as(
+                                                Stores.persistentVersionedKeyValueStore(
+                                                        MATATU_POSITION_STORE,
+                                                        Duration.ofMinutes(
+                                                                config.getHistoryMinutes())))
+                                        .withKeySerde(Serdes.String())
+                                        .withValueSerde(positionSerde));
+
+        Map<EnrichedFare.Attribution, Counter> counters =
+                new EnumMap<>(EnrichedFare.Attribution.class);
+        for (EnrichedFare.Attribution attribution : EnrichedFare.Attribution.values()) {
+            counters.put(
+                    attribution,
+                    Counter.builder("matatu.fares.attribution")
+                            .tag("result", attribution.name().toLowerCase())
+                            .register(meterRegistry));
+        }
+        long joinWindowMs = Duration.ofSeconds(config.getJoinWindowSeconds()).toMillis();
+
+        KStream<String, EnrichedFare> enriched =
+                fareStream.leftJoin(
+                        positions,
+                        (fare, position) -> {
+                            EnrichedFare result = attribute(fare, position, joinWindowMs);
+                            counters.get(result.attribution()).increment();
+                            return result;
+                        },
+                        Joined.with(Serdes.String(), fareSerde, positionSerde)
+                                .withName("fare-position-join")
+                                .withGracePeriod(Duration.ofSeconds(config.getGraceSeconds())));
+
+        enriched.to(
+                properties.getReplay().outputTopic(Topics.MATATU_FARES_ENRICHED),
+                Produced.with(Serdes.String(), new JacksonJsonSerde<>(EnrichedFare.class)));
+
+        return enriched;
+    }
+
+    EnrichedFare attribute(FareEvent fare, MatatuPosition position, long joinWindowMs) {
+        if (position == null) {
+            return enriched(fare, EnrichedFare.Attribution.MISSING, null, null, null, null);
+        }
+        long ageMs = fare.timestamp().toEpochMilli() - position.timestamp().toEpochMilli();
+        if (ageMs > joinWindowMs) {
+            return enriched(
+                    fare, EnrichedFare.Attribution.STALE, position.routeId(), null, null, ageMs);
+        }
+        return enriched(
+                fare,
+                EnrichedFare.Attribution.MATCHED,
+                position.routeId(),
+                GeoHash.encode(
+                        position.latitude(),
+                        position.longitude(),
+                        properties.getFareAttribution().getGeohashPrecision()),
+                position.stage(),
+                ageMs);
+    }
+
+    private EnrichedFare enriched(
+            FareEvent fare,
+            EnrichedFare.Attribution attribution,
+            String routeId,
+            String geohash,
+            String stage,
+            Long positionAgeMs) {
+        SaccoInfo sacco = (routeId == null) ? null : saccoLookup.get(routeId);
+        return new EnrichedFare(
+                fare.transactionId(),
+                fare.matatuId(),
+                fare.passengerId(),
+                fare.amountKes(),
+                fare.paymentMethod(),
+                fare.status(),
+                fare.timestamp(),
+                attribution,
+                routeId,
+                (sacco == null) ? null : sacco.saccoId(),
+                (sacco == null) ? null : sacco.saccoName(),
+                geohash,
+                stage,
+                positionAgeMs);
+    }
+
+    /**
+     * Stage or terminus the matatu is standing in, from the geofence index as the ping is stored.
+     * Fares read it from the position, so they get the geofences of the ping's time.
+     */
+    private String stageAt(LocationEvent ping) {
+        return geofenceRegistry.current().containing(ping.latitude(), ping.longitude()).stream()
+                .filter(geofence -> geofence.type() != Geofence.Type.ZONE)
+                .map(Geofence::name)
+                .findFirst()
+                .orElse(null);
+    }
+}
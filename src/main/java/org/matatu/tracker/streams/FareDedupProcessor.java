@@ -0,0 +1,125 @@
+package org.matatu.tracker.streams;
+
+import java.time.Duration;
+
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.WindowStore;
+import org.apache.kafka.streams.state.WindowStoreIterator;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.sketch.TimeBucketedBloomFilter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Drops fares that have already been seen within the dedup ttl. Devices retry a payment callback
+ * when they miss the acknowledgement, so the same fare can reach Kafka several times — exactly-once
+ * processing cannot help because each retry is a new record.
+ *
+ * <p>A fare's identity is {@code transactionId} plus {@code status}: a PENDING fare and the SUCCESS
+ * or FAILED update that resolves it share a transactionId but are different facts.
+ *
+ * <p>KEY CONCEPT — Bloom filter in front of the store: the window store is the source of truth, but
+ * almost every fare is new, and for those the {@link TimeBucketedBloomFilter} answers "definitely
+ * not seen" from memory without touching RocksDB. Only Bloom positives — real duplicates plus ~1%
+ * false positives — pay for a store read. The filter is rebuilt from the store in {@link #init}, so
+ * a restored or migrated task never forgets a fare the store still remembers.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class FareDedupProcessor
+        implements Processor<String, FareEvent, String, FareDedupProcessor.Outcome> {
+
+    /** A fare plus whether it had already been seen. Only exists between processor and sinks. */
+    public record Outcome(FareEvent fare, boolean duplicate) {}
+
+    private final String storeName;
+    private final MatatuTrackerProperties.Dedup config;
+    private final MeterRegistry meterRegistry;
+
+    private ProcessorContext<String, Outcome> context;
+    private WindowStore<String, Long> store;
+    private TimeBucketedBloomFilter bloom;
+    private long ttlMs;
+    private Counter uniqueFares;
+    private Counter duplicateFares;
+    private Counter bloomFalsePositives;
+
+    @Override
+    public void init(ProcessorContext<String, Outcome> context) {
+        this.context = context;
+        this.store = context.getStateStore(storeName);
+        Duration ttl = Duration.ofMinutes(config.getTtlMinutes());
+        this.ttlMs = ttl.toMillis();
+        this.uniqueFares = meterRegistry.counter("matatu.fares.dedup", "result", "unique");
+        this.duplicateFares = meterRegistry.counter("matatu.fares.dedup", "result", "duplicate");
+        this.bloomFalsePositives =
+                meterRegistry.counter("matatu.fares.dedup", "result", "bloom_false_positive");
+
+        if (config.isBloomEnabled()) {
+            bloom =
+                    new TimeBucketedBloomFilter(
+                            ttl,
+                            config.getBloomBuckets(),
+                            config.getBloomExpectedFaresPerBucket(),
+                            config.getBloomFalsePositiveRate());
+            int restored = 0;
+            try (KeyValueIterator<Windowed<String>, Long> all = store.all()) {
+                while (all.hasNext()) {
+                    var entry = all.next();
+                    bloom.put(entry.key.key(), entry.key.window().start());
+                    restored++;
+                }
+            }
+            log.info(
+                    "[DEDUP] 🧮 {} for task {} rebuilt from {} stored fares",
+                    bloom,
+                    context.taskId(),
+                    restored);
+        }
+    }
+
+    @Override
+    public void process(Record<String, FareEvent> record) {
+        FareEvent fare = record.value();
+        String fareKey = fare.transactionId() + ":" + fare.status();
+        long timestamp = record.timestamp();
+
+        if (bloom == null || bloom.mightContain(fareKey, timestamp)) {
+            if (seenBefore(fareKey, timestamp)) {
+                duplicateFares.increment();
+                log.warn(
+                        "[DEDUP] 🔁 Duplicate fare {} ({}) from matatu {}",
+                        fare.transactionId(),
+                        fare.status(),
+                        fare.matatuId());
+                context.forward(record.withValue(new Outcome(fare, true)));
+                return;
+            }
+            if (bloom != null) {
+                bloomFalsePositives.increment();
+            }
+        }
+
+        if (bloom != null) {
+            bloom.put(fareKey, timestamp);
+        }
+        store.put(fareKey, timestamp, timestamp);
+        uniqueFares.increment();
+        context.forward(record.withValue(new Outcome(fare, false)));
+    }
+
+    private boolean seenBefore(String fareKey, long timestamp) {
+        try (WindowStoreIterator<Long> hits =
+                store.fetch(fareKey, timestamp - ttlMs, timestamp + ttlMs)) {
+            return hits.hasNext();
+        }
+    }
+}
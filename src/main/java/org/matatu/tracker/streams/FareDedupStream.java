@@ -0,0 +1,73 @@
+package org.matatu.tracker.streams;
+
+import java.time.Duration;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Named;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.state.Stores;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Idempotent fare ingestion: every fare consumer downstream reads {@code dedupedFareStream} instead
+ * of the raw topic.
+ *
+ * <p>Reads from : matatu.fares Writes to : matatu.fares.duplicates, and the {@code
+ * dedupedFareStream} consumed by {@link SaccoRevenueStream}, {@link UniquePassengerStream} and
+ * {@link FailedFareStream}
+ *
+ * <p>No repartition is needed: a device retries with the same matatuId key, so every copy of a fare
+ * lands on the same partition and task as the original.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class FareDedupStream {
+
+    public static final String FARE_DEDUP_STORE = "fare-dedup-store";
+
+    private final MatatuTrackerProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    @Bean
+    public KStream<String, FareEvent> dedupedFareStream(StreamsBuilder builder) {
+        var fareSerde = new JacksonJsonSerde<>(FareEvent.class);
+        MatatuTrackerProperties.Dedup dedup = properties.getDedup();
+        Duration ttl = Duration.ofMinutes(dedup.getTtlMinutes());
+
+        // Window size = retention: each fare key is held for ttl after its timestamp.
+        builder.addStateStore(
+                Stores.windowStoreBuilder(
+                        Stores.persistentWindowStore(FARE_DEDUP_STORE, ttl, ttl, false),
+                        Serdes.String(),
+                        Serdes.Long()));
+
+        KStream<String, FareDedupProcessor.Outcome> outcomes =
+                builder.stream(Topics.MATATU_FARES, Consumed.with(Serdes.String(), fareSerde))
+                        .process(
+                                () ->
+                                        new FareDedupProcessor(
+                                                FARE_DEDUP_STORE, dedup, meterRegistry),
+                                Named.as("fare-dedup-processor"),
+                                FARE_DEDUP_STORE);
+
+        outcomes.filter((matatuId, outcome) -> outcome.duplicate())
+                .mapValues(FareDedupProcessor.Outcome::fare)
+                .to(
+                        properties.getReplay().outputTopic(Topics.MATATU_FARES_DUPLICATES),
+                        Produced.with(Serdes.String(), fareSerde));
+
+        return outcomes.filter((matatuId, outcome) -> !outcome.duplicate())
+                .mapValues(FareDedupProcessor.Outcome::fare);
+    }
+}
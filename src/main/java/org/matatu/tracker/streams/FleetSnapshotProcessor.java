@@ -0,0 +1,159 @@
+package org.matatu.tracker.streams;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.model.FleetSnapshot;
+import org.matatu.tracker.model.MatatuSnapshot;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Conflates per-matatu snapshots into one {@link FleetSnapshot} per group (route or stage) per
+ * refresh tick.
+ *
+ * <p>KEY CONCEPT — Conflation: between two ticks only the newest snapshot of each matatu is kept,
+ * overwriting the previous one in an in-memory map. The tick publishes what changed (or, on a
+ * keyframe tick, everything), so output volume is refresh rate × vehicles per group no matter how
+ * often the vehicles ping. Like {@link HeatmapProcessor}'s dirty set the map is not backed by a
+ * store: if the task moves, the new owner fills it again within one ping interval and the next
+ * keyframe tells boards the full picture.
+ *
+ * <p>A matatu leaves its group when an off-grid snapshot arrives, when it reports under another
+ * group, or when nothing has been heard from it for {@code staleSeconds} of wall-clock time. The
+ * last rule is what clears a stage board once a matatu has driven off: pings outside every stage
+ * never reach this processor, and a move to a stage owned by another task is only seen there.
+ */
+@RequiredArgsConstructor
+public class FleetSnapshotProcessor
+        implements Processor<String, MatatuSnapshot, String, FleetSnapshot> {
+
+    private final MatatuTrackerProperties.FleetSnapshots settings;
+
+    private ProcessorContext<String, FleetSnapshot> context;
+    // group → matatuId → latest snapshot; LinkedHashMap keeps a stable vehicle order per board.
+    private final Map<String, Map<String, Conflated>> groups = new HashMap<>();
+    private final Map<String, String> groupOf = new HashMap<>();
+    private final Map<String, Set<String>> changed = new HashMap<>();
+    private final Map<String, Set<String>> removed = new HashMap<>();
+    private long lastKeyframeMs = -1;
+
+    private record Conflated(MatatuSnapshot snapshot, long receivedAtMs) {}
+
+    @Override
+    public void init(ProcessorContext<String, FleetSnapshot> context) {
+        this.context = context;
+        context.schedule(
+                Duration.ofMillis(settings.getRefreshMs()),
+                PunctuationType.WALL_CLOCK_TIME,
+                this::tick);
+    }
+
+    @Override
+    public void process(Record<String, MatatuSnapshot> record) {
+        String group = record.key();
+        MatatuSnapshot snapshot = record.value();
+        String matatuId = snapshot.matatuId();
+
+        String previousGroup = groupOf.get(matatuId);
+        if (previousGroup != null && !previousGroup.equals(group)) {
+            remove(previousGroup, matatuId);
+        }
+        if (snapshot.offGrid()) {
+            remove(group, matatuId);
+            return;
+        }
+
+        Map<String, Conflated> vehicles = groups.computeIfAbsent(group, g -> new LinkedHashMap<>());
+        Conflated current = vehicles.get(matatuId);
+        if (current != null && current.snapshot().timestamp().isAfter(snapshot.timestamp())) {
+            return;
+        }
+        vehicles.put(matatuId, new Conflated(snapshot, context.currentSystemTimeMs()));
+        groupOf.put(matatuId, group);
+        changed.computeIfAbsent(group, g -> new LinkedHashSet<>()).add(matatuId);
+        Set<String> gone = removed.get(group);
+        if (gone != null) {
+            gone.remove(matatuId);
+        }
+    }
+
+    private void tick(long nowMs) {
+        long staleBeforeMs = nowMs - Duration.ofSeconds(settings.getStaleSeconds()).toMillis();
+        for (var group : groups.entrySet()) {
+            List<String> stale = new ArrayList<>();
+            group.getValue()
+                    .forEach(
+                            (matatuId, conflated) -> {
+                                if (conflated.receivedAtMs() < staleBeforeMs) {
+                                    stale.add(matatuId);
+                                }
+                            });
+            stale.forEach(matatuId -> remove(group.getKey(), matatuId));
+        }
+
+        boolean keyframe =
+                settings.getMode() == MatatuTrackerProperties.FleetSnapshots.Mode.FULL
+                        || lastKeyframeMs < 0
+                        || nowMs - lastKeyframeMs >= settings.getKeyframeIntervalMs();
+        if (keyframe) {
+            lastKeyframeMs = nowMs;
+        }
+        Instant generatedAt = Instant.ofEpochMilli(nowMs);
+
+        for (var group : groups.entrySet()) {
+            Set<String> changedIds = changed.getOrDefault(group.getKey(), Set.of());
+            Set<String> removedIds = removed.getOrDefault(group.getKey(), Set.of());
+            if (!keyframe && changedIds.isEmpty() && removedIds.isEmpty()) {
+                continue;
+            }
+            if (keyframe && group.getValue().isEmpty() && removedIds.isEmpty()) {
+                continue;
+            }
+            List<MatatuSnapshot> vehicles = new ArrayList<>();
+            if (keyframe) {
+                group.getValue().values().forEach(c -> vehicles.add(c.snapshot()));
+            } else {
+                changedIds.forEach(id -> vehicles.add(group.getValue().get(id).snapshot()));
+            }
+            context.forward(
+                    new Record<>(
+                            group.getKey(),
+                            new FleetSnapshot(
+                                    group.getKey(),
+                                    keyframe,
+                                    generatedAt,
+                                    vehicles,
+                                    List.copyOf(removedIds)),
+                            nowMs));
+        }
+        changed.clear();
+        removed.clear();
+        groups.values().removeIf(Map::isEmpty);
+    }
+
+    private void remove(String group, String matatuId) {
+        Map<String, Conflated> vehicles = groups.get(group);
+        if (vehicles == null || vehicles.remove(matatuId) == null) {
+            return;
+        }
+        groupOf.remove(matatuId, group);
+        Set<String> changedIds = changed.get(group);
+        if (changedIds != null) {
+            changedIds.remove(matatuId);
+        }
+        removed.computeIfAbsent(group, g -> new LinkedHashSet<>()).add(matatuId);
+    }
+}
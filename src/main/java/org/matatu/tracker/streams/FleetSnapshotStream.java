@@ -0,0 +1,120 @@
+package org.matatu.tracker.streams;
+
+import java.util.Optional;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Named;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.kstream.Repartitioned;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.config.MatatuTrackerProperties.FleetSnapshots.Grouping;
+import org.matatu.tracker.geo.GeofenceRegistry;
+import org.matatu.tracker.model.FleetSnapshot;
+import org.matatu.tracker.model.Geofence;
+import org.matatu.tracker.model.MatatuSnapshot;
+import org.matatu.tracker.model.MatatuStateOutput;
+import org.matatu.tracker.partitioning.RoutePartitioner;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fixed-rate, conflated fleet view for display boards.
+ *
+ * <p>Reads from : {@code matatuStateOutputs} (the {@link MatatuSnapshot} outputs) Writes to :
+ * matatu.fleet.snapshots (key = routeId or stage name)
+ *
+ * <p>KEY CONCEPT — Bounded downstream work: a board that consumed matatu.location did work per
+ * ping. {@link FleetSnapshotProcessor} keeps only the newest snapshot per matatu and publishes one
+ * batch per group per refresh tick, so a board now does work per refresh per visible vehicle.
+ *
+ * <p>ROUTE grouping needs no repartition with the default keying: snapshots are keyed by matatuId
+ * but still sit on the partition of their routeId, so every vehicle of a route is already in the
+ * same task. When pings are keyed by matatuId or salted ({@link RoutePartitioner}) a route's
+ * vehicles are spread over tasks, so snapshots are repartitioned by routeId first. STAGE grouping
+ * re-keys each snapshot taken inside a TERMINUS or STAGE geofence by the geofence name and
+ * repartitions; snapshots outside every stage are dropped and age out of their last stage.
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class FleetSnapshotStream {
+
+    private final MatatuTrackerProperties properties;
+    private final GeofenceRegistry geofenceRegistry;
+    private final RoutePartitioner partitioner;
+
+    @Bean
+    public KStream<String, FleetSnapshot> fleetSnapshots(
+            @Qualifier("matatuStateOutputs")
+                    KStream<String, MatatuStateOutput> matatuStateOutputs) {
+        var settings = properties.getFleetSnapshots();
+        var snapshotSerde = new JacksonJsonSerde<>(MatatuSnapshot.class);
+
+        KStream<String, MatatuSnapshot> snapshots =
+                matatuStateOutputs
+                        .filter((matatuId, output) -> output instanceof MatatuSnapshot)
+                        .mapValues(output -> (MatatuSnapshot) output);
+
+        KStream<String, MatatuSnapshot> grouped =
+                (settings.getGrouping() == Grouping.STAGE)
+                        ? snapshots
+                                .flatMap(
+                                        (matatuId, snapshot) ->
+                                                stageAt(snapshot).stream()
+                                                        .map(
+                                                                stage ->
+                                                                        KeyValue.pair(
+                                                                                stage, snapshot))
+                                                        .toList())
+                                .repartition(
+                                        Repartitioned.with(Serdes.String(), snapshotSerde)
+                                                .withName("fleet-snapshot-by-stage"))
+                        : partitioner.routeKeyed()
+                                ? snapshots.selectKey((matatuId, snapshot) -> snapshot.routeId())
+                                : snapshots
+                                        .selectKey((matatuId, snapshot) -> snapshot.routeId())
+                                        .repartition(
+                                                Repartitioned.with(Serdes.String(), snapshotSerde)
+                                                        .withName("fleet-snapshot-by-route"));
+
+        KStream<String, FleetSnapshot> fleetSnapshots =
+                grouped.process(
+                        () -> new FleetSnapshotProcessor(settings),
+                        Named.as("fleet-snapshot-processor"));
+
+        fleetSnapshots
+                .peek(
+                        (group, snapshot) ->
+                                log.debug(
+                                        "[FLEET] 🖥️ {} {} | {} vehicles, {} removed",
+                                        group,
+                                        snapshot.full() ? "keyframe" : "diff",
+                                        snapshot.vehicles().size(),
+                                        snapshot.removed().size()))
+                .to(
+                        properties.getReplay().outputTopic(Topics.MATATU_FLEET_SNAPSHOTS),
+                        Produced.with(
+                                Serdes.String(), new JacksonJsonSerde<>(FleetSnapshot.class)));
+
+        return fleetSnapshots;
+    }
+
+    /** The first stage only: a vehicle in two overlapping stages must not flip between them. */
+    private Optional<String> stageAt(MatatuSnapshot snapshot) {
+        return geofenceRegistry
+                .current()
+                .containing(snapshot.latitude(), snapshot.longitude())
+                .stream()
+                .filter(geofence -> geofence.type() != Geofence.Type.ZONE)
+                .map(Geofence::name)
+                .findFirst();
+    }
+}
@@ -0,0 +1,122 @@
+package org.matatu.tracker.streams;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.matatu.tracker.geo.GeofenceRegistry;
+import org.matatu.tracker.model.Geofence;
+import org.matatu.tracker.model.GeofenceEvent;
+import org.matatu.tracker.model.GeofenceEvent.Transition;
+import org.matatu.tracker.model.GeofenceMembership;
+import org.matatu.tracker.model.GeofenceMembership.Visit;
+import org.matatu.tracker.model.LocationEvent;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Compares each ping's geofence hits with the matatu's stored membership and forwards only the
+ * differences.
+ *
+ * <p>The common case — a matatu driving between stages — finds no hits and no stored state, and
+ * returns after one index lookup and one store read. The store is only written when membership
+ * actually changes, and the entry is deleted once the matatu is inside nothing.
+ *
+ * <p>Pings that arrive before {@link GeofenceRegistry#loaded()} are skipped. After a restart the
+ * index fills up only as {@code matatu.geofences} is replayed, and comparing stored memberships
+ * with an empty index would EXIT every matatu from everything, then ENTER it again moments later.
+ */
+@RequiredArgsConstructor
+public class GeofenceProcessor implements Processor<String, LocationEvent, String, GeofenceEvent> {
+
+    private final String storeName;
+    private final GeofenceRegistry registry;
+    private final long dwellMs;
+
+    private ProcessorContext<String, GeofenceEvent> context;
+    private KeyValueStore<String, GeofenceMembership> store;
+
+    @Override
+    public void init(ProcessorContext<String, GeofenceEvent> context) {
+        this.context = context;
+        this.store = context.getStateStore(storeName);
+    }
+
+    @Override
+    public void process(Record<String, LocationEvent> record) {
+        if (!registry.loaded()) {
+            return;
+        }
+        LocationEvent ping = record.value();
+        List<Geofence> hits = registry.current().containing(ping.latitude(), ping.longitude());
+        GeofenceMembership membership = store.get(record.key());
+        if (hits.isEmpty() && membership == null) {
+            return;
+        }
+
+        long now = ping.timestamp().toEpochMilli();
+        Map<String, Visit> visits =
+                (membership == null) ? new HashMap<>() : new HashMap<>(membership.visits());
+        boolean changed = false;
+
+        var iterator = visits.entrySet().iterator();
+        while (iterator.hasNext()) {
+            var visit = iterator.next();
+            if (hits.stream().noneMatch(g -> g.geofenceId().equals(visit.getKey()))) {
+                emit(record, ping, visit.getKey(), visit.getValue(), Transition.EXIT, now);
+                iterator.remove();
+                changed = true;
+            }
+        }
+
+        for (Geofence geofence : hits) {
+            Visit visit = visits.get(geofence.geofenceId());
+            if (visit == null) {
+                visit = new Visit(geofence.name(), geofence.type(), now, false);
+                visits.put(geofence.geofenceId(), visit);
+                emit(record, ping, geofence.geofenceId(), visit, Transition.ENTER, now);
+                changed = true;
+            } else if (!visit.dwellReported() && now - visit.enteredAtMs() >= dwellMs) {
+                visit = new Visit(visit.name(), visit.type(), visit.enteredAtMs(), true);
+                visits.put(geofence.geofenceId(), visit);
+                emit(record, ping, geofence.geofenceId(), visit, Transition.DWELL, now);
+                changed = true;
+            }
+        }
+
+        if (!changed) {
+            return;
+        }
+        if (visits.isEmpty()) {
+            store.delete(record.key());
+        } else {
+            store.put(record.key(), new GeofenceMembership(visits));
+        }
+    }
+
+    private void emit(
+            Record<String, LocationEvent> record,
+            LocationEvent ping,
+            String geofenceId,
+            Visit visit,
+            Transition transition,
+            long now) {
+        var event =
+                new GeofenceEvent(
+                        ping.matatuId(),
+                        ping.routeId(),
+                        geofenceId,
+                        visit.name(),
+                        visit.type(),
+                        transition,
+                        ping.latitude(),
+                        ping.longitude(),
+                        Math.max(0, now - visit.enteredAtMs()) / 1000,
+                        ping.timestamp());
+        context.forward(record.withValue(event));
+    }
+}
@@ -0,0 +1,101 @@
+package org.matatu.tracker.streams;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Named;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.kstream.Repartitioned;
+import org.apache.kafka.streams.state.Stores;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.encoding.LocationSerdes;
+import org.matatu.tracker.geo.GeofenceRegistry;
+import org.matatu.tracker.model.GeofenceEvent;
+import org.matatu.tracker.model.GeofenceMembership;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Enter / dwell / exit events for termini, stages and restricted zones.
+ *
+ * <p>Reads from : matatu.location (+ matatu.geofences via {@link GeofenceRegistry}) Writes to :
+ * matatu.geofence.events (key = matatuId)
+ *
+ * <p>KEY CONCEPT — Spatial index + membership state: testing every ping against every polygon is
+ * O(pings × geofences). The STR R-tree in {@link GeofenceRegistry} narrows each ping to the few
+ * polygons whose bounding box contains it, and the membership store turns "which geofences am I
+ * in?" into "which geofences did I just enter or leave?". Geofence definitions live outside the
+ * topology, so they can be reloaded without restarting or pausing the stream.
+ *
+ * <p>Membership is per matatu, but {@code matatu.location} is keyed by route, so the stream is
+ * repartitioned by matatuId first. The repartitioned stream is a bean of its own, {@code
+ * locationsByMatatu}, so other per-matatu topologies ({@link TripStream}, {@link
+ * RouteDeviationStream}, {@link FareAttributionStream}) reuse it instead of writing every ping to
+ * another repartition topic.
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class GeofenceStream {
+
+    public static final String GEOFENCE_MEMBERSHIP_STORE = "geofence-membership-store";
+
+    private final MatatuTrackerProperties properties;
+    private final GeofenceRegistry geofenceRegistry;
+    private final LocationSerdes locationSerdes;
+
+    @Bean
+    public KStream<String, LocationEvent> locationsByMatatu(StreamsBuilder builder) {
+        var locationSerde = locationSerdes.location();
+        return builder.stream(Topics.MATATU_LOCATION, Consumed.with(Serdes.String(), locationSerde))
+                .selectKey((routeId, event) -> event.matatuId())
+                .repartition(
+                        Repartitioned.with(Serdes.String(), locationSerde)
+                                .withName("geofence-by-matatu"));
+    }
+
+    @Bean
+    public KStream<String, GeofenceEvent> geofenceEvents(
+            StreamsBuilder builder,
+            @Qualifier("locationsByMatatu") KStream<String, LocationEvent> locationsByMatatu) {
+        var eventSerde = new JacksonJsonSerde<>(GeofenceEvent.class);
+        long dwellMs = properties.getGeofencing().getDwellSeconds() * 1000;
+
+        builder.addStateStore(
+                Stores.keyValueStoreBuilder(
+                        Stores.persistentKeyValueStore(GEOFENCE_MEMBERSHIP_STORE),
+                        Serdes.String(),
+                        new JacksonJsonSerde<>(GeofenceMembership.class)));
+
+        KStream<String, GeofenceEvent> events =
+                locationsByMatatu.process(
+                        () ->
+                                new GeofenceProcessor(
+                                        GEOFENCE_MEMBERSHIP_STORE, geofenceRegistry, dwellMs),
+                        Named.as("geofence-processor"),
+                        GEOFENCE_MEMBERSHIP_STORE);
+
+        events.peek(
+                        (matatuId, event) ->
+                                log.info(
+                                        "[GEOFENCE] 📍 {} {} {} ({}) after {}s",
+                                        matatuId,
+                                        event.transition(),
+                                        event.geofenceName(),
+                                        event.geofenceType(),
+                                        event.dwellSeconds()))
+                .to(
+                        properties.getReplay().outputTopic(Topics.MATATU_GEOFENCE_EVENTS),
+                        Produced.with(Serdes.String(), eventSerde));
+
+        return events;
+    }
+}
@@ -0,0 +1,99 @@
+package org.matatu.tracker.streams;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.WindowStore;
+import org.matatu.tracker.geo.GeoHash;
+import org.matatu.tracker.model.HeatmapCell;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Incrementally maintains per-cell {count, speedSum} in a window store and flushes only the cells
+ * touched since the last flush.
+ *
+ * <p>KEY CONCEPT — Primitive aggregates: each window-store value is a fixed 16-byte array (long
+ * count + double speed sum), so an update is one point read and one point write with no JSON
+ * parsing. The dirty set lives in memory only; if the task moves, the next flush on the new owner
+ * simply starts from the cells it sees change.
+ *
+ * <p>A cell is dirty per window: a late ping and a current one can touch the same cell in two
+ * windows between flushes, and both windows' aggregates are emitted.
+ */
+@RequiredArgsConstructor
+public class HeatmapProcessor implements Processor<String, Double, String, HeatmapCell> {
+
+    static final int AGGREGATE_BYTES = Long.BYTES + Double.BYTES;
+
+    private record DirtyCell(String cell, long windowStart) {}
+
+    private final String storeName;
+    private final long windowSizeMs;
+    private final long emitIntervalMs;
+
+    private ProcessorContext<String, HeatmapCell> context;
+    private WindowStore<String, byte[]> store;
+    private final Set<DirtyCell> dirtyCells = new LinkedHashSet<>();
+
+    @Override
+    public void init(ProcessorContext<String, HeatmapCell> context) {
+        this.context = context;
+        this.store = context.getStateStore(storeName);
+
+        context.schedule(
+                Duration.ofMillis(emitIntervalMs), PunctuationType.WALL_CLOCK_TIME, this::flush);
+    }
+
+    @Override
+    public void process(Record<String, Double> record) {
+        String cell = record.key();
+        long windowStart = record.timestamp() - (record.timestamp() % windowSizeMs);
+
+        byte[] current = store.fetch(cell, windowStart);
+        ByteBuffer aggregate =
+                (current == null) ? ByteBuffer.allocate(AGGREGATE_BYTES) : ByteBuffer.wrap(current);
+        long count = aggregate.getLong(0) + 1;
+        double speedSum = aggregate.getDouble(Long.BYTES) + record.value();
+        aggregate.putLong(0, count).putDouble(Long.BYTES, speedSum);
+
+        store.put(cell, aggregate.array(), windowStart);
+        dirtyCells.add(new DirtyCell(cell, windowStart));
+    }
+
+    private void flush(long nowMs) {
+        for (DirtyCell dirty : dirtyCells) {
+            byte[] current = store.fetch(dirty.cell(), dirty.windowStart());
+            if (current != null) {
+                context.forward(
+                        new Record<>(
+                                dirty.cell(),
+                                toCell(dirty.cell(), dirty.windowStart(), current),
+                                nowMs));
+            }
+        }
+        dirtyCells.clear();
+    }
+
+    public static HeatmapCell toCell(String cell, long windowStart, byte[] aggregate) {
+        ByteBuffer buffer = ByteBuffer.wrap(aggregate);
+        long count = buffer.getLong(0);
+        double speedSum = buffer.getDouble(Long.BYTES);
+        double[] centre = GeoHash.centre(cell);
+        return new HeatmapCell(
+                cell,
+                cell.length(),
+                centre[0],
+                centre[1],
+                count,
+                count == 0 ? 0 : speedSum / count,
+                Instant.ofEpochMilli(windowStart));
+    }
+}
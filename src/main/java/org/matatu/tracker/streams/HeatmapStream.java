@@ -0,0 +1,110 @@
+package org.matatu.tracker.streams;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Named;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.kstream.Repartitioned;
+import org.apache.kafka.streams.state.Stores;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.encoding.LocationSerdes;
+import org.matatu.tracker.geo.GeoHash;
+import org.matatu.tracker.model.HeatmapCell;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Live congestion heatmap: ping density and average speed per geohash cell per window.
+ *
+ * <p>Reads from : matatu.location Writes to : matatu.heatmap.cells (changed cells only)
+ *
+ * <p>KEY CONCEPT — Incremental aggregation: each ping updates one cell per configured precision in
+ * place, and only cells touched since the last flush are emitted. Nothing re-scans the fleet, so
+ * the cost per flush depends on how much of the map changed, not on its size.
+ *
+ * <p>The repartitioned value is just the speed as a {@code double}, so the internal topic carries a
+ * few bytes per ping instead of the whole LocationEvent. Cells are the window-store keys, which
+ * lets {@code HeatmapQueryService} answer a viewport query with point lookups on the cells inside
+ * it instead of scanning the store.
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class HeatmapStream {
+
+    public static final String HEATMAP_STORE = "heatmap-cell-store";
+
+    private final MatatuTrackerProperties properties;
+    private final LocationSerdes locationSerdes;
+
+    @Bean
+    public KStream<String, LocationEvent> heatmapKStream(StreamsBuilder builder) {
+        var heatmap = properties.getHeatmap();
+        List<Integer> precisions = List.copyOf(heatmap.getPrecisions());
+        long windowSizeMs = Duration.ofMinutes(heatmap.getWindowMinutes()).toMillis();
+
+        var locationSerde = locationSerdes.location();
+        var cellSerde = new JacksonJsonSerde<>(HeatmapCell.class);
+
+        builder.addStateStore(
+                Stores.windowStoreBuilder(
+                        Stores.persistentWindowStore(
+                                HEATMAP_STORE,
+                                Duration.ofMinutes(heatmap.getRetentionMinutes()),
+                                Duration.ofMillis(windowSizeMs),
+                                false),
+                        Serdes.String(),
+                        Serdes.ByteArray()));
+
+        KStream<String, LocationEvent> locationStream =
+                builder.stream(
+                        Topics.MATATU_LOCATION, Consumed.with(Serdes.String(), locationSerde));
+
+        locationStream
+                .flatMap(
+                        (routeId, event) ->
+                                precisions.stream()
+                                        .map(
+                                                precision ->
+                                                        KeyValue.pair(
+                                                                GeoHash.encode(
+                                                                        event.latitude(),
+                                                                        event.longitude(),
+                                                                        precision),
+                                                                event.speedKmh()))
+                                        .toList())
+                .repartition(
+                        Repartitioned.with(Serdes.String(), Serdes.Double())
+                                .withName("heatmap-cells"))
+                .process(
+                        () ->
+                                new HeatmapProcessor(
+                                        HEATMAP_STORE, windowSizeMs, heatmap.getEmitIntervalMs()),
+                        Named.as("heatmap-processor"),
+                        HEATMAP_STORE)
+                .peek(
+                        (cell, update) ->
+                                log.debug(
+                                        "[HEATMAP] 🗺️ {} | pings={} avg={} km/h",
+                                        cell,
+                                        update.pingCount(),
+                                        Math.round(update.avgSpeedKmh())))
+                .to(
+                        properties.getReplay().outputTopic(Topics.MATATU_HEATMAP_CELLS),
+                        Produced.with(Serdes.String(), cellSerde));
+
+        return locationStream;
+    }
+}
@@ -0,0 +1,47 @@
+package org.matatu.tracker.streams;
+
+import org.apache.kafka.streams.processor.api.ContextualFixedKeyProcessor;
+import org.apache.kafka.streams.processor.api.FixedKeyRecord;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Forwards only the records a tumbling-window aggregation of {@code windowSizeMs} with {@code
+ * graceMs} would silently drop: those whose window has closed, i.e. window end + grace is at or
+ * before the task's stream time.
+ *
+ * <p>Being far behind is not enough. A record 20 minutes late for a 60-minute window with 5 minutes
+ * of grace still lands in its open window and is counted, so it must not also be reported here.
+ *
+ * <p>Stream time is the highest event timestamp the task has seen so far, so lateness is measured
+ * against the data rather than the wall clock: a catch-up run classifies exactly the same records
+ * as late as live processing did.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class LateArrivalProcessor<V> extends ContextualFixedKeyProcessor<String, V, V> {
+
+    private final String sourceTopic;
+    private final long windowSizeMs;
+    private final long graceMs;
+
+    @Override
+    public void process(FixedKeyRecord<String, V> record) {
+        long streamTimeMs = context().currentStreamTimeMs();
+        if (closes(record.timestamp()) <= streamTimeMs) {
+            log.warn(
+                    "[LATE] ⏰ {} record for {} is {} s behind stream time, its window has closed",
+                    sourceTopic,
+                    record.key(),
+                    (streamTimeMs - record.timestamp()) / 1000);
+            context().forward(record);
+        }
+    }
+
+    /** Stream time at which the record's window stops accepting records. */
+    long closes(long timestampMs) {
+        long windowStart = timestampMs - Math.floorMod(timestampMs, windowSizeMs);
+        return windowStart + windowSizeMs + graceMs;
+    }
+}
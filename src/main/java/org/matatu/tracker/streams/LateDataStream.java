@@ -0,0 +1,85 @@
+package org.matatu.tracker.streams;
+
+import java.time.Duration;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Named;
+import org.apache.kafka.streams.kstream.Produced;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.encoding.LocationSerdes;
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Side outputs for records that arrive too late for the windowed aggregations.
+ *
+ * <p>Reads from : matatu.location, matatu.fares Writes to : matatu.location.late, matatu.fares.late
+ * (original events, unchanged)
+ *
+ * <p>Kafka Streams drops a record whose window has already closed (window end + grace before stream
+ * time) without telling anyone. Copying such records to a side topic makes the loss visible and
+ * lets them be reconciled later instead of vanishing. Fares are checked against the revenue
+ * window's size and grace, pings against the quantile window's.
+ *
+ * <p>The check only approximates those two windows. It runs on the stream time of the task that
+ * reads the input topics. The revenue aggregation, and the quantile aggregation when pings are not
+ * keyed by routeId, sit behind a repartition and advance their own stream time, so a record near
+ * the boundary can be both counted and reported, or dropped and not reported. The unique-passenger
+ * and heatmap windows use other sizes and grace and are not mirrored at all.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class LateDataStream {
+
+    private final MatatuTrackerProperties properties;
+    private final LocationSerdes locationSerdes;
+
+    @Bean
+    public KStream<String, LocationEvent> lateLocationStream(StreamsBuilder builder) {
+        var serde = locationSerdes.location();
+        var sketches = properties.getSketches();
+        long windowSizeMs = Duration.ofMinutes(sketches.getQuantileWindowMinutes()).toMillis();
+        long graceMs = Duration.ofMinutes(sketches.getQuantileGraceMinutes()).toMillis();
+
+        KStream<String, LocationEvent> late =
+                builder.stream(Topics.MATATU_LOCATION, Consumed.with(Serdes.String(), serde))
+                        .processValues(
+                                () ->
+                                        new LateArrivalProcessor<LocationEvent>(
+                                                Topics.MATATU_LOCATION, windowSizeMs, graceMs),
+                                Named.as("late-location-classifier"));
+        late.to(
+                properties.getReplay().outputTopic(Topics.MATATU_LOCATION_LATE),
+                Produced.with(Serdes.String(), serde));
+        return late;
+    }
+
+    @Bean
+    public KStream<String, FareEvent> lateFareStream(StreamsBuilder builder) {
+        var serde = new JacksonJsonSerde<>(FareEvent.class);
+        var streams = properties.getStreams();
+        long windowSizeMs = Duration.ofMinutes(streams.getRevenueWindowMinutes()).toMillis();
+        long graceMs = Duration.ofMinutes(streams.getRevenueGraceMinutes()).toMillis();
+
+        KStream<String, FareEvent> late =
+                builder.stream(Topics.MATATU_FARES, Consumed.with(Serdes.String(), serde))
+                        .processValues(
+                                () ->
+                                        new LateArrivalProcessor<FareEvent>(
+                                                Topics.MATATU_FARES, windowSizeMs, graceMs),
+                                Named.as("late-fare-classifier"));
+        late.to(
+                properties.getReplay().outputTopic(Topics.MATATU_FARES_LATE),
+                Produced.with(Serdes.String(), serde));
+        return late;
+    }
+}
@@ -0,0 +1,197 @@
+package org.matatu.tracker.streams;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Consumer;
+
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.geo.GeoMath;
+import org.matatu.tracker.model.DeltaEvent;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.model.MatatuKinematics;
+import org.matatu.tracker.model.MatatuSnapshot;
+import org.matatu.tracker.model.MatatuState;
+import org.matatu.tracker.model.MatatuStateOutput;
+import org.matatu.tracker.model.OffGridAlert;
+import org.matatu.tracker.model.SpeedingEpisode;
+import org.matatu.tracker.model.SpeedingStreak;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The per-matatu transitions of {@link MatatuStateProcessor}, free of Kafka Streams: given the
+ * stored {@link MatatuState} and a ping, returns the next state and hands every output to a
+ * consumer.
+ *
+ * <p>The processor supplies a state store and {@code context.forward}; the in-process pipeline
+ * supplies a map and its own stages. Both run exactly this code, so they cannot drift apart.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class MatatuStateMachine {
+
+    private final long silenceThresholdMs;
+    private final double speedThresholdKmh;
+    private final MatatuTrackerProperties.Speeding speeding;
+
+    /** Applies one ping; the caller stores the returned state. */
+    public MatatuState onPing(
+            String matatuId,
+            LocationEvent event,
+            MatatuState previous,
+            Consumer<MatatuStateOutput> out) {
+        // ── Delta ────────────────────────────────────────────────────────
+        int previousCount = (previous == null) ? 0 : previous.lastPassengerCount();
+        int delta = event.passengersOnboard() - previousCount;
+        out.accept(
+                new DeltaEvent(
+                        matatuId,
+                        event.routeId(),
+                        event.routeName(),
+                        delta,
+                        Math.max(0, delta),
+                        Math.max(0, -delta),
+                        event.timestamp()));
+
+        // ── Kinematics ───────────────────────────────────────────────────
+        double metres = 0;
+        double derivedSpeedKmh = (previous == null) ? 0 : previous.derivedSpeedKmh();
+        double headingDegrees = (previous == null) ? 0 : previous.headingDegrees();
+        long intervalMs =
+                (previous == null)
+                        ? 0
+                        : Duration.between(previous.lastEventAt(), event.timestamp()).toMillis();
+        if (intervalMs > 0) {
+            metres =
+                    GeoMath.distanceMetres(
+                            previous.lastLatitude(),
+                            previous.lastLongitude(),
+                            event.latitude(),
+                            event.longitude());
+            derivedSpeedKmh = metres / intervalMs * 3_600;
+            if (metres > 0) {
+                headingDegrees =
+                        GeoMath.bearingDegrees(
+                                previous.lastLatitude(),
+                                previous.lastLongitude(),
+                                event.latitude(),
+                                event.longitude());
+            }
+            out.accept(
+                    new MatatuKinematics(
+                            matatuId,
+                            event.routeId(),
+                            event.speedKmh(),
+                            derivedSpeedKmh,
+                            headingDegrees,
+                            metres,
+                            intervalMs,
+                            event.timestamp()));
+        }
+
+        // ── Speeding episodes ────────────────────────────────────────────
+        // A ping older than the stored one still counts for passengers but must not move the
+        // matatu backwards in time or space, nor reorder its speeding streak.
+        boolean newer = (previous == null) || intervalMs >= 0;
+        SpeedingStreak streak = (previous == null) ? null : previous.speeding();
+        if (newer) {
+            streak = trackSpeeding(event, previous, streak, metres, out);
+        }
+
+        // ── Single write ─────────────────────────────────────────────────
+        MatatuState state =
+                new MatatuState(
+                        matatuId,
+                        event.routeId(),
+                        event.routeName(),
+                        event.passengersOnboard(),
+                        newer ? event.latitude() : previous.lastLatitude(),
+                        newer ? event.longitude() : previous.lastLongitude(),
+                        newer ? event.timestamp() : previous.lastEventAt(),
+                        derivedSpeedKmh,
+                        headingDegrees,
+                        false,
+                        streak);
+
+        // ── Latest snapshot ──────────────────────────────────────────────
+        // Only forward progress: a late ping must not overwrite a newer position in a topic that
+        // compaction reduces to the last record written.
+        if (newer) {
+            out.accept(MatatuSnapshot.of(state));
+        }
+        return state;
+    }
+
+    /**
+     * Raises the off-grid alert for a matatu silent for longer than the threshold at {@code nowMs}.
+     * Returns the state to store, or null when there is nothing to report.
+     */
+    public MatatuState onSilence(MatatuState state, long nowMs, Consumer<MatatuStateOutput> out) {
+        long silenceMs = nowMs - state.lastEventAt().toEpochMilli();
+        if (state.offGridAlerted() || silenceMs <= silenceThresholdMs) {
+            return null;
+        }
+
+        log.warn(
+                "[OFF-GRID] 📡 Matatu {} on {} has been silent for {} minutes. Last seen: {}",
+                state.matatuId(),
+                state.routeName(),
+                silenceMs / 60_000,
+                state.lastEventAt());
+        out.accept(
+                new OffGridAlert(
+                        state.matatuId(),
+                        state.routeId(),
+                        state.routeName(),
+                        state.lastLatitude(),
+                        state.lastLongitude(),
+                        silenceMs,
+                        state.lastEventAt(),
+                        Instant.ofEpochMilli(nowMs)));
+        if (state.speeding() != null && state.speeding().open()) {
+            out.accept(
+                    SpeedingEpisode.of(state, state.speeding(), SpeedingEpisode.ClosedBy.OFF_GRID));
+        }
+        MatatuState alerted = state.withOffGridAlerted();
+        out.accept(MatatuSnapshot.of(alerted));
+        return alerted;
+    }
+
+    private SpeedingStreak trackSpeeding(
+            LocationEvent event,
+            MatatuState previous,
+            SpeedingStreak streak,
+            double metres,
+            Consumer<MatatuStateOutput> out) {
+        if (event.speedKmh() > speedThresholdKmh) {
+            streak = (streak == null) ? SpeedingStreak.start(event) : streak.extend(event, metres);
+            long streakSeconds =
+                    Duration.between(streak.startedAt(), streak.lastOverAt()).toSeconds();
+            if (!streak.open()
+                    && (streak.pings() >= speeding.getOpenPings()
+                            || streakSeconds >= speeding.getOpenSeconds())) {
+                streak = streak.opened();
+            }
+            return streak;
+        }
+        if (streak == null || !streak.open()) {
+            return null;
+        }
+        streak = streak.withBelowPing(metres);
+        if (streak.belowPings() < speeding.getClosePings()) {
+            return streak;
+        }
+        SpeedingEpisode episode =
+                SpeedingEpisode.of(previous, streak, SpeedingEpisode.ClosedBy.RECOVERED);
+        log.warn(
+                "[SPEEDING] 🚨 Matatu {} on {} speeding for {} s — max {} km/h, {} m",
+                episode.matatuId(),
+                episode.routeName(),
+                episode.durationSeconds(),
+                Math.round(episode.maxSpeedKmh()),
+                Math.round(episode.pathMetres()));
+        out.accept(episode);
+        return null;
+    }
+}
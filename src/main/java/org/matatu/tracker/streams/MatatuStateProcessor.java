@@ -0,0 +1,108 @@
+package org.matatu.tracker.streams;
+
+import java.time.Duration;
+
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.model.DeltaEvent;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.model.MatatuKinematics;
+import org.matatu.tracker.model.MatatuSnapshot;
+import org.matatu.tracker.model.MatatuState;
+import org.matatu.tracker.model.MatatuStateOutput;
+import org.matatu.tracker.model.OffGridAlert;
+import org.matatu.tracker.model.SpeedingEpisode;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * The single per-matatu processor: one store read and one store write per ping, five kinds of
+ * output.
+ *
+ * <ul>
+ *   <li>{@link DeltaEvent} — passenger-count change since the previous ping, for route occupancy.
+ *   <li>{@link MatatuKinematics} — speed and heading derived from the previous fix.
+ *   <li>{@link OffGridAlert} — raised by a punctuator once per silence episode.
+ *   <li>{@link SpeedingEpisode} — one summary per sustained speeding episode, when it ends.
+ *   <li>{@link MatatuSnapshot} — the state after every ping that moves the matatu forward in time,
+ *       and again when it goes off-grid, for the compacted latest-position topic.
+ * </ul>
+ *
+ * <p>A speeding episode opens after {@code openPings} consecutive pings over the threshold, or once
+ * a streak has lasted {@code openSeconds}, and closes after {@code closePings} consecutive pings
+ * back under it (or when the matatu goes off-grid). Shorter streaks are a single fast reading or a
+ * brief overtake and produce nothing.
+ *
+ * <p>The punctuator runs on wall-clock time live, so a partition that goes completely quiet is
+ * still noticed, and on stream time for replays, where silence must be judged against the events
+ * being replayed rather than today's clock.
+ *
+ * <p>KEY CONCEPT — Consolidated state: the delta and off-grid logic used to keep their own records
+ * in their own stores, so every ping paid for two reads, two writes and two changelog records that
+ * each repeated matatuId, routeId and a timestamp. Folding them into one {@link MatatuState} halves
+ * that, and every new per-matatu feature (kinematics here) reuses the same read instead of adding
+ * another store.
+ *
+ * <p>The transitions themselves live in {@link MatatuStateMachine}; this class adds the store, the
+ * punctuator and the forwarding.
+ */
+@RequiredArgsConstructor
+public class MatatuStateProcessor
+        implements Processor<String, LocationEvent, String, MatatuStateOutput> {
+
+    private final String storeName;
+    private final long silenceThresholdMs;
+    private final long checkIntervalMs;
+    private final PunctuationType punctuationType;
+    private final double speedThresholdKmh;
+    private final MatatuTrackerProperties.Speeding speeding;
+
+    private ProcessorContext<String, MatatuStateOutput> context;
+    private KeyValueStore<String, MatatuState> store;
+    private MatatuStateMachine machine;
+
+    @Override
+    public void init(ProcessorContext<String, MatatuStateOutput> context) {
+        this.context = context;
+        this.store = context.getStateStore(storeName);
+        this.machine = new MatatuStateMachine(silenceThresholdMs, speedThresholdKmh, speeding);
+
+        context.schedule(
+                Duration.ofMillis(checkIntervalMs), punctuationType, this::checkForOffGridMatatus);
+    }
+
+    @Override
+    public void process(Record<String, LocationEvent> record) {
+        String matatuId = record.key();
+        MatatuState state =
+                machine.onPing(
+                        matatuId,
+                        record.value(),
+                        store.get(matatuId),
+                        output -> context.forward(record.withValue(output)));
+        store.put(matatuId, state);
+    }
+
+    private void checkForOffGridMatatus(long nowMs) {
+        try (KeyValueIterator<String, MatatuState> iterator = store.all()) {
+            while (iterator.hasNext()) {
+                MatatuState state = iterator.next().value;
+                MatatuState alerted =
+                        machine.onSilence(
+                                state,
+                                nowMs,
+                                output ->
+                                        context.forward(
+                                                new Record<>(state.matatuId(), output, nowMs)));
+                if (alerted != null) {
+                    store.put(state.matatuId(), alerted);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.matatu.tracker.streams;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Named;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.state.Stores;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.encoding.LocationSerdes;
+import org.matatu.tracker.model.DeltaEvent;
+import org.matatu.tracker.model.MatatuKinematics;
+import org.matatu.tracker.model.MatatuSnapshot;
+import org.matatu.tracker.model.MatatuState;
+import org.matatu.tracker.model.MatatuStateOutput;
+import org.matatu.tracker.model.OffGridAlert;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Per-matatu state: passenger deltas, kinematics and off-grid detection from one processor and one
+ * store.
+ *
+ * <p>Reads from : matatu.location Writes to : matatu.offgrid.alerts, matatu.kinematics,
+ * matatu.latest.positions (compacted), and the {@code matatuDeltaStream} consumed by {@link
+ * PassengerCountStream}
+ *
+ * <p>The stream is re-keyed by matatuId without a repartition topic: every ping of a matatu carries
+ * the same routeId key, so all of them already arrive on the same partition and task.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class MatatuStateStream {
+
+    public static final String MATATU_STATE_STORE = "matatu-state-store";
+
+    private final MatatuTrackerProperties properties;
+    private final LocationSerdes locationSerdes;
+
+    @Bean
+    public KStream<String, MatatuStateOutput> matatuStateOutputs(StreamsBuilder builder) {
+        var locationSerde = locationSerdes.location();
+
+        builder.addStateStore(
+                Stores.keyValueStoreBuilder(
+                        Stores.persistentKeyValueStore(MATATU_STATE_STORE),
+                        Serdes.String(),
+                        new JacksonJsonSerde<>(MatatuState.class)));
+
+        KStream<String, MatatuStateOutput> outputs =
+                builder.stream(
+                                Topics.MATATU_LOCATION,
+                                Consumed.with(Serdes.String(), locationSerde))
+                        .selectKey((routeId, event) -> event.matatuId())
+                        .process(
+                                () ->
+                                        new MatatuStateProcessor(
+                                                MATATU_STATE_STORE,
+                                                properties.getStreams().getOffgridSilenceMs(),
+                                                properties.getStreams().getOffgridCheckIntervalMs(),
+                                                properties.getStreams().getOffgridPunctuation(),
+                                                properties.getStreams().getSpeedThresholdKmh(),
+                                                properties.getSpeeding()),
+                                Named.as("matatu-state-processor"),
+                                MATATU_STATE_STORE);
+
+        outputs.filter((matatuId, output) -> output instanceof OffGridAlert)
+                .mapValues(output -> (OffGridAlert) output)
+                .to(
+                        properties.getReplay().outputTopic(Topics.MATATU_OFFGRID_ALERTS),
+                        Produced.with(Serdes.String(), new JacksonJsonSerde<>(OffGridAlert.class)));
+
+        outputs.filter((matatuId, output) -> output instanceof MatatuKinematics)
+                .mapValues(output -> (MatatuKinematics) output)
+                .to(
+                        properties.getReplay().outputTopic(Topics.MATATU_KINEMATICS),
+                        Produced.with(
+                                Serdes.String(), new JacksonJsonSerde<>(MatatuKinematics.class)));
+
+        // Keyed by matatuId on a compacted topic: a new display board reads one record per matatu
+        // instead of replaying matatu.location.
+        outputs.filter((matatuId, output) -> output instanceof MatatuSnapshot)
+                .mapValues(output -> (MatatuSnapshot) output)
+                .to(
+                        properties.getReplay().outputTopic(Topics.MATATU_LATEST_POSITIONS),
+                        Produced.with(
+                                Serdes.String(), new JacksonJsonSerde<>(MatatuSnapshot.class)));
+
+        return outputs;
+    }
+
+    @Bean
+    public KStream<String, DeltaEvent> matatuDeltaStream(
+            @Qualifier("matatuStateOutputs")
+                    KStream<String, MatatuStateOutput> matatuStateOutputs) {
+        return matatuStateOutputs
+                .filter((matatuId, output) -> output instanceof DeltaEvent)
+                .mapValues(output -> (DeltaEvent) output);
+    }
+}
@@ -3,82 +3,101 @@ package org.matatu.tracker.streams;
 import java.time.Instant;
 
 import org.apache.kafka.common.serialization.Serdes;
-import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.kstream.*;
 import org.apache.kafka.streams.state.Stores;
+import org.matatu.tracker.config.MatatuTrackerProperties;
 import org.matatu.tracker.model.*;
+import org.matatu.tracker.partitioning.RoutePartitioner;
 import org.matatu.tracker.topics.Topics;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.support.serializer.JacksonJsonSerde;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Route-level occupancy from the per-matatu passenger deltas.
+ *
+ * <p>KEY CONCEPT — Two-stage aggregation for salted routes: a route in {@code
+ * app.partitioning.hot-routes} is aggregated per salted sub-key ({@code route_33#0} …), so its
+ * deltas are spread over several tasks like its pings are. Each sub-key's partial {@link
+ * RouteOccupancy} is then re-keyed to the routeId and merged with an adder and a subtractor: when a
+ * partial changes, the table sends its old value to subtract and its new value to add. The record
+ * cache in front of the partial store conflates many deltas into one update per commit, so the
+ * merge stage — the only one that still sees the whole route — does far less work than one delta
+ * per ping. Without hot routes the topology is the single aggregation it always was.
+ */
 @Slf4j
 @Configuration
+@RequiredArgsConstructor
 public class PassengerCountStream {
 
-    static final String MATATU_SNAPSHOT_STORE = "matatu-snapshot-store";
     static final String ROUTE_OCCUPANCY_STORE = "route-occupancy-store";
+    static final String PARTIAL_OCCUPANCY_STORE = "route-occupancy-partial-store";
 
+    public static final RouteOccupancy EMPTY = new RouteOccupancy("", "", 0, 0L, 0L, Instant.EPOCH);
+
+    private final MatatuTrackerProperties properties;
+    private final RoutePartitioner partitioner;
+
+    /**
+     * Per-matatu deltas come from {@link MatatuStateProcessor}, which owns the only per-matatu
+     * store; this class only does the route-level aggregation.
+     */
     @Bean
-    public KTable<String, RouteOccupancy> routeOccupancyTable(StreamsBuilder builder) {
+    public KTable<String, RouteOccupancy> routeOccupancyTable(
+            @Qualifier("matatuDeltaStream") KStream<String, DeltaEvent> matatuDeltaStream) {
 
-        var locationSerde = new JacksonJsonSerde<>(LocationEvent.class);
         var deltaEventSerde = new JacksonJsonSerde<>(DeltaEvent.class);
-        var snapshotSerde = new JacksonJsonSerde<>(MatatuSnapshot.class);
         var occupancySerde = new JacksonJsonSerde<>(RouteOccupancy.class);
 
-        //  registers the store with the topology, making it available for processors to request by
-        // name.
-        builder.addStateStore(
-                Stores.keyValueStoreBuilder(
-                        Stores.persistentKeyValueStore(MATATU_SNAPSHOT_STORE),
-                        Serdes.String(),
-                        snapshotSerde));
-
-        // ── Step 1: consume raw location events (key = routeId) ──────────
-        KStream<String, LocationEvent> locationStream =
-                builder.stream(
-                        Topics.MATATU_LOCATION, Consumed.with(Serdes.String(), locationSerde));
-
-        // ── Step 2: compute per-matatu delta ─────────────────────────────
+        // ── Steps 1–2: per-matatu deltas, re-keyed to routeId (or its salted sub-key) ──
         KStream<String, DeltaEvent> deltaStream =
-                locationStream
-                        // Re-key by matatuId so each matatu's events hit the same
-                        // partition and the processor sees a consistent history
-                        .selectKey((routeId, event) -> event.matatuId())
-                        // processValues - keeps the keys fixed
-                        .processValues(
-                                () -> new MatatuDeltaProcessor(MATATU_SNAPSHOT_STORE),
-                                Named.as("matatu-delta-processor"),
-                                MATATU_SNAPSHOT_STORE)
-                        .filter((matatuId, delta) -> delta != null)
-                        // Re-key back to routeId for route-level aggregation
-                        .selectKey((matatuId, delta) -> delta.routeId());
+                matatuDeltaStream.selectKey(
+                        (matatuId, delta) ->
+                                partitioner.aggregationKey(delta.routeId(), delta.matatuId()));
 
         // ── Step 3: aggregate deltas into route-level occupancy ───────────
-        KTable<String, RouteOccupancy> occupancyTable =
-                deltaStream
-                        .groupByKey(Grouped.with(Serdes.String(), deltaEventSerde))
-                        .aggregate(
-                                () -> new RouteOccupancy("", "", 0, 0L, 0L, Instant.now()),
-                                (routeId, delta, current) ->
-                                        new RouteOccupancy(
-                                                routeId,
-                                                delta.routeName(),
-                                                Math.max(
-                                                        0,
-                                                        current.currentPassengers()
-                                                                + delta.passengerDelta()),
-                                                current.totalBoardings() + delta.boardings(),
-                                                current.totalAlightings() + delta.alightings(),
-                                                Instant.now()),
-                                Materialized.<String, RouteOccupancy>as(
-                                                Stores.persistentKeyValueStore(
-                                                        ROUTE_OCCUPANCY_STORE))
-                                        .withKeySerde(Serdes.String())
-                                        .withValueSerde(occupancySerde));
+        KGroupedStream<String, DeltaEvent> grouped =
+                deltaStream.groupByKey(Grouped.with(Serdes.String(), deltaEventSerde));
+
+        KTable<String, RouteOccupancy> occupancyTable;
+        if (!partitioner.salted()) {
+            occupancyTable =
+                    grouped.aggregate(
+                            () -> EMPTY,
+                            (routeId, delta, current) -> apply(current, delta),
+                            Materialized.<String, RouteOccupancy>as(
+                                            Stores.persistentKeyValueStore(ROUTE_OCCUPANCY_STORE))
+                                    .withKeySerde(Serdes.String())
+                                    .withValueSerde(occupancySerde));
+        } else {
+            // ── Step 3b: merge the salted partials of each route ──────────
+            occupancyTable =
+                    grouped.aggregate(
+                                    () -> EMPTY,
+                                    (subKey, delta, current) -> apply(current, delta),
+                                    Materialized.<String, RouteOccupancy>as(
+                                                    Stores.persistentKeyValueStore(
+                                                            PARTIAL_OCCUPANCY_STORE))
+                                            .withKeySerde(Serdes.String())
+                                            .withValueSerde(occupancySerde))
+                            .groupBy(
+                                    (subKey, partial) -> KeyValue.pair(partial.routeId(), partial),
+                                    Grouped.with(Serdes.String(), occupancySerde))
+                            .aggregate(
+                                    () -> EMPTY,
+                                    PassengerCountStream::add,
+                                    PassengerCountStream::subtract,
+                                    Materialized.<String, RouteOccupancy>as(
+                                                    Stores.persistentKeyValueStore(
+                                                            ROUTE_OCCUPANCY_STORE))
+                                            .withKeySerde(Serdes.String())
+                                            .withValueSerde(occupancySerde));
+        }
 
         // ── Step 4: log and publish ───────────────────────────────────────
         occupancyTable
@@ -91,8 +110,53 @@ public class PassengerCountStream {
                                         occ.currentPassengers(),
                                         occ.totalBoardings(),
                                         occ.totalAlightings()))
-                .to(Topics.MATATU_ROUTE_OCCUPANCY, Produced.with(Serdes.String(), occupancySerde));
+                .to(
+                        properties.getReplay().outputTopic(Topics.MATATU_ROUTE_OCCUPANCY),
+                        Produced.with(Serdes.String(), occupancySerde));
+
+        // The same updates on a compacted topic, so a new dashboard reads one record per route.
+        occupancyTable
+                .toStream()
+                .to(
+                        properties.getReplay().outputTopic(Topics.MATATU_LATEST_OCCUPANCY),
+                        Produced.with(Serdes.String(), occupancySerde));
 
         return occupancyTable;
     }
+
+    public static RouteOccupancy apply(RouteOccupancy current, DeltaEvent delta) {
+        return new RouteOccupancy(
+                delta.routeId(),
+                delta.routeName(),
+                Math.max(0, current.currentPassengers() + delta.passengerDelta()),
+                current.totalBoardings() + delta.boardings(),
+                current.totalAlightings() + delta.alightings(),
+                // Event time, so a replay reproduces the same table.
+                later(delta.timestamp(), current.lastUpdated()));
+    }
+
+    static RouteOccupancy add(String routeId, RouteOccupancy partial, RouteOccupancy total) {
+        return new RouteOccupancy(
+                routeId,
+                partial.routeName(),
+                total.currentPassengers() + partial.currentPassengers(),
+                total.totalBoardings() + partial.totalBoardings(),
+                total.totalAlightings() + partial.totalAlightings(),
+                later(partial.lastUpdated(), total.lastUpdated()));
+    }
+
+    /** Removes a partial's previous value; lastUpdated stays, as it only ever moves forward. */
+    static RouteOccupancy subtract(String routeId, RouteOccupancy partial, RouteOccupancy total) {
+        return new RouteOccupancy(
+                routeId,
+                total.routeName(),
+                total.currentPassengers() - partial.currentPassengers(),
+                total.totalBoardings() - partial.totalBoardings(),
+                total.totalAlightings() - partial.totalAlightings(),
+                total.lastUpdated());
+    }
+
+    private static Instant later(Instant a, Instant b) {
+        return a.isAfter(b) ? a : b;
+    }
 }
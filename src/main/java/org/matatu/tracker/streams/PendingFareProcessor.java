@@ -0,0 +1,177 @@
+package org.matatu.tracker.streams;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.model.FareResolution;
+import org.matatu.tracker.model.PendingFare;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Follows every PENDING fare until its SUCCESS/FAILED confirmation arrives or the timeout passes.
+ *
+ * <p>Two stores work together:
+ *
+ * <ul>
+ *   <li>{@code pendingStore}: transactionId → {@link PendingFare}, for correlating the
+ *       confirmation.
+ *   <li>{@code expiryStore}: {@code [expiresAtMs as 8 big-endian bytes][transactionId]} → empty.
+ * </ul>
+ *
+ * <p>KEY CONCEPT — Ordered expiry index: RocksDB keeps keys in byte order, and a big-endian
+ * timestamp prefix makes byte order the same as deadline order. The punctuator therefore reads a
+ * single range from the start of the index up to "now" and stops at the first deadline in the
+ * future — its cost is O(expired fares), however many fares are still pending. Scanning the pending
+ * store instead (as off-grid detection does for its ~50 matatus) would touch every pending fare on
+ * every tick.
+ *
+ * <p>Both stores live in RocksDB, not on the heap; a pending fare costs one small JSON value plus
+ * an index key of 8 bytes + transactionId.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class PendingFareProcessor implements Processor<String, FareEvent, String, FareResolution> {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final String pendingStoreName;
+    private final String expiryStoreName;
+    private final long timeoutMs;
+    private final long checkIntervalMs;
+    private final PunctuationType punctuationType;
+
+    private ProcessorContext<String, FareResolution> context;
+    private KeyValueStore<String, PendingFare> pendingStore;
+    private KeyValueStore<Bytes, byte[]> expiryStore;
+
+    @Override
+    public void init(ProcessorContext<String, FareResolution> context) {
+        this.context = context;
+        this.pendingStore = context.getStateStore(pendingStoreName);
+        this.expiryStore = context.getStateStore(expiryStoreName);
+        context.schedule(Duration.ofMillis(checkIntervalMs), punctuationType, this::expire);
+    }
+
+    @Override
+    public void process(Record<String, FareEvent> record) {
+        FareEvent fare = record.value();
+        if (fare.status() == FareEvent.PaymentStatus.PENDING) {
+            track(fare, record.timestamp());
+        } else {
+            resolve(record, fare);
+        }
+    }
+
+    private void track(FareEvent fare, long timestamp) {
+        if (pendingStore.get(fare.transactionId()) != null) {
+            return;
+        }
+        long expiresAtMs = timestamp + timeoutMs;
+        pendingStore.put(
+                fare.transactionId(),
+                new PendingFare(
+                        fare.matatuId(),
+                        fare.passengerId(),
+                        fare.amountKes(),
+                        fare.paymentMethod(),
+                        fare.timestamp(),
+                        expiresAtMs));
+        expiryStore.put(expiryKey(expiresAtMs, fare.transactionId()), EMPTY);
+    }
+
+    /** A SUCCESS or FAILED fare with no pending entry was never pending — nothing to do. */
+    private void resolve(Record<String, FareEvent> record, FareEvent fare) {
+        PendingFare pending = pendingStore.delete(fare.transactionId());
+        if (pending == null) {
+            return;
+        }
+        expiryStore.delete(expiryKey(pending.expiresAtMs(), fare.transactionId()));
+
+        var outcome =
+                (fare.status() == FareEvent.PaymentStatus.SUCCESS)
+                        ? FareResolution.Outcome.SUCCESS
+                        : FareResolution.Outcome.FAILED;
+        log.info(
+                "[PENDING FARES] 🔗 {} resolved as {} after {} s",
+                fare.transactionId(),
+                outcome,
+                (record.timestamp() - pending.pendingAt().toEpochMilli()) / 1000);
+        context.forward(
+                record.withValue(
+                        toResolution(fare.transactionId(), pending, outcome, record.timestamp())));
+    }
+
+    private void expire(long nowMs) {
+        List<KeyValue<Bytes, byte[]>> expired = new ArrayList<>();
+        try (KeyValueIterator<Bytes, byte[]> due =
+                expiryStore.range(expiryKey(0, ""), expiryKey(nowMs + 1, ""))) {
+            due.forEachRemaining(expired::add);
+        }
+
+        for (KeyValue<Bytes, byte[]> entry : expired) {
+            expiryStore.delete(entry.key);
+            String transactionId = transactionIdOf(entry.key);
+            PendingFare pending = pendingStore.delete(transactionId);
+            if (pending == null) {
+                continue;
+            }
+            log.warn(
+                    "[PENDING FARES] ⌛ {} on matatu {} timed out — no confirmation after {} s",
+                    transactionId,
+                    pending.matatuId(),
+                    timeoutMs / 1000);
+            context.forward(
+                    new Record<>(
+                            pending.matatuId(),
+                            toResolution(
+                                    transactionId,
+                                    pending,
+                                    FareResolution.Outcome.TIMED_OUT,
+                                    nowMs),
+                            nowMs));
+        }
+    }
+
+    private static FareResolution toResolution(
+            String transactionId,
+            PendingFare pending,
+            FareResolution.Outcome outcome,
+            long resolvedAtMs) {
+        return new FareResolution(
+                transactionId,
+                pending.matatuId(),
+                pending.passengerId(),
+                pending.amountKes(),
+                pending.paymentMethod(),
+                outcome,
+                pending.pendingAt(),
+                Instant.ofEpochMilli(resolvedAtMs),
+                resolvedAtMs - pending.pendingAt().toEpochMilli());
+    }
+
+    static Bytes expiryKey(long expiresAtMs, String transactionId) {
+        byte[] id = transactionId.getBytes(StandardCharsets.UTF_8);
+        return Bytes.wrap(
+                ByteBuffer.allocate(Long.BYTES + id.length).putLong(expiresAtMs).put(id).array());
+    }
+
+    static String transactionIdOf(Bytes expiryKey) {
+        byte[] key = expiryKey.get();
+        return new String(key, Long.BYTES, key.length - Long.BYTES, StandardCharsets.UTF_8);
+    }
+}
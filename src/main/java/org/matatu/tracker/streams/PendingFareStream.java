@@ -0,0 +1,89 @@
+package org.matatu.tracker.streams;
+
+import java.time.Duration;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Named;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.state.Stores;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.model.FareResolution;
+import org.matatu.tracker.model.PendingFare;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Resolution of PENDING fares.
+ *
+ * <p>Reads from : dedupedFareStream (see {@link FareDedupStream}) Writes to :
+ * matatu.fares.resolved, matatu.fares.timedout
+ *
+ * <p>No repartition is needed: the PENDING fare and its confirmation come from the same matatu, so
+ * both carry the same matatuId key and reach the same task.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class PendingFareStream {
+
+    public static final String PENDING_FARE_STORE = "pending-fare-store";
+    public static final String PENDING_FARE_EXPIRY_STORE = "pending-fare-expiry-store";
+
+    private final MatatuTrackerProperties properties;
+
+    @Bean
+    public KStream<String, FareResolution> fareResolutionStream(
+            StreamsBuilder builder,
+            @Qualifier("dedupedFareStream") KStream<String, FareEvent> fareStream) {
+        var resolutionSerde = new JacksonJsonSerde<>(FareResolution.class);
+        MatatuTrackerProperties.PendingFares config = properties.getPendingFares();
+
+        builder.addStateStore(
+                Stores.keyValueStoreBuilder(
+                        Stores.persistentKeyValueStore(PENDING_FARE_STORE),
+                        Serdes.String(),
+                        new JacksonJsonSerde<>(PendingFare.class)));
+        builder.addStateStore(
+                Stores.keyValueStoreBuilder(
+                        Stores.persistentKeyValueStore(PENDING_FARE_EXPIRY_STORE),
+                        Serdes.Bytes(),
+                        Serdes.ByteArray()));
+
+        KStream<String, FareResolution> resolutions =
+                fareStream.process(
+                        () ->
+                                new PendingFareProcessor(
+                                        PENDING_FARE_STORE,
+                                        PENDING_FARE_EXPIRY_STORE,
+                                        Duration.ofSeconds(config.getTimeoutSeconds()).toMillis(),
+                                        config.getCheckIntervalMs(),
+                                        config.getPunctuation()),
+                        Named.as("pending-fare-processor"),
+                        PENDING_FARE_STORE,
+                        PENDING_FARE_EXPIRY_STORE);
+
+        resolutions
+                .filter(
+                        (matatuId, resolution) ->
+                                resolution.outcome() != FareResolution.Outcome.TIMED_OUT)
+                .to(
+                        properties.getReplay().outputTopic(Topics.MATATU_FARES_RESOLVED),
+                        Produced.with(Serdes.String(), resolutionSerde));
+        resolutions
+                .filter(
+                        (matatuId, resolution) ->
+                                resolution.outcome() == FareResolution.Outcome.TIMED_OUT)
+                .to(
+                        properties.getReplay().outputTopic(Topics.MATATU_FARES_TIMEDOUT),
+                        Produced.with(Serdes.String(), resolutionSerde));
+
+        return resolutions;
+    }
+}
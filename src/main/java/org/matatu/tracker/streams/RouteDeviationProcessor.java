@@ -0,0 +1,98 @@
+package org.matatu.tracker.streams;
+
+import java.time.Instant;
+import java.util.OptionalDouble;
+
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.matatu.tracker.geo.RouteMatcher;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.model.RouteDeviationAlert;
+import org.matatu.tracker.model.RouteDeviationAlert.Status;
+import org.matatu.tracker.model.RouteDeviationState;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Flags a matatu as off route, or back on route, only after several consecutive pings agree.
+ *
+ * <p>KEY CONCEPT — Hysteresis: leaving the route needs {@code confirmPings} pings further than
+ * {@code offRouteMetres} away; rejoining needs the same number of pings within the tighter {@code
+ * backOnRouteMetres}. The gap between the two thresholds and the confirmation count together stop
+ * GPS jitter near the boundary from producing a stream of alternating alerts.
+ *
+ * <p>A matatu on its route with no pending streak has no store entry at all.
+ */
+@RequiredArgsConstructor
+public class RouteDeviationProcessor
+        implements Processor<String, LocationEvent, String, RouteDeviationAlert> {
+
+    private final String storeName;
+    private final RouteMatcher routeMatcher;
+    private final double offRouteMetres;
+    private final double backOnRouteMetres;
+    private final int confirmPings;
+
+    private ProcessorContext<String, RouteDeviationAlert> context;
+    private KeyValueStore<String, RouteDeviationState> store;
+
+    @Override
+    public void init(ProcessorContext<String, RouteDeviationAlert> context) {
+        this.context = context;
+        this.store = context.getStateStore(storeName);
+    }
+
+    @Override
+    public void process(Record<String, LocationEvent> record) {
+        LocationEvent ping = record.value();
+        OptionalDouble distance =
+                routeMatcher.distanceMetres(ping.routeId(), ping.latitude(), ping.longitude());
+        if (distance.isEmpty()) {
+            return;
+        }
+        double metres = distance.getAsDouble();
+
+        RouteDeviationState current = store.get(record.key());
+        boolean offRoute = current != null && current.offRoute();
+        int streak = (current == null) ? 0 : current.streak();
+        Instant offRouteSince = (current == null) ? null : current.offRouteSince();
+
+        boolean disagrees = offRoute ? metres <= backOnRouteMetres : metres > offRouteMetres;
+        streak = disagrees ? streak + 1 : 0;
+
+        if (streak >= confirmPings) {
+            offRoute = !offRoute;
+            streak = 0;
+            if (offRoute) {
+                offRouteSince = ping.timestamp();
+            }
+            context.forward(
+                    record.withValue(
+                            new RouteDeviationAlert(
+                                    ping.matatuId(),
+                                    ping.routeId(),
+                                    ping.routeName(),
+                                    offRoute ? Status.OFF_ROUTE : Status.BACK_ON_ROUTE,
+                                    metres,
+                                    ping.latitude(),
+                                    ping.longitude(),
+                                    offRouteSince,
+                                    ping.timestamp())));
+            if (!offRoute) {
+                offRouteSince = null;
+            }
+        }
+
+        var next = new RouteDeviationState(offRoute, streak, offRouteSince);
+        if (next.equals(current)) {
+            return;
+        }
+        if (!offRoute && streak == 0) {
+            store.delete(record.key());
+        } else {
+            store.put(record.key(), next);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.matatu.tracker.streams;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Named;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.state.Stores;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.geo.RouteMatcher;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.model.RouteDeviationAlert;
+import org.matatu.tracker.model.RouteDeviationState;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Detects matatus that leave their licensed route.
+ *
+ * <p>Reads from : locationsByMatatu (see {@link GeofenceStream}) Writes to :
+ * matatu.route.deviations (key = matatuId)
+ *
+ * <p>Complements off-grid detection in {@link MatatuStateStream}: "off grid" means a matatu stopped
+ * reporting, "off route" means it is reporting from somewhere it should not be. Each ping is
+ * matched against the polyline of the route it claims ({@link RouteMatcher}) and the per-matatu
+ * hysteresis state lives in {@value #ROUTE_DEVIATION_STORE}. The state is per matatu, so the stream
+ * reads the shared repartition by matatuId rather than writing every ping to one of its own.
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class RouteDeviationStream {
+
+    public static final String ROUTE_DEVIATION_STORE = "route-deviation-store";
+
+    private final MatatuTrackerProperties properties;
+    private final RouteMatcher routeMatcher;
+
+    @Bean
+    public KStream<String, RouteDeviationAlert> routeDeviationAlerts(
+            StreamsBuilder builder,
+            @Qualifier("locationsByMatatu") KStream<String, LocationEvent> locationsByMatatu) {
+        var deviation = properties.getRouteDeviation();
+        var alertSerde = new JacksonJsonSerde<>(RouteDeviationAlert.class);
+
+        builder.addStateStore(
+                Stores.keyValueStoreBuilder(
+                        Stores.persistentKeyValueStore(ROUTE_DEVIATION_STORE),
+                        Serdes.String(),
+                        new JacksonJsonSerde<>(RouteDeviationState.class)));
+
+        KStream<String, RouteDeviationAlert> alerts =
+                locationsByMatatu.process(
+                        () ->
+                                new RouteDeviationProcessor(
+                                        ROUTE_DEVIATION_STORE,
+                                        routeMatcher,
+                                        deviation.getOffRouteMetres(),
+                                        deviation.getBackOnRouteMetres(),
+                                        deviation.getConfirmPings()),
+                        Named.as("route-deviation-processor"),
+                        ROUTE_DEVIATION_STORE);
+
+        alerts.peek(
+                        (matatuId, alert) ->
+                                log.warn(
+                                        "[ROUTE DEVIATION] 🚧 {} {} on {} ({} m from route)",
+                                        matatuId,
+                                        alert.status(),
+                                        alert.routeName(),
+                                        Math.round(alert.distanceMetres())))
+                .to(
+                        properties.getReplay().outputTopic(Topics.MATATU_ROUTE_DEVIATIONS),
+                        Produced.with(Serdes.String(), alertSerde));
+
+        return alerts;
+    }
+}
@@ -9,17 +9,27 @@ import org.apache.kafka.streams.kstream.Consumed;
 import org.apache.kafka.streams.kstream.KStream;
 import org.apache.kafka.streams.kstream.Produced;
 import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.encoding.LocationSerdes;
 import org.matatu.tracker.model.EnrichedLocationEvent;
 import org.matatu.tracker.model.LocationEvent;
 import org.matatu.tracker.model.SaccoInfo;
 import org.matatu.tracker.topics.Topics;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.kafka.support.serializer.JacksonJsonSerde;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Attaches SACCO details to every ping.
+ *
+ * <p>Reads from : matatu.location Writes to : matatu.location.enriched, and with {@code
+ * app.encoding.format: DICTIONARY} also matatu.location.enriched.verbose
+ *
+ * <p>The enriched record is the widest location record — six identifiers per ping — so it gains the
+ * most from dictionary encoding. Consumers that cannot read {@code matatu.dictionary} take the
+ * verbose topic, where the strings are inflated once here instead of in every consumer.
+ */
 @Slf4j
 @Configuration
 @RequiredArgsConstructor
@@ -27,18 +37,20 @@ public class RouteEnrichmentStream {
 
     private final Map<String, SaccoInfo> saccoLookup;
     private final MatatuTrackerProperties properties;
+    private final LocationSerdes locationSerdes;
 
     @Bean
     public KStream<String, LocationEvent> enrichmentStream(StreamsBuilder builder) {
-        var locationSerde = new JacksonJsonSerde<>(LocationEvent.class);
-        var enrichedSerde = new JacksonJsonSerde<>(EnrichedLocationEvent.class);
+        var locationSerde = locationSerdes.location();
+        var enrichedSerde = locationSerdes.enriched();
 
         KStream<String, LocationEvent> locationStream =
                 builder.stream(
                         Topics.MATATU_LOCATION, Consumed.with(Serdes.String(), locationSerde));
 
-        locationStream
-                .mapValues(this::enrich)
+        KStream<String, EnrichedLocationEvent> enrichedStream =
+                locationStream.mapValues(this::enrich);
+        enrichedStream
                 .peek(
                         (routeId, enriched) ->
                                 log.debug(
@@ -47,12 +59,27 @@ public class RouteEnrichmentStream {
                                         enriched.routeName(),
                                         routeId,
                                         enriched.saccoName()))
-                .to(Topics.MATATU_LOCATION_ENRICHED, Produced.with(Serdes.String(), enrichedSerde));
+                .to(
+                        properties.getReplay().outputTopic(Topics.MATATU_LOCATION_ENRICHED),
+                        Produced.with(Serdes.String(), enrichedSerde));
+
+        // The dictionary-encoded topic needs the dictionary to read; this one does not.
+        if (locationSerdes.compact() && properties.getEncoding().isVerboseOutput()) {
+            enrichedStream.to(
+                    properties.getReplay().outputTopic(Topics.MATATU_LOCATION_ENRICHED_VERBOSE),
+                    Produced.with(Serdes.String(), locationSerdes.verbose()));
+        }
 
         return locationStream;
     }
 
     EnrichedLocationEvent enrich(LocationEvent event) {
+        return enrich(event, saccoLookup, properties.getStreams().getSpeedThresholdKmh());
+    }
+
+    /** Shared with the in-process pipeline, which has no topology to hang this on. */
+    public static EnrichedLocationEvent enrich(
+            LocationEvent event, Map<String, SaccoInfo> saccoLookup, double speedThresholdKmh) {
         SaccoInfo sacco =
                 saccoLookup.getOrDefault(
                         event.routeId(),
@@ -76,7 +103,7 @@ public class RouteEnrichmentStream {
                 event.longitude(),
                 event.speedKmh(),
                 event.passengersOnboard(),
-                event.speedKmh() > properties.getStreams().getSpeedThresholdKmh(),
+                event.speedKmh() > speedThresholdKmh,
                 event.timestamp(),
                 Instant.now());
     }
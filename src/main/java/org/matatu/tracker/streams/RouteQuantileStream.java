@@ -0,0 +1,120 @@
+package org.matatu.tracker.streams;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.*;
+import org.apache.kafka.streams.state.WindowStore;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.encoding.LocationSerdes;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.model.RouteQuantiles;
+import org.matatu.tracker.partitioning.RoutePartitioner;
+import org.matatu.tracker.sketch.RouteQuantileSketches;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * p50/p95/p99 speed and load factor per route per tumbling window.
+ *
+ * <p>Reads from : matatu.location (key = routeId) Writes to : matatu.route.quantiles
+ *
+ * <p>KEY CONCEPT — Mergeable quantile sketches: percentiles cannot be averaged, so a per-window
+ * mean or sum (like {@link PassengerCountStream}) cannot answer "how fast is the slowest 5%?". Each
+ * window instead keeps two DDSketches whose size depends on the value range, not on the number of
+ * pings. Sketches for different windows, or for the same route on different instances, merge by
+ * adding bucket counts — {@code RouteQuantileQueryService} uses this to answer arbitrary time
+ * ranges.
+ *
+ * <p>With the default keying the input is already keyed by routeId, so {@code groupByKey()} needs
+ * no repartition topic. When pings are keyed by matatuId or salted ({@link RoutePartitioner}) the
+ * pings are grouped by their routeId instead, through one repartition; adding to a sketch is cheap
+ * enough that the merged route fits on one task even when the raw pings did not.
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class RouteQuantileStream {
+
+    public static final String ROUTE_QUANTILE_STORE = "route-quantile-store";
+
+    private final MatatuTrackerProperties properties;
+    private final RoutePartitioner partitioner;
+    private final LocationSerdes locationSerdes;
+
+    @Bean
+    public KStream<String, LocationEvent> routeQuantileKStream(StreamsBuilder builder) {
+        var sketches = properties.getSketches();
+        double relativeAccuracy = sketches.getQuantileRelativeAccuracy();
+        int maxBins = sketches.getQuantileMaxBins();
+        double capacity = sketches.getVehicleCapacity();
+
+        var locationSerde = locationSerdes.location();
+        var quantileSerde = new JacksonJsonSerde<>(RouteQuantiles.class);
+
+        KStream<String, LocationEvent> locationStream =
+                builder.stream(
+                        Topics.MATATU_LOCATION, Consumed.with(Serdes.String(), locationSerde));
+
+        Grouped<String, LocationEvent> grouping = Grouped.with(Serdes.String(), locationSerde);
+        KGroupedStream<String, LocationEvent> byRoute =
+                partitioner.routeKeyed()
+                        ? locationStream.groupByKey(grouping)
+                        : locationStream.groupBy((key, event) -> event.routeId(), grouping);
+
+        byRoute.windowedBy(
+                        TimeWindows.ofSizeAndGrace(
+                                Duration.ofMinutes(sketches.getQuantileWindowMinutes()),
+                                Duration.ofMinutes(sketches.getQuantileGraceMinutes())))
+                .aggregate(
+                        () -> RouteQuantileSketches.empty(relativeAccuracy, maxBins),
+                        (routeId, event, bytes) ->
+                                RouteQuantileSketches.fromBytes(bytes)
+                                        .add(event.speedKmh(), event.passengersOnboard() / capacity)
+                                        .toBytes(),
+                        Materialized.<String, byte[], WindowStore<Bytes, byte[]>>as(
+                                        ROUTE_QUANTILE_STORE)
+                                .withKeySerde(Serdes.String())
+                                .withValueSerde(Serdes.ByteArray())
+                                .withRetention(Duration.ofDays(sketches.getRetentionDays())))
+                .suppress(Suppressed.untilWindowCloses(Suppressed.BufferConfig.unbounded()))
+                .toStream()
+                .map(
+                        (windowedKey, bytes) -> {
+                            var window = windowedKey.window();
+                            return KeyValue.pair(
+                                    windowedKey.key(),
+                                    RouteQuantileSketches.fromBytes(bytes)
+                                            .summarise(
+                                                    windowedKey.key(),
+                                                    Instant.ofEpochMilli(window.start()),
+                                                    Instant.ofEpochMilli(window.end()),
+                                                    Instant.ofEpochMilli(window.end())));
+                        })
+                .peek(
+                        (routeId, q) ->
+                                log.info(
+                                        "[QUANTILES] 📈 Route {} | Window: {} → {} | speed p50/p95/p99: {}/{}/{} km/h | load p95: {}",
+                                        routeId,
+                                        q.windowStart(),
+                                        q.windowEnd(),
+                                        Math.round(q.speedP50()),
+                                        Math.round(q.speedP95()),
+                                        Math.round(q.speedP99()),
+                                        "%.2f".formatted(q.loadP95())))
+                .to(
+                        properties.getReplay().outputTopic(Topics.MATATU_ROUTE_QUANTILES),
+                        Produced.with(Serdes.String(), quantileSerde));
+
+        return locationStream;
+    }
+}
@@ -8,13 +8,13 @@ import java.util.Map;
 
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.streams.KeyValue;
-import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.kstream.*;
 import org.matatu.tracker.config.MatatuTrackerProperties;
 import org.matatu.tracker.model.FareEvent;
 import org.matatu.tracker.model.SaccoInfo;
 import org.matatu.tracker.model.SaccoRevenueWindow;
 import org.matatu.tracker.topics.Topics;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.support.serializer.JacksonJsonSerde;
@@ -36,8 +36,9 @@ public class SaccoRevenueStream {
      * <p>saccoLookup is expected to be keyed by saccoId (e.g. "sacco_01") — this eliminates the
      * need for a separate inverted index map.
      *
-     * <p>Note: idempotency (duplicate event protection) is handled at the infrastructure level via
-     * processing.guarantee=exactly_once_v2 in Kafka Streams config, not in application code.
+     * <p>Note: idempotency has two layers. processing.guarantee=exactly_once_v2 stops a fare being
+     * counted twice when Streams itself retries; {@link FareDedupStream} drops fares that devices
+     * sent twice, which exactly-once cannot see.
      */
     public SaccoRevenueStream(
             Map<String, SaccoInfo> saccoLookup, MatatuTrackerProperties properties) {
@@ -47,14 +48,12 @@ public class SaccoRevenueStream {
     }
 
     @Bean
-    public KStream<String, FareEvent> saccoRevenueStream(StreamsBuilder builder) {
+    public KStream<String, FareEvent> saccoRevenueKStream(
+            @Qualifier("dedupedFareStream") KStream<String, FareEvent> fareStream) {
 
         var fareSerde = new JacksonJsonSerde<>(FareEvent.class);
         var revenueSerde = new JacksonJsonSerde<>(SaccoRevenueWindow.class);
 
-        KStream<String, FareEvent> fareStream =
-                builder.stream(Topics.MATATU_FARES, Consumed.with(Serdes.String(), fareSerde));
-
         //        {
         //           transactionId, matatuId, passengerId, amountKes, paymentMethod, status,
         // timestamp
@@ -109,7 +108,10 @@ public class SaccoRevenueStream {
                                     current.transactionCount() + 1,
                                     current.windowStart(),
                                     current.windowEnd(),
-                                    Instant.now());
+                                    // Latest fare seen — event time, never the wall clock.
+                                    fare.timestamp().isAfter(current.computedAt())
+                                            ? fare.timestamp()
+                                            : current.computedAt());
                         },
                         Materialized.with(Serdes.String(), revenueSerde))
 
@@ -147,7 +149,8 @@ public class SaccoRevenueStream {
                                             revenue.transactionCount(),
                                             Instant.ofEpochMilli(window.start()),
                                             Instant.ofEpochMilli(window.end()),
-                                            Instant.now());
+                                            // Final as of window close; identical on replay.
+                                            Instant.ofEpochMilli(window.end()));
                             return KeyValue.pair(windowedKey.key(), finalRevenue);
                         })
                 .peek(
@@ -159,7 +162,9 @@ public class SaccoRevenueStream {
                                         revenue.windowEnd(),
                                         revenue.totalRevenueKes(),
                                         revenue.transactionCount()))
-                .to(Topics.MATATU_SACCO_REVENUE, Produced.with(Serdes.String(), revenueSerde));
+                .to(
+                        properties.getReplay().outputTopic(Topics.MATATU_SACCO_REVENUE),
+                        Produced.with(Serdes.String(), revenueSerde));
 
         return fareStream;
     }
@@ -172,6 +177,11 @@ public class SaccoRevenueStream {
      * Integer.MIN_VALUE edge case where Math.abs() returns a negative value.
      */
     private String resolveSaccoId(FareEvent fare) {
+        return resolveSaccoId(sortedSaccoIds, fare);
+    }
+
+    /** The same assignment for callers without this bean, such as the in-process pipeline. */
+    public static String resolveSaccoId(List<String> sortedSaccoIds, FareEvent fare) {
         if (sortedSaccoIds.isEmpty()) {
             throw new IllegalStateException(
                     "SACCO lookup is not configured — cannot resolve SACCO for fare: "
@@ -1,55 +1,32 @@
 package org.matatu.tracker.streams;
 
 import org.apache.kafka.common.serialization.Serdes;
-import org.apache.kafka.streams.StreamsBuilder;
-import org.apache.kafka.streams.kstream.Consumed;
 import org.apache.kafka.streams.kstream.KStream;
 import org.apache.kafka.streams.kstream.Produced;
 import org.matatu.tracker.config.MatatuTrackerProperties;
-import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.model.MatatuStateOutput;
+import org.matatu.tracker.model.SpeedingEpisode;
 import org.matatu.tracker.topics.Topics;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.support.serializer.JacksonJsonSerde;
 
 import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
 
 /**
  * Topology 1 — Speed Alert Stream
  *
- * <p>Reads from : matatu.location Filters : events where speedKmh > threshold (default 80) Writes
- * to : matatu.speed.alerts
+ * <p>Reads from : matatuStateOutputs (see {@link MatatuStateStream}) Writes to :
+ * matatu.speed.alerts (one {@link SpeedingEpisode} per episode, key = matatuId)
  *
- * <p>┌──────────────────┐ filter(speed > 80) ┌──────────────────────┐ │ matatu.location │
- * ─────────────────────────► │ matatu.speed.alerts │ └──────────────────┘ └──────────────────────┘
- *
- * <p>KEY CONCEPTS:
- *
- * <p>StreamsBuilder — the entry point for building a stream topology. You describe WHAT should
- * happen (filter, map, etc.) and Kafka Streams figures out HOW to execute it. This is declarative,
- * not imperative.
- *
- * <p>KStream<K, V> — an unbounded stream of key-value records. Think of it as an infinite sequence
- * of events. Each record is processed independently.
- *
- * <p>Consumed.with(keySerde, valueSerde) — tells Kafka Streams how to DESERIALISE records coming
- * off the topic. We use JsonSerde<LocationEvent> for values.
- *
- * <p>.filter(predicate) — a STATELESS operation. Kafka Streams evaluates each record independently
- * with no memory of previous records. Very cheap — no state store needed.
- *
- * <p>.peek(action) — like .forEach but non-terminal; passes the record through unchanged. Perfect
- * for logging without breaking the pipeline.
- *
- * <p>.to(topic, Produced.with(...)) — terminal operation; writes matching records to the output
- * topic with the specified serialisers.
- *
- * <p>WHY @Bean on the KStream method? Spring's @EnableKafkaStreams injects a StreamsBuilder and
- * scans for @Bean methods that accept it. It builds all topologies into a single KafkaStreams
- * instance and manages its lifecycle (start/stop) for you.
+ * <p>KEY CONCEPT — Episodes, not pings: this used to be a stateless {@code .filter(speed > 80)}
+ * that forwarded every fast ping, so one matatu at 85 km/h for ten minutes sent 200 alerts. Whether
+ * a ping is part of an episode depends on the pings before it, which is state — so detection moved
+ * into {@link MatatuStateProcessor}, where the streak is a few fields of the {@code MatatuState}
+ * already read and written on every ping. No extra store, read or changelog record is added; this
+ * topology only routes the finished episodes to the alerts topic.
  */
-@Slf4j
 @Configuration
 @RequiredArgsConstructor
 public class SpeedAlertStream {
@@ -57,28 +34,17 @@ public class SpeedAlertStream {
     private final MatatuTrackerProperties properties;
 
     @Bean(name = "speedAlertKStream")
-    public KStream<String, LocationEvent> speedAlertStream(StreamsBuilder builder) {
-        var locationSerde = new JacksonJsonSerde<>(LocationEvent.class);
-
-        KStream<String, LocationEvent> locationStream =
-                builder.stream(
-                                Topics.MATATU_LOCATION,
-                                Consumed.with(Serdes.String(), locationSerde))
-                        .filter(
-                                (routeId, event) ->
-                                        event.speedKmh()
-                                                > properties.getStreams().getSpeedThresholdKmh())
-                        .peek(
-                                (routeId, event) ->
-                                        log.warn(
-                                                "[SPEED ALERT]  Matatu {} on {} doing {} km/h (threshold: {} km/h)",
-                                                event.matatuId(),
-                                                event.routeName(),
-                                                event.speedKmh(),
-                                                properties.getStreams().getSpeedThresholdKmh()));
+    public KStream<String, SpeedingEpisode> speedAlertStream(
+            @Qualifier("matatuStateOutputs")
+                    KStream<String, MatatuStateOutput> matatuStateOutputs) {
+        KStream<String, SpeedingEpisode> episodes =
+                matatuStateOutputs
+                        .filter((matatuId, output) -> output instanceof SpeedingEpisode)
+                        .mapValues(output -> (SpeedingEpisode) output);
 
-        locationStream.to(
-                Topics.MATATU_SPEED_ALERTS, Produced.with(Serdes.String(), locationSerde));
-        return locationStream;
+        episodes.to(
+                properties.getReplay().outputTopic(Topics.MATATU_SPEED_ALERTS),
+                Produced.with(Serdes.String(), new JacksonJsonSerde<>(SpeedingEpisode.class)));
+        return episodes;
     }
 }
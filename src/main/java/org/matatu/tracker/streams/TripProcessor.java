@@ -0,0 +1,252 @@
+package org.matatu.tracker.streams;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.geo.GeoHash;
+import org.matatu.tracker.geo.GeoMath;
+import org.matatu.tracker.geo.GeofenceRegistry;
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.model.Geofence;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.model.TripProgress;
+import org.matatu.tracker.model.TripState;
+import org.matatu.tracker.model.TripSummary;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cuts each matatu's pings into trips from stop to stop and emits one {@link TripSummary} per trip.
+ *
+ * <p>A stop is a TERMINUS geofence or, where none is defined, anywhere the matatu stands still
+ * (below {@code stationaryKmh}) for {@code dwellSeconds}. A trip starts on the first ping after
+ * leaving a stop and ends on the first ping at the next one. Fares for the matatu are added to the
+ * trip in progress; fares paid while it waits at a stop belong to the trip that leaves it.
+ *
+ * <p>KEY CONCEPT — Incremental summaries: a trip is never rebuilt from its pings. Each ping adds
+ * one leg to running sums in {@link TripProgress} and is then forgotten, so the cost per ping is
+ * one store read, one write and an R-tree lookup, however long the trip or the history. Pings that
+ * arrive out of order are ignored rather than rewinding the totals.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class TripProcessor implements Processor<String, TripProcessor.Input, String, TripSummary> {
+
+    /** A ping or a fare for one matatu — exactly one of the two is set. */
+    public record Input(LocationEvent ping, FareEvent fare) {
+
+        public static Input ofPing(LocationEvent ping) {
+            return new Input(ping, null);
+        }
+
+        public static Input ofFare(FareEvent fare) {
+            return new Input(null, fare);
+        }
+    }
+
+    private static final int DWELL_STOP_PRECISION = 7;
+
+    private final String storeName;
+    private final GeofenceRegistry geofenceRegistry;
+    private final MatatuTrackerProperties.Trips config;
+
+    private ProcessorContext<String, TripSummary> context;
+    private KeyValueStore<String, TripState> store;
+
+    @Override
+    public void init(ProcessorContext<String, TripSummary> context) {
+        this.context = context;
+        this.store = context.getStateStore(storeName);
+    }
+
+    @Override
+    public void process(Record<String, Input> record) {
+        if (record.value().fare() != null) {
+            onFare(record.key(), record.value().fare());
+        } else {
+            onPing(record, record.value().ping());
+        }
+    }
+
+    private void onFare(String matatuId, FareEvent fare) {
+        TripState state = store.get(matatuId);
+        if (fare.status() != FareEvent.PaymentStatus.SUCCESS || state == null) {
+            return;
+        }
+        if (state.trip() != null) {
+            store.put(matatuId, withTrip(state, state.trip().withFare(fare.amountKes())));
+        } else {
+            store.put(
+                    matatuId,
+                    new TripState(
+                            state.routeId(),
+                            state.stop(),
+                            state.atStop(),
+                            state.stationarySince(),
+                            state.lastLatitude(),
+                            state.lastLongitude(),
+                            state.lastEventAt(),
+                            state.lastPassengers(),
+                            state.waitingRevenueKes().add(fare.amountKes()),
+                            state.waitingFares() + 1,
+                            null));
+        }
+    }
+
+    private void onPing(Record<String, Input> record, LocationEvent ping) {
+        String matatuId = record.key();
+        TripState previous = store.get(matatuId);
+        Instant at = ping.timestamp();
+        if (previous != null && at.isBefore(previous.lastEventAt())) {
+            return;
+        }
+
+        // ── Where is the matatu? ─────────────────────────────────────────
+        Instant stationarySince = null;
+        if (ping.speedKmh() < config.getStationaryKmh()) {
+            stationarySince =
+                    (previous != null && previous.stationarySince() != null)
+                            ? previous.stationarySince()
+                            : at;
+        }
+        String terminus = terminusAt(ping);
+        boolean dwelling =
+                stationarySince != null
+                        && Duration.between(stationarySince, at).toSeconds()
+                                >= config.getDwellSeconds();
+        boolean atStop = terminus != null || dwelling;
+        String stop = (previous == null) ? null : previous.stop();
+        if (terminus != null) {
+            stop = terminus;
+        } else if (atStop && (previous == null || !previous.atStop())) {
+            stop =
+                    "dwell:"
+                            + GeoHash.encode(
+                                    ping.latitude(), ping.longitude(), DWELL_STOP_PRECISION);
+        }
+
+        // ── Trip bookkeeping ─────────────────────────────────────────────
+        TripProgress trip = (previous == null) ? null : previous.trip();
+        BigDecimal waitingRevenueKes =
+                (previous == null) ? BigDecimal.ZERO : previous.waitingRevenueKes();
+        int waitingFares = (previous == null) ? 0 : previous.waitingFares();
+
+        if (previous != null && (trip != null || (!atStop && previous.atStop()))) {
+            if (trip == null) {
+                // Just left a stop: the trip starts at the last ping there.
+                trip =
+                        TripProgress.start(
+                                previous.stop(),
+                                previous.lastEventAt(),
+                                previous.lastPassengers(),
+                                waitingRevenueKes,
+                                waitingFares);
+                waitingRevenueKes = BigDecimal.ZERO;
+                waitingFares = 0;
+            }
+            double metres =
+                    GeoMath.distanceMetres(
+                            previous.lastLatitude(),
+                            previous.lastLongitude(),
+                            ping.latitude(),
+                            ping.longitude());
+            trip = trip.withLeg(metres, previous.lastPassengers(), ping.passengersOnboard());
+
+            if (atStop) {
+                // A dwell stop is reached when the matatu stopped, not when the dwell was noticed.
+                Instant endedAt = (terminus != null) ? at : stationarySince;
+                complete(record, matatuId, ping.routeId(), trip, stop, endedAt);
+                if (Duration.between(trip.startedAt(), endedAt).toSeconds()
+                        < config.getMinTripSeconds()) {
+                    // Jitter across a terminus boundary, not a trip: keep its fares waiting.
+                    waitingRevenueKes = trip.revenueKes();
+                    waitingFares = trip.fares();
+                }
+                trip = null;
+            }
+        }
+
+        store.put(
+                matatuId,
+                new TripState(
+                        ping.routeId(),
+                        stop,
+                        atStop,
+                        stationarySince,
+                        ping.latitude(),
+                        ping.longitude(),
+                        at,
+                        ping.passengersOnboard(),
+                        waitingRevenueKes,
+                        waitingFares,
+                        trip));
+    }
+
+    private void complete(
+            Record<String, Input> record,
+            String matatuId,
+            String routeId,
+            TripProgress trip,
+            String toStop,
+            Instant endedAt) {
+        long durationSeconds = Duration.between(trip.startedAt(), endedAt).toSeconds();
+        if (durationSeconds < config.getMinTripSeconds()) {
+            return;
+        }
+        var summary =
+                new TripSummary(
+                        matatuId + "@" + trip.startedAt(),
+                        matatuId,
+                        routeId,
+                        trip.fromStop(),
+                        toStop,
+                        trip.startedAt(),
+                        endedAt,
+                        durationSeconds,
+                        trip.distanceMetres(),
+                        trip.peakLoad(),
+                        trip.passengerKm(),
+                        trip.revenueKes(),
+                        trip.fares(),
+                        trip.pings());
+        log.info(
+                "[TRIPS] 🏁 {} {} → {} in {} min, {} km, KES {}",
+                matatuId,
+                summary.fromStop(),
+                summary.toStop(),
+                durationSeconds / 60,
+                Math.round(summary.distanceMetres() / 100) / 10.0,
+                summary.revenueKes());
+        context.forward(new Record<>(matatuId, summary, record.timestamp()));
+    }
+
+    private String terminusAt(LocationEvent ping) {
+        return geofenceRegistry.current().containing(ping.latitude(), ping.longitude()).stream()
+                .filter(geofence -> geofence.type() == Geofence.Type.TERMINUS)
+                .map(Geofence::name)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static TripState withTrip(TripState state, TripProgress trip) {
+        return new TripState(
+                state.routeId(),
+                state.stop(),
+                state.atStop(),
+                state.stationarySince(),
+                state.lastLatitude(),
+                state.lastLongitude(),
+                state.lastEventAt(),
+                state.lastPassengers(),
+                state.waitingRevenueKes(),
+                state.waitingFares(),
+                trip);
+    }
+}
@@ -0,0 +1,72 @@
+package org.matatu.tracker.streams;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Named;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.state.Stores;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.geo.GeofenceRegistry;
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.model.TripState;
+import org.matatu.tracker.model.TripSummary;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Per-trip metrics: duration, distance, peak load, passenger-km and revenue.
+ *
+ * <p>Reads from : locationsByMatatu (see {@link GeofenceStream}), dedupedFareStream (see {@link
+ * FareDedupStream}) Writes to : matatu.trips (key = matatuId)
+ *
+ * <p>Pings and fares are merged into one stream so a single processor and store see both. Both are
+ * keyed by matatuId — the pings through the shared repartition, the fares by their producer — so as
+ * long as {@code matatu.fares} and {@code matatu.location} have the same partition count, a
+ * matatu's pings and fares reach the same task without another repartition.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class TripStream {
+
+    public static final String TRIP_STORE = "trip-store";
+
+    private final MatatuTrackerProperties properties;
+    private final GeofenceRegistry geofenceRegistry;
+
+    @Bean
+    public KStream<String, TripSummary> tripSummaries(
+            StreamsBuilder builder,
+            @Qualifier("locationsByMatatu") KStream<String, LocationEvent> locationsByMatatu,
+            @Qualifier("dedupedFareStream") KStream<String, FareEvent> fareStream) {
+        builder.addStateStore(
+                Stores.keyValueStoreBuilder(
+                        Stores.persistentKeyValueStore(TRIP_STORE),
+                        Serdes.String(),
+                        new JacksonJsonSerde<>(TripState.class)));
+
+        KStream<String, TripSummary> trips =
+                locationsByMatatu
+                        .mapValues(ping -> TripProcessor.Input.ofPing(ping))
+                        .merge(fareStream.mapValues(fare -> TripProcessor.Input.ofFare(fare)))
+                        .process(
+                                () ->
+                                        new TripProcessor(
+                                                TRIP_STORE,
+                                                geofenceRegistry,
+                                                properties.getTrips()),
+                                Named.as("trip-processor"),
+                                TRIP_STORE);
+
+        trips.to(
+                properties.getReplay().outputTopic(Topics.MATATU_TRIPS),
+                Produced.with(Serdes.String(), new JacksonJsonSerde<>(TripSummary.class)));
+        return trips;
+    }
+}
@@ -0,0 +1,189 @@
+package org.matatu.tracker.streams;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.*;
+import org.apache.kafka.streams.state.Stores;
+import org.apache.kafka.streams.state.WindowStore;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.encoding.LocationSerdes;
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.model.PassengerSighting;
+import org.matatu.tracker.model.SaccoInfo;
+import org.matatu.tracker.model.UniquePassengerWindow;
+import org.matatu.tracker.model.UniquePassengerWindow.Dimension;
+import org.matatu.tracker.sketch.HyperLogLog;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Distinct passengers per SACCO and per route, per tumbling window.
+ *
+ * <p>Reads from : matatu.fares (SUCCESS only) joined with the latest matatu.location per matatu
+ * Writes to : matatu.unique.passengers
+ *
+ * <p>KEY CONCEPT — Sketches as aggregates: an exact distinct count needs a set of every passengerId
+ * per window. Instead each window holds a fixed-size HyperLogLog register array ({@code byte[]}) in
+ * the window store, so memory per (key, window) is 2^precision bytes no matter how many riders pay.
+ * Window stores are retained for {@code app.sketches.retention-days} so {@code
+ * UniquePassengerQueryService} can merge hourly sketches into daily or weekly totals.
+ *
+ * <p>Fares carry only matatuId, so the route comes from a stream-table join against the latest
+ * location per matatu. Fares from matatus that have not yet reported a position are not counted.
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class UniquePassengerStream {
+
+    public static final String SACCO_STORE = "sacco-unique-passengers-store";
+    public static final String ROUTE_STORE = "route-unique-passengers-store";
+    static final String MATATU_ROUTE_STORE = "matatu-route-store";
+
+    private final Map<String, SaccoInfo> saccoLookup;
+    private final MatatuTrackerProperties properties;
+    private final LocationSerdes locationSerdes;
+
+    @Bean
+    public KStream<String, FareEvent> uniquePassengerKStream(
+            StreamsBuilder builder,
+            @Qualifier("dedupedFareStream") KStream<String, FareEvent> fareStream) {
+        var locationSerde = locationSerdes.location();
+        var fareSerde = new JacksonJsonSerde<>(FareEvent.class);
+        var sightingSerde = new JacksonJsonSerde<>(PassengerSighting.class);
+
+        // ── Step 1: latest location per matatu (key = matatuId) ──────────
+        KTable<String, LocationEvent> latestLocation =
+                builder.stream(
+                                Topics.MATATU_LOCATION,
+                                Consumed.with(Serdes.String(), locationSerde))
+                        .selectKey((routeId, event) -> event.matatuId())
+                        .toTable(
+                                Named.as("matatu-route-table"),
+                                Materialized.<String, LocationEvent>as(
+                                                Stores.persistentKeyValueStore(MATATU_ROUTE_STORE))
+                                        .withKeySerde(Serdes.String())
+                                        .withValueSerde(locationSerde));
+
+        // ── Step 2: attach route and SACCO to every successful fare ──────
+        KStream<String, PassengerSighting> sightings =
+                fareStream
+                        .filter(
+                                (matatuId, fare) ->
+                                        fare.status() == FareEvent.PaymentStatus.SUCCESS)
+                        .join(
+                                latestLocation,
+                                this::toSighting,
+                                Joined.with(Serdes.String(), fareSerde, locationSerde));
+
+        // ── Step 3: one sketch per key per window, for each dimension ────
+        countDistinct(
+                sightings.selectKey((matatuId, sighting) -> sighting.saccoId()),
+                Dimension.SACCO,
+                SACCO_STORE,
+                sightingSerde);
+        countDistinct(
+                sightings.selectKey((matatuId, sighting) -> sighting.routeId()),
+                Dimension.ROUTE,
+                ROUTE_STORE,
+                sightingSerde);
+
+        return fareStream;
+    }
+
+    private void countDistinct(
+            KStream<String, PassengerSighting> keyed,
+            Dimension dimension,
+            String storeName,
+            JacksonJsonSerde<PassengerSighting> sightingSerde) {
+        var sketches = properties.getSketches();
+        int precision = sketches.getHllPrecision();
+        double relativeError = HyperLogLog.relativeStandardError(precision);
+        var uniqueSerde = new JacksonJsonSerde<>(UniquePassengerWindow.class);
+
+        keyed.groupByKey(Grouped.with(Serdes.String(), sightingSerde))
+                .windowedBy(
+                        TimeWindows.ofSizeAndGrace(
+                                Duration.ofMinutes(sketches.getUniquePassengerWindowMinutes()),
+                                Duration.ofMinutes(sketches.getUniquePassengerGraceMinutes())))
+                .aggregate(
+                        () -> HyperLogLog.empty(precision),
+                        // The byte[] handed in is a fresh copy from the store, so mutating it
+                        // in place and returning it is safe and avoids a 2^p byte allocation.
+                        (key, sighting, registers) ->
+                                HyperLogLog.wrap(registers)
+                                        .add(sighting.passengerId())
+                                        .toByteArray(),
+                        Materialized.<String, byte[], WindowStore<Bytes, byte[]>>as(storeName)
+                                .withKeySerde(Serdes.String())
+                                .withValueSerde(Serdes.ByteArray())
+                                .withRetention(Duration.ofDays(sketches.getRetentionDays())))
+                .suppress(Suppressed.untilWindowCloses(Suppressed.BufferConfig.unbounded()))
+                .toStream()
+                .map(
+                        (windowedKey, registers) -> {
+                            var window = windowedKey.window();
+                            return KeyValue.pair(
+                                    windowedKey.key(),
+                                    new UniquePassengerWindow(
+                                            dimension,
+                                            windowedKey.key(),
+                                            displayName(dimension, windowedKey.key()),
+                                            HyperLogLog.wrap(registers).estimate(),
+                                            relativeError,
+                                            Instant.ofEpochMilli(window.start()),
+                                            Instant.ofEpochMilli(window.end()),
+                                            Instant.ofEpochMilli(window.end())));
+                        })
+                .peek(
+                        (key, unique) ->
+                                log.info(
+                                        "[UNIQUE PAX] 🧍 {} {} | Window: {} → {} | ~{} riders (±{}%)",
+                                        dimension,
+                                        unique.name(),
+                                        unique.windowStart(),
+                                        unique.windowEnd(),
+                                        unique.uniquePassengers(),
+                                        "%.1f".formatted(relativeError * 100)))
+                .to(
+                        properties.getReplay().outputTopic(Topics.MATATU_UNIQUE_PASSENGERS),
+                        Produced.with(Serdes.String(), uniqueSerde));
+    }
+
+    private PassengerSighting toSighting(FareEvent fare, LocationEvent location) {
+        SaccoInfo sacco =
+                saccoLookup.getOrDefault(
+                        location.routeId(),
+                        new SaccoInfo("unknown", "Unknown Sacco", "Unknown Terminus"));
+        return new PassengerSighting(
+                fare.passengerId(),
+                location.routeId(),
+                location.routeName(),
+                sacco.saccoId(),
+                sacco.saccoName());
+    }
+
+    private String displayName(Dimension dimension, String key) {
+        if (dimension == Dimension.ROUTE) {
+            return key;
+        }
+        return saccoLookup.values().stream()
+                .filter(sacco -> sacco.saccoId().equals(key))
+                .map(SaccoInfo::saccoName)
+                .findFirst()
+                .orElse(key);
+    }
+}
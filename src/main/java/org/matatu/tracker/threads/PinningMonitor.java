@@ -0,0 +1,174 @@
+package org.matatu.tracker.threads;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Streams the JVM's own {@code jdk.VirtualThreadPinned} events and reports where virtual threads
+ * get pinned, in the log and as the {@code matatu.threads.pinned} counter.
+ *
+ * <p>KEY CONCEPT — Pinning: a virtual thread that blocks normally leaves its carrier, so a few
+ * carriers (one per core) serve any number of blocked threads. On JDK 21 it cannot leave while it
+ * holds a monitor ({@code synchronized}) or runs a native frame: it blocks its carrier with it, and
+ * when every carrier is pinned the whole virtual-thread scheduler stalls. JFR emits an event each
+ * time a pinned thread parks for longer than a threshold, with the stack, in production and at
+ * almost no cost. Here a {@link RecordingStream} consumes them as they happen.
+ *
+ * <p>JFR only sees a pinned thread that <em>parks</em>: a sleep, a {@code java.util.concurrent}
+ * lock or a future's {@code get()} inside {@code synchronized}. {@code Object.wait()} and file or
+ * socket IO under a monitor block the carrier just the same but emit nothing on JDK 21, so those
+ * sites have to be found by reading the code ({@code IdentifierDictionary} and {@code
+ * ColumnarArchiveSink} were, and now use a {@code ReentrantLock}). JFR has no event for {@code
+ * ThreadLocal} use either; the application keeps no thread-locals of its own.
+ *
+ * <p>Events are grouped by site: the first frame from this application on the stack, which is the
+ * code to change, or the top frame when the pinning happened entirely inside a library. Each new
+ * site is logged once with its full stack; every event after that only counts.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.threads.pinning-detection", havingValue = "true")
+public class PinningMonitor implements SmartLifecycle {
+
+    static final String EVENT = "jdk.VirtualThreadPinned";
+    private static final String APP_PACKAGE = "org.matatu.";
+
+    private final Duration threshold;
+    private final MeterRegistry registry;
+    private final Map<String, Site> sites = new ConcurrentHashMap<>();
+    private volatile RecordingStream stream;
+
+    /** One place where virtual threads were pinned, and how long the worst of them waited. */
+    public record PinnedSite(String site, long count, double maxMillis, String stack) {}
+
+    public PinningMonitor(MatatuTrackerProperties properties, MeterRegistry registry) {
+        this.threshold = Duration.ofMillis(properties.getThreads().getPinningThresholdMs());
+        this.registry = registry;
+    }
+
+    /** Every site seen so far, most frequent first. */
+    public List<PinnedSite> report() {
+        return sites.entrySet().stream()
+                .map(
+                        entry ->
+                                new PinnedSite(
+                                        entry.getKey(),
+                                        entry.getValue().count.sum(),
+                                        entry.getValue().maxNanos.get() / 1e6,
+                                        entry.getValue().stack))
+                .sorted(Comparator.comparingLong(PinnedSite::count).reversed())
+                .toList();
+    }
+
+    @Override
+    public void start() {
+        var recording = new RecordingStream();
+        recording.enable(EVENT).withThreshold(threshold).withStackTrace();
+        recording.onEvent(EVENT, this::onPinned);
+        recording.startAsync();
+        stream = recording;
+        log.info("[THREADS] Reporting virtual threads pinned for over {} ms", threshold.toMillis());
+    }
+
+    @Override
+    public void stop() {
+        RecordingStream recording = stream;
+        stream = null;
+        if (recording != null) {
+            recording.close();
+        }
+        report().forEach(
+                        site ->
+                                log.info(
+                                        "[THREADS] Pinned {}× at {} (worst {} ms)",
+                                        site.count(),
+                                        site.site(),
+                                        "%.1f".formatted(site.maxMillis())));
+    }
+
+    @Override
+    public boolean isRunning() {
+        return stream != null;
+    }
+
+    void onPinned(RecordedEvent event) {
+        List<RecordedFrame> frames =
+                (event.getStackTrace() != null) ? event.getStackTrace().getFrames() : List.of();
+        String site = siteOf(frames);
+        long nanos = event.getDuration().toNanos();
+        registry.counter("matatu.threads.pinned", "site", site).increment();
+        Site seen = sites.get(site);
+        if (seen == null) {
+            // Counted before it is published, so report() never shows a site with no events.
+            Site created = new Site(stackOf(frames));
+            created.record(nanos);
+            seen = sites.putIfAbsent(site, created);
+            if (seen == null) {
+                log.warn(
+                        "[THREADS] Virtual thread pinned for {} ms at {} — a synchronized block or"
+                                + " native frame held its carrier:\n{}",
+                        event.getDuration().toMillis(),
+                        site,
+                        created.stack);
+                return;
+            }
+        }
+        seen.record(nanos);
+    }
+
+    private static String siteOf(List<RecordedFrame> frames) {
+        return frames.stream()
+                .filter(frame -> typeOf(frame).startsWith(APP_PACKAGE))
+                .findFirst()
+                .or(() -> frames.stream().findFirst())
+                .map(PinningMonitor::describe)
+                .orElse("unknown");
+    }
+
+    private static String stackOf(List<RecordedFrame> frames) {
+        return frames.stream()
+                .map(frame -> "\tat " + describe(frame))
+                .collect(Collectors.joining("\n"));
+    }
+
+    private static String describe(RecordedFrame frame) {
+        return "%s.%s:%d"
+                .formatted(typeOf(frame), frame.getMethod().getName(), frame.getLineNumber());
+    }
+
+    private static String typeOf(RecordedFrame frame) {
+        return frame.getMethod().getType().getName();
+    }
+
+    private static final class Site {
+        private final String stack;
+        private final LongAdder count = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private Site(String stack) {
+            this.stack = stack;
+        }
+
+        private void record(long nanos) {
+            count.increment();
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+}
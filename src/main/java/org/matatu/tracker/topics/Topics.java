@@ -7,12 +7,53 @@ public final class Topics {
     public static final String MATATU_LOCATION = "matatu.location";
     public static final String MATATU_FARES = "matatu.fares";
 
+    // Side outputs: events too late for their window (see LateDataStream).
+    public static final String MATATU_LOCATION_LATE = "matatu.location.late";
+    public static final String MATATU_FARES_LATE = "matatu.fares.late";
+
+    // Fares a device sent more than once (see FareDedupStream).
+    public static final String MATATU_FARES_DUPLICATES = "matatu.fares.duplicates";
+
+    // How PENDING fares ended (see PendingFareStream).
+    public static final String MATATU_FARES_RESOLVED = "matatu.fares.resolved";
+    public static final String MATATU_FARES_TIMEDOUT = "matatu.fares.timedout";
+
+    // Fares joined with the matatu's position when paid (see FareAttributionStream).
+    public static final String MATATU_FARES_ENRICHED = "matatu.fares.enriched";
+
+    // One summary per completed terminus-to-terminus trip (see TripStream).
+    public static final String MATATU_TRIPS = "matatu.trips";
+
+    // Compacted latest-state topics: one live record per matatuId / routeId, read from the
+    // beginning
+    // by consumers that need the current fleet picture on startup (see DisplayBoardConsumer).
+    public static final String MATATU_LATEST_POSITIONS = "matatu.latest.positions";
+    public static final String MATATU_LATEST_OCCUPANCY = "matatu.latest.occupancy";
+
+    // Conflated per-route or per-stage vehicle batches at a fixed refresh rate (see
+    // FleetSnapshotStream).
+    public static final String MATATU_FLEET_SNAPSHOTS = "matatu.fleet.snapshots";
+
     public static final String MATATU_SPEED_ALERTS = "matatu.speed.alerts";
     public static final String MATATU_LOCATION_ENRICHED = "matatu.location.enriched";
+    // Enriched pings with their identifiers spelled out, for consumers without the dictionary.
+    public static final String MATATU_LOCATION_ENRICHED_VERBOSE =
+            "matatu.location.enriched.verbose";
     public static final String MATATU_FARES_FAILED = "matatu.fares.failed";
 
     public static final String MATATU_PASSENGER_COUNTS = "matatu.passenger.counts";
     public static final String MATATU_SACCO_REVENUE = "matatu.sacco.revenue";
     public static final String MATATU_OFFGRID_ALERTS = "matatu.offgrid.alerts";
     public static final String MATATU_ROUTE_OCCUPANCY = "matatu.route.occupancy";
+    public static final String MATATU_KINEMATICS = "matatu.kinematics";
+    public static final String MATATU_UNIQUE_PASSENGERS = "matatu.unique.passengers";
+    public static final String MATATU_ROUTE_QUANTILES = "matatu.route.quantiles";
+    public static final String MATATU_HEATMAP_CELLS = "matatu.heatmap.cells";
+
+    public static final String MATATU_GEOFENCES = "matatu.geofences";
+    public static final String MATATU_GEOFENCE_EVENTS = "matatu.geofence.events";
+    public static final String MATATU_ROUTE_DEVIATIONS = "matatu.route.deviations";
+
+    // Int codes for matatu, route and SACCO identifiers (see IdentifierDictionary).
+    public static final String MATATU_DICTIONARY = "matatu.dictionary";
 }
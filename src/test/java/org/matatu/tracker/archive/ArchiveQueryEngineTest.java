@@ -0,0 +1,358 @@
+package org.matatu.tracker.archive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.matatu.tracker.archive.ArchiveQuery.TimeBucket;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.model.EnrichedFare;
+import org.matatu.tracker.model.EnrichedFare.Attribution;
+import org.matatu.tracker.model.EnrichedLocationEvent;
+import org.matatu.tracker.model.FareEvent.PaymentMethod;
+import org.matatu.tracker.model.FareEvent.PaymentStatus;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class ArchiveQueryEngineTest {
+
+    private static final Instant MONTH = Instant.parse("2026-02-01T00:00:00Z");
+    // Pings are 5 minutes apart in the generated fleet.
+    private static final double PING_HOURS = 5 / 60.0;
+
+    @TempDir Path root;
+
+    @Test
+    void matchesARowAtATimeReference() throws IOException {
+        var archive = new ColumnarArchive(root, 500);
+        var fleet = new Fleet(40, new Random(46));
+        List<EnrichedLocationEvent> pings = new ArrayList<>();
+        List<EnrichedFare> fares = new ArrayList<>();
+        for (int day = 0; day < 3; day++) {
+            Fleet.Day generated = fleet.day(day);
+            pings.addAll(generated.pings());
+            fares.addAll(generated.fares());
+            archive.append(ArchiveTable.LOCATIONS, generated.pings());
+            archive.append(ArchiveTable.FARES, generated.fares());
+        }
+        Instant from = MONTH.plus(Duration.ofHours(12));
+        Instant to = MONTH.plus(Duration.ofDays(2));
+        var engine = engine(archive, 2);
+        try {
+            // Revenue by SACCO per day.
+            ArchiveQueryResult revenue = engine.execute(revenueBySaccoPerDay(from, to));
+            Map<List<Object>, Double> expectedRevenue =
+                    fares.stream()
+                            .filter(fare -> inRange(fare.timestamp(), from, to))
+                            .filter(fare -> fare.status() == PaymentStatus.SUCCESS)
+                            .collect(
+                                    Collectors.groupingBy(
+                                            fare -> List.of(fare.saccoId(), day(fare.timestamp())),
+                                            Collectors.summingDouble(
+                                                    fare -> fare.amountKes().doubleValue())));
+            assertThat(revenue.columns()).containsExactly("saccoId", "day", "revenue_kes", "fares");
+            assertThat(revenue.rows()).hasSize(expectedRevenue.size());
+            for (List<Object> row : revenue.rows()) {
+                assertThat((double) row.get(2))
+                        .isCloseTo(expectedRevenue.get(row.subList(0, 2)), within(1e-6));
+            }
+            assertThat(revenue.rows())
+                    .extracting(row -> (String) row.getFirst())
+                    .isSorted(); // by dimensions when no order is given
+
+            // Passenger-km per route, only while carrying at least 10 passengers.
+            ArchiveQueryResult passengerKm =
+                    engine.execute(
+                            ArchiveQuery.from(ArchiveTable.LOCATIONS)
+                                    .between(from, to)
+                                    .where("passengersOnboard", 10, Long.MAX_VALUE)
+                                    .groupBy("routeId")
+                                    .select(
+                                            "sum(passengersOnboard * speedKmh * %s) as passenger_km"
+                                                    .formatted(PING_HOURS))
+                                    .select("avg(speedKmh) as avg_speed")
+                                    .build());
+            Map<String, Double> expectedKm =
+                    pings.stream()
+                            .filter(ping -> inRange(ping.originalTimestamp(), from, to))
+                            .filter(ping -> ping.passengersOnboard() >= 10)
+                            .collect(
+                                    Collectors.groupingBy(
+                                            EnrichedLocationEvent::routeId,
+                                            Collectors.summingDouble(
+                                                    ping ->
+                                                            ping.passengersOnboard()
+                                                                    * ping.speedKmh()
+                                                                    * PING_HOURS)));
+            assertThat(passengerKm.rows()).hasSize(expectedKm.size());
+            for (List<Object> row : passengerKm.rows()) {
+                assertThat((double) row.get(1))
+                        .isCloseTo(expectedKm.get((String) row.getFirst()), within(1e-6));
+            }
+
+            // Top five matatus by speeding minutes.
+            ArchiveQueryResult speeding = engine.execute(speedingMinutesPerMatatu(from, to, 5));
+            Map<String, Long> speedingPings =
+                    pings.stream()
+                            .filter(ping -> inRange(ping.originalTimestamp(), from, to))
+                            .filter(EnrichedLocationEvent::isSpeeding)
+                            .collect(
+                                    Collectors.groupingBy(
+                                            EnrichedLocationEvent::matatuId,
+                                            Collectors.counting()));
+            long top =
+                    speedingPings.values().stream().mapToLong(Long::longValue).max().orElseThrow();
+            assertThat(speeding.rows()).hasSize(5);
+            assertThat((double) speeding.rows().getFirst().get(1)).isEqualTo(top * 5.0);
+            assertThat(speeding.rows())
+                    .extracting(row -> (double) row.get(1))
+                    .isSortedAccordingTo((a, b) -> Double.compare(b, a));
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    void prunesDaysAndRowGroupsFromStatistics() throws IOException {
+        var archive = new ColumnarArchive(root, 500);
+        var fleet = new Fleet(40, new Random(46));
+        for (int day = 0; day < 5; day++) {
+            archive.append(ArchiveTable.LOCATIONS, fleet.day(day).pings());
+        }
+        var engine = engine(archive, 2);
+        try {
+            Instant from = MONTH.plus(Duration.ofDays(2)).plus(Duration.ofHours(7));
+            ArchiveQueryResult hour =
+                    engine.execute(
+                            ArchiveQuery.from(ArchiveTable.LOCATIONS)
+                                    .between(from, from.plus(Duration.ofHours(1)))
+                                    .select("count(*) as pings")
+                                    .build());
+            assertThat(hour.rows()).containsExactly(List.of(40L * 12));
+            assertThat(hour.stats().files()).isEqualTo(1);
+            assertThat(hour.stats().rowGroupsRead()).isLessThanOrEqualTo(2);
+            assertThat(hour.stats().rowGroupsSkipped()).isGreaterThan(20);
+
+            // No row group's saccoId range can hold this value.
+            ArchiveQueryResult none =
+                    engine.execute(
+                            ArchiveQuery.from(ArchiveTable.LOCATIONS)
+                                    .between(MONTH, MONTH.plus(Duration.ofDays(5)))
+                                    .where("saccoId", "sacco_zz")
+                                    .groupBy("routeId")
+                                    .select("count(*) as pings")
+                                    .build());
+            assertThat(none.rows()).isEmpty();
+            assertThat(none.stats().rowGroupsRead()).isZero();
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    void rejectsMalformedQueries() {
+        var builder = ArchiveQuery.from(ArchiveTable.FARES).between(MONTH, MONTH.plusSeconds(1));
+        assertThatThrownBy(() -> builder.select("sum(amountCents)"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder.select("sum(saccoId) as s"))
+                .hasMessageContaining("not numeric");
+        assertThatThrownBy(() -> builder.groupBy("amountCents"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder.where("nope", "x")).hasMessageContaining("No column nope");
+        assertThatThrownBy(() -> ArchiveTable.named("trips")).hasMessageContaining("trips");
+        assertThatThrownBy(() -> builder.select("count(*) as n").orderBy("revenue", true).build())
+                .hasMessageContaining("revenue");
+    }
+
+    /**
+     * A month of a 500-matatu fleet pinging every 5 minutes (4.3 M pings, 1.4 M fares). Each query
+     * runs with one thread and with one per processor, best of three after a warm-up.
+     */
+    @Test
+    @Tag("benchmark")
+    void benchAMonthOfFleetHistory() throws IOException {
+        var archive = new ColumnarArchive(root, 8192);
+        var fleet = new Fleet(500, new Random(46));
+        for (int day = 0; day < 30; day++) {
+            Fleet.Day generated = fleet.day(day);
+            archive.append(ArchiveTable.LOCATIONS, generated.pings());
+            archive.append(ArchiveTable.FARES, generated.fares());
+        }
+        Instant to = MONTH.plus(Duration.ofDays(30));
+        Map<String, ArchiveQuery> queries = new LinkedHashMap<>();
+        queries.put("revenue by SACCO per day", revenueBySaccoPerDay(MONTH, to));
+        queries.put(
+                "passenger-km per route",
+                ArchiveQuery.from(ArchiveTable.LOCATIONS)
+                        .between(MONTH, to)
+                        .groupBy("routeId")
+                        .select(
+                                "sum(passengersOnboard * speedKmh * %s) as passenger_km"
+                                        .formatted(PING_HOURS))
+                        .build());
+        queries.put("speeding minutes per matatu", speedingMinutesPerMatatu(MONTH, to, 10));
+        queries.put(
+                "one route, one week, per hour",
+                ArchiveQuery.from(ArchiveTable.LOCATIONS)
+                        .between(MONTH.plus(Duration.ofDays(7)), MONTH.plus(Duration.ofDays(14)))
+                        .where("routeId", "route_33")
+                        .groupBy(TimeBucket.HOUR)
+                        .select("avg(speedKmh) as avg_speed")
+                        .build());
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        var sequential = engine(archive, 1);
+        var parallel = engine(archive, Math.max(2, processors));
+        try {
+            for (Map.Entry<String, ArchiveQuery> query : queries.entrySet()) {
+                Timed one = time(sequential, query.getValue());
+                Timed many = time(parallel, query.getValue());
+                assertThat(many.result().rows()).hasSameSizeAs(one.result().rows());
+                var stats = many.result().stats();
+                log.info(
+                        String.format(
+                                "[BENCH] %s: %,d rows scanned in %d files (%d row groups, %d skipped),"
+                                        + " %.1f MB read — 1 thread %.0f ms (%,.0f rows/s), %d threads"
+                                        + " %.0f ms (%,.0f rows/s) on %d processors",
+                                query.getKey(),
+                                stats.rowsScanned(),
+                                stats.files(),
+                                stats.rowGroupsRead(),
+                                stats.rowGroupsSkipped(),
+                                stats.bytesRead() / 1e6,
+                                one.millis(),
+                                stats.rowsScanned() / (one.millis() / 1e3),
+                                stats.parallelism(),
+                                many.millis(),
+                                stats.rowsScanned() / (many.millis() / 1e3),
+                                processors));
+            }
+        } finally {
+            sequential.close();
+            parallel.close();
+        }
+    }
+
+    private record Timed(ArchiveQueryResult result, double millis) {}
+
+    private static Timed time(ArchiveQueryEngine engine, ArchiveQuery query) {
+        ArchiveQueryResult result = engine.execute(query);
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            result = engine.execute(query);
+            best = Math.min(best, (System.nanoTime() - start) / 1e6);
+        }
+        return new Timed(result, best);
+    }
+
+    private static ArchiveQuery revenueBySaccoPerDay(Instant from, Instant to) {
+        return ArchiveQuery.from(ArchiveTable.FARES)
+                .between(from, to)
+                .where("status", "SUCCESS")
+                .groupBy("saccoId")
+                .groupBy(TimeBucket.DAY)
+                .select("sum(amountCents * 0.01) as revenue_kes")
+                .select("count(*) as fares")
+                .build();
+    }
+
+    private static ArchiveQuery speedingMinutesPerMatatu(Instant from, Instant to, int top) {
+        return ArchiveQuery.from(ArchiveTable.LOCATIONS)
+                .between(from, to)
+                .groupBy("matatuId")
+                .select("sum(isSpeeding * 5) as speeding_minutes")
+                .orderBy("speeding_minutes", true)
+                .limit(top)
+                .build();
+    }
+
+    private static ArchiveQueryEngine engine(ColumnarArchive archive, int parallelism) {
+        var properties = new MatatuTrackerProperties();
+        properties.getArchive().setQueryParallelism(parallelism);
+        return new ArchiveQueryEngine(archive, properties);
+    }
+
+    private static boolean inRange(Instant at, Instant from, Instant to) {
+        return !at.isBefore(from) && at.isBefore(to);
+    }
+
+    private static Instant day(Instant at) {
+        return LocalDate.ofInstant(at, ZoneOffset.UTC).atStartOfDay().toInstant(ZoneOffset.UTC);
+    }
+
+    /** Matatus on 40 routes of 12 SACCOs, a ping every 5 minutes and a fare every third ping. */
+    private record Fleet(int matatus, Random random) {
+
+        record Day(List<EnrichedLocationEvent> pings, List<EnrichedFare> fares) {}
+
+        Day day(int day) {
+            List<EnrichedLocationEvent> pings = new ArrayList<>();
+            List<EnrichedFare> fares = new ArrayList<>();
+            Instant start = MONTH.plus(Duration.ofDays(day));
+            PaymentMethod[] methods = PaymentMethod.values();
+            for (int slot = 0; slot < 24 * 12; slot++) {
+                for (int m = 0; m < matatus; m++) {
+                    int route = m % 40;
+                    double speed = Math.max(0, 30 + random.nextGaussian() * 20);
+                    Instant at = start.plus(Duration.ofMinutes(slot * 5L)).plusMillis(m);
+                    var ping =
+                            new EnrichedLocationEvent(
+                                    "KM %04d".formatted(m),
+                                    "route_" + route,
+                                    "Route " + route,
+                                    "Sacco " + route % 12,
+                                    "sacco_%02d".formatted(route % 12),
+                                    "Terminus " + route,
+                                    -1.2921 + random.nextGaussian() * 0.05,
+                                    36.8219 + random.nextGaussian() * 0.05,
+                                    speed,
+                                    random.nextInt(34),
+                                    speed > 80,
+                                    at,
+                                    at.plusMillis(40));
+                    pings.add(ping);
+                    if ((slot + m) % 3 == 0) {
+                        fares.add(
+                                new EnrichedFare(
+                                        "TX" + Long.toHexString(random.nextLong()),
+                                        ping.matatuId(),
+                                        "P" + random.nextInt(200_000),
+                                        BigDecimal.valueOf(50 + 10 * random.nextInt(15)),
+                                        methods[random.nextInt(methods.length)],
+                                        random.nextInt(10) == 0
+                                                ? PaymentStatus.FAILED
+                                                : PaymentStatus.SUCCESS,
+                                        at,
+                                        Attribution.MATCHED,
+                                        ping.routeId(),
+                                        ping.saccoId(),
+                                        ping.saccoName(),
+                                        null,
+                                        null,
+                                        0L));
+                    }
+                }
+            }
+            return new Day(pings, fares);
+        }
+    }
+}
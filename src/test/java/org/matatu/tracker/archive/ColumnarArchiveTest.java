@@ -0,0 +1,434 @@
+package org.matatu.tracker.archive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.apache.kafka.common.serialization.Serde;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.matatu.tracker.archive.ColumnarArchive.ScanStats;
+import org.matatu.tracker.archive.ColumnarFile.RowGroup;
+import org.matatu.tracker.model.EnrichedFare;
+import org.matatu.tracker.model.EnrichedFare.Attribution;
+import org.matatu.tracker.model.EnrichedLocationEvent;
+import org.matatu.tracker.model.FareEvent.PaymentMethod;
+import org.matatu.tracker.model.FareEvent.PaymentStatus;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class ColumnarArchiveTest {
+
+    private static final Instant T0 = Instant.parse("2026-02-23T05:00:00Z");
+    private static final String TOPIC = "matatu.location.enriched";
+
+    @TempDir Path root;
+
+    @Test
+    void roundTripsEveryColumnType() throws IOException {
+        List<EnrichedLocationEvent> pings = pings(40, 25, new Random(45));
+        pings.set(3, withSacco(pings.get(3), null));
+        List<EnrichedFare> fares = fares(pings, new Random(45));
+
+        var archive = new ColumnarArchive(root, 128);
+        archive.append(ArchiveTable.LOCATIONS, pings);
+        archive.append(ArchiveTable.FARES, fares);
+
+        assertThat(readBack(archive, ArchiveTable.LOCATIONS))
+                .containsExactlyInAnyOrderElementsOf(rows(ArchiveTable.LOCATIONS, pings));
+        assertThat(readBack(archive, ArchiveTable.FARES))
+                .containsExactlyInAnyOrderElementsOf(rows(ArchiveTable.FARES, fares));
+    }
+
+    @Test
+    void scanReadsOnlyTheDaysRowGroupsAndColumnsItNeeds() throws IOException {
+        // 20 matatus, a ping a minute for three days, written in two batches.
+        List<EnrichedLocationEvent> pings = new ArrayList<>();
+        for (int minute = 0; minute < 3 * 24 * 60; minute++) {
+            for (int m = 0; m < 20; m++) {
+                pings.add(ping(m, 30 + m, T0.plus(Duration.ofMinutes(minute))));
+            }
+        }
+        var archive = new ColumnarArchive(root, 1024);
+        archive.append(ArchiveTable.LOCATIONS, pings.subList(0, pings.size() / 2));
+        archive.append(ArchiveTable.LOCATIONS, pings.subList(pings.size() / 2, pings.size()));
+
+        try (Stream<Path> days = Files.list(root.resolve("locations"))) {
+            assertThat(days.map(day -> day.getFileName().toString()))
+                    .containsExactlyInAnyOrder(
+                            "date=2026-02-23",
+                            "date=2026-02-24",
+                            "date=2026-02-25",
+                            "date=2026-02-26");
+        }
+
+        Instant from = Instant.parse("2026-02-24T07:00:00Z");
+        Instant to = from.plus(Duration.ofHours(1));
+        long[] inRange = new long[1];
+        ScanStats stats =
+                archive.scan(
+                        ArchiveTable.LOCATIONS,
+                        from,
+                        to,
+                        List.of("speedKmh", "originalTimestamp"),
+                        group -> {
+                            long[] timestamps = group.longs("originalTimestamp");
+                            for (long timestamp : timestamps) {
+                                if (timestamp >= from.toEpochMilli()
+                                        && timestamp < to.toEpochMilli()) {
+                                    inRange[0]++;
+                                }
+                            }
+                        });
+
+        assertThat(inRange[0]).isEqualTo(60 * 20);
+        assertThat(stats.files()).isEqualTo(2); // each batch wrote a part of 2026-02-24
+        assertThat(stats.rowGroupsRead()).isLessThanOrEqualTo(3);
+        assertThat(stats.rowGroupsSkipped()).isGreaterThan(20);
+        assertThat(stats.bytesRead()).isLessThan(sizeOf(root) / 50);
+    }
+
+    /**
+     * 300 matatus on 20 routes pinging every 30 s for 12 hours, and a fare for every third ping.
+     * The topic side is each record's JSON bytes held in memory, so its scan is parsing alone.
+     */
+    @Test
+    @Tag("benchmark")
+    void benchBytesPerEventAndScanSpeedAgainstJson() throws IOException {
+        var random = new Random(45);
+        List<EnrichedLocationEvent> pings = pings(300, 12 * 120, random);
+        List<EnrichedFare> fares = fares(pings, random);
+
+        var locationSerde = new JacksonJsonSerde<>(EnrichedLocationEvent.class);
+        var fareSerde = new JacksonJsonSerde<>(EnrichedFare.class);
+        List<byte[]> locationJson = serialize(locationSerde, pings);
+        List<byte[]> fareJson = serialize(fareSerde, fares);
+
+        var archive = new ColumnarArchive(root, 8192);
+        long locationBytes = archive.append(ArchiveTable.LOCATIONS, pings);
+        long fareBytes = archive.append(ArchiveTable.FARES, fares);
+
+        Instant from = T0;
+        Instant to = T0.plus(Duration.ofDays(1));
+
+        // Average speed per route per hour.
+        Map<String, double[]> jsonSpeed = new HashMap<>();
+        Map<String, double[]> archiveSpeed = new HashMap<>();
+        double jsonLocationsMs =
+                time(
+                        () -> {
+                            jsonSpeed.clear();
+                            for (byte[] bytes : locationJson) {
+                                var ping = locationSerde.deserializer().deserialize(TOPIC, bytes);
+                                accumulate(
+                                        jsonSpeed,
+                                        ping.routeId(),
+                                        ping.originalTimestamp().toEpochMilli(),
+                                        ping.speedKmh());
+                            }
+                        });
+        ScanStats[] locationScan = new ScanStats[1];
+        double archiveLocationsMs =
+                time(
+                        () -> {
+                            archiveSpeed.clear();
+                            locationScan[0] =
+                                    archive.scan(
+                                            ArchiveTable.LOCATIONS,
+                                            from,
+                                            to,
+                                            List.of("routeId", "speedKmh", "originalTimestamp"),
+                                            group -> {
+                                                String[] routes = group.strings("routeId");
+                                                double[] speeds = group.doubles("speedKmh");
+                                                long[] at = group.longs("originalTimestamp");
+                                                for (int i = 0; i < group.rows(); i++) {
+                                                    accumulate(
+                                                            archiveSpeed,
+                                                            routes[i],
+                                                            at[i],
+                                                            speeds[i]);
+                                                }
+                                            });
+                        });
+        assertThat(archiveSpeed.keySet()).isEqualTo(jsonSpeed.keySet());
+        archiveSpeed.forEach(
+                (key, sum) -> {
+                    assertThat(sum[0]).isCloseTo(jsonSpeed.get(key)[0], within(1e-6));
+                    assertThat(sum[1]).isEqualTo(jsonSpeed.get(key)[1]);
+                });
+
+        // Revenue per matatu per hour of successful fares.
+        Map<String, double[]> jsonRevenue = new HashMap<>();
+        Map<String, double[]> archiveRevenue = new HashMap<>();
+        double jsonFaresMs =
+                time(
+                        () -> {
+                            jsonRevenue.clear();
+                            for (byte[] bytes : fareJson) {
+                                var fare = fareSerde.deserializer().deserialize(TOPIC, bytes);
+                                if (fare.status() == PaymentStatus.SUCCESS) {
+                                    accumulate(
+                                            jsonRevenue,
+                                            fare.matatuId(),
+                                            fare.timestamp().toEpochMilli(),
+                                            fare.amountKes().doubleValue());
+                                }
+                            }
+                        });
+        ScanStats[] fareScan = new ScanStats[1];
+        double archiveFaresMs =
+                time(
+                        () -> {
+                            archiveRevenue.clear();
+                            fareScan[0] =
+                                    archive.scan(
+                                            ArchiveTable.FARES,
+                                            from,
+                                            to,
+                                            List.of(
+                                                    "matatuId",
+                                                    "amountCents",
+                                                    "status",
+                                                    "timestamp"),
+                                            group -> {
+                                                String[] matatus = group.strings("matatuId");
+                                                long[] cents = group.longs("amountCents");
+                                                String[] status = group.strings("status");
+                                                long[] at = group.longs("timestamp");
+                                                for (int i = 0; i < group.rows(); i++) {
+                                                    if ("SUCCESS".equals(status[i])) {
+                                                        accumulate(
+                                                                archiveRevenue,
+                                                                matatus[i],
+                                                                at[i],
+                                                                cents[i] / 100.0);
+                                                    }
+                                                }
+                                            });
+                        });
+        assertThat(archiveRevenue.keySet()).isEqualTo(jsonRevenue.keySet());
+
+        long locationJsonBytes = total(locationJson);
+        long fareJsonBytes = total(fareJson);
+        log.info(
+                String.format(
+                        "[BENCH] %,d enriched locations: JSON %.1f B/event, columnar %.1f B/event (%.1fx"
+                                + " smaller); speed per route per hour — JSON parse %.0f ms, columnar scan"
+                                + " %.0f ms (%.1fx faster, %.1f%% of file bytes read)",
+                        pings.size(),
+                        (double) locationJsonBytes / pings.size(),
+                        (double) locationBytes / pings.size(),
+                        (double) locationJsonBytes / locationBytes,
+                        jsonLocationsMs,
+                        archiveLocationsMs,
+                        jsonLocationsMs / archiveLocationsMs,
+                        100.0 * locationScan[0].bytesRead() / locationBytes));
+        log.info(
+                String.format(
+                        "[BENCH] %,d fares: JSON %.1f B/event, columnar %.1f B/event (%.1fx smaller);"
+                                + " revenue per matatu per hour — JSON parse %.0f ms, columnar scan %.0f ms"
+                                + " (%.1fx faster, %.1f%% of file bytes read)",
+                        fares.size(),
+                        (double) fareJsonBytes / fares.size(),
+                        (double) fareBytes / fares.size(),
+                        (double) fareJsonBytes / fareBytes,
+                        jsonFaresMs,
+                        archiveFaresMs,
+                        jsonFaresMs / archiveFaresMs,
+                        100.0 * fareScan[0].bytesRead() / fareBytes));
+
+        assertThat(locationBytes * 4).isLessThan(locationJsonBytes);
+        assertThat(fareBytes * 2).isLessThan(fareJsonBytes);
+        assertThat(archiveLocationsMs).isLessThan(jsonLocationsMs);
+        assertThat(archiveFaresMs).isLessThan(jsonFaresMs);
+    }
+
+    private interface Scan {
+        void run() throws IOException;
+    }
+
+    /** Best of five runs after two warm-ups, in milliseconds. */
+    private static double time(Scan scan) throws IOException {
+        for (int i = 0; i < 2; i++) {
+            scan.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            scan.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+
+    /** Sum and count per key and hour. */
+    private static void accumulate(
+            Map<String, double[]> totals, String key, long epochMillis, double value) {
+        double[] total =
+                totals.computeIfAbsent(key + "@" + epochMillis / 3_600_000, k -> new double[2]);
+        total[0] += value;
+        total[1]++;
+    }
+
+    private static List<EnrichedLocationEvent> pings(int matatus, int rounds, Random random) {
+        List<EnrichedLocationEvent> pings = new ArrayList<>();
+        for (int round = 0; round < rounds; round++) {
+            for (int m = 0; m < matatus; m++) {
+                pings.add(
+                        ping(
+                                m,
+                                random.nextDouble() * 90,
+                                T0.plusSeconds(round * 30L).plusMillis(random.nextInt(1_000))));
+            }
+        }
+        return pings;
+    }
+
+    private static EnrichedLocationEvent ping(int m, double speedKmh, Instant at) {
+        String routeId = "route_" + (100 + m % 20);
+        return new EnrichedLocationEvent(
+                "KM %03d".formatted(m),
+                routeId,
+                "Route " + (100 + m % 20),
+                "Sacco " + (m % 12),
+                "sacco_" + (m % 12),
+                "Terminus " + (m % 20),
+                -1.2921 + (m % 50) * 0.001,
+                36.8219 + (m % 30) * 0.001,
+                speedKmh,
+                m % 34,
+                speedKmh > 80,
+                at,
+                at.plusMillis(40));
+    }
+
+    private static EnrichedLocationEvent withSacco(EnrichedLocationEvent p, String saccoId) {
+        return new EnrichedLocationEvent(
+                p.matatuId(),
+                p.routeId(),
+                p.routeName(),
+                p.saccoName(),
+                saccoId,
+                p.terminus(),
+                p.latitude(),
+                p.longitude(),
+                p.speedKmh(),
+                p.passengersOnboard(),
+                p.isSpeeding(),
+                p.originalTimestamp(),
+                p.enrichedAt());
+    }
+
+    private static List<EnrichedFare> fares(List<EnrichedLocationEvent> pings, Random random) {
+        PaymentStatus[] statuses = PaymentStatus.values();
+        PaymentMethod[] methods = PaymentMethod.values();
+        List<EnrichedFare> fares = new ArrayList<>();
+        for (int i = 0; i < pings.size(); i += 3) {
+            EnrichedLocationEvent ping = pings.get(i);
+            fares.add(
+                    new EnrichedFare(
+                            "TX" + Long.toHexString(random.nextLong()),
+                            ping.matatuId(),
+                            "P" + random.nextInt(5_000),
+                            BigDecimal.valueOf(50 + 10 * random.nextInt(15)),
+                            methods[random.nextInt(methods.length)],
+                            statuses[random.nextInt(8) == 0 ? 1 : 0],
+                            ping.originalTimestamp(),
+                            Attribution.MATCHED,
+                            ping.routeId(),
+                            ping.saccoId(),
+                            ping.saccoName(),
+                            "kzf0t",
+                            null,
+                            1_500L));
+        }
+        return fares;
+    }
+
+    /** Every column of every row, as the archive would decode it. */
+    private static <T> List<List<Object>> rows(ArchiveTable<T> table, List<T> source) {
+        List<List<Object>> rows = new ArrayList<>();
+        for (T row : source) {
+            List<Object> values = new ArrayList<>();
+            for (ArchiveTable.Column<T> column : table.columns()) {
+                Object value = column.value().apply(row);
+                values.add(
+                        switch (column.type()) {
+                            case TIMESTAMP -> ((Instant) value).toEpochMilli();
+                            case BOOLEAN -> ((Boolean) value) ? 1L : 0L;
+                            case INT -> ((Number) value).longValue();
+                            default -> value;
+                        });
+            }
+            rows.add(values);
+        }
+        return rows;
+    }
+
+    private static <T> List<List<Object>> readBack(ColumnarArchive archive, ArchiveTable<T> table)
+            throws IOException {
+        List<String> names = table.columns().stream().map(ArchiveTable.Column::name).toList();
+        List<List<Object>> rows = new ArrayList<>();
+        archive.scan(
+                table,
+                T0.minus(Duration.ofDays(1)),
+                T0.plus(Duration.ofDays(1)),
+                names,
+                group -> {
+                    for (int i = 0; i < group.rows(); i++) {
+                        List<Object> values = new ArrayList<>();
+                        for (ArchiveTable.Column<T> column : table.columns()) {
+                            values.add(value(group, column, i));
+                        }
+                        rows.add(values);
+                    }
+                });
+        return rows;
+    }
+
+    private static Object value(RowGroup group, ArchiveTable.Column<?> column, int row) {
+        return switch (column.type()) {
+            case STRING -> group.strings(column.name())[row];
+            case DOUBLE -> group.doubles(column.name())[row];
+            default -> group.longs(column.name())[row];
+        };
+    }
+
+    private static <T> List<byte[]> serialize(Serde<T> serde, List<T> records) {
+        return records.stream().map(r -> serde.serializer().serialize(TOPIC, r)).toList();
+    }
+
+    private static long total(List<byte[]> records) {
+        return records.stream().mapToLong(bytes -> bytes.length).sum();
+    }
+
+    private static long sizeOf(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).mapToLong(ColumnarArchiveTest::size).sum();
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
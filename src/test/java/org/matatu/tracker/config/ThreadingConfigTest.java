@@ -0,0 +1,431 @@
+package org.matatu.tracker.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.config.MatatuTrackerProperties.Threads.Mode;
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.model.FareEvent.PaymentMethod;
+import org.matatu.tracker.model.FareEvent.PaymentStatus;
+import org.matatu.tracker.sketch.DDSketch;
+import org.matatu.tracker.topics.Topics;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.tomcat.servlet.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServer;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.AcknowledgingMessageListener;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.support.TopicPartitionOffset;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Platform against virtual threads where the application blocks: a request waiting on its producer
+ * future, and a fare listener waiting on a write. Both go through the real wiring — the {@link
+ * ThreadingConfig} customizer on an embedded Tomcat, and the executor {@link KafkaConsumerConfig}
+ * gives the fare listener containers (over {@link MockConsumer}s, as there is no broker here).
+ */
+@Slf4j
+class ThreadingConfigTest {
+
+    private static final long SEND_MS = 50;
+    // A send stuck behind a slow broker, up to max.block.ms.
+    private static final long SLOW_SEND_MS = 500;
+
+    @Test
+    void virtualModeServesRequestsOnVirtualThreads() throws Exception {
+        assertThat(serve(Mode.PLATFORM, 20, 40, SEND_MS).virtualShare()).isZero();
+        assertThat(serve(Mode.VIRTUAL, 20, 40, SEND_MS).virtualShare()).isEqualTo(1.0);
+    }
+
+    @Test
+    void virtualModeRunsListenersOnVirtualThreads() throws Exception {
+        assertThat(listen(Mode.PLATFORM, 4, 5).virtualShare()).isZero();
+        assertThat(listen(Mode.VIRTUAL, 4, 5).virtualShare()).isEqualTo(1.0);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void benchmarkPlatformAgainstVirtualThreads() throws Exception {
+        Logger app = (Logger) LoggerFactory.getLogger("org.matatu.tracker");
+        Logger kafka = (Logger) LoggerFactory.getLogger("org.springframework.kafka");
+        Level appLevel = app.getLevel();
+        Logger results = (Logger) LoggerFactory.getLogger(ThreadingConfigTest.class);
+        Level kafkaLevel = kafka.getLevel();
+        Level resultsLevel = results.getLevel();
+        app.setLevel(Level.OFF);
+        kafka.setLevel(Level.OFF);
+        results.setLevel(Level.INFO);
+        try {
+            int concurrency = 1_000;
+            int requests = 5_000;
+            serve(Mode.VIRTUAL, 100, 1_000, SEND_MS); // warm-up
+            for (long sendMs : new long[] {SEND_MS, SLOW_SEND_MS}) {
+                for (Mode mode : Mode.values()) {
+                    Run run = serve(mode, concurrency, requests, sendMs);
+                    print(
+                            "web: %,d requests, %,d in flight, each waiting %d ms"
+                                    .formatted(requests, concurrency, sendMs),
+                            mode,
+                            run);
+                }
+            }
+            int consumers = 500;
+            int perConsumer = 20;
+            for (Mode mode : Mode.values()) {
+                Run run = listen(mode, consumers, perConsumer);
+                print(
+                        "listeners: %,d consumers, %d fares each, each waiting %d ms"
+                                .formatted(consumers, perConsumer, SEND_MS),
+                        mode,
+                        run);
+            }
+        } finally {
+            app.setLevel(appLevel);
+            kafka.setLevel(kafkaLevel);
+            results.setLevel(resultsLevel);
+        }
+    }
+
+    // ── Web ───────────────────────────────────────────────────────────────────
+
+    /** An ingest endpoint that waits on its send, as a request does under {@code DIRECT}. */
+    private Run serve(Mode mode, int concurrency, int requests, long sendMs) throws Exception {
+        var factory = new TomcatServletWebServerFactory(0);
+        if (mode == Mode.VIRTUAL) {
+            factory.addProtocolHandlerCustomizers(
+                    new ThreadingConfig().virtualThreadProtocolHandler());
+        }
+        AtomicLong onVirtual = new AtomicLong();
+        HttpServlet ingest =
+                new HttpServlet() {
+                    @Override
+                    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+                            throws IOException {
+                        if (Thread.currentThread().isVirtual()) {
+                            onVirtual.incrementAndGet();
+                        }
+                        awaitSend(sendMs);
+                        response.setStatus(202);
+                    }
+                };
+        factory.addInitializers(
+                context -> context.addServlet("ingest", ingest).addMapping("/api/location"));
+        WebServer server = factory.getWebServer();
+        server.start();
+        Sampler sampler = new Sampler();
+        try (ExecutorService callbacks = Executors.newVirtualThreadPerTaskExecutor();
+                HttpClient client =
+                        HttpClient.newBuilder()
+                                .executor(callbacks)
+                                .connectTimeout(Duration.ofSeconds(30))
+                                .build()) {
+            HttpRequest request =
+                    HttpRequest.newBuilder(
+                                    URI.create(
+                                            "http://localhost:%d/api/location"
+                                                    .formatted(server.getPort())))
+                            .POST(HttpRequest.BodyPublishers.noBody())
+                            .build();
+            Semaphore inFlight = new Semaphore(concurrency);
+            CountDownLatch done = new CountDownLatch(requests);
+            long[] latencies = new long[requests];
+            AtomicLong failed = new AtomicLong();
+            long start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                int index = i;
+                inFlight.acquire();
+                long sent = System.nanoTime();
+                client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                        .whenComplete(
+                                (response, error) -> {
+                                    latencies[index] = System.nanoTime() - sent;
+                                    if (error != null || response.statusCode() != 202) {
+                                        failed.incrementAndGet();
+                                    }
+                                    inFlight.release();
+                                    done.countDown();
+                                });
+            }
+            assertThat(done.await(5, TimeUnit.MINUTES)).isTrue();
+            long elapsed = System.nanoTime() - start;
+            assertThat(failed.get()).isZero();
+            return sampler.finish(requests, elapsed, latencies, onVirtual.get());
+        } finally {
+            sampler.stop();
+            server.stop();
+        }
+    }
+
+    // ── Listeners ─────────────────────────────────────────────────────────────
+
+    /** One fare listener container per partition, each fare acknowledged after its write. */
+    private Run listen(Mode mode, int consumers, int perConsumer) throws Exception {
+        var properties = new MatatuTrackerProperties();
+        properties.getKafka().setBootstrapServers("localhost:9092"); // never contacted
+        properties.getThreads().setListeners(mode);
+        var factory = new KafkaConsumerConfig(properties).fareListenerContainerFactory();
+        factory.setConsumerFactory(new MockFares(perConsumer));
+        factory.setConcurrency(consumers);
+        TopicPartitionOffset[] partitions = new TopicPartitionOffset[consumers];
+        for (int p = 0; p < consumers; p++) {
+            partitions[p] = new TopicPartitionOffset(Topics.MATATU_FARES, p);
+        }
+        ConcurrentMessageListenerContainer<String, FareEvent> container =
+                factory.createContainer(partitions);
+        container.getContainerProperties().setGroupId("fare-bench");
+        container.getContainerProperties().setPollTimeout(50);
+
+        int total = consumers * perConsumer;
+        CountDownLatch done = new CountDownLatch(total);
+        AtomicLong onVirtual = new AtomicLong();
+        long[] latencies = new long[total];
+        AtomicLong next = new AtomicLong();
+        container.setupMessageListener(
+                (AcknowledgingMessageListener<String, FareEvent>)
+                        (record, ack) -> {
+                            long start = System.nanoTime();
+                            if (Thread.currentThread().isVirtual()) {
+                                onVirtual.incrementAndGet();
+                            }
+                            awaitSend(SEND_MS);
+                            ack.acknowledge();
+                            latencies[(int) next.getAndIncrement()] = System.nanoTime() - start;
+                            done.countDown();
+                        });
+
+        Sampler sampler = new Sampler();
+        long start = System.nanoTime();
+        container.start();
+        try {
+            assertThat(done.await(5, TimeUnit.MINUTES)).isTrue();
+            return sampler.finish(total, System.nanoTime() - start, latencies, onVirtual.get());
+        } finally {
+            sampler.stop();
+            container.stop();
+        }
+    }
+
+    /** Each consumer finds {@code perConsumer} fares on its partition at the first poll. */
+    private static final class MockFares implements ConsumerFactory<String, FareEvent> {
+        private final int perConsumer;
+
+        private MockFares(int perConsumer) {
+            this.perConsumer = perConsumer;
+        }
+
+        @Override
+        public Consumer<String, FareEvent> createConsumer(
+                String groupId,
+                String clientIdPrefix,
+                String clientIdSuffix,
+                Properties overrides) {
+            var consumer =
+                    new MockConsumer<String, FareEvent>("earliest") {
+                        @Override
+                        public synchronized void assign(Collection<TopicPartition> partitions) {
+                            super.assign(partitions);
+                            partitions.forEach(p -> updateBeginningOffsets(Map.of(p, 0L)));
+                        }
+
+                        /** MockConsumer never waits; a real one waits out the timeout. */
+                        @Override
+                        public ConsumerRecords<String, FareEvent> poll(Duration timeout) {
+                            ConsumerRecords<String, FareEvent> records = super.poll(timeout);
+                            if (records.isEmpty()) {
+                                sleep(timeout.toMillis());
+                            }
+                            return records;
+                        }
+                    };
+            consumer.schedulePollTask(
+                    () -> {
+                        for (TopicPartition partition : consumer.assignment()) {
+                            for (int i = 0; i < perConsumer; i++) {
+                                consumer.addRecord(
+                                        new ConsumerRecord<>(
+                                                partition.topic(),
+                                                partition.partition(),
+                                                i,
+                                                "KBZ " + partition.partition(),
+                                                fare(partition.partition(), i)));
+                            }
+                        }
+                    });
+            return consumer;
+        }
+
+        @Override
+        public boolean isAutoCommit() {
+            return false;
+        }
+
+        @Override
+        public Map<String, Object> getConfigurationProperties() {
+            return Map.of();
+        }
+    }
+
+    private static FareEvent fare(int partition, int i) {
+        return new FareEvent(
+                "TXN-%d-%d".formatted(partition, i),
+                "KBZ " + partition,
+                "PAX-" + i,
+                BigDecimal.valueOf(70),
+                PaymentMethod.MPESA,
+                PaymentStatus.SUCCESS,
+                Instant.parse("2026-02-23T07:00:00Z"));
+    }
+
+    // ── Measurement ───────────────────────────────────────────────────────────
+
+    private record Run(
+            int calls,
+            long elapsedNanos,
+            DDSketch latency,
+            double virtualShare,
+            int peakThreads,
+            long peakHeapBytes,
+            long peakRssBytes) {}
+
+    /**
+     * Samples live platform threads (virtual threads are not counted), heap in use and resident
+     * memory every 10 ms. Thread stacks live outside the heap, so resident memory is where a
+     * platform thread's cost shows.
+     */
+    private static final class Sampler {
+        private final LongAccumulator threads = new LongAccumulator(Math::max, 0);
+        private final LongAccumulator heap = new LongAccumulator(Math::max, 0);
+        private final LongAccumulator rss = new LongAccumulator(Math::max, 0);
+        private final long baseRss;
+        private final AtomicBoolean running = new AtomicBoolean(true);
+        private final Thread thread;
+
+        private Sampler() {
+            System.gc();
+            baseRss = residentBytes();
+            thread =
+                    Thread.ofPlatform()
+                            .daemon()
+                            .start(
+                                    () -> {
+                                        while (running.get()) {
+                                            sample();
+                                            sleep(10);
+                                        }
+                                    });
+        }
+
+        private void sample() {
+            threads.accumulate(ManagementFactory.getThreadMXBean().getThreadCount());
+            heap.accumulate(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+            rss.accumulate(residentBytes() - baseRss);
+        }
+
+        private Run finish(int calls, long elapsedNanos, long[] latencies, long onVirtual) {
+            sample();
+            DDSketch latency = new DDSketch(0.01, 2048);
+            for (long nanos : latencies) {
+                latency.add(nanos / 1e6);
+            }
+            return new Run(
+                    calls,
+                    elapsedNanos,
+                    latency,
+                    (double) onVirtual / calls,
+                    (int) threads.get(),
+                    heap.get(),
+                    rss.get());
+        }
+
+        private void stop() throws InterruptedException {
+            running.set(false);
+            thread.join();
+        }
+
+        /** VmRSS from procfs; 0 where there is none. */
+        private static long residentBytes() {
+            try {
+                return Files.readAllLines(Path.of("/proc/self/status")).stream()
+                        .filter(line -> line.startsWith("VmRSS:"))
+                        .mapToLong(line -> Long.parseLong(line.replaceAll("\\D", "")) * 1024)
+                        .findFirst()
+                        .orElse(0);
+            } catch (IOException | RuntimeException e) {
+                return 0;
+            }
+        }
+    }
+
+    private static void print(String scenario, Mode mode, Run run) {
+        log.info(
+                String.format(
+                        "[BENCH] %s, %s: %,.0f/s, latency p50 %.1f ms / p99 %.1f ms, peak %d platform"
+                                + " threads, peak heap %,d MB, resident +%,d MB",
+                        scenario,
+                        mode,
+                        run.calls() / (run.elapsedNanos() / 1e9),
+                        run.latency().quantile(0.50),
+                        run.latency().quantile(0.99),
+                        run.peakThreads(),
+                        run.peakHeapBytes() >> 20,
+                        run.peakRssBytes() >> 20));
+    }
+
+    /** A send acknowledged after {@code millis}, waited for the way a blocking caller does. */
+    private static void awaitSend(long millis) {
+        try {
+            new CompletableFuture<String>()
+                    .completeOnTimeout("acked", millis, TimeUnit.MILLISECONDS)
+                    .get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package org.matatu.tracker.consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.model.MatatuSnapshot;
+import org.matatu.tracker.topics.Topics;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class CompactedTopicReaderTest {
+
+    private static final Instant T0 = Instant.parse("2026-02-23T07:00:00Z");
+    private static final int PARTITIONS = 3;
+
+    @Test
+    void readsEveryPartitionToTheEndAndAppliesTombstones() {
+        List<ConsumerRecord<String, MatatuSnapshot>> log = new ArrayList<>();
+        log.add(record(0, 0, "KBZ 123A", snapshot("KBZ 123A", T0)));
+        log.add(record(1, 0, "KCA 456B", snapshot("KCA 456B", T0)));
+        log.add(record(0, 1, "KBZ 123A", snapshot("KBZ 123A", T0.plusSeconds(3))));
+        log.add(record(2, 0, "KDD 789C", snapshot("KDD 789C", T0)));
+        log.add(record(1, 1, "KCA 456B", null)); // decommissioned
+
+        Map<String, MatatuSnapshot> fleet = new HashMap<>();
+        long read =
+                CompactedTopicReader.readToEnd(
+                        consumerOver(Topics.MATATU_LATEST_POSITIONS, log, 2),
+                        Topics.MATATU_LATEST_POSITIONS,
+                        (key, value) -> {
+                            if (value == null) {
+                                fleet.remove(key);
+                            } else {
+                                fleet.put(key, value);
+                            }
+                        },
+                        Duration.ofSeconds(5));
+
+        assertThat(read).isEqualTo(5);
+        assertThat(fleet).containsOnlyKeys("KBZ 123A", "KDD 789C");
+        assertThat(fleet.get("KBZ 123A").timestamp()).isEqualTo(T0.plusSeconds(3));
+    }
+
+    @Test
+    void failsInsteadOfHangingWhenTheEndIsNeverReached() {
+        var consumer = new MockConsumer<String, MatatuSnapshot>("earliest");
+        var partition = new TopicPartition(Topics.MATATU_LATEST_POSITIONS, 0);
+        consumer.updatePartitions(
+                partition.topic(),
+                List.of(new PartitionInfo(partition.topic(), 0, null, null, null)));
+        consumer.updateBeginningOffsets(Map.of(partition, 0L));
+        consumer.updateEndOffsets(Map.of(partition, 10L)); // records that never arrive
+
+        assertThatThrownBy(
+                        () ->
+                                CompactedTopicReader.readToEnd(
+                                        consumer,
+                                        partition.topic(),
+                                        (key, value) -> {},
+                                        Duration.ofMillis(300)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    /**
+     * Cold start of a display board for a large fleet: replaying an hour of matatu.location versus
+     * reading matatu.latest.positions, where compaction has left one snapshot per matatu plus the
+     * uncompacted open segment (10 minutes of updates at the default segment-minutes).
+     */
+    @Test
+    @Tag("benchmark")
+    void benchColdStartFromHistoryVersusCompacted() {
+        int matatus = 500;
+        int pingIntervalSeconds = 5;
+        int historyPings = 3600 / pingIntervalSeconds;
+        int openSegmentPings = 600 / pingIntervalSeconds;
+
+        MatatuSnapshot[] latest = new MatatuSnapshot[matatus];
+        List<ConsumerRecord<String, MatatuSnapshot>> history = new ArrayList<>();
+        List<ConsumerRecord<String, MatatuSnapshot>> compacted = new ArrayList<>();
+        long[] historyOffsets = new long[PARTITIONS];
+        long[] compactedOffsets = new long[PARTITIONS];
+        for (int ping = 0; ping < historyPings; ping++) {
+            Instant at = T0.plusSeconds((long) ping * pingIntervalSeconds);
+            boolean openSegment = ping >= historyPings - openSegmentPings;
+            for (int m = 0; m < matatus; m++) {
+                String matatuId = "KM " + m;
+                int partition = m % PARTITIONS;
+                latest[m] = snapshot(matatuId, at);
+                history.add(record(partition, historyOffsets[partition]++, matatuId, latest[m]));
+                if (openSegment || ping == historyPings - openSegmentPings - 1) {
+                    compacted.add(
+                            record(partition, compactedOffsets[partition]++, matatuId, latest[m]));
+                }
+            }
+        }
+
+        Map<String, MatatuSnapshot> fromHistory = new HashMap<>();
+        long historyStart = System.nanoTime();
+        long historyRead =
+                CompactedTopicReader.readToEnd(
+                        consumerOver(Topics.MATATU_LOCATION, history, 500),
+                        Topics.MATATU_LOCATION,
+                        fromHistory::put,
+                        Duration.ofMinutes(1));
+        long historyMs = (System.nanoTime() - historyStart) / 1_000_000;
+        history.clear();
+
+        Map<String, MatatuSnapshot> fromCompacted = new HashMap<>();
+        long compactedStart = System.nanoTime();
+        long compactedRead =
+                CompactedTopicReader.readToEnd(
+                        consumerOver(Topics.MATATU_LATEST_POSITIONS, compacted, 500),
+                        Topics.MATATU_LATEST_POSITIONS,
+                        fromCompacted::put,
+                        Duration.ofMinutes(1));
+        long compactedMs = (System.nanoTime() - compactedStart) / 1_000_000;
+
+        log.info(
+                String.format(
+                        "[BENCH] cold start, %d matatus: 1 h of matatu.location = %d records in %d ms | "
+                                + "matatu.latest.positions = %d records in %d ms",
+                        matatus, historyRead, historyMs, compactedRead, compactedMs));
+        assertThat(fromCompacted).isEqualTo(fromHistory).hasSize(matatus);
+        assertThat(fromCompacted.get("KM 0")).isEqualTo(latest[0]);
+        assertThat(compactedRead).isLessThan(historyRead / 5);
+    }
+
+    private static MockConsumer<String, MatatuSnapshot> consumerOver(
+            String topic, List<ConsumerRecord<String, MatatuSnapshot>> log, int maxPollRecords) {
+        var consumer = new MockConsumer<String, MatatuSnapshot>("earliest");
+        consumer.setMaxPollRecords(maxPollRecords);
+        List<PartitionInfo> infos = new ArrayList<>();
+        Map<TopicPartition, Long> beginning = new HashMap<>();
+        Map<TopicPartition, Long> end = new HashMap<>();
+        for (int p = 0; p < PARTITIONS; p++) {
+            infos.add(new PartitionInfo(topic, p, null, null, null));
+            beginning.put(new TopicPartition(topic, p), 0L);
+            end.put(new TopicPartition(topic, p), 0L);
+        }
+        for (var record : log) {
+            end.merge(new TopicPartition(topic, record.partition()), 1L, Long::sum);
+        }
+        consumer.updatePartitions(topic, infos);
+        consumer.updateBeginningOffsets(beginning);
+        consumer.updateEndOffsets(end);
+        // Records can only be added once the reader has assigned the partitions.
+        consumer.schedulePollTask(
+                () ->
+                        log.forEach(
+                                record ->
+                                        consumer.addRecord(
+                                                new ConsumerRecord<>(
+                                                        topic,
+                                                        record.partition(),
+                                                        record.offset(),
+                                                        record.key(),
+                                                        record.value()))));
+        return consumer;
+    }
+
+    private static ConsumerRecord<String, MatatuSnapshot> record(
+            int partition, long offset, String key, MatatuSnapshot value) {
+        return new ConsumerRecord<>("", partition, offset, key, value);
+    }
+
+    private static MatatuSnapshot snapshot(String matatuId, Instant at) {
+        return new MatatuSnapshot(
+                matatuId, "route_33", "Route 33", -1.2921, 36.8219, 30, 90, 12, at, false);
+    }
+}
@@ -0,0 +1,124 @@
+package org.matatu.tracker.consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.model.FleetSnapshot;
+import org.matatu.tracker.model.MatatuSnapshot;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+
+class DisplayBoardConsumerTest {
+
+    private static final Instant T0 = Instant.parse("2026-02-23T07:00:00Z");
+
+    private final DisplayBoardConsumer board =
+            new DisplayBoardConsumer(new MatatuTrackerProperties(), null, null);
+
+    @Test
+    void removalFromTheOldStageArrivingLateKeepsTheVehicle() {
+        board.onFleetSnapshot(batch("stage:odeon", List.of(at(T0)), List.of()));
+
+        // The matatu moved to Kencom; Kencom's partition was handled first.
+        board.onFleetSnapshot(batch("stage:kencom", List.of(at(T0.plusSeconds(5))), List.of()));
+        board.onFleetSnapshot(batch("stage:odeon", List.of(), List.of("KBZ 123A")));
+
+        assertThat(board.vehicle("KBZ 123A"))
+                .map(MatatuSnapshot::timestamp)
+                .contains(T0.plusSeconds(5));
+    }
+
+    @Test
+    void removalFromTheOldStageArrivingFirstIsUndoneByTheNewStage() {
+        board.onFleetSnapshot(batch("stage:odeon", List.of(at(T0)), List.of()));
+
+        board.onFleetSnapshot(batch("stage:odeon", List.of(), List.of("KBZ 123A")));
+        board.onFleetSnapshot(batch("stage:kencom", List.of(at(T0.plusSeconds(5))), List.of()));
+
+        assertThat(board.vehicle("KBZ 123A")).isPresent();
+    }
+
+    @Test
+    void removalFromItsOwnGroupTakesTheVehicleOff() {
+        board.onFleetSnapshot(batch("stage:odeon", List.of(at(T0)), List.of()));
+
+        board.onFleetSnapshot(batch("stage:odeon", List.of(), List.of("KBZ 123A")));
+
+        assertThat(board.vehicle("KBZ 123A")).isEmpty();
+    }
+
+    @Test
+    void olderSnapshotFromAnotherGroupDoesNotTakeOwnership() {
+        board.onFleetSnapshot(batch("stage:kencom", List.of(at(T0.plusSeconds(5))), List.of()));
+        // A keyframe from the old stage, generated before the move, arrives late.
+        board.onFleetSnapshot(batch("stage:odeon", List.of(at(T0)), List.of()));
+        board.onFleetSnapshot(batch("stage:odeon", List.of(), List.of("KBZ 123A")));
+
+        assertThat(board.vehicle("KBZ 123A")).isPresent();
+    }
+
+    @Test
+    void boardStartsAndReplaysWhenTheBootstrapCannotReachTheBroker() {
+        var unreachable =
+                new DefaultKafkaConsumerFactory<String, MatatuSnapshot>(Map.of()) {
+                    @Override
+                    protected Consumer<String, MatatuSnapshot> createRawConsumer(
+                            Map<String, Object> configs) {
+                        return new MockConsumer<>("earliest") {
+                            @Override
+                            public synchronized List<PartitionInfo> partitionsFor(String topic) {
+                                throw new TimeoutException(
+                                        "Timeout expired while fetching topic metadata");
+                            }
+                        };
+                    }
+                };
+        var starting = new DisplayBoardConsumer(new MatatuTrackerProperties(), unreachable, null);
+        List<String> seeks = new ArrayList<>();
+        var callback =
+                (ConsumerSeekAware.ConsumerSeekCallback)
+                        Proxy.newProxyInstance(
+                                getClass().getClassLoader(),
+                                new Class<?>[] {ConsumerSeekAware.ConsumerSeekCallback.class},
+                                (proxy, method, args) -> {
+                                    seeks.add(method.getName());
+                                    return null;
+                                });
+
+        starting.start();
+        starting.onPartitionsAssigned(
+                Map.of(new TopicPartition(Topics.MATATU_FLEET_SNAPSHOTS, 0), 0L), callback);
+
+        assertThat(starting.isRunning()).isTrue();
+        assertThat(seeks).isEmpty(); // initial offset 0, as in HISTORY mode
+    }
+
+    private static MatatuSnapshot at(Instant timestamp) {
+        return new MatatuSnapshot(
+                "KBZ 123A", "route_33", "Route 33", -1.286, 36.824, 20, 90, 10, timestamp, false);
+    }
+
+    private static ConsumerRecord<String, FleetSnapshot> batch(
+            String group, List<MatatuSnapshot> vehicles, List<String> removed) {
+        return new ConsumerRecord<>(
+                Topics.MATATU_FLEET_SNAPSHOTS,
+                0,
+                0,
+                group,
+                new FleetSnapshot(group, false, T0, vehicles, removed));
+    }
+}
@@ -0,0 +1,334 @@
+package org.matatu.tracker.consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.topics.Topics;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class KeyOrderedDispatcherTest {
+
+    private static final TopicPartition P0 = new TopicPartition(Topics.MATATU_LOCATION, 0);
+
+    @Test
+    void keepsPerKeyOrderAndCommitsOnlyForward() throws Exception {
+        Map<String, Queue<Long>> seen = new ConcurrentHashMap<>();
+        Queue<Long> commits = new ConcurrentLinkedQueue<>();
+        try (var dispatcher =
+                dispatcher(
+                        64,
+                        record -> {
+                            sleepMillis(record.offset() % 3);
+                            seen.computeIfAbsent(record.key(), k -> new ConcurrentLinkedQueue<>())
+                                    .add(record.offset());
+                        })) {
+            for (long offset = 0; offset < 500; offset++) {
+                long committedOffset = offset + 1;
+                dispatcher.submit(
+                        record(0, offset, "KM " + (offset % 20)),
+                        () -> commits.add(committedOffset));
+            }
+            awaitCommitted(dispatcher, P0, 500);
+        }
+
+        assertThat(seen).hasSize(20);
+        seen.values().forEach(offsets -> assertThat(List.copyOf(offsets)).isSorted());
+        assertThat(List.copyOf(commits)).isSorted().doesNotHaveDuplicates().endsWith(500L);
+    }
+
+    /**
+     * Each record waits for its own gate, so the test decides the order records finish in: two
+     * keys, released out of offset order, and the commit after every step.
+     */
+    @Test
+    void commitsFollowTheCompletedPrefixWhateverOrderRecordsFinishIn() throws Exception {
+        var gates = new CountDownLatch[6];
+        for (int i = 0; i < gates.length; i++) {
+            gates[i] = new CountDownLatch(1);
+        }
+        List<Long> started = new CopyOnWriteArrayList<>();
+        Queue<Long> commits = new ConcurrentLinkedQueue<>();
+        try (var dispatcher =
+                dispatcher(
+                        8,
+                        record -> {
+                            started.add(record.offset());
+                            await(gates[(int) record.offset()]);
+                        })) {
+            for (long offset = 0; offset < gates.length; offset++) {
+                long committedOffset = offset + 1;
+                dispatcher.submit(
+                        record(0, offset, "KM " + (offset % 2)),
+                        () -> commits.add(committedOffset));
+            }
+            // Offsets 2-5 wait behind the unfinished record of their key.
+            awaitStarted(started, 0);
+            awaitStarted(started, 1);
+            assertThat(started).hasSize(2);
+
+            gates[1].countDown(); // done, but offset 0 is not
+            awaitStarted(started, 3);
+            gates[3].countDown();
+            awaitStarted(started, 5);
+            assertThat(dispatcher.committed(P0)).isEqualTo(-1);
+            assertThat(commits).isEmpty();
+
+            gates[0].countDown(); // prefix 0-1 done, 2 running
+            awaitStarted(started, 2);
+            awaitCommitted(dispatcher, P0, 2);
+
+            gates[2].countDown(); // prefix 0-3 done, 4 running
+            awaitStarted(started, 4);
+            awaitCommitted(dispatcher, P0, 4);
+
+            gates[4].countDown();
+            awaitCommitted(dispatcher, P0, 5);
+            gates[5].countDown();
+            awaitCommitted(dispatcher, P0, 6);
+        }
+
+        assertThat(started.subList(2, 6)).containsExactly(3L, 5L, 2L, 4L);
+        assertThat(started.stream().filter(offset -> offset % 2 == 0)).containsExactly(0L, 2L, 4L);
+        assertThat(started.stream().filter(offset -> offset % 2 == 1)).containsExactly(1L, 3L, 5L);
+        assertThat(commits).containsExactly(2L, 4L, 5L, 6L);
+    }
+
+    @Test
+    void unfinishedRecordHoldsBackTheCommitButNotOtherKeys() throws Exception {
+        var release = new CountDownLatch(1);
+        var done = new AtomicInteger();
+        try (var dispatcher =
+                dispatcher(
+                        64,
+                        record -> {
+                            if (record.offset() == 0) {
+                                await(release);
+                            }
+                            done.incrementAndGet();
+                        })) {
+            for (long offset = 0; offset < 10; offset++) {
+                dispatcher.submit(record(0, offset, "KM " + offset), () -> {});
+            }
+            awaitCount(done, 9);
+            assertThat(dispatcher.committed(P0)).isEqualTo(-1); // offset 0 is still running
+            assertThat(dispatcher.inFlight()).isEqualTo(10);
+
+            release.countDown();
+            awaitCommitted(dispatcher, P0, 10);
+            assertThat(dispatcher.inFlight()).isZero();
+        }
+    }
+
+    @Test
+    void listenerThreadWaitsWhenMaxInFlightIsReached() throws Exception {
+        var release = new CountDownLatch(1);
+        var fifthSubmitted = new AtomicBoolean();
+        try (var dispatcher = dispatcher(4, record -> await(release))) {
+            Thread listener =
+                    Thread.ofPlatform()
+                            .start(
+                                    () -> {
+                                        for (long offset = 0; offset < 5; offset++) {
+                                            dispatcher.submit(
+                                                    record(0, offset, "KM " + offset), () -> {});
+                                        }
+                                        fifthSubmitted.set(true);
+                                    });
+            Thread.sleep(200);
+            assertThat(fifthSubmitted).isFalse();
+            assertThat(dispatcher.inFlight()).isEqualTo(4);
+
+            release.countDown();
+            listener.join(5_000);
+            assertThat(fifthSubmitted).isTrue();
+            awaitCommitted(dispatcher, P0, 5);
+        }
+    }
+
+    @Test
+    void failedRecordIsSkippedSoTheCommitKeepsMoving() throws Exception {
+        try (var dispatcher =
+                dispatcher(
+                        8,
+                        record -> {
+                            if (record.offset() == 1) {
+                                throw new IllegalStateException("db down");
+                            }
+                        })) {
+            for (long offset = 0; offset < 3; offset++) {
+                dispatcher.submit(record(0, offset, "KBZ 123A"), () -> {});
+            }
+            awaitCommitted(dispatcher, P0, 3);
+        }
+    }
+
+    @Test
+    void recordStillRunningAfterRevokeTimeoutNeverAcknowledges() throws Exception {
+        var release = new CountDownLatch(1);
+        var done = new AtomicInteger();
+        var acks = new AtomicInteger();
+        try (var dispatcher =
+                dispatcher(
+                        8,
+                        record -> {
+                            await(release);
+                            done.incrementAndGet();
+                        })) {
+            dispatcher.submit(record(0, 0, "KBZ 123A"), acks::incrementAndGet);
+            dispatcher.awaitRevoked(List.of(P0), Duration.ofMillis(50));
+            assertThat(dispatcher.committed(P0)).isEqualTo(-1);
+
+            release.countDown();
+            awaitCount(done, 1);
+            assertThat(acks).hasValue(0); // the new owner redelivers offset 0
+            assertThat(dispatcher.inFlight()).isZero();
+
+            // Assigned back later: the partition starts afresh.
+            dispatcher.submit(record(0, 5, "KBZ 123A"), acks::incrementAndGet);
+            awaitCommitted(dispatcher, P0, 6);
+            assertThat(acks).hasValue(1);
+        }
+    }
+
+    /**
+     * 3 partitions × 1,000 pings from 150 matatus; each write takes 2 ms (a remote database).
+     * Partition model: one thread per partition, as with {@code concurrency = "3"} today.
+     */
+    @Test
+    @Tag("benchmark")
+    void benchKeyOrderedVersusOneRecordAtATimePerPartition() throws Exception {
+        int partitions = 3;
+        int perPartition = 1_000;
+        Consumer<ConsumerRecord<String, String>> write = record -> sleepMillis(2);
+
+        long start = System.nanoTime();
+        List<Thread> listeners = new ArrayList<>();
+        for (int p = 0; p < partitions; p++) {
+            int partition = p;
+            listeners.add(
+                    Thread.ofPlatform()
+                            .start(
+                                    () -> {
+                                        for (long offset = 0; offset < perPartition; offset++) {
+                                            write.accept(record(partition, offset, key(offset)));
+                                        }
+                                    }));
+        }
+        for (Thread listener : listeners) {
+            listener.join();
+        }
+        long partitionNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        try (var dispatcher = dispatcher(256, write)) {
+            listeners.clear();
+            for (int p = 0; p < partitions; p++) {
+                int partition = p;
+                listeners.add(
+                        Thread.ofPlatform()
+                                .start(
+                                        () -> {
+                                            for (long offset = 0; offset < perPartition; offset++) {
+                                                dispatcher.submit(
+                                                        record(partition, offset, key(offset)),
+                                                        () -> {});
+                                            }
+                                        }));
+            }
+            for (Thread listener : listeners) {
+                listener.join();
+            }
+            for (int p = 0; p < partitions; p++) {
+                awaitCommitted(
+                        dispatcher, new TopicPartition(Topics.MATATU_LOCATION, p), perPartition);
+            }
+        }
+        long keyedNanos = System.nanoTime() - start;
+
+        int records = partitions * perPartition;
+        log.info(
+                String.format(
+                        "[BENCH] %d records, 2 ms write: partition model %d ms (%.0f rec/s), "
+                                + "key-ordered (256 in flight) %d ms (%.0f rec/s) — %.1fx",
+                        records,
+                        partitionNanos / 1_000_000,
+                        records / (partitionNanos / 1e9),
+                        keyedNanos / 1_000_000,
+                        records / (keyedNanos / 1e9),
+                        partitionNanos / (double) keyedNanos));
+    }
+
+    private static KeyOrderedDispatcher<String> dispatcher(
+            int maxInFlight, Consumer<ConsumerRecord<String, String>> handler) {
+        return new KeyOrderedDispatcher<>("TEST", maxInFlight, ConsumerRecord::key, handler);
+    }
+
+    private static ConsumerRecord<String, String> record(int partition, long offset, String key) {
+        return new ConsumerRecord<>(Topics.MATATU_LOCATION, partition, offset, key, "ping");
+    }
+
+    private static String key(long offset) {
+        return "KM " + (offset % 150);
+    }
+
+    private static void awaitCommitted(
+            KeyOrderedDispatcher<?> dispatcher, TopicPartition partition, long offset)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (dispatcher.committed(partition) != offset && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(dispatcher.committed(partition)).isEqualTo(offset);
+    }
+
+    private static void awaitStarted(List<Long> started, long offset) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!started.contains(offset) && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(started).contains(offset);
+    }
+
+    private static void awaitCount(AtomicInteger count, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (count.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(count).hasValue(expected);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleepMillis(long millis) {
+        try {
+            Thread.sleep(Duration.ofMillis(millis));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.matatu.tracker.encoding;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.kafka.common.serialization.Serde;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.model.EnrichedLocationEvent;
+import org.matatu.tracker.model.LocationEvent;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class CompactLocationCodecTest {
+
+    private static final Instant T0 = Instant.parse("2026-02-23T07:00:00Z");
+    private static final String TOPIC = "matatu.location";
+
+    @Test
+    void roundTripsEveryFieldIncludingNulls() {
+        var serdes = LocationSerdes.dictionary(loopback());
+
+        var ping =
+                new LocationEvent(
+                        "KBZ 123A", "route_33", "Route 33", -1.2921, 36.8219, 47.5, 14, T0);
+        var bare = new LocationEvent("KBZ 123A", "route_33", null, 0, 0, 0, 0, null);
+        var enriched =
+                new EnrichedLocationEvent(
+                        "KBZ 123A",
+                        "route_33",
+                        "Route 33",
+                        "Super Metro",
+                        "sacco_super_metro",
+                        "Kencom",
+                        -1.2921,
+                        36.8219,
+                        83.25,
+                        33,
+                        true,
+                        T0,
+                        T0.plusMillis(120));
+
+        assertThat(roundTrip(serdes.location(), ping)).isEqualTo(ping);
+        assertThat(roundTrip(serdes.location(), bare)).isEqualTo(bare);
+        assertThat(roundTrip(serdes.enriched(), enriched)).isEqualTo(enriched);
+        assertThat(serdes.location().serializer().serialize(TOPIC, null)).isNull();
+    }
+
+    /** Records written before the switch to dictionary encoding are still readable after it. */
+    @Test
+    void dictionaryReaderAcceptsJsonAndCompactRecords() {
+        var json = LocationSerdes.json();
+        var dictionary = LocationSerdes.dictionary(loopback());
+        var ping =
+                new LocationEvent("KCA 908Z", "route_46", "Route 46", -1.2833, 36.8167, 22, 9, T0);
+
+        byte[] before = json.location().serializer().serialize(TOPIC, ping);
+        byte[] after = dictionary.location().serializer().serialize(TOPIC, ping);
+
+        assertThat(CompactLocationCodec.isCompact(before)).isFalse();
+        assertThat(CompactLocationCodec.isCompact(after)).isTrue();
+        assertThat(dictionary.location().deserializer().deserialize(TOPIC, before)).isEqualTo(ping);
+        assertThat(dictionary.location().deserializer().deserialize(TOPIC, after)).isEqualTo(ping);
+        assertThat(dictionary.compact()).isTrue();
+        assertThat(json.compact()).isFalse();
+    }
+
+    /**
+     * 300 matatus on 20 routes, 50 pings each: bytes per record as stored on the broker, one record
+     * at a time and gzipped in producer-sized batches of 500, and serde throughput.
+     */
+    @Test
+    @Tag("benchmark")
+    void benchBytesPerRecordAndThroughput() throws IOException {
+        var random = new Random(44);
+        List<LocationEvent> pings = new ArrayList<>();
+        List<EnrichedLocationEvent> enriched = new ArrayList<>();
+        for (int round = 0; round < 50; round++) {
+            for (int m = 0; m < 300; m++) {
+                String routeId = "route_" + (100 + m % 20);
+                var ping =
+                        new LocationEvent(
+                                "K%s%s %03d%s"
+                                        .formatted(
+                                                (char) ('A' + m % 4),
+                                                (char) ('A' + m % 26),
+                                                m,
+                                                (char) ('A' + m % 26)),
+                                routeId,
+                                "Route " + (100 + m % 20),
+                                -1.2921 + random.nextGaussian() * 0.05,
+                                36.8219 + random.nextGaussian() * 0.05,
+                                random.nextDouble() * 90,
+                                random.nextInt(34),
+                                T0.plusMillis(round * 3_000L + random.nextInt(1_000)));
+                pings.add(ping);
+                enriched.add(
+                        new EnrichedLocationEvent(
+                                ping.matatuId(),
+                                ping.routeId(),
+                                ping.routeName(),
+                                "Sacco " + (m % 12),
+                                "sacco_" + (m % 12),
+                                "Terminus " + (m % 20),
+                                ping.latitude(),
+                                ping.longitude(),
+                                ping.speedKmh(),
+                                ping.passengersOnboard(),
+                                ping.speedKmh() > 80,
+                                ping.timestamp(),
+                                ping.timestamp().plusMillis(40)));
+            }
+        }
+
+        var json = LocationSerdes.json();
+        var dictionary = LocationSerdes.dictionary(loopback());
+        Footprint jsonPings = measure(json.location(), pings);
+        Footprint compactPings = measure(dictionary.location(), pings);
+        Footprint jsonEnriched = measure(json.enriched(), enriched);
+        Footprint compactEnriched = measure(dictionary.enriched(), enriched);
+
+        print("LocationEvent", jsonPings, compactPings);
+        print("EnrichedLocationEvent", jsonEnriched, compactEnriched);
+
+        assertThat(compactPings.bytes()).isLessThan(jsonPings.bytes() * 0.4);
+        assertThat(compactEnriched.bytes()).isLessThan(jsonEnriched.bytes() * 0.3);
+        assertThat(compactPings.gzipped()).isLessThan(jsonPings.gzipped());
+
+        // Lossy only below GPS precision.
+        LocationEvent first = pings.getFirst();
+        LocationEvent decoded = roundTrip(dictionary.location(), first);
+        assertThat(decoded.latitude()).isCloseTo(first.latitude(), within(1e-7));
+        assertThat(decoded.speedKmh()).isCloseTo(first.speedKmh(), within(0.01));
+        assertThat(decoded.matatuId()).isEqualTo(first.matatuId());
+    }
+
+    private record Footprint(double bytes, double gzipped, double recordsPerSecond) {}
+
+    private static <T> Footprint measure(Serde<T> serde, List<T> records) throws IOException {
+        List<byte[]> encoded = new ArrayList<>(records.size());
+        for (T record : records) {
+            encoded.add(serde.serializer().serialize(TOPIC, record));
+        }
+        long total = 0;
+        for (byte[] bytes : encoded) {
+            total += bytes.length;
+        }
+        long gzipped = 0;
+        for (int from = 0; from < encoded.size(); from += 500) {
+            var buffer = new ByteArrayOutputStream();
+            try (var gzip = new GZIPOutputStream(buffer)) {
+                for (byte[] bytes : encoded.subList(from, Math.min(from + 500, encoded.size()))) {
+                    gzip.write(bytes);
+                }
+            }
+            gzipped += buffer.size();
+        }
+
+        // Warm up, then time serialize + deserialize of the whole set.
+        for (int i = 0; i < 3; i++) {
+            cycle(serde, records);
+        }
+        int passes = 5;
+        long start = System.nanoTime();
+        for (int i = 0; i < passes; i++) {
+            cycle(serde, records);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return new Footprint(
+                (double) total / records.size(),
+                (double) gzipped / records.size(),
+                passes * records.size() / seconds);
+    }
+
+    private static <T> void cycle(Serde<T> serde, List<T> records) {
+        for (T record : records) {
+            serde.deserializer().deserialize(TOPIC, serde.serializer().serialize(TOPIC, record));
+        }
+    }
+
+    private static void print(String type, Footprint json, Footprint compact) {
+        log.info(
+                String.format(
+                        "[BENCH] %s, 15,000 records: JSON %.1f B/record (gzip %.1f), dictionary %.1f"
+                                + " B/record (gzip %.1f) — %.1fx smaller; serialize+deserialize %,.0f vs"
+                                + " %,.0f records/s",
+                        type,
+                        json.bytes(),
+                        json.gzipped(),
+                        compact.bytes(),
+                        compact.gzipped(),
+                        json.bytes() / compact.bytes(),
+                        json.recordsPerSecond(),
+                        compact.recordsPerSecond()));
+    }
+
+    private static <T> T roundTrip(Serde<T> serde, T value) {
+        return serde.deserializer().deserialize(TOPIC, serde.serializer().serialize(TOPIC, value));
+    }
+
+    /** A dictionary whose registry is itself: every claim is applied as soon as it is sent. */
+    private static IdentifierDictionary loopback() {
+        IdentifierDictionary[] self = new IdentifierDictionary[1];
+        self[0] = new IdentifierDictionary(claim -> self[0].apply(claim), Duration.ofSeconds(1));
+        return self[0];
+    }
+}
@@ -0,0 +1,102 @@
+package org.matatu.tracker.encoding;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.model.DictionaryClaim;
+import org.matatu.tracker.model.DictionaryClaim.Namespace;
+
+class IdentifierDictionaryTest {
+
+    @Test
+    void firstClaimInTheLogWins() {
+        var dictionary = new IdentifierDictionary(claim -> {}, Duration.ofMillis(50));
+
+        assertThat(dictionary.apply(new DictionaryClaim(Namespace.ROUTE, "route_33", 0))).isTrue();
+        // Another instance raced for the same code, or for the same value.
+        assertThat(dictionary.apply(new DictionaryClaim(Namespace.ROUTE, "route_46", 0))).isFalse();
+        assertThat(dictionary.apply(new DictionaryClaim(Namespace.ROUTE, "route_33", 1))).isFalse();
+        assertThat(dictionary.apply(new DictionaryClaim(Namespace.ROUTE, "route_46", 1))).isTrue();
+        // Namespaces have their own code spaces.
+        assertThat(dictionary.apply(new DictionaryClaim(Namespace.MATATU, "KBZ 123A", 0))).isTrue();
+
+        assertThat(dictionary.encode(Namespace.ROUTE, "route_46")).isEqualTo(1);
+        assertThat(dictionary.decode(Namespace.MATATU, 0)).isEqualTo("KBZ 123A");
+        assertThatThrownBy(() -> dictionary.decode(Namespace.ROUTE, 2))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("matatu.dictionary");
+    }
+
+    /**
+     * Two instances encode overlapping identifiers at the same time. Their claims go to one shared
+     * log, which a replicator applies to both in order, as the registry listeners would.
+     */
+    @Test
+    void racingInstancesEndUpWithTheSameDenseDictionary() throws Exception {
+        List<DictionaryClaim> log = new ArrayList<>();
+        var a = new IdentifierDictionary(claim -> append(log, claim), Duration.ofSeconds(10));
+        var b = new IdentifierDictionary(claim -> append(log, claim), Duration.ofSeconds(10));
+
+        var running = new AtomicBoolean(true);
+        Thread replicator =
+                Thread.ofPlatform()
+                        .start(
+                                () -> {
+                                    int applied = 0;
+                                    while (running.get()) {
+                                        List<DictionaryClaim> batch;
+                                        synchronized (log) {
+                                            batch = List.copyOf(log.subList(applied, log.size()));
+                                        }
+                                        for (DictionaryClaim claim : batch) {
+                                            a.apply(claim);
+                                            b.apply(claim);
+                                        }
+                                        applied += batch.size();
+                                        Thread.onSpinWait();
+                                    }
+                                });
+
+        List<Future<Integer>> codesA = new ArrayList<>();
+        List<Future<Integer>> codesB = new ArrayList<>();
+        try (ExecutorService workers = Executors.newFixedThreadPool(4)) {
+            for (int i = 0; i < 200; i++) {
+                String fromA = "KM " + i;
+                String fromB = "KM " + (199 - i);
+                codesA.add(workers.submit(() -> a.encode(Namespace.MATATU, fromA)));
+                codesB.add(workers.submit(() -> b.encode(Namespace.MATATU, fromB)));
+            }
+            for (int i = 0; i < 200; i++) {
+                codesA.get(i).get();
+                codesB.get(i).get();
+            }
+        } finally {
+            running.set(false);
+            replicator.join();
+        }
+
+        assertThat(a.size(Namespace.MATATU)).isEqualTo(200);
+        for (int code = 0; code < 200; code++) {
+            assertThat(b.decode(Namespace.MATATU, code))
+                    .isEqualTo(a.decode(Namespace.MATATU, code));
+        }
+        for (int i = 0; i < 200; i++) {
+            assertThat(codesA.get(i).get()).isEqualTo(b.encode(Namespace.MATATU, "KM " + i));
+        }
+    }
+
+    private static void append(List<DictionaryClaim> log, DictionaryClaim claim) {
+        synchronized (log) {
+            log.add(claim);
+        }
+    }
+}
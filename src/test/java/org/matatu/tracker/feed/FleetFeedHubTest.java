@@ -0,0 +1,323 @@
+package org.matatu.tracker.feed;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.model.MatatuSnapshot;
+import org.matatu.tracker.model.RouteOccupancy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import tools.jackson.databind.json.JsonMapper;
+
+@Slf4j
+class FleetFeedHubTest {
+
+    private static final Instant T0 = Instant.parse("2026-02-23T07:00:00Z");
+    private static final FeedFilter.BoundingBox CBD =
+            new FeedFilter.BoundingBox(-1.2900, 36.8150, -1.2800, 36.8300);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private FleetFeedHub hub;
+
+    @AfterEach
+    void tearDown() {
+        hub.shutdown();
+    }
+
+    @Test
+    void clientsOnlyReceiveTheirRouteOrArea() throws Exception {
+        start(100);
+        var route33 = new Recorder();
+        var cbd = new Recorder();
+        hub.subscribe(new FeedFilter(Set.of("route_33"), null), route33);
+        hub.subscribe(new FeedFilter(Set.of(), CBD), cbd);
+
+        publish(vehicle("KBZ 123A", "route_33", -1.2850, 0)); // in the CBD
+        publish(vehicle("KCA 456B", "route_46", -1.2860, 0)); // in the CBD
+        publish(vehicle("KDD 789C", "route_46", -1.3500, 0)); // outside it
+        hub.publishOccupancy(occupancy("route_33"));
+        publish(vehicle("KCA 456B", "route_46", -1.3000, 1)); // drives out
+        awaitIdle();
+
+        assertThat(route33.types()).containsExactlyInAnyOrder("vehicle", "occupancy");
+        assertThat(route33.last("vehicle:KBZ 123A").json()).contains("\"routeId\":\"route_33\"");
+        assertThat(cbd.last("vehicle:KBZ 123A").type()).isEqualTo("vehicle");
+        assertThat(cbd.last("vehicle:KCA 456B").type()).isEqualTo("removed");
+        assertThat(cbd.last("vehicle:KCA 456B").json())
+                .isEqualTo("{\"type\":\"removed\",\"data\":{\"matatuId\":\"KCA 456B\"}}");
+        assertThat(cbd.received).noneMatch(update -> update.key().equals("vehicle:KDD 789C"));
+        assertThat(cbd.types()).doesNotContain("occupancy");
+    }
+
+    @Test
+    void newClientStartsFromCurrentStateAndSharesTheRenderedJson() throws Exception {
+        start(100);
+        publish(vehicle("KBZ 123A", "route_33", -1.2921, 0));
+        publish(vehicle("KBZ 123A", "route_33", -1.2911, 1));
+        hub.publishOccupancy(occupancy("route_33"));
+
+        var first = new Recorder();
+        var second = new Recorder();
+        hub.subscribe(FeedFilter.EVERYTHING, first);
+        hub.subscribe(FeedFilter.parse(List.of("route_33"), null), second);
+        awaitIdle();
+
+        assertThat(first.received).hasSize(2);
+        assertThat(first.last("vehicle:KBZ 123A").json()).contains("-1.2911");
+        // Not equal strings: the same string, rendered once by the hub.
+        assertThat(second.last("vehicle:KBZ 123A").json())
+                .isSameAs(first.last("vehicle:KBZ 123A").json());
+        assertThat(rendered()).isEqualTo(3);
+    }
+
+    @Test
+    void slowClientKeepsOnlyTheNewestUpdatePerVehicle() throws Exception {
+        start(100);
+        var release = new CountDownLatch(1);
+        var slow = new Recorder(release);
+        var fast = new Recorder();
+        FeedSubscription stalled = hub.subscribe(FeedFilter.EVERYTHING, slow);
+        hub.subscribe(FeedFilter.EVERYTHING, fast);
+
+        publish(vehicle("KBZ 123A", "route_33", -1.2921, 0));
+        slow.entered.await(5, TimeUnit.SECONDS); // its drain is now blocked in send()
+        for (int i = 1; i <= 1_000; i++) {
+            publish(vehicle("KBZ 123A", "route_33", -1.2921 + i * 1e-5, i));
+            publish(vehicle("KCA 456B", "route_46", -1.3000 + i * 1e-5, i));
+        }
+        assertThat(stalled.backlog()).isEqualTo(2);
+
+        release.countDown();
+        awaitIdle();
+        assertThat(slow.received).hasSize(3); // the first ping, then the newest of each vehicle
+        assertThat(slow.last("vehicle:KBZ 123A").sequence())
+                .isEqualTo(fast.last("vehicle:KBZ 123A").sequence());
+        assertThat(fast.received).hasSizeGreaterThan(3);
+    }
+
+    @Test
+    void failingClientIsDroppedAndFullFeedRefusesNewOnes() throws Exception {
+        start(1);
+        hub.subscribe(
+                FeedFilter.EVERYTHING,
+                update -> {
+                    throw new IOException("broken pipe");
+                });
+        assertThatThrownBy(() -> hub.subscribe(FeedFilter.EVERYTHING, new Recorder()))
+                .isInstanceOf(IllegalStateException.class);
+
+        publish(vehicle("KBZ 123A", "route_33", -1.2921, 0));
+        awaitIdle();
+        assertThat(hub.subscriberCount()).isZero();
+        hub.subscribe(FeedFilter.EVERYTHING, new Recorder());
+    }
+
+    /**
+     * 10,000 local subscribers — 9,000 on one route each, 900 on an area, 100 on everything, of
+     * which 100 route clients take 20 ms per frame — while 500 matatus on 50 routes report 10 times
+     * each.
+     */
+    @Test
+    @Tag("benchmark")
+    void benchTenThousandSubscribers() throws Exception {
+        int routes = 50;
+        int matatus = 500;
+        int rounds = 10;
+        start(10_000);
+
+        List<Recorder> fast = new ArrayList<>();
+        List<FeedSubscription> slow = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            if (i < 9_000) {
+                FeedFilter filter = FeedFilter.parse(List.of("route_" + (i % routes)), null);
+                if (i % 90 == 0) {
+                    slow.add(hub.subscribe(filter, new Recorder(Duration.ofMillis(20))));
+                } else {
+                    var recorder = Recorder.latestOnly();
+                    fast.add(recorder);
+                    hub.subscribe(filter, recorder);
+                }
+            } else if (i < 9_900) {
+                hub.subscribe(new FeedFilter(Set.of(), CBD), Recorder.latestOnly());
+            } else {
+                hub.subscribe(FeedFilter.EVERYTHING, Recorder.latestOnly());
+            }
+        }
+
+        long start = System.nanoTime();
+        int maxSlowBacklog = 0;
+        for (int round = 0; round < rounds; round++) {
+            List<MatatuSnapshot> poll = new ArrayList<>(); // one round arrives as one poll
+            for (int m = 0; m < matatus; m++) {
+                poll.add(vehicle("KM " + m, "route_" + (m % routes), latitude(round), round));
+            }
+            hub.publishVehicles(poll);
+            for (FeedSubscription subscription : slow) {
+                maxSlowBacklog = Math.max(maxSlowBacklog, subscription.backlog());
+            }
+        }
+        long publishNanos = System.nanoTime() - start;
+        awaitIdle();
+        long totalNanos = System.nanoTime() - start;
+
+        long updates = (long) matatus * rounds;
+        double sent = registry.counter("matatu.feed.updates", "stage", "sent").count();
+        log.info(
+                String.format(
+                        "[BENCH] %d updates to %d subscribers: published in %d ms, all drained in %d ms "
+                                + "(%.0f deliveries/s) | rendered=%.0f sent=%.0f conflated=%.0f | "
+                                + "max slow backlog=%d",
+                        updates,
+                        10_000,
+                        publishNanos / 1_000_000,
+                        totalNanos / 1_000_000,
+                        sent / (totalNanos / 1e9),
+                        rendered(),
+                        sent,
+                        registry.counter("matatu.feed.updates", "stage", "conflated").count(),
+                        maxSlowBacklog));
+
+        assertThat(rendered()).isEqualTo(updates); // once per update, not once per client
+        // A route has 10 matatus: a slow client never holds more than that, whatever it missed.
+        assertThat(maxSlowBacklog).isLessThanOrEqualTo(matatus / routes);
+        for (Recorder recorder : fast) {
+            assertThat(recorder.latest).hasSize(matatus / routes);
+            assertThat(recorder.latest.values())
+                    .extracting(FeedUpdate::routeId)
+                    .containsOnly(recorder.latest.values().iterator().next().routeId());
+            assertThat(recorder.latest.values())
+                    .allSatisfy(
+                            update ->
+                                    assertThat(update.json())
+                                            .contains("\"latitude\":" + latitude(rounds - 1)));
+        }
+    }
+
+    private void start(int maxSubscribers) {
+        var properties = new MatatuTrackerProperties();
+        properties.getFeed().setMaxSubscribers(maxSubscribers);
+        hub = new FleetFeedHub(properties, JsonMapper.builder().build(), registry);
+    }
+
+    /** Moves north into the CBD box over the rounds. */
+    private static double latitude(int round) {
+        return -1.30 + round * 2e-3;
+    }
+
+    private void publish(MatatuSnapshot snapshot) {
+        hub.publishVehicles(List.of(snapshot));
+    }
+
+    private double rendered() {
+        return registry.counter("matatu.feed.updates", "stage", "rendered").count();
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!hub.idle()) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static MatatuSnapshot vehicle(
+            String matatuId, String routeId, double latitude, int second) {
+        return new MatatuSnapshot(
+                matatuId,
+                routeId,
+                routeId,
+                latitude,
+                36.8219,
+                30,
+                0,
+                12,
+                T0.plusSeconds(second),
+                false);
+    }
+
+    private static RouteOccupancy occupancy(String routeId) {
+        return new RouteOccupancy(routeId, routeId, 42, 100, 58, T0);
+    }
+
+    /**
+     * Records what a client was sent; optionally blocks on a latch or sleeps per frame. The bench
+     * keeps only the newest update per key, like a real screen, so the recorders stay cheap.
+     */
+    private static final class Recorder implements FeedSink {
+
+        final Queue<FeedUpdate> received = new ConcurrentLinkedQueue<>();
+        final Map<String, FeedUpdate> latest = new ConcurrentHashMap<>();
+        final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release;
+        private final Duration delay;
+        private final boolean history;
+
+        Recorder() {
+            this(null, Duration.ZERO, true);
+        }
+
+        Recorder(CountDownLatch release) {
+            this(release, Duration.ZERO, true);
+        }
+
+        Recorder(Duration delay) {
+            this(null, delay, false);
+        }
+
+        private Recorder(CountDownLatch release, Duration delay, boolean history) {
+            this.release = release;
+            this.delay = delay;
+            this.history = history;
+        }
+
+        static Recorder latestOnly() {
+            return new Recorder(null, Duration.ZERO, false);
+        }
+
+        @Override
+        public void send(FeedUpdate update) {
+            entered.countDown();
+            try {
+                if (release != null) {
+                    release.await();
+                }
+                if (!delay.isZero()) {
+                    Thread.sleep(delay);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (history) {
+                received.add(update);
+            }
+            latest.put(update.key(), update);
+        }
+
+        FeedUpdate last(String key) {
+            return latest.get(key);
+        }
+
+        List<String> types() {
+            return received.stream().map(FeedUpdate::type).toList();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.matatu.tracker.geo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class GeoHashTest {
+
+    @Test
+    void encodesTheReferencePoint() {
+        assertThat(GeoHash.encode(57.64911, 10.40744, 11)).isEqualTo("u4pruydqqvj");
+    }
+
+    @Test
+    void cellContainsItsPointAndNestsInItsPrefix() {
+        Random random = new Random(28);
+        for (int i = 0; i < 10_000; i++) {
+            double lat = random.nextDouble(-1.45, -1.15);
+            double lon = random.nextDouble(36.65, 37.05);
+            String cell = GeoHash.encode(lat, lon, 7);
+            double[] b = GeoHash.bounds(cell);
+
+            assertThat(lat).isBetween(b[0], b[2]);
+            assertThat(lon).isBetween(b[1], b[3]);
+            assertThat(GeoHash.encode(lat, lon, 5)).isEqualTo(cell.substring(0, 5));
+            double[] centre = GeoHash.centre(cell);
+            assertThat(GeoHash.encode(centre[0], centre[1], 7)).isEqualTo(cell);
+        }
+    }
+
+    @Test
+    void coverHoldsEveryPointOfTheBoxOnce() {
+        double minLat = -1.30, minLon = 36.80, maxLat = -1.27, maxLon = 36.84;
+        List<String> cells = GeoHash.cover(minLat, minLon, maxLat, maxLon, 6, 1_000);
+        Set<String> unique = new HashSet<>(cells);
+
+        assertThat(unique).hasSameSizeAs(cells);
+        for (String cell : cells) {
+            double[] b = GeoHash.bounds(cell);
+            assertThat(b[2] >= minLat && b[0] <= maxLat && b[3] >= minLon && b[1] <= maxLon)
+                    .as("%s intersects the box", cell)
+                    .isTrue();
+        }
+        Random random = new Random(6);
+        for (int i = 0; i < 10_000; i++) {
+            String cell =
+                    GeoHash.encode(
+                            random.nextDouble(minLat, maxLat),
+                            random.nextDouble(minLon, maxLon),
+                            6);
+            assertThat(unique).contains(cell);
+        }
+    }
+
+    @Test
+    void coverRefusesTooManyCellsAndInvertedBoxes() {
+        assertThatThrownBy(() -> GeoHash.cover(-2, 36, -1, 37, 7, 100))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("limit 100");
+        assertThatThrownBy(() -> GeoHash.cover(-1, 36, -2, 37, 5, 100))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> GeoHash.encode(0, 0, 13))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,187 @@
+package org.matatu.tracker.geo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.model.Geofence;
+import org.matatu.tracker.model.Geofence.Vertex;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class GeofenceIndexTest {
+
+    // Roughly greater Nairobi.
+    private static final double MIN_LAT = -1.45, MAX_LAT = -1.15;
+    private static final double MIN_LON = 36.65, MAX_LON = 37.05;
+
+    @Test
+    void matchesBruteForceOnRandomStages() {
+        Random random = new Random(29);
+        List<Geofence> geofences = randomStages(random, 10_000);
+        GeofenceIndex index = GeofenceIndex.build(geofences);
+        List<GeoPolygon> polygons = geofences.stream().map(GeoPolygon::new).toList();
+
+        int pingsWithHits = 0;
+        for (int i = 0; i < 20_000; i++) {
+            double lat = random.nextDouble(MIN_LAT, MAX_LAT);
+            double lon = random.nextDouble(MIN_LON, MAX_LON);
+            List<Geofence> expected =
+                    polygons.stream()
+                            .filter(p -> p.boundsContain(lat, lon) && p.contains(lat, lon))
+                            .map(p -> p.geofence)
+                            .toList();
+            List<Geofence> actual = index.containing(lat, lon);
+            assertThat(actual).containsExactlyInAnyOrderElementsOf(expected);
+            pingsWithHits += expected.isEmpty() ? 0 : 1;
+        }
+        assertThat(pingsWithHits).isPositive();
+    }
+
+    @Test
+    void concavePolygonExcludesItsNotch() {
+        // A "U"-shaped terminus: the notch is inside the bounding box but outside the polygon.
+        Geofence u =
+                new Geofence(
+                        "u",
+                        Geofence.Type.TERMINUS,
+                        "U",
+                        List.of(
+                                new Vertex(0, 0),
+                                new Vertex(0, 3),
+                                new Vertex(3, 3),
+                                new Vertex(3, 2),
+                                new Vertex(1, 2),
+                                new Vertex(1, 1),
+                                new Vertex(3, 1),
+                                new Vertex(3, 0)));
+        GeofenceIndex index = GeofenceIndex.build(List.of(u));
+
+        assertThat(index.containing(0.5, 1.5)).containsExactly(u);
+        assertThat(index.containing(2.0, 1.5)).isEmpty();
+        assertThat(index.containing(2.0, 2.5)).containsExactly(u);
+    }
+
+    @Test
+    void registryAppliesUpsertsAndTombstones() {
+        GeofenceRegistry registry = new GeofenceRegistry();
+        Geofence stage = square("stage-1", -1.2921, 36.8219, 0.001);
+
+        registry.apply(List.of(record("stage-1", stage)));
+        GeofenceIndex before = registry.current();
+        registry.apply(List.of(record("stage-1", null)));
+
+        assertThat(before.containing(-1.2921, 36.8219)).containsExactly(stage);
+        assertThat(registry.current().containing(-1.2921, 36.8219)).isEmpty();
+        assertThat(registry.current().size()).isZero();
+    }
+
+    @Test
+    void registryIsLoadedOnlyOnceTheReplayReachesTheEnd() {
+        var partition = new TopicPartition("matatu.geofences", 0);
+        var consumer = new MockConsumer<String, Geofence>("earliest");
+        consumer.assign(List.of(partition));
+        consumer.updateBeginningOffsets(Map.of(partition, 0L));
+        consumer.updateEndOffsets(Map.of(partition, 2L));
+        consumer.seek(partition, 0);
+        GeofenceRegistry registry = new GeofenceRegistry();
+
+        registry.apply(List.of(record("stage-1", square("stage-1", -1.2921, 36.8219, 0.001))));
+        consumer.seek(partition, 1);
+        registry.checkLoaded(consumer);
+        assertThat(registry.loaded()).isFalse();
+
+        // Definitions written after the replay started do not hold it back.
+        consumer.updateEndOffsets(Map.of(partition, 5L));
+        consumer.seek(partition, 2);
+        registry.checkLoaded(consumer);
+        assertThat(registry.loaded()).isTrue();
+    }
+
+    @Test
+    void registryOverAnEmptyTopicIsLoadedAtOnce() {
+        var partition = new TopicPartition("matatu.geofences", 0);
+        var consumer = new MockConsumer<String, Geofence>("earliest");
+        consumer.assign(List.of(partition));
+        consumer.updateEndOffsets(Map.of(partition, 0L));
+        consumer.seek(partition, 0);
+        GeofenceRegistry registry = new GeofenceRegistry();
+
+        registry.checkLoaded(consumer);
+
+        assertThat(registry.loaded()).isTrue();
+    }
+
+    @Test
+    @Tag("benchmark")
+    void sustainsTargetThroughputAgainstTenThousandPolygons() {
+        Random random = new Random(7);
+        GeofenceIndex index = GeofenceIndex.build(randomStages(random, 10_000));
+        int pings = 1_000_000;
+        double[] lats = new double[pings];
+        double[] lons = new double[pings];
+        for (int i = 0; i < pings; i++) {
+            lats[i] = random.nextDouble(MIN_LAT, MAX_LAT);
+            lons[i] = random.nextDouble(MIN_LON, MAX_LON);
+        }
+
+        long hits = 0;
+        for (int i = 0; i < 200_000; i++) { // warm-up
+            hits += index.containing(lats[i], lons[i]).size();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < pings; i++) {
+            hits += index.containing(lats[i], lons[i]).size();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double pingsPerSecond = pings / seconds;
+
+        log.info(
+                String.format(
+                        "[BENCH] %d pings vs %d polygons: %.0f pings/s (%d hits)",
+                        pings, index.size(), pingsPerSecond, hits));
+        assertThat(pingsPerSecond).isGreaterThan(100_000);
+    }
+
+    private static List<Geofence> randomStages(Random random, int count) {
+        List<Geofence> geofences = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double lat = random.nextDouble(MIN_LAT, MAX_LAT);
+            double lon = random.nextDouble(MIN_LON, MAX_LON);
+            double radius = random.nextDouble(0.0005, 0.003); // ~50–330 m
+            List<Vertex> hexagon = new ArrayList<>(6);
+            for (int v = 0; v < 6; v++) {
+                double angle = Math.PI / 3 * v;
+                hexagon.add(
+                        new Vertex(lat + radius * Math.sin(angle), lon + radius * Math.cos(angle)));
+            }
+            geofences.add(new Geofence("stage-" + i, Geofence.Type.STAGE, "Stage " + i, hexagon));
+        }
+        return geofences;
+    }
+
+    private static Geofence square(String id, double lat, double lon, double half) {
+        return new Geofence(
+                id,
+                Geofence.Type.STAGE,
+                id,
+                List.of(
+                        new Vertex(lat - half, lon - half),
+                        new Vertex(lat - half, lon + half),
+                        new Vertex(lat + half, lon + half),
+                        new Vertex(lat + half, lon - half)));
+    }
+
+    private static ConsumerRecord<String, Geofence> record(String key, Geofence value) {
+        return new ConsumerRecord<>("matatu.geofences", 0, 0, key, value);
+    }
+}
@@ -0,0 +1,89 @@
+package org.matatu.tracker.geo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class RouteSegmentIndexTest {
+
+    @Test
+    void matchesBruteForceNearAndFarFromTheRoute() {
+        Random random = new Random(30);
+        RouteSegmentIndex index = new RouteSegmentIndex(randomWalk(random, 2_000), 300);
+
+        for (int i = 0; i < 20_000; i++) {
+            double lat = random.nextDouble(-1.60, -1.00);
+            double lon = random.nextDouble(36.50, 37.20);
+            assertThat(index.distanceMetres(lat, lon))
+                    .isCloseTo(index.bruteForceDistanceMetres(lat, lon), within(1e-6));
+        }
+    }
+
+    @Test
+    void pointOnTheRouteIsZeroAndOffsetIsMeasuredInMetres() {
+        // East-west segment along the equator-ish latitude of Nairobi.
+        RouteSegmentIndex index =
+                new RouteSegmentIndex(new double[][] {{-1.28, 36.80}, {-1.28, 36.90}}, 300);
+
+        assertThat(index.distanceMetres(-1.28, 36.85)).isCloseTo(0, within(1e-6));
+        // 0.0045° of latitude ≈ 498 m
+        assertThat(index.distanceMetres(-1.2845, 36.85)).isCloseTo(497.6, within(1.0));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void lookupCostDoesNotGrowWithRouteLength() {
+        Random random = new Random(31);
+        RouteSegmentIndex shortRoute = new RouteSegmentIndex(randomWalk(random, 50), 300);
+        RouteSegmentIndex longRoute = new RouteSegmentIndex(randomWalk(random, 5_000), 300);
+
+        double shortNs = nanosPerLookup(shortRoute, new Random(1));
+        double longNs = nanosPerLookup(longRoute, new Random(1));
+        log.info(
+                String.format(
+                        "[BENCH] nearest segment: %d segs %.0f ns/lookup, %d segs %.0f ns/lookup",
+                        shortRoute.segmentCount(), shortNs, longRoute.segmentCount(), longNs));
+
+        // 100× more segments must not mean anywhere near 100× the cost.
+        assertThat(longNs).isLessThan(shortNs * 10);
+    }
+
+    private static double nanosPerLookup(RouteSegmentIndex index, Random random) {
+        // Pings scattered within ~200 m of the route, as real traffic is.
+        double[][] pings = new double[200_000][];
+        for (int i = 0; i < pings.length; i++) {
+            pings[i] = new double[] {-1.28 + random.nextGaussian() * 0.002, 36.82};
+        }
+        double sink = 0;
+        for (double[] p : pings) {
+            sink += index.distanceMetres(p[0], p[1]);
+        }
+        long start = System.nanoTime();
+        for (double[] p : pings) {
+            sink += index.distanceMetres(p[0], p[1]);
+        }
+        long elapsed = System.nanoTime() - start;
+        assertThat(sink).isNotNaN();
+        return (double) elapsed / pings.length;
+    }
+
+    /** A meandering route starting in the CBD with ~150 m segments. */
+    private static double[][] randomWalk(Random random, int vertices) {
+        double[][] polyline = new double[vertices][];
+        double lat = -1.28, lon = 36.82, heading = 0;
+        for (int i = 0; i < vertices; i++) {
+            polyline[i] = new double[] {lat, lon};
+            heading += random.nextGaussian() * 0.4;
+            lat += Math.sin(heading) * 0.00135;
+            lon += Math.cos(heading) * 0.00135;
+        }
+        return polyline;
+    }
+}
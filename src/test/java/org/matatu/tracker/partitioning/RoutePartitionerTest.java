@@ -0,0 +1,127 @@
+package org.matatu.tracker.partitioning;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kafka.common.utils.Utils;
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.config.MatatuTrackerProperties.Partitioning.Strategy;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.partitioning.PartitionLoadMonitor.Assessment;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class RoutePartitionerTest {
+
+    private static final Instant T0 = Instant.parse("2026-02-23T07:00:00Z");
+
+    @Test
+    void hotRouteIsSaltedPerMatatuAndOtherRoutesKeepTheirId() {
+        var partitioner = partitioner(Strategy.ROUTE, List.of("route_33"), 4);
+
+        Set<String> route33Keys = new HashSet<>();
+        for (int m = 0; m < 100; m++) {
+            String key = partitioner.keyFor(ping("KM " + m, "route_33"));
+            assertThat(partitioner.keyFor(ping("KM " + m, "route_33"))).isEqualTo(key);
+            route33Keys.add(key);
+        }
+        assertThat(route33Keys)
+                .containsExactlyInAnyOrder("route_33#0", "route_33#1", "route_33#2", "route_33#3");
+        assertThat(partitioner.keyFor(ping("KM 1", "route_46"))).isEqualTo("route_46");
+        assertThat(partitioner.routeKeyed()).isFalse();
+        assertThat(partitioner(Strategy.ROUTE, List.of(), 4).routeKeyed()).isTrue();
+        assertThat(partitioner(Strategy.MATATU, List.of(), 4).keyFor(ping("KM 1", "route_33")))
+                .isEqualTo("KM 1");
+    }
+
+    @Test
+    void monitorFlagsTheRouteThatDominatesAPartition() {
+        var properties = properties(Strategy.ROUTE, List.of("route_46"), 4);
+        var partitioner = new RoutePartitioner(properties);
+        var monitor = new PartitionLoadMonitor(properties, partitioner, new SimpleMeterRegistry());
+
+        for (int i = 0; i < 60; i++) {
+            monitor.record(1, "route_33");
+        }
+        for (int i = 0; i < 30; i++) {
+            monitor.record(i % 3, "route_46");
+        }
+        for (int i = 0; i < 10; i++) {
+            monitor.record(2, "route_111");
+        }
+
+        Assessment assessment = monitor.assessAndReset();
+        assertThat(assessment.pings()).isEqualTo(100);
+        assertThat(assessment.partitionShares()).containsExactly(0.10, 0.70, 0.20);
+        assertThat(assessment.skew()).isCloseTo(2.1, within(1e-9));
+        assertThat(assessment.hot())
+                .containsExactly(
+                        new PartitionLoadMonitor.HotRoute("route_33", 0.60, false),
+                        new PartitionLoadMonitor.HotRoute("route_46", 0.30, true));
+        assertThat(monitor.assessAndReset().pings()).isZero(); // counts reset per interval
+    }
+
+    /**
+     * 300 matatus on 21 routes, 120 of them on route_33; 100 pings each. Partition chosen exactly
+     * as Kafka's default partitioner does for keyed records.
+     */
+    @Test
+    void saltingOrMatatuKeysSpreadTheHotRoute() {
+        List<LocationEvent> fleet = new ArrayList<>();
+        for (int m = 0; m < 300; m++) {
+            String routeId = (m < 120) ? "route_33" : "route_" + (100 + m % 20);
+            fleet.add(ping("KM " + m, routeId));
+        }
+
+        for (int partitions : new int[] {3, 6}) {
+            double route = skew(partitioner(Strategy.ROUTE, List.of(), 4), fleet, partitions);
+            double salted =
+                    skew(partitioner(Strategy.ROUTE, List.of("route_33"), 8), fleet, partitions);
+            double matatu = skew(partitioner(Strategy.MATATU, List.of(), 4), fleet, partitions);
+            assertThat(salted).as("salted skew over %d partitions", partitions).isLessThan(route);
+            assertThat(matatu).as("matatuId skew over %d partitions", partitions).isLessThan(route);
+            // Unsalted, route_33 alone is 40% of the load on one partition.
+            assertThat(route).isGreaterThanOrEqualTo(0.40 * partitions);
+        }
+    }
+
+    private static double skew(
+            RoutePartitioner partitioner, List<LocationEvent> fleet, int partitions) {
+        Map<Integer, Long> counts = new HashMap<>();
+        for (int round = 0; round < 100; round++) {
+            for (LocationEvent event : fleet) {
+                byte[] key = partitioner.keyFor(event).getBytes(StandardCharsets.UTF_8);
+                counts.merge(Utils.toPositive(Utils.murmur2(key)) % partitions, 1L, Long::sum);
+            }
+        }
+        return PartitionLoadMonitor.assess(counts, Map.of(), partitions, 1, partitioner).skew();
+    }
+
+    private static RoutePartitioner partitioner(
+            Strategy strategy, List<String> hotRoutes, int saltBuckets) {
+        return new RoutePartitioner(properties(strategy, hotRoutes, saltBuckets));
+    }
+
+    private static MatatuTrackerProperties properties(
+            Strategy strategy, List<String> hotRoutes, int saltBuckets) {
+        var properties = new MatatuTrackerProperties();
+        properties.getPartitioning().setStrategy(strategy);
+        properties.getPartitioning().setHotRoutes(hotRoutes);
+        properties.getPartitioning().setSaltBuckets(saltBuckets);
+        return properties;
+    }
+
+    private static LocationEvent ping(String matatuId, String routeId) {
+        return new LocationEvent(matatuId, routeId, routeId, -1.2921, 36.8219, 30, 12, T0);
+    }
+}
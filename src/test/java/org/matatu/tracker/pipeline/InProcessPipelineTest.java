@@ -0,0 +1,448 @@
+package org.matatu.tracker.pipeline;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.config.RouteEnrichmentConfig;
+import org.matatu.tracker.encoding.LocationSerdes;
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.model.OffGridAlert;
+import org.matatu.tracker.model.RouteOccupancy;
+import org.matatu.tracker.model.SaccoRevenueWindow;
+import org.matatu.tracker.model.SpeedingEpisode;
+import org.matatu.tracker.partitioning.RoutePartitioner;
+import org.matatu.tracker.sketch.DDSketch;
+import org.matatu.tracker.streams.EventTimestampExtractor;
+import org.matatu.tracker.streams.FailedFareStream;
+import org.matatu.tracker.streams.FareDedupStream;
+import org.matatu.tracker.streams.MatatuStateStream;
+import org.matatu.tracker.streams.PassengerCountStream;
+import org.matatu.tracker.streams.SaccoRevenueStream;
+import org.matatu.tracker.streams.SpeedAlertStream;
+import org.matatu.tracker.topics.Topics;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class InProcessPipelineTest {
+
+    private static final Instant T0 = Instant.parse("2026-02-23T06:00:00Z");
+    private static final List<String> ROUTES = List.of("route_33", "route_23", "route_58");
+
+    @TempDir Path stateDir;
+
+    @Test
+    void producesWhatTheKafkaTopologiesProduce() throws Exception {
+        Workload workload = Workload.generate(new Random(7), 12, 240, 600);
+        MatatuTrackerProperties properties = properties();
+
+        InProcessPipeline pipeline = feed(properties, workload);
+        PipelineOutputs outputs = pipeline.outputs();
+
+        try (var topology = new KafkaTopology(properties, stateDir)) {
+            topology.pipe(workload);
+
+            assertThat(outputs.latest(Topics.MATATU_LATEST_OCCUPANCY, RouteOccupancy.class))
+                    .isEqualTo(topology.latestOccupancy())
+                    .hasSize(ROUTES.size());
+            assertThat(outputs.count(Topics.MATATU_KINEMATICS))
+                    .isEqualTo(topology.count(Topics.MATATU_KINEMATICS));
+            assertThat(speedAlerts(outputs)).isNotEmpty().isEqualTo(topology.speedAlerts());
+            assertThat(outputs.count(Topics.MATATU_FARES_FAILED))
+                    .isPositive()
+                    .isEqualTo(topology.count(Topics.MATATU_FARES_FAILED));
+            assertThat(outputs.count(Topics.MATATU_FARES_DUPLICATES))
+                    .isPositive()
+                    .isEqualTo(topology.count(Topics.MATATU_FARES_DUPLICATES));
+            assertThat(revenue(outputs)).hasSizeGreaterThan(1).isEqualTo(topology.revenue());
+        }
+
+        PipelineStats stats = pipeline.stats();
+        assertThat(stats.refused()).isZero();
+        assertThat(stats.locations().count()).isEqualTo(workload.pings().size());
+        assertThat(stats.fares().count()).isEqualTo(workload.fares().size());
+    }
+
+    @Test
+    void refusesInsteadOfQueueingWithoutBound() {
+        MatatuTrackerProperties properties = properties();
+        properties.getPipeline().setQueueCapacity(4);
+        properties.getPipeline().setBatchSize(4);
+        properties.getPipeline().setOfferTimeoutMs(1);
+        // Not started: nothing drains the queue.
+        var pipeline = new InProcessPipeline(properties, new RouteEnrichmentConfig().saccoLookup());
+
+        LocationEvent ping = ping("KBZ 101A", "route_33", 30, 10, T0);
+        for (int i = 0; i < 4; i++) {
+            assertThat(pipeline.location(ping)).isTrue();
+        }
+        assertThat(pipeline.location(ping)).isFalse();
+        assertThat(pipeline.stats().refused()).isEqualTo(1);
+        assertThat(pipeline.stats().stages().getFirst().queued()).isEqualTo(4);
+    }
+
+    @Test
+    void raisesOffGridAlertsOnTheWallClock() throws Exception {
+        MatatuTrackerProperties properties = properties();
+        properties.getStreams().setOffgridSilenceMs(200);
+        properties.getStreams().setOffgridCheckIntervalMs(20);
+        var pipeline = new InProcessPipeline(properties, new RouteEnrichmentConfig().saccoLookup());
+        pipeline.start();
+        try {
+            pipeline.location(ping("KBZ 101A", "route_33", 30, 10, Instant.now()));
+
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (pipeline.outputs().count(Topics.MATATU_OFFGRID_ALERTS) == 0
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            pipeline.stop();
+        }
+
+        assertThat(pipeline.outputs().recent(Topics.MATATU_OFFGRID_ALERTS))
+                .singleElement()
+                .isInstanceOfSatisfying(
+                        OffGridAlert.class,
+                        alert -> assertThat(alert.matatuId()).isEqualTo("KBZ 101A"));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void benchmarkAgainstTheKafkaTopologies() throws Exception {
+        Workload workload = Workload.generate(new Random(11), 200, 150, 10_000);
+        // The test driver commits, and so flushes every store, after each record: a smaller
+        // slice gives its per-record cost in reasonable time.
+        Workload slice = Workload.generate(new Random(11), 20, 50, 250);
+        MatatuTrackerProperties properties = properties();
+        Logger app = (Logger) LoggerFactory.getLogger("org.matatu.tracker");
+        Logger kafka = (Logger) LoggerFactory.getLogger("org.apache.kafka");
+        Level appLevel = app.getLevel();
+        Logger results = (Logger) LoggerFactory.getLogger(InProcessPipelineTest.class);
+        Level kafkaLevel = kafka.getLevel();
+        Level resultsLevel = results.getLevel();
+        // Per-record logging would dominate both sides of the comparison.
+        app.setLevel(Level.OFF);
+        kafka.setLevel(Level.OFF);
+        results.setLevel(Level.INFO);
+        try {
+            feed(properties, workload); // warm-up
+            try (var topology = new KafkaTopology(properties, stateDir.resolve("warm-up"))) {
+                topology.pipe(slice);
+            }
+
+            long started = System.nanoTime();
+            InProcessPipeline pipeline = feed(properties, workload);
+            double pipelineMs = (System.nanoTime() - started) / 1e6;
+            PipelineStats stats = pipeline.stats();
+
+            DDSketch perRecord = new DDSketch(0.01, 2048);
+            started = System.nanoTime();
+            try (var topology = new KafkaTopology(properties, stateDir.resolve("timed"))) {
+                topology.pipe(slice, perRecord);
+            }
+            double topologyMs = (System.nanoTime() - started) / 1e6;
+
+            int events = workload.pings().size() + workload.fares().size();
+            int sliceEvents = slice.pings().size() + slice.fares().size();
+            log.info(
+                    String.format(
+                            "[BENCH] in-process pipeline, %,d events (%,d pings, %,d fares) on %d"
+                                    + " processors: %.0f ms (%,.0f events/s); ingest → route"
+                                    + " occupancy p50 %.0f µs, p99 %.0f µs; ingest → revenue p50"
+                                    + " %.0f µs, p99 %.0f µs; average batch %.1f",
+                            events,
+                            workload.pings().size(),
+                            workload.fares().size(),
+                            Runtime.getRuntime().availableProcessors(),
+                            pipelineMs,
+                            events / pipelineMs * 1_000,
+                            stats.locations().p50Micros(),
+                            stats.locations().p99Micros(),
+                            stats.fares().p50Micros(),
+                            stats.fares().p99Micros(),
+                            stats.stages().getFirst().averageBatch()));
+            log.info(
+                    String.format(
+                            "[BENCH] Kafka topologies on TopologyTestDriver, %,d events: %.0f ms"
+                                    + " (%,.0f events/s); per record p50 %.0f µs, p99 %.0f µs — a"
+                                    + " commit and store flush per record, and no broker, network"
+                                    + " or 1 s exactly-once commit interval",
+                            sliceEvents,
+                            topologyMs,
+                            sliceEvents / topologyMs * 1_000,
+                            perRecord.quantile(0.50) / 1_000,
+                            perRecord.quantile(0.99) / 1_000));
+            assertThat(stats.refused()).isZero();
+        } finally {
+            app.setLevel(appLevel);
+            kafka.setLevel(kafkaLevel);
+            results.setLevel(resultsLevel);
+        }
+    }
+
+    // ── Helpers ──────────────────────────────────────────────────────────────
+
+    private static MatatuTrackerProperties properties() {
+        var properties = new MatatuTrackerProperties();
+        properties.getPipeline().setMode(MatatuTrackerProperties.Pipeline.Mode.IN_PROCESS);
+        // The workload is in the past: keep the wall-clock off-grid check out of the comparison.
+        properties.getStreams().setOffgridSilenceMs(Long.MAX_VALUE / 2);
+        return properties;
+    }
+
+    private static InProcessPipeline feed(MatatuTrackerProperties properties, Workload workload)
+            throws InterruptedException {
+        var pipeline = new InProcessPipeline(properties, new RouteEnrichmentConfig().saccoLookup());
+        pipeline.start();
+        try {
+            // One thread interleaves both feeds, as the simulator does.
+            int fares = 0;
+            for (LocationEvent ping : workload.pings()) {
+                while (!pipeline.location(ping)) {
+                    Thread.yield();
+                }
+                while (fares < workload.fares().size()
+                        && !workload.fares().get(fares).timestamp().isAfter(ping.timestamp())) {
+                    if (pipeline.fare(workload.fares().get(fares))) {
+                        fares++;
+                    }
+                }
+            }
+            while (fares < workload.fares().size()) {
+                if (pipeline.fare(workload.fares().get(fares))) {
+                    fares++;
+                }
+            }
+            assertThat(pipeline.awaitIdle(Duration.ofSeconds(60))).isTrue();
+        } finally {
+            pipeline.stop();
+        }
+        return pipeline;
+    }
+
+    private static List<String> speedAlerts(PipelineOutputs outputs) {
+        return outputs.recent(Topics.MATATU_SPEED_ALERTS).stream()
+                .map(SpeedingEpisode.class::cast)
+                .map(InProcessPipelineTest::describe)
+                .sorted()
+                .toList();
+    }
+
+    private static String describe(SpeedingEpisode episode) {
+        return episode.matatuId() + "@" + episode.startedAt() + "/" + episode.durationSeconds();
+    }
+
+    private static Map<String, SaccoRevenueWindow> revenue(PipelineOutputs outputs) {
+        Map<String, SaccoRevenueWindow> windows = new TreeMap<>();
+        for (Object record : outputs.recent(Topics.MATATU_SACCO_REVENUE)) {
+            SaccoRevenueWindow window = (SaccoRevenueWindow) record;
+            windows.put(window.saccoId() + "@" + window.windowStart(), window);
+        }
+        return windows;
+    }
+
+    private static LocationEvent ping(
+            String matatuId, String routeId, double speedKmh, int passengers, Instant at) {
+        return new LocationEvent(
+                matatuId, routeId, routeId, -1.2921, 36.8219, speedKmh, passengers, at);
+    }
+
+    /** Pings every 30 s per matatu along a line, and fares spread over the same hours. */
+    private record Workload(List<LocationEvent> pings, List<FareEvent> fares) {
+
+        static Workload generate(Random random, int matatus, int rounds, int fareCount) {
+            List<LocationEvent> pings = new ArrayList<>();
+            for (int round = 0; round < rounds; round++) {
+                for (int m = 0; m < matatus; m++) {
+                    // A few matatus speed through the middle of the run.
+                    boolean speeding = m % 5 == 0 && round % 40 >= 10 && round % 40 < 16;
+                    double speed = speeding ? 95 + random.nextInt(20) : 20 + random.nextInt(40);
+                    pings.add(
+                            new LocationEvent(
+                                    "KM" + m,
+                                    ROUTES.get(m % ROUTES.size()),
+                                    ROUTES.get(m % ROUTES.size()),
+                                    -1.2921 + round * 0.0005 + m * 0.001,
+                                    36.8219 + round * 0.0003,
+                                    speed,
+                                    random.nextInt(34),
+                                    T0.plusSeconds(round * 30L)));
+                }
+            }
+            long spanSeconds = rounds * 30L;
+            List<FareEvent> fares = new ArrayList<>();
+            for (int i = 0; i < fareCount; i++) {
+                FareEvent.PaymentStatus status =
+                        switch (random.nextInt(20)) {
+                            case 0 -> FareEvent.PaymentStatus.FAILED;
+                            case 1 -> FareEvent.PaymentStatus.PENDING;
+                            default -> FareEvent.PaymentStatus.SUCCESS;
+                        };
+                FareEvent fare =
+                        new FareEvent(
+                                "TX-" + i,
+                                "KM" + random.nextInt(matatus),
+                                "P-" + random.nextInt(5_000),
+                                BigDecimal.valueOf(50 + random.nextInt(10) * 10),
+                                FareEvent.PaymentMethod.MPESA,
+                                status,
+                                T0.plusSeconds(spanSeconds * i / fareCount));
+                fares.add(fare);
+                if (random.nextInt(25) == 0) {
+                    fares.add(fare); // the device retried
+                }
+            }
+            fares.sort(Comparator.comparing(FareEvent::timestamp));
+            return new Workload(pings, fares);
+        }
+    }
+
+    /** The same logic on Kafka Streams, driven without a broker. */
+    private static final class KafkaTopology implements AutoCloseable {
+
+        private final TopologyTestDriver driver;
+        private final TestInputTopic<String, LocationEvent> locations;
+        private final TestInputTopic<String, FareEvent> fares;
+        private final RoutePartitioner partitioner;
+
+        KafkaTopology(MatatuTrackerProperties properties, Path stateDir) {
+            partitioner = new RoutePartitioner(properties);
+            var builder = new StreamsBuilder();
+            var state = new MatatuStateStream(properties, LocationSerdes.json());
+            var outputs = state.matatuStateOutputs(builder);
+            new PassengerCountStream(properties, partitioner)
+                    .routeOccupancyTable(state.matatuDeltaStream(outputs));
+            new SpeedAlertStream(properties).speedAlertStream(outputs);
+            var deduped =
+                    new FareDedupStream(properties, new SimpleMeterRegistry())
+                            .dedupedFareStream(builder);
+            new FailedFareStream(properties).fareStatusStream(deduped);
+            new SaccoRevenueStream(new RouteEnrichmentConfig().saccoLookup(), properties)
+                    .saccoRevenueKStream(deduped);
+
+            var config = new Properties();
+            config.put(StreamsConfig.APPLICATION_ID_CONFIG, "in-process-parity");
+            config.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+            config.put(StreamsConfig.STATE_DIR_CONFIG, stateDir.toString());
+            config.put(
+                    StreamsConfig.DEFAULT_TIMESTAMP_EXTRACTOR_CLASS_CONFIG,
+                    EventTimestampExtractor.class);
+            driver = new TopologyTestDriver(builder.build(), config, T0);
+            locations =
+                    driver.createInputTopic(
+                            Topics.MATATU_LOCATION,
+                            new StringSerializer(),
+                            new JacksonJsonSerde<>(LocationEvent.class).serializer());
+            fares =
+                    driver.createInputTopic(
+                            Topics.MATATU_FARES,
+                            new StringSerializer(),
+                            new JacksonJsonSerde<>(FareEvent.class).serializer());
+        }
+
+        void pipe(Workload workload) {
+            pipe(workload, null);
+        }
+
+        /** Interleaves both feeds in time order, timing each record when asked. */
+        void pipe(Workload workload, DDSketch perRecord) {
+            int fare = 0;
+            for (LocationEvent ping : workload.pings()) {
+                long started = System.nanoTime();
+                locations.pipeInput(partitioner.keyFor(ping), ping, ping.timestamp());
+                record(perRecord, started);
+                while (fare < workload.fares().size()
+                        && !workload.fares().get(fare).timestamp().isAfter(ping.timestamp())) {
+                    pipeFare(workload.fares().get(fare++), perRecord);
+                }
+            }
+            while (fare < workload.fares().size()) {
+                pipeFare(workload.fares().get(fare++), perRecord);
+            }
+        }
+
+        private void pipeFare(FareEvent fare, DDSketch perRecord) {
+            long started = System.nanoTime();
+            fares.pipeInput(fare.matatuId(), fare, fare.timestamp());
+            record(perRecord, started);
+        }
+
+        private static void record(DDSketch perRecord, long started) {
+            if (perRecord != null) {
+                perRecord.add(System.nanoTime() - started);
+            }
+        }
+
+        Map<String, RouteOccupancy> latestOccupancy() {
+            return new TreeMap<>(
+                    driver.createOutputTopic(
+                                    Topics.MATATU_LATEST_OCCUPANCY,
+                                    new StringDeserializer(),
+                                    new JacksonJsonSerde<>(RouteOccupancy.class).deserializer())
+                            .readKeyValuesToMap());
+        }
+
+        List<String> speedAlerts() {
+            return driver
+                    .createOutputTopic(
+                            Topics.MATATU_SPEED_ALERTS,
+                            new StringDeserializer(),
+                            new JacksonJsonSerde<>(SpeedingEpisode.class).deserializer())
+                    .readValuesToList()
+                    .stream()
+                    .map(InProcessPipelineTest::describe)
+                    .sorted()
+                    .toList();
+        }
+
+        Map<String, SaccoRevenueWindow> revenue() {
+            Map<String, SaccoRevenueWindow> windows = new TreeMap<>();
+            driver.createOutputTopic(
+                            Topics.MATATU_SACCO_REVENUE,
+                            new StringDeserializer(),
+                            new JacksonJsonSerde<>(SaccoRevenueWindow.class).deserializer())
+                    .readValuesToList()
+                    .forEach(w -> windows.put(w.saccoId() + "@" + w.windowStart(), w));
+            return windows;
+        }
+
+        long count(String topic) {
+            return driver.createOutputTopic(
+                            topic, new StringDeserializer(), new StringDeserializer())
+                    .getQueueSize();
+        }
+
+        @Override
+        public void close() {
+            driver.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.matatu.tracker.pipeline;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class RingQueueTest {
+
+    @Test
+    void refusesWhenFullAndReusesSlotsOnceDrained() {
+        var queue = new RingQueue<Integer>(3); // rounded up to 4
+        assertThat(queue.capacity()).isEqualTo(4);
+        assertThat(queue.offerAll(List.of(1, 2, 3))).isTrue();
+        assertThat(queue.offerAll(List.of(4, 5))).isFalse(); // all or nothing
+        assertThat(queue.offer(4)).isTrue();
+        assertThat(queue.offer(5)).isFalse();
+        assertThat(queue.offer(5, 5, TimeUnit.MILLISECONDS)).isFalse();
+
+        List<Integer> drained = new ArrayList<>();
+        assertThat(queue.drainTo(drained, 3)).isEqualTo(3);
+        assertThat(queue.offerAll(List.of(5, 6, 7))).isTrue();
+        assertThat(queue.drainTo(drained, 10)).isEqualTo(4);
+        assertThat(drained).containsExactly(1, 2, 3, 4, 5, 6, 7);
+        assertThat(queue.offered()).isEqualTo(7);
+        assertThat(queue.size()).isZero();
+    }
+
+    /** Producers mix single offers and batches; each producer's elements stay in order. */
+    @Test
+    void keepsEveryElementFromConcurrentProducersInOrderPerProducer() throws Exception {
+        int producers = 4;
+        int perProducer = 200_000;
+        var queue = new RingQueue<long[]>(1024);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads.add(
+                    Thread.ofPlatform()
+                            .start(
+                                    () -> {
+                                        int sent = 0;
+                                        while (sent < perProducer) {
+                                            if (sent % 3 == 0 && sent + 8 <= perProducer) {
+                                                List<long[]> batch = new ArrayList<>();
+                                                for (int i = 0; i < 8; i++) {
+                                                    batch.add(new long[] {producer, sent + i});
+                                                }
+                                                while (!queue.offerAll(batch)) {
+                                                    Thread.yield();
+                                                }
+                                                sent += 8;
+                                            } else if (queue.offer(
+                                                    new long[] {producer, sent},
+                                                    1,
+                                                    TimeUnit.SECONDS)) {
+                                                sent++;
+                                            }
+                                        }
+                                    }));
+        }
+
+        long[] next = new long[producers];
+        List<long[]> batch = new ArrayList<>();
+        long received = 0;
+        while (received < (long) producers * perProducer) {
+            if (queue.drainTo(batch, 256) == 0) {
+                Thread.yield(); // let producers run when there are fewer cores than threads
+                continue;
+            }
+            for (long[] element : batch) {
+                int producer = (int) element[0];
+                if (element[1] != next[producer]) {
+                    throw new AssertionError(
+                            "producer %d: expected %d but got %d"
+                                    .formatted(producer, next[producer], element[1]));
+                }
+                next[producer]++;
+            }
+            received += batch.size();
+            batch.clear();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(next).containsOnly(perProducer);
+        assertThat(queue.size()).isZero();
+    }
+}
@@ -0,0 +1,357 @@
+package org.matatu.tracker.producer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.config.MatatuTrackerProperties.Ingest.Handoff;
+import org.matatu.tracker.controller.MatatuController;
+import org.matatu.tracker.encoding.LocationSerdes;
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.partitioning.PartitionLoadMonitor;
+import org.matatu.tracker.partitioning.RoutePartitioner;
+import org.matatu.tracker.pipeline.WaitStrategy;
+import org.matatu.tracker.sketch.DDSketch;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.serializer.JacksonJsonSerializer;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class KafkaFleetEventIngestTest {
+
+    private static final Instant T0 = Instant.parse("2026-02-23T07:00:00Z");
+
+    @ParameterizedTest
+    @EnumSource(WaitStrategy.class)
+    void ringKeepsEachMatatusEventsInOrder(WaitStrategy waitStrategy) throws Exception {
+        Fixture fixture = new Fixture(Handoff.RING, waitStrategy, 64);
+        fixture.ingest.start();
+        int threads = 4;
+        int perThread = 2_000;
+        List<Thread> requests = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            requests.add(
+                    Thread.ofPlatform()
+                            .start(
+                                    () -> {
+                                        // Five matatus per request thread, so each has one order.
+                                        for (int i = 0; i < perThread; i++) {
+                                            LocationEvent ping =
+                                                    ping("KM" + (thread * 5 + i % 5), i);
+                                            while (!fixture.ingest.location(ping)) {
+                                                Thread.yield();
+                                            }
+                                        }
+                                    }));
+        }
+        for (Thread request : requests) {
+            request.join();
+        }
+        fixture.ingest.stop();
+
+        List<ProducerRecord<String, Object>> sent = fixture.mock.history();
+        assertThat(sent).hasSize(threads * perThread);
+        Map<String, Long> last = new HashMap<>();
+        for (ProducerRecord<String, Object> record : sent) {
+            LocationEvent ping = (LocationEvent) record.value();
+            long at = ping.timestamp().toEpochMilli();
+            Long previous = last.put(ping.matatuId(), at);
+            assertThat(previous == null || previous < at)
+                    .as("%s out of order", ping.matatuId())
+                    .isTrue();
+        }
+        assertThat(last).hasSize(threads * 5);
+    }
+
+    @Test
+    void fullRingRefusesAtOnce() throws Exception {
+        var settings = new MatatuTrackerProperties.Ingest();
+        settings.setSenderThreads(1);
+        settings.setRingCapacity(4);
+        settings.setBatchSize(1);
+        CountDownLatch brokerBack = new CountDownLatch(1);
+        List<Object> sent = new CopyOnWriteArrayList<>();
+        var registry = new SimpleMeterRegistry();
+        var handoff =
+                new IngestHandoff(
+                        settings,
+                        event -> {
+                            try {
+                                brokerBack.await(); // a producer stuck on a slow broker
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            sent.add(event);
+                        },
+                        registry);
+        handoff.start();
+
+        assertThat(handoff.publish("KM1", "stuck")).isTrue();
+        while (handoff.queued() > 0) {
+            Thread.sleep(1); // the sender takes it and blocks
+        }
+        for (int i = 0; i < 4; i++) {
+            assertThat(handoff.publish("KM1", "queued-" + i)).isTrue();
+        }
+        assertThat(handoff.publish("KM1", "refused")).isFalse();
+        assertThat(registry.counter("matatu.ingest.rejected").count()).isEqualTo(1);
+
+        brokerBack.countDown();
+        handoff.stop(Duration.ofSeconds(5));
+        assertThat(sent).containsExactly("stuck", "queued-0", "queued-1", "queued-2", "queued-3");
+        assertThat(handoff.publish("KM1", "after stop")).isFalse();
+    }
+
+    @Test
+    void refusedEventIsAnswered429() {
+        var refusing =
+                new FleetEventIngest() {
+                    @Override
+                    public boolean location(LocationEvent event) {
+                        return false;
+                    }
+
+                    @Override
+                    public boolean fare(FareEvent event) {
+                        return false;
+                    }
+                };
+        var controller = new MatatuController(refusing, null);
+
+        var response =
+                controller.publishLocation(
+                        new MatatuController.LocationEventRequest(
+                                "KBZ 123A", "route_33", "Route 33", -1.2921, 36.8219, 55, 20));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+    }
+
+    @Test
+    @Tag("benchmark")
+    void benchmarkDirectSendsAgainstTheRing() throws Exception {
+        Logger app = (Logger) LoggerFactory.getLogger("org.matatu.tracker");
+        Logger kafka = (Logger) LoggerFactory.getLogger("org.apache.kafka");
+        Logger results = (Logger) LoggerFactory.getLogger(KafkaFleetEventIngestTest.class);
+        Level appLevel = app.getLevel();
+        Level kafkaLevel = kafka.getLevel();
+        Level resultsLevel = results.getLevel();
+        // Per-record debug logging would dominate every mode.
+        app.setLevel(Level.OFF);
+        kafka.setLevel(Level.OFF);
+        results.setLevel(Level.INFO);
+        try {
+            // Saturated: request threads call as fast as they can. Paced: 50,000 events/s in
+            // total, which the senders can keep up with.
+            for (int ratePerThread : new int[] {0, 12_500}) {
+                log.info(
+                        String.format(
+                                "[BENCH] 4 request threads, %s, KafkaTemplate over MockProducer (no"
+                                        + " broker), %d processors:",
+                                (ratePerThread == 0) ? "saturated" : "paced at 50,000 events/s",
+                                Runtime.getRuntime().availableProcessors()));
+                bench(Handoff.DIRECT, WaitStrategy.BACKOFF, ratePerThread);
+                for (WaitStrategy waitStrategy :
+                        List.of(
+                                WaitStrategy.BACKOFF,
+                                WaitStrategy.YIELDING,
+                                WaitStrategy.BLOCKING)) {
+                    bench(Handoff.RING, waitStrategy, ratePerThread);
+                }
+            }
+        } finally {
+            app.setLevel(appLevel);
+            kafka.setLevel(kafkaLevel);
+            results.setLevel(resultsLevel);
+        }
+    }
+
+    private static void bench(Handoff handoff, WaitStrategy waitStrategy, int ratePerThread)
+            throws Exception {
+        run(handoff, waitStrategy, 10_000, 0); // warm-up
+        Result result = run(handoff, waitStrategy, 25_000, ratePerThread);
+        log.info(
+                String.format(
+                        "[BENCH]   %-6s %-8s request call p50 %.1f µs, p99 %.1f µs, max %.0f µs |"
+                                + " %.0f B allocated per call on the request thread | %,d sent in %d ms"
+                                + " (%,.0f/s), %.1f%% refused",
+                        handoff,
+                        (handoff == Handoff.DIRECT) ? "" : waitStrategy,
+                        result.latency.quantile(0.50) / 1_000,
+                        result.latency.quantile(0.99) / 1_000,
+                        result.latency.max() / 1_000,
+                        result.bytesPerCall,
+                        result.sent,
+                        result.elapsedMs,
+                        result.sent * 1_000.0 / Math.max(1, result.elapsedMs),
+                        100.0 * result.refused / (result.sent + result.refused)));
+    }
+
+    private record Result(
+            DDSketch latency, double bytesPerCall, long sent, long refused, long elapsedMs) {}
+
+    /** {@code ratePerThread} events/s per request thread, or 0 for as fast as possible. */
+    private static Result run(
+            Handoff handoff, WaitStrategy waitStrategy, int perThread, int ratePerThread)
+            throws Exception {
+        long intervalNanos = (ratePerThread == 0) ? 0 : 1_000_000_000L / ratePerThread;
+        Fixture fixture = new Fixture(handoff, waitStrategy, 16_384);
+        fixture.ingest.start();
+        var threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int threads = 4;
+        List<DDSketch> sketches = new CopyOnWriteArrayList<>();
+        AtomicLong allocated = new AtomicLong();
+        AtomicLong refused = new AtomicLong();
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> requests = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            requests.add(
+                    Thread.ofPlatform()
+                            .start(
+                                    () -> {
+                                        // Events are built up front: only the ingest call is
+                                        // measured, not the request body it came from.
+                                        LocationEvent[] pings = new LocationEvent[perThread];
+                                        for (int i = 0; i < perThread; i++) {
+                                            pings[i] = ping("KM" + (thread * 50 + i % 50), i);
+                                        }
+                                        DDSketch latency = new DDSketch(0.01, 2048);
+                                        long rejected = 0;
+                                        ready.countDown();
+                                        await(go);
+                                        long before = threadBean.getCurrentThreadAllocatedBytes();
+                                        long origin = System.nanoTime();
+                                        for (int i = 0; i < perThread; i++) {
+                                            // Paced in bursts of 16, against a fixed schedule.
+                                            if (intervalNanos > 0 && i % 16 == 0) {
+                                                long wait =
+                                                        origin
+                                                                + i * intervalNanos
+                                                                - System.nanoTime();
+                                                if (wait > 0) {
+                                                    LockSupport.parkNanos(wait);
+                                                }
+                                            }
+                                            long started = System.nanoTime();
+                                            boolean accepted = fixture.ingest.location(pings[i]);
+                                            latency.add(System.nanoTime() - started);
+                                            if (!accepted) {
+                                                rejected++; // the client sees 429
+                                            }
+                                        }
+                                        allocated.addAndGet(
+                                                threadBean.getCurrentThreadAllocatedBytes()
+                                                        - before);
+                                        refused.addAndGet(rejected);
+                                        sketches.add(latency);
+                                    }));
+        }
+        ready.await();
+        long started = System.nanoTime();
+        go.countDown();
+        for (Thread request : requests) {
+            request.join();
+        }
+        fixture.ingest.stop(); // waits for the senders to empty their rings
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+
+        DDSketch latency = new DDSketch(0.01, 2048);
+        sketches.forEach(latency::merge);
+        long sent = fixture.mock.history().size();
+        assertThat(sent + refused.get()).isEqualTo((long) threads * perThread);
+        return new Result(
+                latency,
+                (double) allocated.get() / (threads * perThread),
+                sent,
+                refused.get(),
+                elapsedMs);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static LocationEvent ping(String matatuId, int sequence) {
+        return new LocationEvent(
+                matatuId,
+                "route_33",
+                "Route 33",
+                -1.2921,
+                36.8219,
+                40,
+                10,
+                T0.plusMillis(sequence));
+    }
+
+    /** The real producers and KafkaTemplate, over a MockProducer that acknowledges at once. */
+    private static final class Fixture {
+
+        final MockProducer<String, Object> mock =
+                new MockProducer<>(
+                        true, null, new StringSerializer(), new JacksonJsonSerializer<>());
+        final KafkaFleetEventIngest ingest;
+
+        Fixture(Handoff handoff, WaitStrategy waitStrategy, int ringCapacity) {
+            var properties = new MatatuTrackerProperties();
+            properties.getIngest().setHandoff(handoff);
+            properties.getIngest().setWaitStrategy(waitStrategy);
+            properties.getIngest().setRingCapacity(ringCapacity);
+            var factory =
+                    new DefaultKafkaProducerFactory<String, Object>(Map.of()) {
+                        @Override
+                        protected Producer<String, Object> createRawProducer(
+                                Map<String, Object> configs) {
+                            return mock;
+                        }
+                    };
+            var template = new KafkaTemplate<>(factory);
+            var registry = new SimpleMeterRegistry();
+            var partitioner = new RoutePartitioner(properties);
+            ingest =
+                    new KafkaFleetEventIngest(
+                            new LocationEventProducer(
+                                    template,
+                                    partitioner,
+                                    new PartitionLoadMonitor(properties, partitioner, registry),
+                                    LocationSerdes.json()),
+                            new FareEventProducer(template),
+                            properties,
+                            registry);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.matatu.tracker.replay;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class ReplayProgressTest {
+
+    @Test
+    void etaFollowsThroughputOfTheLastInterval() {
+        // 250k of 1M done, 50k of them in the last 10 s → 5k rec/s, 750k left → 150 s.
+        ReplayProgress progress = ReplayProgress.of(1_000_000, 250_000, 50_000, 10_000);
+
+        assertThat(progress.recordsPerSecond()).isEqualTo(5_000.0);
+        assertThat(progress.percent()).isEqualTo(25.0);
+        assertThat(progress.eta()).isEqualTo(Duration.ofSeconds(150));
+        assertThat(progress.etaText()).isEqualTo("2m 30s");
+        assertThat(progress.complete()).isFalse();
+    }
+
+    @Test
+    void etaIsUnknownUntilSomethingIsCommittedAndZeroWhenDone() {
+        assertThat(ReplayProgress.of(1_000, 0, 0, 10_000).etaText()).isEqualTo("unknown");
+
+        ReplayProgress done = ReplayProgress.of(1_000, 1_000, 200, 10_000);
+        assertThat(done.complete()).isTrue();
+        assertThat(done.eta()).isEqualTo(Duration.ZERO);
+    }
+
+    @Test
+    void emptyRangeIsImmediatelyComplete() {
+        ReplayProgress empty = ReplayProgress.of(0, 0, 0, 10_000);
+
+        assertThat(empty.complete()).isTrue();
+        assertThat(empty.percent()).isEqualTo(100.0);
+    }
+}
@@ -0,0 +1,369 @@
+package org.matatu.tracker.restore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.InstanceOfAssertFactories.MAP;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.StoreQueryParameters;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.errors.InvalidStateStoreException;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.QueryableStoreTypes;
+import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.health.contributor.Status;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+import org.springframework.util.FileSystemUtils;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class StateRestoreTrackerTest {
+
+    private static final String STORE = "route-occupancy-store";
+    private static final TopicPartition P0 = new TopicPartition("occupancy-changelog", 0);
+    private static final TopicPartition P1 = new TopicPartition("occupancy-changelog", 1);
+
+    private final AtomicLong now = new AtomicLong();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final StateRestoreTracker tracker = new StateRestoreTracker(registry, now::get);
+
+    @Test
+    void progressRateAndEtaFollowTheBatches() {
+        tracker.onRestoreStart(P0, STORE, 0, 600);
+        tracker.onRestoreStart(P1, STORE, 100, 500);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        tracker.onBatchRestored(P0, STORE, 199, 200);
+        tracker.onBatchRestored(P1, STORE, 199, 100);
+
+        // 300 of 1,000 in 1 s → 300 records/s, 700 left → 2.33 s.
+        StateRestoreTracker.StoreProgress progress = tracker.progress().getFirst();
+        assertThat(progress.restoring()).isTrue();
+        assertThat(progress.fraction()).isEqualTo(0.3);
+        assertThat(progress.recordsPerSecond()).isEqualTo(300.0);
+        assertThat(progress.eta()).isEqualTo(Duration.ofMillis(2_333));
+        assertThat(registry.get("matatu.restore.progress").tag("store", STORE).gauge().value())
+                .isEqualTo(0.3);
+        assertThat(registry.get("matatu.restore.remaining").tag("store", STORE).gauge().value())
+                .isEqualTo(700);
+        assertThat(registry.get("matatu.restore.eta").tag("store", STORE).gauge().value())
+                .isEqualTo(2.333);
+        assertThat(registry.get("matatu.restore.active").gauge().value()).isEqualTo(2);
+    }
+
+    @Test
+    void gapsInTheChangelogStillEndAtOneHundredPercent() {
+        tracker.onRestoreStart(P0, STORE, 0, 1_000);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        // Compacted: 1,000 offsets but only 400 records left to apply.
+        tracker.onBatchRestored(P0, STORE, 999, 400);
+        tracker.onRestoreEnd(P0, STORE, 400);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        StateRestoreTracker.StoreProgress progress = tracker.progress().getFirst();
+        assertThat(progress.restoring()).isFalse();
+        assertThat(progress.fraction()).isEqualTo(1.0);
+        assertThat(progress.eta()).isEqualTo(Duration.ZERO);
+        // The rate of the finished round, not diluted by time since.
+        assertThat(progress.recordsPerSecond()).isEqualTo(200.0);
+    }
+
+    @Test
+    void readyOnlyWhenRunningAndNothingRestores() {
+        assertThat(tracker.ready()).isFalse();
+        tracker.onChange(KafkaStreams.State.REBALANCING, KafkaStreams.State.CREATED);
+        assertThat(tracker.ready()).isFalse();
+        tracker.onRestoreStart(P0, STORE, 0, 100);
+        tracker.onChange(KafkaStreams.State.RUNNING, KafkaStreams.State.REBALANCING);
+        assertThat(tracker.ready()).as("running, but a store is still restoring").isFalse();
+
+        tracker.onRestoreEnd(P0, STORE, 100);
+        assertThat(tracker.ready()).isTrue();
+
+        // A later rebalance keeps serving the stores already here, unless one restores.
+        tracker.onChange(KafkaStreams.State.REBALANCING, KafkaStreams.State.RUNNING);
+        assertThat(tracker.ready()).isTrue();
+        tracker.onRestoreStart(P1, STORE, 0, 100);
+        assertThat(tracker.ready()).isFalse();
+        tracker.onRestoreSuspended(P1, STORE, 10);
+        assertThat(tracker.ready()).isTrue();
+
+        tracker.onChange(KafkaStreams.State.PENDING_SHUTDOWN, KafkaStreams.State.REBALANCING);
+        assertThat(tracker.ready()).isFalse();
+    }
+
+    @Test
+    void healthIsOutOfServiceWhileRestoring() {
+        var beans = new StaticListableBeanFactory();
+        beans.addBean("stateRestoreTracker", tracker);
+        var indicator =
+                new StateRestoreHealthIndicator(beans.getBeanProvider(StateRestoreTracker.class));
+        tracker.onChange(KafkaStreams.State.RUNNING, KafkaStreams.State.REBALANCING);
+        tracker.onRestoreStart(P0, STORE, 0, 1_000);
+
+        var restoring = indicator.health();
+        assertThat(restoring.getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+        assertThat(restoring.getDetails()).containsKey("restoring");
+        assertThat(restoring.getDetails().get("restoring")).asInstanceOf(MAP).containsKey(STORE);
+
+        tracker.onRestoreEnd(P0, STORE, 1_000);
+        assertThat(indicator.health().getStatus()).isEqualTo(Status.UP);
+
+        var edge =
+                new StateRestoreHealthIndicator(
+                        new StaticListableBeanFactory().getBeanProvider(StateRestoreTracker.class));
+        assertThat(edge.health().getStatus()).isEqualTo(Status.UP);
+    }
+
+    @Test
+    void standbyLagIsWhatTheChangelogHasBeyondTheLastBatch() {
+        tracker.onUpdateStart(P0, STORE, 0);
+        tracker.onBatchLoaded(P0, STORE, null, 899, 900, 1_000);
+
+        assertThat(tracker.standbyLag()).containsEntry(STORE, 100L);
+        assertThat(registry.get("matatu.restore.standby.lag").tag("store", STORE).gauge().value())
+                .isEqualTo(100);
+    }
+
+    // ── Failover ──────────────────────────────────────────────────────────────
+
+    /** Where the instance that takes the task over gets its copy of the store. */
+    private enum Survivor {
+        // Starts with an empty disk when the old one stops, as a replacement pod does.
+        COLD(0),
+        // Was already running with a standby replica.
+        STANDBY(1);
+
+        private final int standbys;
+
+        Survivor(int standbys) {
+            this.standbys = standbys;
+        }
+    }
+
+    /**
+     * The active instance of a single-task application stops, as on a rolling restart, and the
+     * instance that takes over is timed until it is ready and answers from the store. Over an
+     * embedded broker, with the session timeout cut to the broker's 6 s minimum.
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmarkFailoverWithAndWithoutStandby() throws Exception {
+        Logger kafka = (Logger) LoggerFactory.getLogger("org.apache.kafka");
+        Logger app = (Logger) LoggerFactory.getLogger(StateRestoreTracker.class);
+        Level kafkaLevel = kafka.getLevel();
+        Level appLevel = app.getLevel();
+        kafka.setLevel(Level.OFF);
+        app.setLevel(Level.OFF);
+        var broker = new EmbeddedKafkaKraftBroker(1, 1, "bench.location");
+        broker.afterPropertiesSet();
+        try {
+            int keys = 500_000;
+            produce(broker.getBrokersAsString(), keys);
+            for (Survivor survivor : Survivor.values()) {
+                Failover failover = failover(broker.getBrokersAsString(), survivor, keys);
+                log.info(
+                        String.format(
+                                "[BENCH] failover of a %,d-key store, %s (%d standby): ready %,d ms after"
+                                        + " the active stopped; restored %,d records in %,d ms",
+                                keys,
+                                survivor,
+                                survivor.standbys,
+                                failover.readyMillis(),
+                                failover.restored(),
+                                failover.restoreMillis()));
+                if (survivor == Survivor.COLD) {
+                    assertThat(failover.restored()).isEqualTo(keys);
+                } else {
+                    assertThat(failover.restored()).isLessThan(keys / 10);
+                }
+            }
+        } finally {
+            broker.destroy();
+            kafka.setLevel(kafkaLevel);
+            app.setLevel(appLevel);
+        }
+    }
+
+    private record Failover(long readyMillis, long restored, long restoreMillis) {}
+
+    private Failover failover(String brokers, Survivor survivor, int keys) throws Exception {
+        String applicationId = "failover-bench-" + survivor;
+        String lastKey = "KM" + (keys - 1);
+        Instance first = new Instance(brokers, applicationId, survivor.standbys);
+        Instance second = new Instance(brokers, applicationId, survivor.standbys);
+        try {
+            first.start();
+            await(() -> first.has(lastKey), "the first instance to process every key");
+            if (survivor != Survivor.COLD) {
+                second.start();
+                await(
+                        () -> second.tracker.ready() && first.tracker.ready(),
+                        "both instances to be ready");
+                await(
+                        () -> second.tracker.standbyLag().getOrDefault(STORE, -1L) == 0,
+                        "the second instance's replica to catch up");
+            }
+
+            // The task stays with the caught-up first instance, which now stops. Stream threads do
+            // not leave the group on close, so the group notices at the session timeout.
+            long start = System.nanoTime();
+            first.streams.close(Duration.ofSeconds(30));
+            if (survivor == Survivor.COLD) {
+                second.start();
+            }
+            await(
+                    () -> second.tracker.ready() && second.has(lastKey),
+                    "the survivor to serve the store");
+            long readyMillis = (System.nanoTime() - start) / 1_000_000;
+            return second.tracker.progress().stream()
+                    .filter(progress -> progress.store().equals(STORE))
+                    .findFirst()
+                    .map(
+                            restored ->
+                                    new Failover(
+                                            readyMillis,
+                                            restored.restoredRecords(),
+                                            Math.round(
+                                                    restored.restoredRecords()
+                                                            * 1000
+                                                            / restored.recordsPerSecond())))
+                    .orElse(new Failover(readyMillis, 0, 0));
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    /** One streams instance with a last-position store per matatu, like matatu-last-seen. */
+    private static final class Instance {
+        private final StateRestoreTracker tracker =
+                new StateRestoreTracker(new SimpleMeterRegistry());
+        private final KafkaStreams streams;
+        private final Path stateDir;
+
+        private Instance(String brokers, String applicationId, int standbys) throws Exception {
+            var properties = new MatatuTrackerProperties();
+            properties.getStreams().setStandbyReplicas(standbys);
+            stateDir = Files.createTempDirectory("restore-bench");
+            Map<String, Object> config = new HashMap<>();
+            config.put(StreamsConfig.APPLICATION_ID_CONFIG, applicationId);
+            config.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, brokers);
+            config.put(StreamsConfig.STATE_DIR_CONFIG, stateDir.toString());
+            config.put(
+                    StreamsConfig.NUM_STANDBY_REPLICAS_CONFIG,
+                    properties.getStreams().getStandbyReplicas());
+            config.put(
+                    StreamsConfig.MAX_WARMUP_REPLICAS_CONFIG,
+                    properties.getStreams().getMaxWarmupReplicas());
+            config.put(
+                    StreamsConfig.ACCEPTABLE_RECOVERY_LAG_CONFIG,
+                    properties.getStreams().getAcceptableRecoveryLag());
+            config.put(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG, 100);
+            config.put(StreamsConfig.STATESTORE_CACHE_MAX_BYTES_CONFIG, 0);
+            config.put(StreamsConfig.REPLICATION_FACTOR_CONFIG, 1);
+            // The broker's minimum, instead of 45 s, so the runs are about restoring.
+            config.put(
+                    StreamsConfig.consumerPrefix(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG), 6_000);
+            config.put(
+                    StreamsConfig.consumerPrefix(ConsumerConfig.HEARTBEAT_INTERVAL_MS_CONFIG),
+                    1_500);
+
+            var builder = new StreamsBuilder();
+            builder.stream("bench.location", Consumed.with(Serdes.String(), Serdes.String()))
+                    .toTable(
+                            Materialized.<String, String, KeyValueStore<Bytes, byte[]>>as(STORE)
+                                    .withKeySerde(Serdes.String())
+                                    .withValueSerde(Serdes.String()));
+            var streamsProperties = new Properties();
+            streamsProperties.putAll(config);
+            streams = new KafkaStreams(builder.build(), streamsProperties);
+            streams.setGlobalStateRestoreListener(tracker);
+            streams.setStandbyUpdateListener(tracker);
+            streams.setStateListener(tracker);
+        }
+
+        void start() {
+            streams.start();
+        }
+
+        /** Only an active, fully restored store answers. */
+        boolean has(String key) {
+            try {
+                ReadOnlyKeyValueStore<String, String> store =
+                        streams.store(
+                                StoreQueryParameters.fromNameAndType(
+                                        STORE, QueryableStoreTypes.keyValueStore()));
+                return store.get(key) != null;
+            } catch (InvalidStateStoreException e) {
+                return false;
+            }
+        }
+
+        void close() {
+            streams.close(Duration.ofSeconds(30));
+            FileSystemUtils.deleteRecursively(stateDir.toFile());
+        }
+    }
+
+    private static void produce(String brokers, int keys) {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, brokers);
+        config.put(ProducerConfig.LINGER_MS_CONFIG, 20);
+        config.put(ProducerConfig.BATCH_SIZE_CONFIG, 256 * 1024);
+        try (var producer =
+                new KafkaProducer<>(config, new StringSerializer(), new StringSerializer())) {
+            for (int i = 0; i < keys; i++) {
+                producer.send(
+                        new ProducerRecord<>(
+                                "bench.location",
+                                "KM" + i,
+                                "{\"lat\":-1.2921,\"lon\":36.8219,\"speedKmh\":42.0,\"seq\":%d}"
+                                        .formatted(i)));
+            }
+        }
+    }
+
+    private static void await(BooleanSupplier condition, String what) {
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(3);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Timed out waiting for " + what);
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.matatu.tracker.sketch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class DDSketchTest {
+
+    private static final double ALPHA = 0.01;
+
+    @Test
+    void percentilesAreWithinRelativeAccuracy() {
+        Random random = new Random(42);
+        double[] speeds = new double[200_000];
+        DDSketch sketch = new DDSketch(ALPHA, 1024);
+        for (int i = 0; i < speeds.length; i++) {
+            // Mostly crawling traffic with a long fast tail, like a congested route.
+            speeds[i] = Math.exp(random.nextGaussian() * 0.6 + 3.0);
+            sketch.add(speeds[i]);
+        }
+        Arrays.sort(speeds);
+
+        for (double q : new double[] {0.5, 0.95, 0.99}) {
+            double exact = speeds[(int) (q * (speeds.length - 1))];
+            double estimate = sketch.quantile(q);
+            assertThat(Math.abs(estimate - exact) / exact)
+                    .as("q=%.2f exact=%.2f estimate=%.2f", q, exact, estimate)
+                    .isLessThanOrEqualTo(ALPHA);
+        }
+        assertThat(sketch.toBytes().length).isLessThan(2_048);
+    }
+
+    @Test
+    void mergedSketchMatchesSingleSketch() {
+        Random random = new Random(7);
+        DDSketch whole = new DDSketch(ALPHA, 1024);
+        DDSketch partitionA = new DDSketch(ALPHA, 1024);
+        DDSketch partitionB = new DDSketch(ALPHA, 1024);
+        for (int i = 0; i < 50_000; i++) {
+            double speed = random.nextDouble(0, 120);
+            whole.add(speed);
+            (i % 2 == 0 ? partitionA : partitionB).add(speed);
+        }
+
+        DDSketch merged = DDSketch.fromBytes(partitionA.toBytes()).merge(partitionB);
+
+        assertThat(merged.count()).isEqualTo(whole.count());
+        for (double q : new double[] {0.5, 0.95, 0.99}) {
+            assertThat(merged.quantile(q)).isEqualTo(whole.quantile(q));
+        }
+    }
+
+    @Test
+    void zerosAndSerialisationRoundTrip() {
+        DDSketch sketch = new DDSketch(ALPHA, 1024);
+        for (int i = 0; i < 100; i++) {
+            sketch.add(0.0); // parked at the stage
+        }
+        for (int i = 1; i <= 100; i++) {
+            sketch.add(i);
+        }
+
+        DDSketch copy = DDSketch.fromBytes(sketch.toBytes());
+
+        assertThat(copy.quantile(0.25)).isZero();
+        assertThat(copy.quantile(0.99)).isEqualTo(sketch.quantile(0.99));
+        assertThat(copy.count()).isEqualTo(200);
+        assertThat(copy.max()).isEqualTo(100.0);
+    }
+
+    @Test
+    void bucketCountStaysBoundedForExtremeRanges() {
+        DDSketch sketch = new DDSketch(ALPHA, 64);
+        for (int exponent = -6; exponent <= 12; exponent++) {
+            for (int i = 0; i < 1_000; i++) {
+                sketch.add(Math.pow(10, exponent) * (1 + i / 1_000.0));
+            }
+        }
+
+        assertThat(sketch.binCount()).isLessThanOrEqualTo(64);
+        double exactP99 = Math.pow(10, 12) * 1.81;
+        assertThat(Math.abs(sketch.quantile(0.99) - exactP99) / exactP99).isLessThan(0.05);
+    }
+
+    @Test
+    void rejectsMismatchedAccuracy() {
+        assertThatThrownBy(() -> new DDSketch(0.01, 1024).merge(new DDSketch(0.02, 1024)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,84 @@
+package org.matatu.tracker.sketch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class HyperLogLogTest {
+
+    @ParameterizedTest(name = "p={0}, n={1}")
+    @CsvSource({
+        "10, 1000",
+        "10, 100000",
+        "12, 1000",
+        "12, 100000",
+        "12, 1000000",
+        "14, 1000",
+        "14, 100000",
+        "14, 1000000",
+    })
+    void estimateStaysWithinThreeStandardErrors(int precision, int distinct) {
+        HyperLogLog sketch = HyperLogLog.wrap(HyperLogLog.empty(precision));
+        for (int i = 0; i < distinct; i++) {
+            sketch.add("PAX-" + i);
+        }
+
+        double error = Math.abs(sketch.estimate() - distinct) / (double) distinct;
+        assertThat(error)
+                .as("p=%d n=%d estimate=%d", precision, distinct, sketch.estimate())
+                .isLessThan(3 * HyperLogLog.relativeStandardError(precision));
+    }
+
+    @Test
+    void repeatedPassengersAreCountedOnce() {
+        HyperLogLog sketch = HyperLogLog.wrap(HyperLogLog.empty(12));
+        for (int trip = 0; trip < 50; trip++) {
+            for (int i = 0; i < 200; i++) {
+                sketch.add("PAX-" + i);
+            }
+        }
+
+        assertThat(sketch.estimate()).isBetween(194L, 206L);
+    }
+
+    @Test
+    void mergeOfWindowsEqualsSketchOfUnion() {
+        byte[] morning = HyperLogLog.empty(12);
+        byte[] evening = HyperLogLog.empty(12);
+        byte[] wholeDay = HyperLogLog.empty(12);
+        for (int i = 0; i < 30_000; i++) {
+            HyperLogLog.wrap(morning).add("PAX-" + i);
+            HyperLogLog.wrap(wholeDay).add("PAX-" + i);
+        }
+        // Half of the evening riders also rode in the morning.
+        for (int i = 15_000; i < 45_000; i++) {
+            HyperLogLog.wrap(evening).add("PAX-" + i);
+            HyperLogLog.wrap(wholeDay).add("PAX-" + i);
+        }
+
+        long merged = HyperLogLog.wrap(morning.clone()).merge(evening).estimate();
+
+        assertThat(merged).isEqualTo(HyperLogLog.wrap(wholeDay).estimate());
+        assertThat(Math.abs(merged - 45_000) / 45_000.0)
+                .isLessThan(3 * HyperLogLog.relativeStandardError(12));
+    }
+
+    @Test
+    void rejectsMergeAcrossPrecisions() {
+        HyperLogLog sketch = HyperLogLog.wrap(HyperLogLog.empty(12));
+
+        assertThatThrownBy(() -> sketch.merge(HyperLogLog.empty(14)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsCorruptBytes() {
+        assertThatThrownBy(() -> HyperLogLog.wrap(new byte[] {12, 0, 0}))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> HyperLogLog.empty(20))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
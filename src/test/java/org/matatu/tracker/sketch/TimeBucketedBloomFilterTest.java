@@ -0,0 +1,58 @@
+package org.matatu.tracker.sketch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class TimeBucketedBloomFilterTest {
+
+    private static final Duration TTL = Duration.ofMinutes(60);
+    private static final long T0 = 1_771_830_000_000L;
+
+    @Test
+    void neverReportsAnAddedKeyAsAbsent() {
+        var bloom = new TimeBucketedBloomFilter(TTL, 6, 10_000, 0.01);
+        for (int i = 0; i < 50_000; i++) {
+            bloom.put("TX-" + i, T0 + i * 60L); // 50k fares over ~50 minutes
+        }
+        for (int i = 0; i < 50_000; i++) {
+            assertThat(bloom.mightContain("TX-" + i, T0 + 50_000 * 60L)).isTrue();
+        }
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTarget() {
+        var bloom = new TimeBucketedBloomFilter(TTL, 6, 10_000, 0.01);
+        long now = T0;
+        for (int i = 0; i < 60_000; i++) {
+            now = T0 + i * 60L;
+            bloom.put("TX-" + i, now);
+        }
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            if (bloom.mightContain("NEW-" + i, now)) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / probes;
+        assertThat(rate).as("false-positive rate of %s", bloom).isLessThan(0.02);
+    }
+
+    @Test
+    void keysAgeOutOnceTheirBucketIsRecycled() {
+        var bloom = new TimeBucketedBloomFilter(TTL, 6, 1_000, 0.01);
+        bloom.put("TX-1", T0);
+
+        // Two hours of other fares: every slot has been recycled since TX-1 was added.
+        for (int i = 0; i < 120; i++) {
+            bloom.put("TX-later-" + i, T0 + Duration.ofMinutes(i + 1).toMillis());
+        }
+
+        assertThat(bloom.mightContain("TX-1", T0 + Duration.ofMinutes(121).toMillis())).isFalse();
+        // A fare timestamped before everything the ring covers cannot be answered.
+        assertThat(bloom.mightContain("TX-1", T0)).isTrue();
+    }
+}
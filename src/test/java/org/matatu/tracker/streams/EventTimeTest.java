@@ -0,0 +1,154 @@
+package org.matatu.tracker.streams;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.encoding.LocationSerdes;
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.model.SaccoInfo;
+import org.matatu.tracker.model.SaccoRevenueWindow;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class EventTimeTest {
+
+    /** Every record reaches Kafka at the same moment, as after a broker outage. */
+    private static final Instant CATCH_UP = Instant.parse("2026-02-23T12:00:00Z");
+
+    private TopologyTestDriver driver;
+    private TestInputTopic<String, FareEvent> fares;
+
+    @BeforeEach
+    void setUp() {
+        var properties = new MatatuTrackerProperties();
+        properties.getStreams().setRevenueWindowMinutes(60);
+        properties.getStreams().setRevenueGraceMinutes(5);
+
+        var builder = new StreamsBuilder();
+        var dedup = new FareDedupStream(properties, new SimpleMeterRegistry());
+        new SaccoRevenueStream(
+                        Map.of("sacco_01", new SaccoInfo("sacco_01", "Citi Hoppa", "Odeon")),
+                        properties)
+                .saccoRevenueKStream(dedup.dedupedFareStream(builder));
+        new LateDataStream(properties, LocationSerdes.json()).lateFareStream(builder);
+
+        var config = new Properties();
+        config.put(StreamsConfig.APPLICATION_ID_CONFIG, "event-time-test");
+        config.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        config.put(
+                StreamsConfig.DEFAULT_TIMESTAMP_EXTRACTOR_CLASS_CONFIG,
+                EventTimestampExtractor.class);
+        driver = new TopologyTestDriver(builder.build(), config, CATCH_UP);
+        fares =
+                driver.createInputTopic(
+                        Topics.MATATU_FARES,
+                        new StringSerializer(),
+                        new JacksonJsonSerde<>(FareEvent.class).serializer());
+    }
+
+    @AfterEach
+    void tearDown() {
+        driver.close();
+    }
+
+    @Test
+    void revenueWindowsFollowFareTimeNotArrivalTime() {
+        fare("TX-1", 100, "2026-02-23T09:10:00Z");
+        fare("TX-2", 50, "2026-02-23T09:59:00Z");
+        fare("TX-3", 70, "2026-02-23T10:02:00Z");
+        fare("TX-4", 30, "2026-02-23T10:20:00Z"); // stream time passes 10:05 — 09:00 closes
+
+        var windows =
+                driver.createOutputTopic(
+                                Topics.MATATU_SACCO_REVENUE,
+                                new StringDeserializer(),
+                                new JacksonJsonSerde<>(SaccoRevenueWindow.class).deserializer())
+                        .readValuesToList();
+
+        assertThat(windows).hasSize(1);
+        SaccoRevenueWindow nineOClock = windows.getFirst();
+        assertThat(nineOClock.windowStart()).isEqualTo(Instant.parse("2026-02-23T09:00:00Z"));
+        assertThat(nineOClock.totalRevenueKes()).isEqualByComparingTo("150");
+        assertThat(nineOClock.transactionCount()).isEqualTo(2);
+        assertThat(nineOClock.computedAt()).isEqualTo(nineOClock.windowEnd());
+    }
+
+    @Test
+    void faresBeyondGraceGoToLateTopicOnly() {
+        fare("TX-1", 100, "2026-02-23T09:10:00Z");
+        fare("TX-2", 30, "2026-02-23T10:20:00Z");
+        fare("TX-3", 40, "2026-02-23T10:16:00Z"); // 4 min behind: within grace
+        fare("TX-4", 50, "2026-02-23T09:55:00Z"); // 25 min behind: window already closed
+
+        var late =
+                driver.createOutputTopic(
+                                Topics.MATATU_FARES_LATE,
+                                new StringDeserializer(),
+                                new JacksonJsonSerde<>(FareEvent.class).deserializer())
+                        .readValuesToList();
+        var windows =
+                driver.createOutputTopic(
+                                Topics.MATATU_SACCO_REVENUE,
+                                new StringDeserializer(),
+                                new JacksonJsonSerde<>(SaccoRevenueWindow.class).deserializer())
+                        .readValuesToList();
+
+        assertThat(late).extracting(FareEvent::transactionId).containsExactly("TX-4");
+        assertThat(windows.getFirst().totalRevenueKes()).isEqualByComparingTo("100");
+    }
+
+    @Test
+    void farBehindButInAnOpenWindowIsCountedNotReportedLate() {
+        fare("TX-1", 100, "2026-02-23T09:10:00Z");
+        fare("TX-2", 30, "2026-02-23T09:50:00Z");
+        fare("TX-3", 20, "2026-02-23T09:25:00Z"); // 25 min behind, but 09:00 is open until 10:05
+        fare("TX-4", 10, "2026-02-23T10:20:00Z"); // closes 09:00
+
+        var late =
+                driver.createOutputTopic(
+                                Topics.MATATU_FARES_LATE,
+                                new StringDeserializer(),
+                                new JacksonJsonSerde<>(FareEvent.class).deserializer())
+                        .readValuesToList();
+        var windows =
+                driver.createOutputTopic(
+                                Topics.MATATU_SACCO_REVENUE,
+                                new StringDeserializer(),
+                                new JacksonJsonSerde<>(SaccoRevenueWindow.class).deserializer())
+                        .readValuesToList();
+
+        assertThat(late).isEmpty();
+        assertThat(windows.getFirst().totalRevenueKes()).isEqualByComparingTo("150");
+        assertThat(windows.getFirst().transactionCount()).isEqualTo(3);
+    }
+
+    private void fare(String transactionId, int amountKes, String paidAt) {
+        fares.pipeInput(
+                "KBZ 123A",
+                new FareEvent(
+                        transactionId,
+                        "KBZ 123A",
+                        "PAX-" + transactionId,
+                        BigDecimal.valueOf(amountKes),
+                        FareEvent.PaymentMethod.MPESA,
+                        FareEvent.PaymentStatus.SUCCESS,
+                        Instant.parse(paidAt)),
+                CATCH_UP);
+    }
+}
@@ -0,0 +1,188 @@
+package org.matatu.tracker.streams;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.groups.Tuple.tuple;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.config.RouteEnrichmentConfig;
+import org.matatu.tracker.encoding.LocationSerdes;
+import org.matatu.tracker.geo.GeoHash;
+import org.matatu.tracker.geo.GeofenceIndex;
+import org.matatu.tracker.geo.GeofenceRegistry;
+import org.matatu.tracker.model.EnrichedFare;
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.model.Geofence;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class FareAttributionStreamTest {
+
+    private static final Instant T0 = Instant.parse("2026-02-23T07:00:00Z");
+
+    // Railways stage, around the first vertex of route_33.
+    private static final Geofence RAILWAYS =
+            new Geofence(
+                    "stage-railways",
+                    Geofence.Type.STAGE,
+                    "Railways",
+                    List.of(
+                            new Geofence.Vertex(-1.2930, 36.8210),
+                            new Geofence.Vertex(-1.2930, 36.8230),
+                            new Geofence.Vertex(-1.2910, 36.8230),
+                            new Geofence.Vertex(-1.2910, 36.8210)));
+
+    private final JacksonJsonSerde<FareEvent> fareSerde = new JacksonJsonSerde<>(FareEvent.class);
+    private final JacksonJsonSerde<LocationEvent> locationSerde =
+            new JacksonJsonSerde<>(LocationEvent.class);
+    private final AtomicReference<GeofenceIndex> stages = new AtomicReference<>();
+    private Path stateDir;
+    private MeterRegistry registry;
+    private TopologyTestDriver driver;
+    private TestInputTopic<String, LocationEvent> pings;
+    private TestInputTopic<String, FareEvent> fares;
+    private TestOutputTopic<String, EnrichedFare> enriched;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stateDir = Files.createTempDirectory("fare-attribution-test");
+        registry = new SimpleMeterRegistry();
+        var properties = new MatatuTrackerProperties();
+        properties.getFareAttribution().setGraceSeconds(0);
+        stages.set(GeofenceIndex.build(List.of(RAILWAYS)));
+        var geofenceRegistry =
+                new GeofenceRegistry() {
+                    @Override
+                    public GeofenceIndex current() {
+                        return stages.get();
+                    }
+                };
+
+        var builder = new StreamsBuilder();
+        new FareAttributionStream(
+                        new RouteEnrichmentConfig().saccoLookup(),
+                        geofenceRegistry,
+                        properties,
+                        registry)
+                .enrichedFareStream(
+                        builder.stream(
+                                Topics.MATATU_FARES, Consumed.with(Serdes.String(), fareSerde)),
+                        new GeofenceStream(properties, geofenceRegistry, LocationSerdes.json())
+                                .locationsByMatatu(builder));
+
+        var config = new Properties();
+        config.put(StreamsConfig.APPLICATION_ID_CONFIG, "fare-attribution-test");
+        config.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        config.put(StreamsConfig.STATE_DIR_CONFIG, stateDir.toString());
+        config.put(
+                StreamsConfig.DEFAULT_TIMESTAMP_EXTRACTOR_CLASS_CONFIG,
+                EventTimestampExtractor.class);
+        driver = new TopologyTestDriver(builder.build(), config, T0);
+        pings =
+                driver.createInputTopic(
+                        Topics.MATATU_LOCATION, new StringSerializer(), locationSerde.serializer());
+        fares =
+                driver.createInputTopic(
+                        Topics.MATATU_FARES, new StringSerializer(), fareSerde.serializer());
+        enriched =
+                driver.createOutputTopic(
+                        Topics.MATATU_FARES_ENRICHED,
+                        new StringDeserializer(),
+                        new JacksonJsonSerde<>(EnrichedFare.class).deserializer());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        driver.close();
+        try (var files = Files.walk(stateDir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void fareIsJoinedWithThePositionAtItsTimestamp() {
+        pings.pipeInput("route_33", ping(-1.2921, 36.8219, T0)); // at Railways
+        pings.pipeInput("route_33", ping(-1.2650, 36.8030, T0.plusSeconds(60))); // moved on
+        // Arrives after the second ping but was paid before it.
+        fares.pipeInput("KBZ 123A", fare("TX-1", T0.plusSeconds(30)));
+
+        EnrichedFare fare = enriched.readValue();
+        assertThat(fare.attribution()).isEqualTo(EnrichedFare.Attribution.MATCHED);
+        assertThat(fare.routeId()).isEqualTo("route_33");
+        assertThat(fare.saccoName()).isEqualTo("Citi Hoppa");
+        assertThat(fare.stage()).isEqualTo("Railways");
+        assertThat(fare.geohash()).isEqualTo(GeoHash.encode(-1.2921, 36.8219, 7));
+        assertThat(fare.positionAgeMs()).isEqualTo(30_000);
+    }
+
+    @Test
+    void stageIsTheOneDefinedWhenThePositionWasStored() {
+        pings.pipeInput("route_33", ping(-1.2921, 36.8219, T0)); // at Railways
+        // Railways is deleted before the fare, paid while the matatu was there, is joined.
+        stages.set(GeofenceIndex.EMPTY);
+        fares.pipeInput("KBZ 123A", fare("TX-1", T0.plusSeconds(20)));
+
+        assertThat(enriched.readValue().stage()).isEqualTo("Railways");
+    }
+
+    @Test
+    void staleAndMissingPositionsAreFlaggedAndCounted() {
+        fares.pipeInput("KBZ 123A", fare("TX-1", T0)); // no ping yet
+        pings.pipeInput("route_33", ping(-1.2650, 36.8030, T0.plusSeconds(10)));
+        fares.pipeInput("KBZ 123A", fare("TX-2", T0.plusSeconds(40)));
+        fares.pipeInput("KBZ 123A", fare("TX-3", T0.plusSeconds(400))); // 390 s after the ping
+
+        assertThat(enriched.readValuesToList())
+                .extracting(EnrichedFare::attribution, EnrichedFare::stage)
+                .containsExactly(
+                        tuple(EnrichedFare.Attribution.MISSING, null),
+                        tuple(EnrichedFare.Attribution.MATCHED, null),
+                        tuple(EnrichedFare.Attribution.STALE, null));
+        assertThat(count("matched")).isEqualTo(1);
+        assertThat(count("stale")).isEqualTo(1);
+        assertThat(count("missing")).isEqualTo(1);
+    }
+
+    private double count(String result) {
+        return registry.counter("matatu.fares.attribution", "result", result).count();
+    }
+
+    private static LocationEvent ping(double latitude, double longitude, Instant timestamp) {
+        return new LocationEvent(
+                "KBZ 123A", "route_33", "Route 33", latitude, longitude, 30, 12, timestamp);
+    }
+
+    private static FareEvent fare(String transactionId, Instant timestamp) {
+        return new FareEvent(
+                transactionId,
+                "KBZ 123A",
+                "PAX-1",
+                new BigDecimal("100"),
+                FareEvent.PaymentMethod.MPESA,
+                FareEvent.PaymentStatus.SUCCESS,
+                timestamp);
+    }
+}
@@ -0,0 +1,235 @@
+package org.matatu.tracker.streams;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.state.WindowStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.sketch.TimeBucketedBloomFilter;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class FareDedupProcessorTest {
+
+    private static final Instant T0 = Instant.parse("2026-02-23T07:00:00Z");
+    private static final String DEDUPED = "test.fares.deduped";
+
+    private final JacksonJsonSerde<FareEvent> fareSerde = new JacksonJsonSerde<>(FareEvent.class);
+    private final List<TopologyTestDriver> drivers = new ArrayList<>();
+    private Path stateDir;
+    private MeterRegistry registry;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stateDir = Files.createTempDirectory("fare-dedup-test");
+        registry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        drivers.forEach(TopologyTestDriver::close);
+        try (var files = Files.walk(stateDir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void retriedFareIsFlaggedButItsResolutionIsNot() {
+        TopologyTestDriver driver = driver(true);
+        TestInputTopic<String, FareEvent> fares = input(driver);
+
+        fares.pipeInput("KBZ 123A", fare("TX-1", FareEvent.PaymentStatus.PENDING, T0));
+        fares.pipeInput("KBZ 123A", fare("TX-1", FareEvent.PaymentStatus.PENDING, T0)); // retry
+        fares.pipeInput(
+                "KBZ 123A", fare("TX-1", FareEvent.PaymentStatus.SUCCESS, T0.plusSeconds(20)));
+
+        assertThat(output(driver, DEDUPED).readValuesToList())
+                .extracting(FareEvent::status)
+                .containsExactly(FareEvent.PaymentStatus.PENDING, FareEvent.PaymentStatus.SUCCESS);
+        assertThat(output(driver, Topics.MATATU_FARES_DUPLICATES).readValuesToList()).hasSize(1);
+        assertThat(count("duplicate")).isEqualTo(1);
+    }
+
+    @Test
+    void retryAfterTheTtlIsTreatedAsNew() {
+        TopologyTestDriver driver = driver(true);
+        TestInputTopic<String, FareEvent> fares = input(driver);
+
+        fares.pipeInput("KBZ 123A", fare("TX-1", FareEvent.PaymentStatus.SUCCESS, T0));
+        fares.pipeInput(
+                "KBZ 123A", fare("TX-1", FareEvent.PaymentStatus.SUCCESS, T0.plusSeconds(7_300)));
+
+        assertThat(output(driver, DEDUPED).readValuesToList()).hasSize(2);
+        assertThat(count("duplicate")).isZero();
+    }
+
+    @Test
+    void topologyCatchesEveryRetryWithFewBloomFalsePositives() {
+        List<FareEvent> workload = workload(5_000, 0.02);
+        run(driver(true), workload);
+        long retries =
+                workload.size()
+                        - workload.stream().map(FareEvent::transactionId).distinct().count();
+
+        assertThat(count("duplicate")).isEqualTo(retries);
+        assertThat(count("bloom_false_positive") / count("unique")).isLessThan(0.02);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void benchmarkBloomAgainstStoreOnly() {
+        // Per-fare cost of the two checks, timed directly: the driver commits (and flushes
+        // RocksDB) after every record, which would swamp both.
+        TopologyTestDriver driver = driver(true);
+        WindowStore<String, Long> store = driver.getWindowStore(FareDedupStream.FARE_DEDUP_STORE);
+        var dedup = new MatatuTrackerProperties().getDedup();
+        var bloom =
+                new TimeBucketedBloomFilter(
+                        Duration.ofMinutes(dedup.getTtlMinutes()),
+                        dedup.getBloomBuckets(),
+                        dedup.getBloomExpectedFaresPerBucket(),
+                        dedup.getBloomFalsePositiveRate());
+        long now = T0.toEpochMilli();
+        for (int i = 0; i < 200_000; i++) {
+            long at = now + i * 18L; // one hour of fares
+            store.put("TX-" + i + ":SUCCESS", at, at);
+            bloom.put("TX-" + i + ":SUCCESS", at);
+        }
+        long end = now + 200_000 * 18L;
+        long ttlMs = Duration.ofMinutes(dedup.getTtlMinutes()).toMillis();
+
+        long storeHits = 0;
+        long storeStart = System.nanoTime();
+        for (int i = 0; i < 200_000; i++) {
+            try (var hits = store.fetch("NEW-" + i + ":SUCCESS", end - ttlMs, end + ttlMs)) {
+                storeHits += hits.hasNext() ? 1 : 0;
+            }
+        }
+        long storeNs = (System.nanoTime() - storeStart) / 200_000;
+
+        long bloomPositives = 0;
+        long bloomStart = System.nanoTime();
+        for (int i = 0; i < 200_000; i++) {
+            bloomPositives += bloom.mightContain("NEW-" + i + ":SUCCESS", end) ? 1 : 0;
+        }
+        long bloomNs = (System.nanoTime() - bloomStart) / 200_000;
+        double fallbackRate = bloomPositives / 200_000.0;
+
+        log.info(
+                "[BENCH] new fare, 200k fares stored: store read {} ns | bloom check {} ns ({}"
+                        + " KiB) | bloom + {}% fallback reads = {} ns",
+                storeNs,
+                bloomNs,
+                bloom.sizeInBytes() / 1024,
+                "%.3f".formatted(fallbackRate * 100),
+                Math.round(bloomNs + fallbackRate * storeNs));
+        assertThat(storeHits).isZero();
+        assertThat(fallbackRate).isLessThan(0.02);
+    }
+
+    // ── Helpers ───────────────────────────────────────────────────────────────
+
+    private TopologyTestDriver driver(boolean bloomEnabled) {
+        var properties = new MatatuTrackerProperties();
+        properties.getDedup().setBloomEnabled(bloomEnabled);
+        properties.getDedup().setBloomExpectedFaresPerBucket(20_000);
+
+        var builder = new StreamsBuilder();
+        new FareDedupStream(properties, registry)
+                .dedupedFareStream(builder)
+                .to(DEDUPED, Produced.with(Serdes.String(), fareSerde));
+
+        var config = new Properties();
+        config.put(StreamsConfig.APPLICATION_ID_CONFIG, "fare-dedup-test-" + drivers.size());
+        config.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        config.put(StreamsConfig.STATE_DIR_CONFIG, stateDir.toString());
+        config.put(
+                StreamsConfig.DEFAULT_TIMESTAMP_EXTRACTOR_CLASS_CONFIG,
+                EventTimestampExtractor.class);
+        var driver = new TopologyTestDriver(builder.build(), config, T0);
+        drivers.add(driver);
+        return driver;
+    }
+
+    private TestInputTopic<String, FareEvent> input(TopologyTestDriver driver) {
+        return driver.createInputTopic(
+                Topics.MATATU_FARES, new StringSerializer(), fareSerde.serializer());
+    }
+
+    private TestOutputTopic<String, FareEvent> output(TopologyTestDriver driver, String topic) {
+        return driver.createOutputTopic(topic, new StringDeserializer(), fareSerde.deserializer());
+    }
+
+    /** {@code count} fares 18 ms apart, a {@code duplicateShare} of them retried. */
+    private static List<FareEvent> workload(int count, double duplicateShare) {
+        Random random = new Random(42);
+        var fares = new ArrayList<FareEvent>(count);
+        for (int i = 0; fares.size() < count; i++) {
+            FareEvent fare =
+                    fare("TX-" + i, FareEvent.PaymentStatus.SUCCESS, T0.plusMillis(i * 18L));
+            fares.add(fare);
+            if (random.nextDouble() < duplicateShare && fares.size() < count) {
+                fares.add(fare);
+            }
+        }
+        return fares;
+    }
+
+    private void run(TopologyTestDriver driver, List<FareEvent> workload) {
+        TestInputTopic<String, FareEvent> fares = input(driver);
+        TestOutputTopic<String, FareEvent> deduped = output(driver, DEDUPED);
+        TestOutputTopic<String, FareEvent> duplicates =
+                output(driver, Topics.MATATU_FARES_DUPLICATES);
+        for (int i = 0; i < workload.size(); i++) {
+            fares.pipeInput(workload.get(i).matatuId(), workload.get(i));
+            if (i % 10_000 == 0) {
+                deduped.readRecordsToList(); // keep the captured output from growing
+                duplicates.readRecordsToList();
+            }
+        }
+    }
+
+    private double count(String result) {
+        return registry.counter("matatu.fares.dedup", "result", result).count();
+    }
+
+    private static FareEvent fare(
+            String transactionId, FareEvent.PaymentStatus status, Instant at) {
+        return new FareEvent(
+                transactionId,
+                "KBZ 123A",
+                "PAX-" + transactionId,
+                BigDecimal.valueOf(50),
+                FareEvent.PaymentMethod.MPESA,
+                status,
+                at);
+    }
+}
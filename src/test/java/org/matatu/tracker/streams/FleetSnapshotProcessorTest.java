@@ -0,0 +1,257 @@
+package org.matatu.tracker.streams;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.groups.Tuple.tuple;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.KStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.config.MatatuTrackerProperties.FleetSnapshots.Grouping;
+import org.matatu.tracker.geo.GeofenceIndex;
+import org.matatu.tracker.geo.GeofenceRegistry;
+import org.matatu.tracker.model.FleetSnapshot;
+import org.matatu.tracker.model.Geofence;
+import org.matatu.tracker.model.MatatuSnapshot;
+import org.matatu.tracker.model.MatatuStateOutput;
+import org.matatu.tracker.partitioning.RoutePartitioner;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+class FleetSnapshotProcessorTest {
+
+    private static final Instant T0 = Instant.parse("2026-02-23T07:00:00Z");
+    private static final String INPUT = "matatu-state-outputs";
+
+    private static final Geofence KENCOM = stage("kencom", "Kencom", -1.2860, 36.8240);
+    private static final Geofence ODEON = stage("odeon", "Odeon", -1.2830, 36.8260);
+
+    private TopologyTestDriver driver;
+    private TestInputTopic<String, MatatuSnapshot> snapshots;
+    private TestOutputTopic<String, FleetSnapshot> fleet;
+
+    @AfterEach
+    void tearDown() {
+        driver.close();
+    }
+
+    @Test
+    void sendsNewestSnapshotPerVehicleThenOnlyChanges() {
+        start(Grouping.ROUTE);
+
+        snapshot("KBZ 123A", -1.2921, T0);
+        snapshot("KBZ 123A", -1.2911, T0.plusSeconds(1));
+        snapshot("KCA 456B", -1.3000, T0.plusSeconds(1));
+        snapshot("KBZ 123A", -1.2901, T0.plusSeconds(2));
+        tick();
+
+        List<FleetSnapshot> first = fleet.readValuesToList();
+        assertThat(first).hasSize(1);
+        assertThat(first.getFirst().group()).isEqualTo("route_33");
+        assertThat(first.getFirst().full()).isTrue(); // a new processor starts with a keyframe
+        assertThat(first.getFirst().vehicles())
+                .extracting(MatatuSnapshot::matatuId, MatatuSnapshot::latitude)
+                .containsExactly(tuple("KBZ 123A", -1.2901), tuple("KCA 456B", -1.3000));
+
+        snapshot("KBZ 123A", -1.2891, T0.plusSeconds(4));
+        tick();
+        List<FleetSnapshot> diff = fleet.readValuesToList();
+        assertThat(diff).hasSize(1);
+        assertThat(diff.getFirst().full()).isFalse();
+        assertThat(diff.getFirst().vehicles())
+                .extracting(MatatuSnapshot::matatuId)
+                .containsExactly("KBZ 123A");
+
+        tick();
+        assertThat(fleet.isEmpty()).isTrue(); // nothing changed, nothing sent
+
+        snapshot("KCA 456B", -1.3000, T0.plusSeconds(10), true); // went off-grid
+        tick();
+        assertThat(fleet.readValuesToList().getFirst().removed()).containsExactly("KCA 456B");
+    }
+
+    @Test
+    void staleVehiclesAreRemovedAndKeyframesRepeat() {
+        start(Grouping.ROUTE);
+
+        snapshot("KBZ 123A", -1.2921, T0);
+        tick();
+        fleet.readValuesToList();
+
+        driver.advanceWallClockTime(Duration.ofSeconds(121));
+        List<FleetSnapshot> afterSilence = fleet.readValuesToList();
+        assertThat(afterSilence).hasSize(1);
+        assertThat(afterSilence.getFirst().full()).isTrue(); // more than 30 s since the keyframe
+        assertThat(afterSilence.getFirst().vehicles()).isEmpty();
+        assertThat(afterSilence.getFirst().removed()).containsExactly("KBZ 123A");
+    }
+
+    @Test
+    void stageGroupingMovesVehiclesBetweenStageBoards() {
+        start(Grouping.STAGE);
+
+        snapshot("KBZ 123A", KENCOM, T0);
+        snapshot("KDD 789C", -1.3500, T0); // between stages: on no board
+        tick();
+        assertThat(fleet.readKeyValuesToList())
+                .singleElement()
+                .satisfies(kv -> assertThat(kv.key).isEqualTo("Kencom"));
+
+        snapshot("KBZ 123A", ODEON, T0.plusSeconds(60));
+        tick();
+        var moved = fleet.readKeyValuesToList();
+        assertThat(moved).hasSize(2);
+        assertThat(moved)
+                .filteredOn(kv -> kv.key.equals("Kencom"))
+                .singleElement()
+                .satisfies(kv -> assertThat(kv.value.removed()).containsExactly("KBZ 123A"));
+        assertThat(moved)
+                .filteredOn(kv -> kv.key.equals("Odeon"))
+                .singleElement()
+                .satisfies(kv -> assertThat(kv.value.vehicles()).hasSize(1));
+    }
+
+    /** 100 matatus on 10 routes reporting every second for two minutes, refreshed every 3 s. */
+    @Test
+    void downstreamWorkFollowsRefreshRateNotPingRate() {
+        start(Grouping.ROUTE);
+
+        int matatus = 100;
+        int seconds = 120;
+        long pings = 0;
+        for (int s = 0; s < seconds; s++) {
+            for (int m = 0; m < matatus; m++) {
+                snapshots.pipeInput(
+                        "KM " + m,
+                        vehicle(
+                                "KM " + m,
+                                "route_" + (m % 10),
+                                -1.29 + s * 1e-4,
+                                T0.plusSeconds(s)),
+                        T0.plusSeconds(s));
+                pings++;
+            }
+            driver.advanceWallClockTime(Duration.ofSeconds(1));
+        }
+
+        List<FleetSnapshot> batches = fleet.readValuesToList();
+        long vehicleUpdates = batches.stream().mapToLong(b -> b.vehicles().size()).sum();
+        // 40 ticks × 100 vehicles; a ping rate ten times higher would not change it.
+        assertThat(vehicleUpdates).as("updates from %d pings", pings).isBetween(3_900L, 4_100L);
+        assertThat(batches).hasSizeBetween(390, 410);
+    }
+
+    private void start(Grouping grouping) {
+        var properties = new MatatuTrackerProperties();
+        properties.getFleetSnapshots().setGrouping(grouping);
+        GeofenceIndex stages = GeofenceIndex.build(List.of(KENCOM, ODEON));
+        var registry =
+                new GeofenceRegistry() {
+                    @Override
+                    public GeofenceIndex current() {
+                        return stages;
+                    }
+                };
+
+        var builder = new StreamsBuilder();
+        KStream<String, MatatuStateOutput> outputs =
+                builder.stream(
+                                INPUT,
+                                Consumed.with(
+                                        Serdes.String(),
+                                        new JacksonJsonSerde<>(MatatuSnapshot.class)))
+                        .mapValues(snapshot -> (MatatuStateOutput) snapshot);
+        new FleetSnapshotStream(properties, registry, new RoutePartitioner(properties))
+                .fleetSnapshots(outputs);
+
+        var config = new Properties();
+        config.put(StreamsConfig.APPLICATION_ID_CONFIG, "fleet-snapshot-test");
+        config.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        driver = new TopologyTestDriver(builder.build(), config, T0);
+        snapshots =
+                driver.createInputTopic(
+                        INPUT,
+                        new StringSerializer(),
+                        new JacksonJsonSerde<>(MatatuSnapshot.class).serializer());
+        fleet =
+                driver.createOutputTopic(
+                        Topics.MATATU_FLEET_SNAPSHOTS,
+                        new StringDeserializer(),
+                        new JacksonJsonSerde<>(FleetSnapshot.class).deserializer());
+    }
+
+    private void tick() {
+        driver.advanceWallClockTime(Duration.ofSeconds(3));
+    }
+
+    private void snapshot(String matatuId, double latitude, Instant at) {
+        snapshot(matatuId, latitude, at, false);
+    }
+
+    private void snapshot(String matatuId, double latitude, Instant at, boolean offGrid) {
+        snapshots.pipeInput(
+                matatuId,
+                new MatatuSnapshot(
+                        matatuId,
+                        "route_33",
+                        "Route 33",
+                        latitude,
+                        36.8219,
+                        30,
+                        0,
+                        12,
+                        at,
+                        offGrid),
+                at);
+    }
+
+    private void snapshot(String matatuId, Geofence at, Instant when) {
+        var vertex = at.boundary().getFirst();
+        snapshots.pipeInput(
+                matatuId,
+                new MatatuSnapshot(
+                        matatuId,
+                        "route_33",
+                        "Route 33",
+                        vertex.latitude() + 0.0005,
+                        vertex.longitude() + 0.0005,
+                        10,
+                        0,
+                        12,
+                        when,
+                        false),
+                when);
+    }
+
+    private static MatatuSnapshot vehicle(
+            String matatuId, String routeId, double latitude, Instant at) {
+        return new MatatuSnapshot(
+                matatuId, routeId, routeId, latitude, 36.8219, 30, 0, 12, at, false);
+    }
+
+    private static Geofence stage(String id, String name, double lat, double lon) {
+        return new Geofence(
+                id,
+                Geofence.Type.STAGE,
+                name,
+                List.of(
+                        new Geofence.Vertex(lat, lon),
+                        new Geofence.Vertex(lat, lon + 0.001),
+                        new Geofence.Vertex(lat + 0.001, lon + 0.001),
+                        new Geofence.Vertex(lat + 0.001, lon)));
+    }
+}
@@ -0,0 +1,138 @@
+package org.matatu.tracker.streams;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.encoding.LocationSerdes;
+import org.matatu.tracker.geo.GeofenceIndex;
+import org.matatu.tracker.geo.GeofenceRegistry;
+import org.matatu.tracker.model.Geofence;
+import org.matatu.tracker.model.GeofenceEvent;
+import org.matatu.tracker.model.GeofenceEvent.Transition;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+class GeofenceProcessorTest {
+
+    private static final Instant T0 = Instant.parse("2026-02-23T07:00:00Z");
+    private static final double LAT = -1.2860, LON = 36.8240;
+
+    private static final Geofence KENCOM =
+            new Geofence(
+                    "kencom",
+                    Geofence.Type.STAGE,
+                    "Kencom",
+                    List.of(
+                            new Geofence.Vertex(LAT - 0.001, LON - 0.001),
+                            new Geofence.Vertex(LAT - 0.001, LON + 0.001),
+                            new Geofence.Vertex(LAT + 0.001, LON + 0.001),
+                            new Geofence.Vertex(LAT + 0.001, LON - 0.001)));
+
+    /** What a restarted instance sees: an empty index until the replay completes. */
+    private final AtomicBoolean loaded = new AtomicBoolean(true);
+
+    private Path stateDir;
+    private TopologyTestDriver driver;
+    private TestInputTopic<String, LocationEvent> pings;
+    private TestOutputTopic<String, GeofenceEvent> events;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stateDir = Files.createTempDirectory("geofence-test");
+        var properties = new MatatuTrackerProperties();
+        GeofenceIndex stages = GeofenceIndex.build(List.of(KENCOM));
+        var registry =
+                new GeofenceRegistry() {
+                    @Override
+                    public GeofenceIndex current() {
+                        return loaded.get() ? stages : GeofenceIndex.EMPTY;
+                    }
+
+                    @Override
+                    public boolean loaded() {
+                        return loaded.get();
+                    }
+                };
+
+        var builder = new StreamsBuilder();
+        var geofences = new GeofenceStream(properties, registry, LocationSerdes.json());
+        geofences.geofenceEvents(builder, geofences.locationsByMatatu(builder));
+
+        var config = new Properties();
+        config.put(StreamsConfig.APPLICATION_ID_CONFIG, "geofence-test");
+        config.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        config.put(StreamsConfig.STATE_DIR_CONFIG, stateDir.toString());
+        config.put(
+                StreamsConfig.DEFAULT_TIMESTAMP_EXTRACTOR_CLASS_CONFIG,
+                EventTimestampExtractor.class);
+        driver = new TopologyTestDriver(builder.build(), config, T0);
+        pings =
+                driver.createInputTopic(
+                        Topics.MATATU_LOCATION,
+                        new StringSerializer(),
+                        new JacksonJsonSerde<>(LocationEvent.class).serializer());
+        events =
+                driver.createOutputTopic(
+                        Topics.MATATU_GEOFENCE_EVENTS,
+                        new StringDeserializer(),
+                        new JacksonJsonSerde<>(GeofenceEvent.class).deserializer());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        driver.close();
+        try (var files = Files.walk(stateDir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void enterThenExitWhenTheMatatuLeaves() {
+        ping(LAT, LON, T0);
+        ping(LAT + 0.01, LON, T0.plusSeconds(30));
+
+        assertThat(events.readValuesToList())
+                .extracting(GeofenceEvent::transition)
+                .containsExactly(Transition.ENTER, Transition.EXIT);
+    }
+
+    @Test
+    void pingsBeforeTheRegistryHasLoadedNeitherExitNorReEnter() {
+        ping(LAT, LON, T0);
+        assertThat(events.readValuesToList())
+                .extracting(GeofenceEvent::transition)
+                .containsExactly(Transition.ENTER);
+
+        // Restart: the stored membership is back, the geofences are still replaying.
+        loaded.set(false);
+        ping(LAT, LON, T0.plusSeconds(10));
+        loaded.set(true);
+        ping(LAT, LON, T0.plusSeconds(20));
+
+        assertThat(events.readValuesToList()).isEmpty();
+    }
+
+    private void ping(double lat, double lon, Instant at) {
+        pings.pipeInput(
+                "route_33",
+                new LocationEvent("KBZ 123A", "route_33", "Route 33", lat, lon, 20, 10, at));
+    }
+}
@@ -0,0 +1,138 @@
+package org.matatu.tracker.streams;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.encoding.LocationSerdes;
+import org.matatu.tracker.geo.GeoHash;
+import org.matatu.tracker.model.HeatmapCell;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+class HeatmapProcessorTest {
+
+    private static final Instant T0 = Instant.parse("2026-02-23T07:00:00Z");
+    private static final double KENCOM_LAT = -1.2860, KENCOM_LON = 36.8240;
+    private static final double WESTLANDS_LAT = -1.2676, WESTLANDS_LON = 36.8108;
+
+    private Path stateDir;
+    private TopologyTestDriver driver;
+    private TestInputTopic<String, LocationEvent> pings;
+    private TestOutputTopic<String, HeatmapCell> cells;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stateDir = Files.createTempDirectory("heatmap-test");
+        var properties = new MatatuTrackerProperties();
+        properties.getHeatmap().setPrecisions(List.of(6));
+        properties.getHeatmap().setWindowMinutes(5);
+        properties.getHeatmap().setEmitIntervalMs(5000);
+
+        var builder = new StreamsBuilder();
+        new HeatmapStream(properties, LocationSerdes.json()).heatmapKStream(builder);
+
+        var config = new Properties();
+        config.put(StreamsConfig.APPLICATION_ID_CONFIG, "heatmap-test");
+        config.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        config.put(StreamsConfig.STATE_DIR_CONFIG, stateDir.toString());
+        config.put(
+                StreamsConfig.DEFAULT_TIMESTAMP_EXTRACTOR_CLASS_CONFIG,
+                EventTimestampExtractor.class);
+        driver = new TopologyTestDriver(builder.build(), config, T0);
+        pings =
+                driver.createInputTopic(
+                        Topics.MATATU_LOCATION,
+                        new StringSerializer(),
+                        new JacksonJsonSerde<>(LocationEvent.class).serializer());
+        cells =
+                driver.createOutputTopic(
+                        Topics.MATATU_HEATMAP_CELLS,
+                        new StringDeserializer(),
+                        new JacksonJsonSerde<>(HeatmapCell.class).deserializer());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        driver.close();
+        try (var files = Files.walk(stateDir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void aggregatesPerCellAndWindowAndEmitsOnlyOnFlush() {
+        ping(KENCOM_LAT, KENCOM_LON, 20, T0.plusSeconds(60));
+        ping(KENCOM_LAT, KENCOM_LON, 40, T0.plusSeconds(120));
+        ping(WESTLANDS_LAT, WESTLANDS_LON, 10, T0.plusSeconds(180));
+        assertThat(cells.isEmpty()).isTrue();
+
+        driver.advanceWallClockTime(Duration.ofSeconds(5));
+
+        List<HeatmapCell> flushed = cells.readValuesToList();
+        assertThat(flushed).hasSize(2);
+        HeatmapCell kencom = cellAt(flushed, KENCOM_LAT, KENCOM_LON);
+        assertThat(kencom.pingCount()).isEqualTo(2);
+        assertThat(kencom.avgSpeedKmh()).isEqualTo(30);
+        assertThat(kencom.precision()).isEqualTo(6);
+        assertThat(kencom.windowStart()).isEqualTo(T0);
+        assertThat(cellAt(flushed, WESTLANDS_LAT, WESTLANDS_LON).pingCount()).isEqualTo(1);
+    }
+
+    @Test
+    void flushEmitsOnlyCellsTouchedSinceTheLastOne() {
+        ping(KENCOM_LAT, KENCOM_LON, 20, T0.plusSeconds(60));
+        ping(WESTLANDS_LAT, WESTLANDS_LON, 10, T0.plusSeconds(70));
+        driver.advanceWallClockTime(Duration.ofSeconds(5));
+        cells.readValuesToList();
+
+        ping(KENCOM_LAT, KENCOM_LON, 40, T0.plusSeconds(90));
+        driver.advanceWallClockTime(Duration.ofSeconds(5));
+        List<HeatmapCell> second = cells.readValuesToList();
+        driver.advanceWallClockTime(Duration.ofSeconds(5));
+
+        assertThat(second).singleElement().extracting(HeatmapCell::pingCount).isEqualTo(2L);
+        assertThat(cells.isEmpty()).isTrue();
+    }
+
+    @Test
+    void oneCellTouchedInTwoWindowsEmitsBoth() {
+        ping(KENCOM_LAT, KENCOM_LON, 20, T0.plusSeconds(420)); // 07:05 window
+        ping(KENCOM_LAT, KENCOM_LON, 40, T0.plusSeconds(60)); // late: 07:00 window
+
+        driver.advanceWallClockTime(Duration.ofSeconds(5));
+
+        assertThat(cells.readValuesToList())
+                .extracting(HeatmapCell::windowStart, HeatmapCell::pingCount)
+                .containsExactly(tuple(T0.plusSeconds(300), 1L), tuple(T0, 1L));
+    }
+
+    private static HeatmapCell cellAt(List<HeatmapCell> flushed, double lat, double lon) {
+        String geohash = GeoHash.encode(lat, lon, 6);
+        return flushed.stream().filter(c -> c.geohash().equals(geohash)).findFirst().orElseThrow();
+    }
+
+    private void ping(double lat, double lon, double speedKmh, Instant at) {
+        pings.pipeInput(
+                "route_33",
+                new LocationEvent("KBZ 123A", "route_33", "Route 33", lat, lon, speedKmh, 10, at));
+    }
+}
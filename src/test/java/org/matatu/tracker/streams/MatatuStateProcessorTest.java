@@ -0,0 +1,472 @@
+package org.matatu.tracker.streams;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.function.Function;
+
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Named;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+import org.apache.kafka.streams.test.TestRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.encoding.LocationSerdes;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.model.MatatuKinematics;
+import org.matatu.tracker.model.MatatuSnapshot;
+import org.matatu.tracker.model.MatatuState;
+import org.matatu.tracker.model.OffGridAlert;
+import org.matatu.tracker.model.RouteOccupancy;
+import org.matatu.tracker.model.SpeedingEpisode;
+import org.matatu.tracker.partitioning.RoutePartitioner;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class MatatuStateProcessorTest {
+
+    private static final Instant T0 = Instant.parse("2026-02-23T07:00:00Z");
+
+    private TopologyTestDriver driver;
+    private TestInputTopic<String, LocationEvent> locations;
+
+    @BeforeEach
+    void setUp() {
+        var properties = new MatatuTrackerProperties();
+        properties.getStreams().setOffgridSilenceMs(300_000);
+        properties.getStreams().setOffgridCheckIntervalMs(60_000);
+
+        var builder = new StreamsBuilder();
+        var stream = new MatatuStateStream(properties, LocationSerdes.json());
+        var outputs = stream.matatuStateOutputs(builder);
+        new PassengerCountStream(properties, new RoutePartitioner(properties))
+                .routeOccupancyTable(stream.matatuDeltaStream(outputs));
+        new SpeedAlertStream(properties).speedAlertStream(outputs);
+
+        var config = new Properties();
+        config.put(StreamsConfig.APPLICATION_ID_CONFIG, "matatu-state-test");
+        config.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        driver = new TopologyTestDriver(builder.build(), config, T0);
+        locations =
+                driver.createInputTopic(
+                        Topics.MATATU_LOCATION,
+                        new StringSerializer(),
+                        new JacksonJsonSerde<>(LocationEvent.class).serializer());
+    }
+
+    @AfterEach
+    void tearDown() {
+        driver.close();
+    }
+
+    @Test
+    void eachPingUpdatesOneStoreEntryAndFeedsOccupancy() {
+        ping(-1.2921, 36.8219, 10, T0);
+        ping(-1.2921, 36.8219, 14, T0.plusSeconds(3));
+        ping(-1.2921, 36.8219, 9, T0.plusSeconds(6));
+
+        KeyValueStore<String, MatatuState> store =
+                driver.getKeyValueStore(MatatuStateStream.MATATU_STATE_STORE);
+        assertThat(store.get("KBZ 123A").lastPassengerCount()).isEqualTo(9);
+
+        var occupancy =
+                driver.createOutputTopic(
+                                Topics.MATATU_ROUTE_OCCUPANCY,
+                                new StringDeserializer(),
+                                new JacksonJsonSerde<>(RouteOccupancy.class).deserializer())
+                        .readValuesToList();
+        assertThat(occupancy.getLast().currentPassengers()).isEqualTo(9);
+        assertThat(occupancy.getLast().totalBoardings()).isEqualTo(14);
+        assertThat(occupancy.getLast().totalAlightings()).isEqualTo(5);
+    }
+
+    @Test
+    void derivesSpeedAndHeadingFromConsecutiveFixes() {
+        ping(-1.2921, 36.8219, 10, T0);
+        // 0.005° due north ≈ 553 m in 60 s ≈ 33 km/h
+        ping(-1.2871, 36.8219, 10, T0.plusSeconds(60));
+
+        var kinematics =
+                driver.createOutputTopic(
+                                Topics.MATATU_KINEMATICS,
+                                new StringDeserializer(),
+                                new JacksonJsonSerde<>(MatatuKinematics.class).deserializer())
+                        .readValuesToList();
+
+        assertThat(kinematics).hasSize(1);
+        assertThat(kinematics.getFirst().derivedSpeedKmh()).isCloseTo(33.2, within(0.5));
+        assertThat(kinematics.getFirst().headingDegrees()).isCloseTo(0.0, within(0.5));
+        assertThat(kinematics.getFirst().intervalMs()).isEqualTo(60_000);
+    }
+
+    @Test
+    void raisesOffGridOncePerSilenceEpisode() {
+        var alerts =
+                driver.createOutputTopic(
+                        Topics.MATATU_OFFGRID_ALERTS,
+                        new StringDeserializer(),
+                        new JacksonJsonSerde<>(OffGridAlert.class).deserializer());
+
+        ping(-1.2921, 36.8219, 10, T0);
+        driver.advanceWallClockTime(Duration.ofMinutes(6));
+        driver.advanceWallClockTime(Duration.ofMinutes(1));
+        driver.advanceWallClockTime(Duration.ofMinutes(1));
+        assertThat(alerts.readValuesToList()).hasSize(1);
+
+        // Back online clears the episode; the next silence alerts again.
+        ping(-1.2921, 36.8219, 10, T0.plus(Duration.ofMinutes(8)));
+        driver.advanceWallClockTime(Duration.ofMinutes(6));
+        assertThat(alerts.readValuesToList()).hasSize(1);
+    }
+
+    @Test
+    void latestPositionOnlyMovesForwardAndMarksOffGrid() {
+        var positions =
+                driver.createOutputTopic(
+                        Topics.MATATU_LATEST_POSITIONS,
+                        new StringDeserializer(),
+                        new JacksonJsonSerde<>(MatatuSnapshot.class).deserializer());
+
+        ping(-1.2921, 36.8219, 10, T0);
+        ping(-1.2871, 36.8219, 12, T0.plusSeconds(60));
+        ping(-1.3000, 36.8219, 11, T0.plusSeconds(30)); // late: must not move the matatu back
+        driver.advanceWallClockTime(Duration.ofMinutes(7));
+
+        var snapshots = positions.readKeyValuesToList();
+        assertThat(snapshots).hasSize(3);
+        assertThat(snapshots).allMatch(kv -> kv.key.equals("KBZ 123A"));
+        assertThat(snapshots.get(1).value.latitude()).isEqualTo(-1.2871);
+        assertThat(snapshots.get(1).value.speedKmh()).isCloseTo(33.2, within(0.5));
+        assertThat(snapshots.get(2).value.offGrid()).isTrue();
+        assertThat(snapshots.get(2).value.timestamp()).isEqualTo(T0.plusSeconds(60));
+    }
+
+    @Test
+    void sustainedSpeedingIsOneEpisode() {
+        // Ten minutes at 85 km/h, one ping every 3 s, ~71 m apart.
+        for (int i = 0; i < 200; i++) {
+            speedPing("KBZ 123A", -1.2921 + i * 0.00064, 85, T0.plusSeconds(i * 3L));
+        }
+        speedPing("KBZ 123A", -1.1640, 60, T0.plusSeconds(600));
+        assertThat(speedAlerts().isEmpty()).isTrue(); // one slow ping is not yet a recovery
+        speedPing("KBZ 123A", -1.1630, 50, T0.plusSeconds(603));
+
+        var episodes = speedAlerts().readValuesToList();
+        assertThat(episodes).hasSize(1);
+        SpeedingEpisode episode = episodes.getFirst();
+        assertThat(episode.pings()).isEqualTo(200);
+        assertThat(episode.durationSeconds()).isEqualTo(597);
+        assertThat(episode.maxSpeedKmh()).isEqualTo(85);
+        assertThat(episode.pathMetres()).isCloseTo(199 * 71.2, within(199 * 0.5));
+        assertThat(episode.closedBy()).isEqualTo(SpeedingEpisode.ClosedBy.RECOVERED);
+    }
+
+    @Test
+    void briefBurstsAndSingleDipsDoNotCreateOrSplitEpisodes() {
+        speedPing("KBZ 123A", -1.2921, 88, T0);
+        speedPing("KBZ 123A", -1.2920, 90, T0.plusSeconds(3)); // overtaking
+        speedPing("KBZ 123A", -1.2919, 50, T0.plusSeconds(6));
+        assertThat(speedAlerts().isEmpty()).isTrue();
+
+        speedPing("KBZ 123A", -1.2918, 84, T0.plusSeconds(9));
+        speedPing("KBZ 123A", -1.2917, 86, T0.plusSeconds(12));
+        speedPing("KBZ 123A", -1.2916, 85, T0.plusSeconds(15));
+        speedPing("KBZ 123A", -1.2915, 78, T0.plusSeconds(18)); // one dip
+        speedPing("KBZ 123A", -1.2914, 92, T0.plusSeconds(21));
+        speedPing("KBZ 123A", -1.2913, 40, T0.plusSeconds(24));
+        speedPing("KBZ 123A", -1.2912, 40, T0.plusSeconds(27));
+
+        var episodes = speedAlerts().readValuesToList();
+        assertThat(episodes).hasSize(1);
+        assertThat(episodes.getFirst().pings()).isEqualTo(4);
+        assertThat(episodes.getFirst().avgSpeedKmh()).isCloseTo(86.75, within(0.01));
+        // Four legs of ~11.1 m from the first to the last fast fix, the dip included.
+        assertThat(episodes.getFirst().pathMetres()).isCloseTo(4 * 11.12, within(0.5));
+    }
+
+    @Test
+    void openEpisodeIsClosedWhenTheMatatuGoesOffGrid() {
+        for (int i = 0; i < 5; i++) {
+            speedPing("KBZ 123A", -1.2921, 95, T0.plusSeconds(i * 3L));
+        }
+        driver.advanceWallClockTime(Duration.ofMinutes(7));
+
+        var episodes = speedAlerts().readValuesToList();
+        assertThat(episodes).hasSize(1);
+        assertThat(episodes.getFirst().closedBy()).isEqualTo(SpeedingEpisode.ClosedBy.OFF_GRID);
+    }
+
+    @Test
+    void simulatedFleetRaisesAFractionOfThePerPingAlerts() {
+        // The simulator's traffic: six matatus, a ping every 3 s, speed uniform in 20–90 km/h.
+        Random random = new Random(42);
+        String[] fleet = {"KBZ 123A", "KDA 456B", "KCX 789C", "KDF 321D", "KCB 654E", "KDG 987F"};
+        long perPingAlerts = 0;
+        for (int tick = 0; tick < 300; tick++) {
+            for (String matatuId : fleet) {
+                double speed = random.nextDouble(20, 90);
+                perPingAlerts += (speed > 80) ? 1 : 0;
+                speedPing(matatuId, -1.2921, speed, T0.plusSeconds(tick * 3L));
+            }
+        }
+        long randomEpisodes = speedAlerts().readValuesToList().size();
+
+        // Plus one matatu holding 85 km/h for ten minutes, as on the Waiyaki Way stretch.
+        Instant later = T0.plusSeconds(3_600);
+        for (int i = 0; i < 200; i++) {
+            speedPing("KBZ 123A", -1.2921 + i * 0.00064, 85, later.plusSeconds(i * 3L));
+        }
+        speedPing("KBZ 123A", -1.1640, 40, later.plusSeconds(600));
+        speedPing("KBZ 123A", -1.1630, 40, later.plusSeconds(603));
+        long sustainedEpisodes = speedAlerts().readValuesToList().size();
+
+        assertThat(randomEpisodes)
+                .as("episodes from %d per-ping alerts", perPingAlerts)
+                .isLessThan(perPingAlerts / 10);
+        assertThat(sustainedEpisodes).isEqualTo(1);
+    }
+
+    /**
+     * 20,000 pings from 50 matatus through {@code matatu-state-store} and through the layout it
+     * replaced: a passenger snapshot store and a last-seen store, each written on every ping.
+     * Caching is off, so every put reaches the changelog.
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmarkConsolidatedStoreAgainstTheTwoStoreLayout() {
+        Random random = new Random(31);
+        List<LocationEvent> pings = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            int m = i % 50;
+            Instant at = T0.plusSeconds((i / 50) * 3L);
+            pings.add(
+                    new LocationEvent(
+                            "KM " + m,
+                            "route_" + (100 + m % 10),
+                            "Route " + (100 + m % 10),
+                            -1.2921 + random.nextGaussian() * 0.05,
+                            36.8219 + random.nextGaussian() * 0.05,
+                            random.nextDouble(20, 90),
+                            random.nextInt(34),
+                            at));
+        }
+
+        var twoStores = new StreamsBuilder();
+        KStream<String, LocationEvent> byMatatu =
+                twoStores.stream(
+                                Topics.MATATU_LOCATION,
+                                Consumed.with(
+                                        Serdes.String(),
+                                        new JacksonJsonSerde<>(LocationEvent.class)))
+                        .selectKey((routeId, event) -> event.matatuId());
+        putOnEveryPing(
+                twoStores,
+                byMatatu,
+                "matatu-snapshot-store",
+                PassengerSnapshot.class,
+                event ->
+                        new PassengerSnapshot(
+                                event.matatuId(),
+                                event.routeId(),
+                                event.passengersOnboard(),
+                                event.timestamp()));
+        putOnEveryPing(
+                twoStores,
+                byMatatu,
+                "matatu-last-seen-store",
+                LastSeen.class,
+                event ->
+                        new LastSeen(
+                                event.matatuId(),
+                                event.routeId(),
+                                event.routeName(),
+                                event.latitude(),
+                                event.longitude(),
+                                event.timestamp()));
+        Changelogs before =
+                changelogs(
+                        twoStores,
+                        pings,
+                        Map.of(
+                                "matatu-snapshot-store", PassengerSnapshot.class,
+                                "matatu-last-seen-store", LastSeen.class));
+
+        var consolidated = new StreamsBuilder();
+        var properties = new MatatuTrackerProperties();
+        new MatatuStateStream(properties, LocationSerdes.json()).matatuStateOutputs(consolidated);
+        Changelogs after =
+                changelogs(
+                        consolidated,
+                        pings,
+                        Map.of(MatatuStateStream.MATATU_STATE_STORE, MatatuState.class));
+
+        log.info(
+                "[BENCH] {} pings, {} matatus, caching off — snapshot + last-seen stores: {} puts,"
+                        + " {} changelog bytes, replay {} ms | matatu-state-store: {} puts, {}"
+                        + " changelog bytes, replay {} ms",
+                pings.size(),
+                50,
+                before.records(),
+                before.bytes(),
+                before.replayMs(),
+                after.records(),
+                after.bytes(),
+                after.replayMs());
+        assertThat(before.records()).isEqualTo(2L * pings.size());
+        assertThat(after.records()).isEqualTo(pings.size());
+    }
+
+    /** What one layout wrote to its changelogs, and how long reading them back into a map took. */
+    private record Changelogs(long records, long bytes, long replayMs) {}
+
+    // The values the two replaced stores held.
+    private record PassengerSnapshot(
+            String matatuId, String routeId, int lastPassengerCount, Instant lastUpdated) {}
+
+    private record LastSeen(
+            String matatuId,
+            String routeId,
+            String routeName,
+            double lastLatitude,
+            double lastLongitude,
+            Instant lastSeenAt) {}
+
+    private static <V> void putOnEveryPing(
+            StreamsBuilder builder,
+            KStream<String, LocationEvent> byMatatu,
+            String storeName,
+            Class<V> type,
+            Function<LocationEvent, V> value) {
+        builder.addStateStore(
+                Stores.keyValueStoreBuilder(
+                        Stores.persistentKeyValueStore(storeName),
+                        Serdes.String(),
+                        new JacksonJsonSerde<>(type)));
+        byMatatu.process(
+                () ->
+                        new Processor<String, LocationEvent, Void, Void>() {
+                            private KeyValueStore<String, V> store;
+
+                            @Override
+                            public void init(ProcessorContext<Void, Void> context) {
+                                store = context.getStateStore(storeName);
+                            }
+
+                            @Override
+                            public void process(Record<String, LocationEvent> record) {
+                                store.put(record.key(), value.apply(record.value()));
+                            }
+                        },
+                Named.as(storeName + "-writer"),
+                storeName);
+    }
+
+    /**
+     * Pipes the pings through the topology with caching off, then reads each store's changelog and
+     * replays it: deserialise every value and put it into a map, as a restore does.
+     */
+    private static Changelogs changelogs(
+            StreamsBuilder builder, List<LocationEvent> pings, Map<String, Class<?>> stores) {
+        var config = new Properties();
+        config.put(StreamsConfig.APPLICATION_ID_CONFIG, "layout-bench");
+        config.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        config.put(StreamsConfig.STATESTORE_CACHE_MAX_BYTES_CONFIG, 0);
+        Map<String, List<TestRecord<byte[], byte[]>>> written = new HashMap<>();
+        try (var driver = new TopologyTestDriver(builder.build(), config, T0)) {
+            var input =
+                    driver.createInputTopic(
+                            Topics.MATATU_LOCATION,
+                            new StringSerializer(),
+                            new JacksonJsonSerde<>(LocationEvent.class).serializer());
+            for (LocationEvent ping : pings) {
+                input.pipeInput(ping.routeId(), ping, ping.timestamp());
+            }
+            for (String store : stores.keySet()) {
+                written.put(
+                        store,
+                        driver.createOutputTopic(
+                                        "layout-bench-" + store + "-changelog",
+                                        new ByteArrayDeserializer(),
+                                        new ByteArrayDeserializer())
+                                .readRecordsToList());
+            }
+        }
+
+        long records = 0;
+        long bytes = 0;
+        for (List<TestRecord<byte[], byte[]>> changelog : written.values()) {
+            records += changelog.size();
+            for (TestRecord<byte[], byte[]> record : changelog) {
+                bytes += record.key().length + record.value().length;
+            }
+        }
+        replay(written, stores); // warm-up
+        long started = System.nanoTime();
+        replay(written, stores);
+        return new Changelogs(records, bytes, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private static void replay(
+            Map<String, List<TestRecord<byte[], byte[]>>> written, Map<String, Class<?>> stores) {
+        for (var changelog : written.entrySet()) {
+            var values = new JacksonJsonSerde<>(stores.get(changelog.getKey())).deserializer();
+            Map<String, Object> restored = new HashMap<>();
+            for (TestRecord<byte[], byte[]> record : changelog.getValue()) {
+                restored.put(
+                        new String(record.key(), StandardCharsets.UTF_8),
+                        values.deserialize(changelog.getKey(), record.value()));
+            }
+            assertThat(restored).hasSize(50);
+        }
+    }
+
+    private TestOutputTopic<String, SpeedingEpisode> speedAlerts() {
+        return driver.createOutputTopic(
+                Topics.MATATU_SPEED_ALERTS,
+                new StringDeserializer(),
+                new JacksonJsonSerde<>(SpeedingEpisode.class).deserializer());
+    }
+
+    private void ping(double lat, double lon, int passengers, Instant at) {
+        locations.pipeInput(
+                "route_33",
+                new LocationEvent("KBZ 123A", "route_33", "Route 33", lat, lon, 30, passengers, at),
+                at);
+    }
+
+    private void speedPing(String matatuId, double lat, double speedKmh, Instant at) {
+        locations.pipeInput(
+                "route_33",
+                new LocationEvent(matatuId, "route_33", "Route 33", lat, 36.8219, speedKmh, 12, at),
+                at);
+    }
+}
@@ -0,0 +1,119 @@
+package org.matatu.tracker.streams;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.encoding.LocationSerdes;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.model.RouteOccupancy;
+import org.matatu.tracker.partitioning.RoutePartitioner;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+class PassengerCountStreamTest {
+
+    private static final Instant T0 = Instant.parse("2026-02-23T07:00:00Z");
+
+    /** 24 matatus on route_33, 6 on route_46, 20 pings each with random boardings. */
+    @Test
+    void saltedHotRouteMergesToTheSameTotalsAsUnsalted() {
+        List<LocationEvent> pings = new ArrayList<>();
+        var random = new Random(33);
+        for (int round = 0; round < 20; round++) {
+            for (int m = 0; m < 30; m++) {
+                String routeId = (m < 24) ? "route_33" : "route_46";
+                pings.add(
+                        new LocationEvent(
+                                "KM " + m,
+                                routeId,
+                                routeId,
+                                -1.2921,
+                                36.8219,
+                                30,
+                                random.nextInt(34),
+                                T0.plusSeconds(round * 3L)));
+            }
+        }
+
+        Result plain = run(pings, List.of());
+        Result salted = run(pings, List.of("route_33"));
+
+        assertThat(salted.routes).isEqualTo(plain.routes);
+        assertThat(salted.routes.getFirst().key).isEqualTo("route_33");
+        assertThat(salted.routes.getFirst().value.totalBoardings()).isPositive();
+        assertThat(salted.partialKeys)
+                .contains("route_46")
+                .filteredOn(key -> key.startsWith("route_33#"))
+                .hasSize(4);
+        // Published totals are per route, never per salted sub-key.
+        assertThat(salted.publishedKeys).containsOnly("route_33", "route_46");
+    }
+
+    private record Result(
+            List<KeyValue<String, RouteOccupancy>> routes,
+            List<String> partialKeys,
+            List<String> publishedKeys) {}
+
+    private static Result run(List<LocationEvent> pings, List<String> hotRoutes) {
+        var properties = new MatatuTrackerProperties();
+        properties.getPartitioning().setHotRoutes(hotRoutes);
+        var partitioner = new RoutePartitioner(properties);
+
+        var builder = new StreamsBuilder();
+        var stream = new MatatuStateStream(properties, LocationSerdes.json());
+        var outputs = stream.matatuStateOutputs(builder);
+        new PassengerCountStream(properties, partitioner)
+                .routeOccupancyTable(stream.matatuDeltaStream(outputs));
+
+        var config = new Properties();
+        config.put(StreamsConfig.APPLICATION_ID_CONFIG, "passenger-count-test");
+        config.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        try (var driver = new TopologyTestDriver(builder.build(), config, T0)) {
+            var locations =
+                    driver.createInputTopic(
+                            Topics.MATATU_LOCATION,
+                            new StringSerializer(),
+                            new JacksonJsonSerde<>(LocationEvent.class).serializer());
+            var occupancy =
+                    driver.createOutputTopic(
+                            Topics.MATATU_ROUTE_OCCUPANCY,
+                            new StringDeserializer(),
+                            new JacksonJsonSerde<>(RouteOccupancy.class).deserializer());
+            for (LocationEvent ping : pings) {
+                locations.pipeInput(partitioner.keyFor(ping), ping, ping.timestamp());
+            }
+
+            KeyValueStore<String, RouteOccupancy> routes =
+                    driver.getKeyValueStore(PassengerCountStream.ROUTE_OCCUPANCY_STORE);
+            List<KeyValue<String, RouteOccupancy>> totals = new ArrayList<>();
+            try (var all = routes.all()) {
+                all.forEachRemaining(totals::add);
+            }
+            List<String> partialKeys = new ArrayList<>();
+            if (partitioner.salted()) {
+                KeyValueStore<String, RouteOccupancy> partials =
+                        driver.getKeyValueStore(PassengerCountStream.PARTIAL_OCCUPANCY_STORE);
+                try (var all = partials.all()) {
+                    all.forEachRemaining(entry -> partialKeys.add(entry.key));
+                }
+            }
+            List<String> published =
+                    occupancy.readKeyValuesToList().stream().map(kv -> kv.key).toList();
+            return new Result(totals, partialKeys, published);
+        }
+    }
+}
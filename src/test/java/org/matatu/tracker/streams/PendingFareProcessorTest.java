@@ -0,0 +1,180 @@
+package org.matatu.tracker.streams;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.groups.Tuple.tuple;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Properties;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.model.FareResolution;
+import org.matatu.tracker.model.PendingFare;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+class PendingFareProcessorTest {
+
+    private static final Instant T0 = Instant.parse("2026-02-23T07:00:00Z");
+    private static final Duration TIMEOUT = Duration.ofMinutes(3);
+
+    private final JacksonJsonSerde<FareEvent> fareSerde = new JacksonJsonSerde<>(FareEvent.class);
+    private final JacksonJsonSerde<FareResolution> resolutionSerde =
+            new JacksonJsonSerde<>(FareResolution.class);
+    private Path stateDir;
+    private TopologyTestDriver driver;
+    private TestInputTopic<String, FareEvent> fares;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stateDir = Files.createTempDirectory("pending-fare-test");
+        var properties = new MatatuTrackerProperties();
+        properties.getPendingFares().setTimeoutSeconds(TIMEOUT.toSeconds());
+        properties.getPendingFares().setCheckIntervalMs(1000);
+
+        var builder = new StreamsBuilder();
+        new PendingFareStream(properties)
+                .fareResolutionStream(
+                        builder,
+                        builder.stream(
+                                Topics.MATATU_FARES, Consumed.with(Serdes.String(), fareSerde)));
+
+        var config = new Properties();
+        config.put(StreamsConfig.APPLICATION_ID_CONFIG, "pending-fare-test");
+        config.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        config.put(StreamsConfig.STATE_DIR_CONFIG, stateDir.toString());
+        config.put(
+                StreamsConfig.DEFAULT_TIMESTAMP_EXTRACTOR_CLASS_CONFIG,
+                EventTimestampExtractor.class);
+        driver = new TopologyTestDriver(builder.build(), config, T0);
+        fares =
+                driver.createInputTopic(
+                        Topics.MATATU_FARES, new StringSerializer(), fareSerde.serializer());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        driver.close();
+        try (var files = Files.walk(stateDir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void confirmationResolvesThePendingFare() {
+        fares.pipeInput("KBZ 123A", fare("TX-1", FareEvent.PaymentStatus.PENDING, T0));
+        fares.pipeInput("KBZ 123A", fare("TX-2", FareEvent.PaymentStatus.PENDING, T0));
+        fares.pipeInput(
+                "KBZ 123A", fare("TX-1", FareEvent.PaymentStatus.SUCCESS, T0.plusSeconds(40)));
+        fares.pipeInput(
+                "KBZ 123A", fare("TX-2", FareEvent.PaymentStatus.FAILED, T0.plusSeconds(70)));
+        // Paid in cash — never pending, so there is nothing to resolve.
+        fares.pipeInput("KBZ 123A", fare("TX-3", FareEvent.PaymentStatus.SUCCESS, T0));
+        driver.advanceWallClockTime(TIMEOUT.multipliedBy(2));
+
+        var resolved = resolved().readValuesToList();
+        assertThat(resolved)
+                .extracting(FareResolution::transactionId, FareResolution::outcome)
+                .containsExactly(
+                        tuple("TX-1", FareResolution.Outcome.SUCCESS),
+                        tuple("TX-2", FareResolution.Outcome.FAILED));
+        assertThat(resolved.get(0).waitMs()).isEqualTo(40_000);
+        assertThat(timedOut().isEmpty()).isTrue();
+        assertThat(pendingCount()).isZero();
+    }
+
+    @Test
+    void unconfirmedFaresTimeOutInDeadlineOrder() {
+        fares.pipeInput(
+                "KBZ 123A", fare("TX-LATE", FareEvent.PaymentStatus.PENDING, T0.plusSeconds(60)));
+        fares.pipeInput("KCA 456B", fare("TX-EARLY", FareEvent.PaymentStatus.PENDING, T0));
+        fares.pipeInput(
+                "KBZ 123A",
+                fare("TX-FUTURE", FareEvent.PaymentStatus.PENDING, T0.plusSeconds(600)));
+
+        // Only TX-EARLY is due.
+        driver.advanceWallClockTime(TIMEOUT.plusSeconds(1));
+        assertThat(timedOut().readValuesToList())
+                .extracting(FareResolution::transactionId)
+                .containsExactly("TX-EARLY");
+
+        driver.advanceWallClockTime(Duration.ofSeconds(60));
+        var late = timedOut().readKeyValuesToList();
+        assertThat(late).hasSize(1);
+        assertThat(late.get(0).key).isEqualTo("KBZ 123A");
+        assertThat(late.get(0).value.outcome()).isEqualTo(FareResolution.Outcome.TIMED_OUT);
+
+        // A confirmation after the timeout has nothing left to resolve.
+        fares.pipeInput(
+                "KCA 456B", fare("TX-EARLY", FareEvent.PaymentStatus.SUCCESS, T0.plusSeconds(300)));
+        assertThat(resolved().isEmpty()).isTrue();
+        assertThat(pendingCount()).isEqualTo(1); // TX-FUTURE
+    }
+
+    @Test
+    void expiryKeysSortByDeadlineBeforeTransactionId() {
+        var earlier = PendingFareProcessor.expiryKey(1_000, "TX-ZZZ");
+        var later = PendingFareProcessor.expiryKey(1_001, "TX-AAA");
+        var muchLater = PendingFareProcessor.expiryKey(T0.toEpochMilli(), "TX-AAA");
+
+        assertThat(earlier.compareTo(later)).isNegative();
+        assertThat(later.compareTo(muchLater)).isNegative();
+        assertThat(PendingFareProcessor.transactionIdOf(earlier)).isEqualTo("TX-ZZZ");
+    }
+
+    // ── Helpers ───────────────────────────────────────────────────────────────
+
+    private TestOutputTopic<String, FareResolution> resolved() {
+        return output(Topics.MATATU_FARES_RESOLVED);
+    }
+
+    private TestOutputTopic<String, FareResolution> timedOut() {
+        return output(Topics.MATATU_FARES_TIMEDOUT);
+    }
+
+    private TestOutputTopic<String, FareResolution> output(String topic) {
+        return driver.createOutputTopic(
+                topic, new StringDeserializer(), resolutionSerde.deserializer());
+    }
+
+    private long pendingCount() {
+        KeyValueStore<String, PendingFare> store =
+                driver.getKeyValueStore(PendingFareStream.PENDING_FARE_STORE);
+        try (var all = store.all()) {
+            long count = 0;
+            for (; all.hasNext(); all.next()) {
+                count++;
+            }
+            return count;
+        }
+    }
+
+    private static FareEvent fare(
+            String transactionId, FareEvent.PaymentStatus status, Instant timestamp) {
+        return new FareEvent(
+                transactionId,
+                "KBZ 123A",
+                "PAX-1",
+                new BigDecimal("100"),
+                FareEvent.PaymentMethod.MPESA,
+                status,
+                timestamp);
+    }
+}
@@ -0,0 +1,230 @@
+package org.matatu.tracker.streams;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+import org.matatu.tracker.encoding.LocationSerdes;
+import org.matatu.tracker.geo.GeoMath;
+import org.matatu.tracker.geo.GeofenceIndex;
+import org.matatu.tracker.geo.GeofenceRegistry;
+import org.matatu.tracker.model.FareEvent;
+import org.matatu.tracker.model.Geofence;
+import org.matatu.tracker.model.LocationEvent;
+import org.matatu.tracker.model.TripState;
+import org.matatu.tracker.model.TripSummary;
+import org.matatu.tracker.topics.Topics;
+import org.springframework.kafka.support.serializer.JacksonJsonSerde;
+
+class TripProcessorTest {
+
+    private static final Instant T0 = Instant.parse("2026-02-23T07:00:00Z");
+
+    private static final Geofence KENCOM = terminus("kencom", "Kencom", -1.2860, 36.8240);
+    private static final Geofence KIKUYU = terminus("kikuyu", "Kikuyu Town", -1.2460, 36.6630);
+
+    private final JacksonJsonSerde<FareEvent> fareSerde = new JacksonJsonSerde<>(FareEvent.class);
+    private Path stateDir;
+    private TopologyTestDriver driver;
+    private TestInputTopic<String, LocationEvent> pings;
+    private TestInputTopic<String, FareEvent> fares;
+    private TestOutputTopic<String, TripSummary> trips;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stateDir = Files.createTempDirectory("trip-test");
+        var properties = new MatatuTrackerProperties();
+        GeofenceIndex termini = GeofenceIndex.build(List.of(KENCOM, KIKUYU));
+        var registry =
+                new GeofenceRegistry() {
+                    @Override
+                    public GeofenceIndex current() {
+                        return termini;
+                    }
+                };
+
+        var builder = new StreamsBuilder();
+        new TripStream(properties, registry)
+                .tripSummaries(
+                        builder,
+                        new GeofenceStream(properties, registry, LocationSerdes.json())
+                                .locationsByMatatu(builder),
+                        builder.stream(
+                                Topics.MATATU_FARES, Consumed.with(Serdes.String(), fareSerde)));
+
+        var config = new Properties();
+        config.put(StreamsConfig.APPLICATION_ID_CONFIG, "trip-test");
+        config.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        config.put(StreamsConfig.STATE_DIR_CONFIG, stateDir.toString());
+        config.put(
+                StreamsConfig.DEFAULT_TIMESTAMP_EXTRACTOR_CLASS_CONFIG,
+                EventTimestampExtractor.class);
+        driver = new TopologyTestDriver(builder.build(), config, T0);
+        pings =
+                driver.createInputTopic(
+                        Topics.MATATU_LOCATION,
+                        new StringSerializer(),
+                        new JacksonJsonSerde<>(LocationEvent.class).serializer());
+        fares =
+                driver.createInputTopic(
+                        Topics.MATATU_FARES, new StringSerializer(), fareSerde.serializer());
+        trips =
+                driver.createOutputTopic(
+                        Topics.MATATU_TRIPS,
+                        new StringDeserializer(),
+                        new JacksonJsonSerde<>(TripSummary.class).deserializer());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        driver.close();
+        try (var files = Files.walk(stateDir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void terminusToTerminusTripIsSummarisedOnce() {
+        ping(-1.2860, 36.8240, 0, 10, T0); // loading at Kencom
+        fare("TX-1", 100, T0.plusSeconds(10)); // paid while waiting
+        double[][] legs = {
+            {-1.2840, 36.8000}, {-1.2700, 36.7700}, {-1.2600, 36.7300}, {-1.2500, 36.7000}
+        };
+        int[] load = {14, 20, 18, 12};
+        for (int i = 0; i < legs.length; i++) {
+            ping(legs[i][0], legs[i][1], 45, load[i], T0.plusSeconds(60 * (i + 1L)));
+        }
+        fare("TX-2", 70, T0.plusSeconds(150));
+        fare("TX-3", 70, T0.plusSeconds(160));
+        // A failed payment is not revenue.
+        fares.pipeInput(
+                "KBZ 123A",
+                new FareEvent(
+                        "TX-4",
+                        "KBZ 123A",
+                        "PAX-4",
+                        new BigDecimal("70"),
+                        FareEvent.PaymentMethod.MPESA,
+                        FareEvent.PaymentStatus.FAILED,
+                        T0.plusSeconds(170)));
+        ping(-1.2460, 36.6630, 10, 12, T0.plusSeconds(360)); // Kikuyu Town
+
+        var summaries = trips.readValuesToList();
+        assertThat(summaries).hasSize(1);
+        TripSummary trip = summaries.getFirst();
+        assertThat(trip.fromStop()).isEqualTo("Kencom");
+        assertThat(trip.toStop()).isEqualTo("Kikuyu Town");
+        assertThat(trip.startedAt()).isEqualTo(T0);
+        assertThat(trip.durationSeconds()).isEqualTo(360);
+        assertThat(trip.peakLoad()).isEqualTo(20);
+        assertThat(trip.revenueKes()).isEqualByComparingTo("240");
+        assertThat(trip.fares()).isEqualTo(3);
+        assertThat(trip.pings()).isEqualTo(6);
+
+        double[][] path = {
+            {-1.2860, 36.8240}, legs[0], legs[1], legs[2], legs[3], {-1.2460, 36.6630}
+        };
+        int[] onBoard = {10, 14, 20, 18, 12};
+        double metres = 0;
+        double passengerKm = 0;
+        for (int i = 1; i < path.length; i++) {
+            double leg =
+                    GeoMath.distanceMetres(path[i - 1][0], path[i - 1][1], path[i][0], path[i][1]);
+            metres += leg;
+            passengerKm += onBoard[i - 1] * leg / 1_000;
+        }
+        assertThat(trip.distanceMetres()).isCloseTo(metres, within(0.01));
+        assertThat(trip.passengerKm()).isCloseTo(passengerKm, within(0.01));
+
+        // Nothing but running totals is kept, and no trip is open at the terminus.
+        KeyValueStore<String, TripState> store = driver.getKeyValueStore(TripStream.TRIP_STORE);
+        assertThat(store.get("KBZ 123A").trip()).isNull();
+        assertThat(store.get("KBZ 123A").stop()).isEqualTo("Kikuyu Town");
+    }
+
+    @Test
+    void dwellEndsATripWhereNoTerminusIsDefined() {
+        // Waiting at a roadside stage in Westlands, then driving to Parklands and parking.
+        for (int i = 0; i <= 6; i++) {
+            ping(-1.2650, 36.8030, 0, 5, T0.plusSeconds(60L * i));
+        }
+        for (int i = 1; i <= 5; i++) {
+            ping(-1.2650 + 0.002 * i, 36.8030 + 0.002 * i, 35, 15, T0.plusSeconds(360 + 60L * i));
+        }
+        Instant parked = T0.plusSeconds(720);
+        for (int i = 0; i <= 5; i++) {
+            ping(-1.2530, 36.8150, 0, 0, parked.plusSeconds(60L * i));
+        }
+
+        var summaries = trips.readValuesToList();
+        assertThat(summaries).hasSize(1);
+        TripSummary trip = summaries.getFirst();
+        assertThat(trip.fromStop()).startsWith("dwell:");
+        assertThat(trip.toStop()).startsWith("dwell:").isNotEqualTo(trip.fromStop());
+        assertThat(trip.startedAt()).isEqualTo(T0.plusSeconds(360));
+        assertThat(trip.endedAt()).isEqualTo(parked);
+    }
+
+    @Test
+    void jitterAcrossTheTerminusBoundaryIsNotATrip() {
+        ping(-1.2860, 36.8240, 0, 10, T0);
+        ping(-1.2875, 36.8240, 3, 10, T0.plusSeconds(20)); // just outside
+        ping(-1.2860, 36.8240, 0, 10, T0.plusSeconds(40));
+
+        assertThat(trips.isEmpty()).isTrue();
+    }
+
+    private void ping(double lat, double lon, double speedKmh, int passengers, Instant at) {
+        pings.pipeInput(
+                "route_33",
+                new LocationEvent(
+                        "KBZ 123A", "route_33", "Route 33", lat, lon, speedKmh, passengers, at));
+    }
+
+    private void fare(String transactionId, int amountKes, Instant at) {
+        fares.pipeInput(
+                "KBZ 123A",
+                new FareEvent(
+                        transactionId,
+                        "KBZ 123A",
+                        "PAX-1",
+                        BigDecimal.valueOf(amountKes),
+                        FareEvent.PaymentMethod.MPESA,
+                        FareEvent.PaymentStatus.SUCCESS,
+                        at));
+    }
+
+    /** A ~220 m square around the given centre. */
+    private static Geofence terminus(String id, String name, double lat, double lon) {
+        double d = 0.001;
+        return new Geofence(
+                id,
+                Geofence.Type.TERMINUS,
+                name,
+                List.of(
+                        new Geofence.Vertex(lat - d, lon - d),
+                        new Geofence.Vertex(lat - d, lon + d),
+                        new Geofence.Vertex(lat + d, lon + d),
+                        new Geofence.Vertex(lat + d, lon - d)));
+    }
+}
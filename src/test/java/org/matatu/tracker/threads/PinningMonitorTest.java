@@ -0,0 +1,108 @@
+package org.matatu.tracker.threads;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.matatu.tracker.config.MatatuTrackerProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PinningMonitorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private PinningMonitor monitor;
+
+    @BeforeEach
+    void startMonitor() {
+        var properties = new MatatuTrackerProperties();
+        properties.getThreads().setPinningThresholdMs(10);
+        monitor = new PinningMonitor(properties, registry);
+        monitor.start();
+    }
+
+    @AfterEach
+    void stopMonitor() {
+        monitor.stop();
+    }
+
+    @Test
+    void sleepInsideSynchronizedIsReportedAtItsSite() throws Exception {
+        Object lock = new Object();
+        Thread.ofVirtual()
+                .start(
+                        () -> {
+                            synchronized (lock) {
+                                sleep(50);
+                            }
+                        })
+                .join();
+
+        List<PinningMonitor.PinnedSite> report = awaitReport();
+        assertThat(report).hasSize(1);
+        PinningMonitor.PinnedSite site = report.getFirst();
+        assertThat(site.site()).startsWith(PinningMonitorTest.class.getName());
+        assertThat(site.count()).isEqualTo(1);
+        assertThat(site.maxMillis()).isGreaterThanOrEqualTo(40);
+        assertThat(site.stack()).contains("java.lang.Thread.sleep");
+        assertThat(registry.get("matatu.threads.pinned").tag("site", site.site()).counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void futureGetPinsOnlyInsideSynchronized() throws Exception {
+        // A listener waiting on a producer future: harmless on its own, pinning inside a monitor.
+        Thread.ofVirtual().start(() -> awaitSend(50)).join();
+        Object lock = new Object();
+        Thread.ofVirtual()
+                .start(
+                        () -> {
+                            synchronized (lock) {
+                                awaitSend(50);
+                            }
+                        })
+                .join();
+
+        List<PinningMonitor.PinnedSite> report = awaitReport();
+        assertThat(report).hasSize(1);
+        assertThat(report.getFirst().count()).isEqualTo(1);
+        assertThat(report.getFirst().stack())
+                .contains("java.util.concurrent.CompletableFuture.get");
+    }
+
+    /** JFR hands events to the stream about once a second. */
+    private List<PinningMonitor.PinnedSite> awaitReport() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (monitor.report().isEmpty() && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        return monitor.report();
+    }
+
+    private static void awaitSend(long millis) {
+        try {
+            new CompletableFuture<String>()
+                    .completeOnTimeout("sent", millis, TimeUnit.MILLISECONDS)
+                    .get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}